@@ -134,7 +134,7 @@ public class ComputeEngineContainerImplTest {
           + 7 // content of CeQueueModule
           + 4 // content of CeHttpModule
           + 3 // content of CeTaskCommonsModule
-          + 4 // content of ProjectAnalysisTaskModule
+          + 7 // content of ProjectAnalysisTaskModule
           + 5 // content of CeTaskProcessorModule
           + 3 // CeCleaningModule + its content
           + 1 // CeDistributedInformation
@@ -256,6 +256,14 @@ public class ComponentDao implements Dao {
     return mapper(dbSession).selectAllRootsByOrganization(organizationUuid);
   }
 
+  /**
+   * Select the uuids of all root components (projects, views and applications), including disabled ones and branches,
+   * for all organizations.
+   */
+  public List<String> selectAllRootUuids(DbSession dbSession) {
+    return mapper(dbSession).selectAllRootUuids();
+  }
+
   public List<ComponentDto> selectGhostProjects(DbSession session, String organizationUuid, @Nullable String query, int offset, int limit) {
     return mapper(session).selectGhostProjects(organizationUuid, buildUpperLikeSql(query), new RowBounds(offset, limit));
   }
@@ -40,6 +40,8 @@ public interface IssueMapper {
 
   void scrollNonClosedByComponentUuid(@Param("componentUuid") String componentUuid, ResultHandler<IssueDto> handler);
 
+  void scrollNonClosedByProjectUuid(@Param("projectUuid") String projectUuid, ResultHandler<IssueDto> handler);
+
   void scrollNonClosedByModuleOrProject(
     @Param("projectUuid") String projectUuid,
     @Param("likeModuleUuidPath") String likeModuleUuidPath,
@@ -19,6 +19,7 @@
  */
 package org.sonar.db.notification;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import org.sonar.db.Dao;
@@ -53,6 +54,40 @@ public class NotificationQueueDao implements Dao {
     }
   }
 
+  /**
+   * Claims the notifications at {@code now} and returns the ones which were actually claimed by this call. A notification
+   * is not claimed if it has been claimed after {@code expiredBefore}, for example by another node of the cluster, or if
+   * it has been deleted in the meantime. Claimed notifications stay in the queue until they are deleted, so that they can
+   * be claimed again once their claim expired if they are never delivered.
+   */
+  public List<NotificationQueueDto> claim(List<NotificationQueueDto> dtos, long now, long expiredBefore) {
+    List<NotificationQueueDto> claimed = new ArrayList<>(dtos.size());
+    // not a batch session, as the number of updated rows is needed
+    try (DbSession session = mybatis.openSession(false)) {
+      NotificationQueueMapper mapper = session.getMapper(NotificationQueueMapper.class);
+      for (NotificationQueueDto dto : dtos) {
+        if (mapper.claim(dto.getId(), now, expiredBefore) > 0) {
+          claimed.add(dto);
+        }
+      }
+      session.commit();
+    }
+    return claimed;
+  }
+
+  /**
+   * Cancels the claims of the notifications, so that they can be claimed again immediately.
+   */
+  public void release(List<NotificationQueueDto> dtos) {
+    try (DbSession session = mybatis.openSession(true)) {
+      NotificationQueueMapper mapper = session.getMapper(NotificationQueueMapper.class);
+      for (NotificationQueueDto dto : dtos) {
+        mapper.release(dto.getId());
+      }
+      session.commit();
+    }
+  }
+
   public List<NotificationQueueDto> selectOldest(int count) {
     if (count < 1) {
       return Collections.emptyList();
@@ -62,6 +97,18 @@ public class NotificationQueueDao implements Dao {
     }
   }
 
+  /**
+   * The oldest notifications which are not claimed, or whose claim has been made before {@code expiredBefore}.
+   */
+  public List<NotificationQueueDto> selectOldestClaimable(int count, long expiredBefore) {
+    if (count < 1) {
+      return Collections.emptyList();
+    }
+    try (DbSession session = mybatis.openSession(false)) {
+      return session.getMapper(NotificationQueueMapper.class).findOldestClaimable(count, expiredBefore);
+    }
+  }
+
   public long count() {
     try (DbSession session = mybatis.openSession(false)) {
       return session.getMapper(NotificationQueueMapper.class).count();
@@ -20,6 +20,7 @@
 package org.sonar.db.notification;
 
 import java.util.List;
+import org.apache.ibatis.annotations.Param;
 
 /**
  * @since 3.7.1
@@ -28,10 +29,16 @@ public interface NotificationQueueMapper {
 
   void insert(NotificationQueueDto actionPlanDto);
 
-  void delete(long id);
+  int delete(long id);
 
   List<NotificationQueueDto> findOldest(int count);
 
+  List<NotificationQueueDto> findOldestClaimable(@Param("count") int count, @Param("expiredBefore") long expiredBefore);
+
+  int claim(@Param("id") long id, @Param("now") long now, @Param("expiredBefore") long expiredBefore);
+
+  int release(long id);
+
   long count();
 
 }
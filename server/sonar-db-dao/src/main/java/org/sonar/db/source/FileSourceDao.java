@@ -44,6 +44,14 @@ public class FileSourceDao implements Dao {
     return mapper(session).select(fileUuid, Type.SOURCE);
   }
 
+  /**
+   * Hash of the source data of the file, without loading the data itself. Returns {@code null} if the file has no source.
+   */
+  @CheckForNull
+  public String selectSourceDataHashByFileUuid(DbSession session, String fileUuid) {
+    return mapper(session).selectDataHash(fileUuid, Type.SOURCE);
+  }
+
   @CheckForNull
   public FileSourceDto selectTest(DbSession dbSession, String fileUuid) {
     return mapper(dbSession).select(fileUuid, Type.TEST);
@@ -38,6 +38,11 @@ import static java.lang.String.format;
 
 public class FileSourceDto {
 
+  // field "lines" of message Data, length-delimited
+  private static final int DATA_LINES_TAG = 10;
+  // field "line" of message Line, varint
+  private static final int LINE_NUMBER_TAG = 8;
+
   private static final String SIZE_LIMIT_EXCEEDED_EXCEPTION_MESSAGE = "Protocol message was too large.  May be malicious.  " +
     "Use CodedInputStream.setSizeLimit() to increase the size limit.";
 
@@ -122,6 +127,47 @@ public class FileSourceDto {
     }
   }
 
+  /**
+   * Decodes at most {@code maxLines} lines of the source data, starting from line {@code from}. Lines before
+   * {@code from} are skipped without being deserialized and decompression stops after the last requested line, so
+   * that the whole data of huge files is not decoded when only a few lines are needed.
+   */
+  public List<DbFileSources.Line> getSourceDataLines(int from, int maxLines) {
+    try {
+      return decodeSourceDataLines(binaryData, from, maxLines);
+    } catch (IOException e) {
+      throw new IllegalStateException(
+        format("Fail to decompress and deserialize source data [id=%s,fileUuid=%s,projectUuid=%s]", id, fileUuid, projectUuid),
+        e);
+    }
+  }
+
+  private static List<DbFileSources.Line> decodeSourceDataLines(byte[] binaryData, int from, int maxLines) throws IOException {
+    List<DbFileSources.Line> lines = new ArrayList<>();
+    try (LZ4BlockInputStream lz4Input = new LZ4BlockInputStream(new ByteArrayInputStream(binaryData))) {
+      CodedInputStream input = CodedInputStream.newInstance(lz4Input);
+      input.setSizeLimit(Integer.MAX_VALUE);
+      int tag;
+      while (lines.size() < maxLines && (tag = input.readTag()) != 0) {
+        if (tag != DATA_LINES_TAG) {
+          input.skipField(tag);
+          continue;
+        }
+        int oldLimit = input.pushLimit(input.readRawVarint32());
+        // field "line" is serialized first, so that lines can be skipped before parsing their other fields
+        if (input.readTag() == LINE_NUMBER_TAG) {
+          int lineNumber = input.readInt32();
+          if (lineNumber >= from) {
+            lines.add(DbFileSources.Line.newBuilder().setLine(lineNumber).mergeFrom(input).build());
+          }
+        }
+        input.skipRawBytes(input.getBytesUntilLimit());
+        input.popLimit(oldLimit);
+      }
+    }
+    return lines;
+  }
+
   /**
    * Serialize and compress protobuf message {@link org.sonar.db.protobuf.DbFileSources.Data}
    * in the column BINARY_DATA.
@@ -541,10 +541,12 @@ public class ComponentDaoTest {
 
     // From root project
     assertThat(underTest.selectEnabledFilesFromProject(dbSession, project.uuid()))
-      .extracting(FilePathWithHashDto::getUuid, FilePathWithHashDto::getModuleUuid, FilePathWithHashDto::getSrcHash, FilePathWithHashDto::getPath, FilePathWithHashDto::getRevision)
+      .extracting(FilePathWithHashDto::getUuid, FilePathWithHashDto::getModuleUuid, FilePathWithHashDto::getSrcHash, FilePathWithHashDto::getPath, FilePathWithHashDto::getRevision,
+        FilePathWithHashDto::getUpdatedAt)
       .containsExactlyInAnyOrder(
-        tuple(fileDirectlyOnModule.uuid(), module.uuid(), fileSourceDirectlyOnModule.getSrcHash(), fileDirectlyOnModule.path(), fileSourceDirectlyOnModule.getRevision()),
-        tuple(file.uuid(), subModule.uuid(), fileSource.getSrcHash(), file.path(), fileSource.getRevision()));
+        tuple(fileDirectlyOnModule.uuid(), module.uuid(), fileSourceDirectlyOnModule.getSrcHash(), fileDirectlyOnModule.path(), fileSourceDirectlyOnModule.getRevision(),
+          fileSourceDirectlyOnModule.getUpdatedAt()),
+        tuple(file.uuid(), subModule.uuid(), fileSource.getSrcHash(), file.path(), fileSource.getRevision(), fileSource.getUpdatedAt()));
 
     // From module
     assertThat(underTest.selectEnabledFilesFromProject(dbSession, module.uuid())).isEmpty();
@@ -690,6 +692,22 @@ public class ComponentDaoTest {
       .doesNotContain(branch.uuid());
   }
 
+  @Test
+  public void select_all_root_uuids() {
+    OrganizationDto organization = db.organizations().insert();
+    ComponentDto project = db.components().insertMainBranch(organization);
+    ComponentDto branch = db.components().insertProjectBranch(project);
+    ComponentDto module = db.components().insertComponent(newModuleDto(project));
+    db.components().insertComponent(newFileDto(module));
+    ComponentDto disabledProject = db.components().insertPrivateProject(organization, p -> p.setEnabled(false));
+    ComponentDto view = db.components().insertView(organization);
+    db.components().insertComponent(newProjectCopy("COPY", project, view));
+    ComponentDto projectOnOtherOrganization = db.components().insertPrivateProject(db.organizations().insert());
+
+    assertThat(underTest.selectAllRootUuids(dbSession))
+      .containsExactlyInAnyOrder(project.uuid(), branch.uuid(), disabledProject.uuid(), view.uuid(), projectOnOtherOrganization.uuid());
+  }
+
   @Test
   public void select_provisioned() {
     OrganizationDto organization = db.organizations().insert();
@@ -19,6 +19,7 @@
  */
 package org.sonar.db.duplication;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
@@ -59,6 +60,20 @@ public class DuplicationDaoTest {
     assertThat(blocks).hasSize(2);
   }
 
+  @Test
+  public void scroll_candidates() {
+    db.prepareDbUnit(getClass(), "select_candidates.xml");
+    dbSession.commit();
+
+    List<DuplicationUnitDto> blocks = new ArrayList<>();
+    dao.scrollCandidates(dbSession, "u7", "java", singletonList("aa"), context -> blocks.add(context.getResultObject()));
+    assertThat(blocks).extracting(DuplicationUnitDto::getComponentKey).containsExactly("bar-last");
+
+    blocks.clear();
+    dao.scrollCandidates(dbSession, null, "java", singletonList("aa"), context -> blocks.add(context.getResultObject()));
+    assertThat(blocks).hasSize(2);
+  }
+
   @Test
   public void select_component() {
     db.prepareDbUnit(getClass(), "select_component.xml");
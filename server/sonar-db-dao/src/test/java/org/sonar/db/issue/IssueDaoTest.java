@@ -152,6 +152,27 @@ public class IssueDaoTest {
     assertThat(accumulator.list).isEmpty();
   }
 
+  @Test
+  public void scrollNonClosedByProjectUuid_orders_issues_by_component_uuid() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto anotherProject = db.components().insertPrivateProject();
+    ComponentDto file1 = db.components().insertComponent(newFileDto(project));
+    ComponentDto file2 = db.components().insertComponent(newFileDto(project));
+    IssueDto openIssue1OnFile1 = db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null));
+    IssueDto openIssueOnFile2 = db.issues().insert(rule, project, file2, i -> i.setStatus("OPEN").setResolution(null));
+    IssueDto openIssue2OnFile1 = db.issues().insert(rule, project, file1, i -> i.setStatus("OPEN").setResolution(null));
+    db.issues().insert(rule, project, file1, i -> i.setStatus("CLOSED").setResolution("FIXED"));
+    IssueDto openIssueOnProject = db.issues().insert(rule, project, project, i -> i.setStatus("OPEN").setResolution(null));
+    db.issues().insert(rule, anotherProject, anotherProject, i -> i.setStatus("OPEN").setResolution(null));
+
+    Accumulator accumulator = new Accumulator();
+    underTest.scrollNonClosedByProjectUuid(db.getSession(), project.uuid(), accumulator);
+
+    accumulator.assertThatContainsOnly(openIssue1OnFile1, openIssue2OnFile1, openIssueOnFile2, openIssueOnProject);
+    assertThat(accumulator.list).extracting(IssueDto::getComponentUuid).isSorted();
+  }
+
   @Test
   public void scrollNonClosedByModuleOrProject() {
     RuleDefinitionDto rule = db.rules().insert();
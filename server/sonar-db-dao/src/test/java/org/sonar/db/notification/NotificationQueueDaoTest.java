@@ -69,6 +69,54 @@ public class NotificationQueueDaoTest {
     db.assertDbUnit(getClass(), "should_delete_notification-result.xml", "notifications");
   }
 
+  @Test
+  public void claim_returns_notifications_which_are_not_claimed_yet() {
+    db.prepareDbUnit(getClass(), "should_delete_notification.xml");
+    NotificationQueueDto dto1 = new NotificationQueueDto().setId(1L);
+    NotificationQueueDto dto3 = new NotificationQueueDto().setId(3L);
+
+    assertThat(dao.claim(Arrays.asList(dto1, dto3), 1_000L, 500L)).containsExactly(dto1, dto3);
+    assertThat(dao.claim(Arrays.asList(dto1, dto3), 1_100L, 600L)).isEmpty();
+
+    // claimed notifications are kept in queue
+    assertThat(dao.count()).isEqualTo(4);
+    assertThat(dao.selectOldestClaimable(10, 600L)).extracting("id").containsExactly(2L, 4L);
+  }
+
+  @Test
+  public void claim_returns_notifications_whose_claim_expired() {
+    db.prepareDbUnit(getClass(), "should_delete_notification.xml");
+    NotificationQueueDto dto1 = new NotificationQueueDto().setId(1L);
+
+    dao.claim(Arrays.asList(dto1), 1_000L, 500L);
+
+    assertThat(dao.selectOldestClaimable(10, 1_001L)).extracting("id").containsExactly(1L, 2L, 3L, 4L);
+    assertThat(dao.claim(Arrays.asList(dto1), 2_000L, 1_001L)).containsExactly(dto1);
+  }
+
+  @Test
+  public void claim_does_not_return_deleted_notifications() {
+    db.prepareDbUnit(getClass(), "should_delete_notification.xml");
+    NotificationQueueDto dto1 = new NotificationQueueDto().setId(1L);
+    NotificationQueueDto dto3 = new NotificationQueueDto().setId(3L);
+    dao.delete(Arrays.asList(dto1));
+
+    assertThat(dao.claim(Arrays.asList(dto1, dto3), 1_000L, 500L)).containsExactly(dto3);
+  }
+
+  @Test
+  public void released_notifications_can_be_claimed_again() {
+    db.prepareDbUnit(getClass(), "should_delete_notification.xml");
+    NotificationQueueDto dto1 = new NotificationQueueDto().setId(1L);
+    NotificationQueueDto dto3 = new NotificationQueueDto().setId(3L);
+    dao.claim(Arrays.asList(dto1, dto3), 1_000L, 500L);
+
+    dao.release(Arrays.asList(dto1));
+
+    assertThat(dao.selectOldestClaimable(10, 600L)).extracting("id").containsExactly(1L, 2L, 4L);
+    assertThat(dao.claim(Arrays.asList(dto1, dto3), 1_100L, 600L)).containsExactly(dto1);
+  }
+
   @Test
   public void should_findOldest() {
     db.prepareDbUnit(getClass(), "should_findOldest.xml");
@@ -80,4 +128,12 @@ public class NotificationQueueDaoTest {
     result = dao.selectOldest(6);
     assertThat(result).hasSize(4);
   }
+
+  @Test
+  public void selectOldestClaimable_returns_at_most_count_notifications() {
+    db.prepareDbUnit(getClass(), "should_findOldest.xml");
+
+    assertThat(dao.selectOldestClaimable(0, 500L)).isEmpty();
+    assertThat(dao.selectOldestClaimable(2, 500L)).extracting("id").containsExactly(1L, 2L);
+  }
 }
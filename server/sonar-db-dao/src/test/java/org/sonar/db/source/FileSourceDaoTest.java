@@ -59,6 +59,14 @@ public class FileSourceDaoTest {
     assertThat(fileSourceDto.getRevision()).isEqualTo("123456789");
   }
 
+  @Test
+  public void select_source_data_hash() {
+    dbTester.prepareDbUnit(getClass(), "shared.xml");
+
+    assertThat(underTest.selectSourceDataHashByFileUuid(session, "FILE1_UUID")).isEqualTo("hash");
+    assertThat(underTest.selectSourceDataHashByFileUuid(session, "UNKNOWN")).isNull();
+  }
+
   @Test
   public void select_line_hashes() {
     dbTester.prepareDbUnit(getClass(), "shared.xml");
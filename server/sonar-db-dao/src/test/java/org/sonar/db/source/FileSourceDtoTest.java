@@ -54,6 +54,34 @@ public class FileSourceDtoTest {
     assertThat(underTest.getTestData().get(0).getName()).isEqualTo("name#1");
   }
 
+  @Test
+  public void getSourceDataLines_decodes_only_requested_lines() {
+    DbFileSources.Data.Builder data = DbFileSources.Data.newBuilder();
+    for (int i = 1; i <= 100; i++) {
+      data.addLinesBuilder().setLine(i).setSource("line " + i).setScmAuthor("author").setLineHits(i);
+    }
+    FileSourceDto underTest = new FileSourceDto().setSourceData(data.build());
+
+    List<DbFileSources.Line> lines = underTest.getSourceDataLines(10, 3);
+
+    assertThat(lines).containsExactly(data.getLines(9), data.getLines(10), data.getLines(11));
+    assertThat(underTest.getSourceDataLines(99, 10)).containsExactly(data.getLines(98), data.getLines(99));
+    assertThat(underTest.getSourceDataLines(101, 10)).isEmpty();
+  }
+
+  @Test
+  public void getSourceDataLines_ignores_lines_without_number() {
+    DbFileSources.Data data = DbFileSources.Data.newBuilder()
+      .addLines(DbFileSources.Line.newBuilder().setSource("no number"))
+      .addLines(DbFileSources.Line.newBuilder().setLine(1).setSource("first"))
+      .addLines(DbFileSources.Line.newBuilder())
+      .addLines(DbFileSources.Line.newBuilder().setLine(2).setSource("second"))
+      .build();
+    FileSourceDto underTest = new FileSourceDto().setSourceData(data);
+
+    assertThat(underTest.getSourceDataLines(1, 10)).containsExactly(data.getLines(1), data.getLines(3));
+  }
+
   @Test
   public void getSourceData_throws_ISE_with_id_fileUuid_and_projectUuid_in_message_when_data_cant_be_read() {
     long id = 12L;
@@ -37,6 +37,7 @@ public class DbVersion66 implements DbVersion {
       .add(1808, "Add branch column to projects table", AddBranchColumnToProjectsTable.class)
       .add(1809, "Populate project_branches with existing main branches", PopulateMainProjectBranches.class)
       .add(1810, "Add ce_activity.error_type", AddErrorTypeColumnToCeActivityTable.class)
+      .add(1811, "Add notifications.claimed_at", AddClaimedAtColumnToNotificationsTable.class)
     ;
   }
 }
@@ -41,6 +41,7 @@ public class ProjectAction implements BatchWsAction {
   private static final String PARAM_PROFILE = "profile";
   private static final String PARAM_ISSUES_MODE = "issues_mode";
   private static final String PARAM_BRANCH = "branch";
+  private static final String PARAM_CHANGED_SINCE = "changedSince";
 
   private final ProjectDataLoader projectDataLoader;
 
@@ -79,6 +80,12 @@ public class ProjectAction implements BatchWsAction {
       .setSince("6.6")
       .setDescription("Branch key")
       .setExampleValue(KEY_BRANCH_EXAMPLE_001);
+
+    action
+      .createParam(PARAM_CHANGED_SINCE)
+      .setSince("6.6")
+      .setDescription("Files version returned by a previous call in field 'filesVersion'. If set, only the files changed since this version are returned.")
+      .setExampleValue("1500000000000");
   }
 
   @Override
@@ -87,7 +94,8 @@ public class ProjectAction implements BatchWsAction {
       .setModuleKey(wsRequest.mandatoryParam(PARAM_KEY))
       .setProfileName(wsRequest.param(PARAM_PROFILE))
       .setIssuesMode(wsRequest.mandatoryParamAsBoolean(PARAM_ISSUES_MODE))
-      .setBranch(wsRequest.param(PARAM_BRANCH)));
+      .setBranch(wsRequest.param(PARAM_BRANCH))
+      .setChangedSince(wsRequest.paramAsLong(PARAM_CHANGED_SINCE)));
 
     WsProjectResponse projectResponse = buildResponse(data);
     writeProtobuf(projectResponse, wsRequest, wsResponse);
@@ -97,6 +105,9 @@ public class ProjectAction implements BatchWsAction {
     WsProjectResponse.Builder response = WsProjectResponse.newBuilder();
     setNullable(data.lastAnalysisDate(), response::setLastAnalysisDate, Date::getTime);
     response.setTimestamp(data.timestamp());
+    setNullable(data.filesVersion(), response::setFilesVersion);
+    response.setFilesDelta(data.isFilesDelta());
+    response.setFilesFingerprint(data.filesFingerprint());
     response.getMutableFileDataByModuleAndPath()
       .putAll(buildFileDataByModuleAndPath(data));
     response.getMutableSettingsByModule()
@@ -37,9 +37,11 @@ import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.component.ComponentDto;
 import org.sonar.db.component.FilePathWithHashDto;
+import org.sonar.db.component.SnapshotDto;
 import org.sonar.db.permission.OrganizationPermission;
 import org.sonar.db.property.PropertyDto;
 import org.sonar.scanner.protocol.input.FileData;
+import org.sonar.scanner.protocol.input.FilesFingerprint;
 import org.sonar.scanner.protocol.input.ProjectRepositories;
 import org.sonar.server.component.ComponentFinder;
 import org.sonar.server.exceptions.ForbiddenException;
@@ -90,7 +92,12 @@ public class ProjectDataLoader {
 
       addSettingsToChildrenModules(data, moduleKey, Maps.newHashMap(), treeModuleSettings, hasScanPerm);
       List<FilePathWithHashDto> files = searchFilesWithHashAndRevision(session, branchOrMainModule);
-      addFileData(data, modulesTree, files);
+      Long filesVersion = dbClient.snapshotDao().selectLastAnalysisByRootComponentUuid(session, branchOrMainModule.projectUuid())
+        .map(SnapshotDto::getBuildDate)
+        .orElse(null);
+      Long changedSince = isKnownVersion(query.getChangedSince(), filesVersion) ? query.getChangedSince() : null;
+      addFileData(data, modulesTree, files, changedSince);
+      data.setFilesVersion(filesVersion);
 
       // FIXME need real value but actually only used to know if there is a previous analysis in local issue tracking mode so any value is
       // ok
@@ -181,16 +188,37 @@ public class ProjectDataLoader {
     return !key.contains(".secured") || hasScanPerm;
   }
 
-  private static void addFileData(ProjectRepositories data, List<ComponentDto> moduleChildren, List<FilePathWithHashDto> files) {
+  /**
+   * A version more recent than the last analysis has not been returned by this server, for example
+   * because the database has been restored from a backup. All files are returned in this case.
+   */
+  private static boolean isKnownVersion(@Nullable Long changedSince, @Nullable Long filesVersion) {
+    return changedSince != null && filesVersion != null && changedSince <= filesVersion;
+  }
+
+  /**
+   * Source hash and revision of files are updated by the Compute Engine once the analysis is persisted, so the files changed by
+   * the analyses following the version {@code changedSince} have been updated after it.
+   */
+  private static void addFileData(ProjectRepositories data, List<ComponentDto> moduleChildren, List<FilePathWithHashDto> files, @Nullable Long changedSince) {
     Map<String, String> moduleKeysByUuid = newHashMap();
     for (ComponentDto module : moduleChildren) {
       moduleKeysByUuid.put(module.uuid(), module.getKey());
     }
 
+    FilesFingerprint fingerprint = new FilesFingerprint();
     for (FilePathWithHashDto file : files) {
-      FileData fileData = new FileData(file.getSrcHash(), file.getRevision());
-      data.addFileData(moduleKeysByUuid.get(file.getModuleUuid()), file.getPath(), fileData);
+      String moduleKey = moduleKeysByUuid.get(file.getModuleUuid());
+      if (file.getPath() != null && (file.getSrcHash() != null || file.getRevision() != null)) {
+        fingerprint.add(moduleKey, file.getPath());
+      }
+      if (changedSince == null || file.getUpdatedAt() > changedSince) {
+        FileData fileData = new FileData(file.getSrcHash(), file.getRevision());
+        data.addFileData(moduleKey, file.getPath(), fileData);
+      }
     }
+    data.setFilesDelta(changedSince != null);
+    data.setFilesFingerprint(fingerprint.value());
   }
 
   private static void checkPermission(boolean preview, boolean hasScanPerm, boolean hasBrowsePerm) {
@@ -28,6 +28,7 @@ public class ProjectDataQuery {
   private String profileName;
   private boolean issuesMode;
   private String branch;
+  private Long changedSince;
 
   private ProjectDataQuery() {
     // No direct call
@@ -71,6 +72,19 @@ public class ProjectDataQuery {
     return this;
   }
 
+  /**
+   * Files version returned by a previous call. If set, only the files changed since this version are loaded.
+   */
+  @CheckForNull
+  public Long getChangedSince() {
+    return changedSince;
+  }
+
+  public ProjectDataQuery setChangedSince(@Nullable Long changedSince) {
+    this.changedSince = changedSince;
+    return this;
+  }
+
   public static ProjectDataQuery create() {
     return new ProjectDataQuery();
   }
@@ -26,7 +26,6 @@ import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import javax.annotation.Nullable;
 import org.elasticsearch.action.index.IndexRequest;
 import org.elasticsearch.action.search.SearchRequestBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
@@ -41,6 +40,7 @@ import org.sonar.server.es.EsClient;
 import org.sonar.server.es.IndexType;
 import org.sonar.server.es.IndexingResult;
 import org.sonar.server.es.OneToManyResilientIndexingListener;
+import org.sonar.server.es.ParallelIndexing;
 import org.sonar.server.es.ProjectIndexer;
 import org.sonar.server.permission.index.AuthorizationScope;
 import org.sonar.server.permission.index.NeedAuthorizationIndexer;
@@ -68,7 +68,15 @@ public class ComponentIndexer implements ProjectIndexer, NeedAuthorizationIndexe
 
   @Override
   public void indexOnStartup(Set<IndexType> uninitializedIndexTypes) {
-    doIndexByProjectUuid(null, Size.LARGE);
+    List<String> projectUuids;
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      projectUuids = dbClient.componentDao().selectAllRootUuids(dbSession);
+    }
+    BulkIndexer bulk = new BulkIndexer(esClient, INDEX_TYPE_COMPONENT, Size.LARGE);
+    bulk.start();
+    // each project is read with its own DB session, so that projects are loaded in parallel
+    ParallelIndexing.forEach(projectUuids, projectUuid -> addProject(bulk, projectUuid));
+    bulk.stop();
   }
 
   @Override
@@ -132,13 +140,18 @@ public class ComponentIndexer implements ProjectIndexer, NeedAuthorizationIndexe
   }
 
   /**
-   * @param projectUuid the uuid of the project to analyze, or {@code null} if all content should be indexed.<br/>
-   * <b>Warning:</b> only use {@code null} during startup.
+   * @param projectUuid the uuid of the project to index. Must not be {@code null}: startup indexing loads
+   * each project separately, see {@link #indexOnStartup(Set)}.
    */
-  private void doIndexByProjectUuid(@Nullable String projectUuid, Size bulkSize) {
+  private void doIndexByProjectUuid(String projectUuid, Size bulkSize) {
     BulkIndexer bulk = new BulkIndexer(esClient, INDEX_TYPE_COMPONENT, bulkSize);
 
     bulk.start();
+    addProject(bulk, projectUuid);
+    bulk.stop();
+  }
+
+  private void addProject(BulkIndexer bulk, String projectUuid) {
     try (DbSession dbSession = dbClient.openSession(false)) {
       dbClient.componentDao()
         .scrollForIndexing(dbSession, projectUuid, context -> {
@@ -146,7 +159,6 @@ public class ComponentIndexer implements ProjectIndexer, NeedAuthorizationIndexe
           bulk.add(newIndexRequest(toDocument(dto)));
         });
     }
-    bulk.stop();
   }
 
   private void addProjectDeletionToBulkIndexer(BulkIndexer bulkIndexer, String projectUuid) {
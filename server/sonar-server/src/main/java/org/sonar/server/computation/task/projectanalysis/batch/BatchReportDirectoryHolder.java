@@ -20,7 +20,9 @@
 package org.sonar.server.computation.task.projectanalysis.batch;
 
 import java.io.File;
+import java.util.Optional;
 import org.sonar.ce.queue.CeTask;
+import org.sonar.scanner.protocol.output.ReportArchive;
 
 public interface BatchReportDirectoryHolder {
   /**
@@ -30,4 +32,11 @@ public interface BatchReportDirectoryHolder {
    */
   File getDirectory();
 
+  /**
+   * The zip file of the report when it is read in place, without being extracted to {@link #getDirectory()}.
+   */
+  default Optional<ReportArchive> getArchive() {
+    return Optional.empty();
+  }
+
 }
@@ -21,16 +21,33 @@ package org.sonar.server.computation.task.projectanalysis.batch;
 
 import java.io.File;
 import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.FileUtils;
+import org.picocontainer.Startable;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+import org.sonar.scanner.protocol.output.ReportArchive;
 
-public class BatchReportDirectoryHolderImpl implements MutableBatchReportDirectoryHolder {
+public class BatchReportDirectoryHolderImpl implements MutableBatchReportDirectoryHolder, Startable {
+
+  private static final Logger LOGGER = Loggers.get(BatchReportDirectoryHolderImpl.class);
 
   private File directory;
+  @CheckForNull
+  private ReportArchive archive;
 
   @Override
   public void setDirectory(File newDirectory) {
     this.directory = Objects.requireNonNull(newDirectory);
   }
 
+  @Override
+  public void setArchive(ReportArchive archive) {
+    this.archive = Objects.requireNonNull(archive);
+    this.directory = archive.getFile().getParentFile();
+  }
+
   @Override
   public File getDirectory() {
     if (this.directory == null) {
@@ -38,4 +55,24 @@ public class BatchReportDirectoryHolderImpl implements MutableBatchReportDirecto
     }
     return this.directory;
   }
+
+  @Override
+  public Optional<ReportArchive> getArchive() {
+    return Optional.ofNullable(archive);
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    if (archive != null) {
+      LOGGER.info("Analysis report read in place: {} read from archive of {}, nothing extracted",
+        FileUtils.byteCountToDisplaySize(archive.getBytesRead()), FileUtils.byteCountToDisplaySize(archive.getFile().length()));
+      archive.close();
+      archive = null;
+    }
+  }
 }
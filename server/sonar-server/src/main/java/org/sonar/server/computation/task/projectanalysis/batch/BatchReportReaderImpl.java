@@ -23,24 +23,26 @@ import com.google.common.base.Throwables;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Parser;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import javax.annotation.CheckForNull;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.LineIterator;
+import org.picocontainer.Startable;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.core.util.LineReaderIterator;
+import org.sonar.scanner.protocol.output.FileStructure;
 import org.sonar.scanner.protocol.output.ScannerReport;
 
-public class BatchReportReaderImpl implements BatchReportReader {
+public class BatchReportReaderImpl implements BatchReportReader, Startable {
 
   private final BatchReportDirectoryHolder batchReportDirectoryHolder;
-  private org.sonar.scanner.protocol.output.ScannerReportReader delegate;
+  // may be read by concurrent computation steps
+  private volatile org.sonar.scanner.protocol.output.ScannerReportReader delegate;
   // caching of metadata which are read often
   private ScannerReport.Metadata metadata;
 
@@ -48,14 +50,29 @@ public class BatchReportReaderImpl implements BatchReportReader {
     this.batchReportDirectoryHolder = batchReportDirectoryHolder;
   }
 
-  private void ensureInitialized() {
+  @Override
+  public void start() {
+    // nothing to do, report is read lazily
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (delegate != null) {
+      delegate.close();
+      delegate = null;
+    }
+  }
+
+  private synchronized void ensureInitialized() {
     if (this.delegate == null) {
-      this.delegate = new org.sonar.scanner.protocol.output.ScannerReportReader(batchReportDirectoryHolder.getDirectory());
+      this.delegate = batchReportDirectoryHolder.getArchive()
+        .map(org.sonar.scanner.protocol.output.ScannerReportReader::new)
+        .orElseGet(() -> new org.sonar.scanner.protocol.output.ScannerReportReader(batchReportDirectoryHolder.getDirectory()));
     }
   }
 
   @Override
-  public ScannerReport.Metadata readMetadata() {
+  public synchronized ScannerReport.Metadata readMetadata() {
     ensureInitialized();
     if (this.metadata == null) {
       this.metadata = delegate.readMetadata();
@@ -66,16 +83,11 @@ public class BatchReportReaderImpl implements BatchReportReader {
   @Override
   public CloseableIterator<String> readScannerLogs() {
     ensureInitialized();
-    File file = delegate.getFileStructure().analysisLog();
-    if (!file.exists()) {
+    InputStream input = delegate.open(delegate.getFileStructure().analysisLog());
+    if (input == null) {
       return CloseableIterator.emptyCloseableIterator();
     }
-    try {
-      InputStreamReader reader = new InputStreamReader(FileUtils.openInputStream(file), StandardCharsets.UTF_8);
-      return new LineReaderIterator(reader);
-    } catch (IOException e) {
-      throw new IllegalStateException("Fail to open file " + file, e);
-    }
+    return new LineReaderIterator(new InputStreamReader(input, StandardCharsets.UTF_8));
   }
 
   @Override
@@ -142,13 +154,14 @@ public class BatchReportReaderImpl implements BatchReportReader {
   @Override
   public Optional<CloseableIterator<String>> readFileSource(int fileRef) {
     ensureInitialized();
-    File file = delegate.readFileSource(fileRef);
-    if (file == null) {
+    File file = delegate.getFileStructure().fileFor(FileStructure.Domain.SOURCE, fileRef);
+    InputStream input = delegate.open(file);
+    if (input == null) {
       return Optional.empty();
     }
 
     try {
-      return Optional.of(new CloseableLineIterator(IOUtils.lineIterator(FileUtils.openInputStream(file), StandardCharsets.UTF_8)));
+      return Optional.of(new CloseableLineIterator(IOUtils.lineIterator(input, StandardCharsets.UTF_8)));
     } catch (IOException e) {
       throw new IllegalStateException("Fail to traverse file: " + file, e);
     }
@@ -186,35 +199,21 @@ public class BatchReportReaderImpl implements BatchReportReader {
   @Override
   public CloseableIterator<ScannerReport.Test> readTests(int testFileRef) {
     ensureInitialized();
-    File file = delegate.readTests(testFileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(ScannerReport.Test.parser(), FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
+    InputStream input = delegate.open(delegate.getFileStructure().fileFor(FileStructure.Domain.TESTS, testFileRef));
+    if (input == null) {
       return CloseableIterator.emptyCloseableIterator();
     }
+    return new ParserCloseableIterator<>(ScannerReport.Test.parser(), input);
   }
 
   @Override
   public CloseableIterator<ScannerReport.CoverageDetail> readCoverageDetails(int testFileRef) {
     ensureInitialized();
-    File file = delegate.readCoverageDetails(testFileRef);
-    if (file == null) {
-      return CloseableIterator.emptyCloseableIterator();
-    }
-
-    try {
-      return new ParserCloseableIterator<>(ScannerReport.CoverageDetail.parser(), FileUtils.openInputStream(file));
-    } catch (IOException e) {
-      Throwables.propagate(e);
-      // actually never reached
+    InputStream input = delegate.open(delegate.getFileStructure().fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef));
+    if (input == null) {
       return CloseableIterator.emptyCloseableIterator();
     }
+    return new ParserCloseableIterator<>(ScannerReport.CoverageDetail.parser(), input);
   }
 
   @Override
@@ -225,9 +224,9 @@ public class BatchReportReaderImpl implements BatchReportReader {
 
   private static class ParserCloseableIterator<T> extends CloseableIterator<T> {
     private final Parser<T> parser;
-    private final FileInputStream fileInputStream;
+    private final InputStream fileInputStream;
 
-    public ParserCloseableIterator(Parser<T> parser, FileInputStream fileInputStream) {
+    public ParserCloseableIterator(Parser<T> parser, InputStream fileInputStream) {
       this.parser = parser;
       this.fileInputStream = fileInputStream;
     }
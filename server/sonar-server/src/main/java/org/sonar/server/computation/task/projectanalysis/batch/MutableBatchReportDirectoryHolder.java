@@ -20,6 +20,7 @@
 package org.sonar.server.computation.task.projectanalysis.batch;
 
 import java.io.File;
+import org.sonar.scanner.protocol.output.ReportArchive;
 
 public interface MutableBatchReportDirectoryHolder extends BatchReportDirectoryHolder {
   /**
@@ -31,4 +32,12 @@ public interface MutableBatchReportDirectoryHolder extends BatchReportDirectoryH
    * @throws NullPointerException if {@code newDirectory} is {@code null}
    */
   void setDirectory(File newDirectory);
+
+  /**
+   * Sets the zip file of the report, which is read without being extracted. The directory becomes the
+   * one containing the zip file. The archive is closed when the holder is stopped.
+   *
+   * @throws NullPointerException if {@code archive} is {@code null}
+   */
+  void setArchive(ReportArchive archive);
 }
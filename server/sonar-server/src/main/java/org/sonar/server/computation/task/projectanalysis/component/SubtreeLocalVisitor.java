@@ -0,0 +1,31 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.component;
+
+/**
+ * A {@link TypeAwareVisitor} which is thread-safe and whose visit of a component only depends on the component and
+ * its subtree. {@link VisitorsCrawler} visits sibling subtrees concurrently when all its visitors are subtree-local.
+ * <p/>
+ * Pre-order visit of a component happens before the visit of its children, post-order visit happens once all
+ * children are visited, so that results of children can be merged in post-order. The log context (MDC) of the thread
+ * starting the crawl is set in the threads of the pool.
+ */
+public interface SubtreeLocalVisitor extends TypeAwareVisitor {
+}
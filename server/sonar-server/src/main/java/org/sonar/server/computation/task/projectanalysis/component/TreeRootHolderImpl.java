@@ -32,8 +32,12 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
  * Holds the reference to the root of the {@link Component} tree for the current CE run.
  */
 public class TreeRootHolderImpl implements MutableTreeRootHolder {
+  /**
+   * Volatile as it is lazily populated by the first call of {@link #getComponentByRef(int)}, which may be done by steps
+   * executed concurrently. The populated map is immutable.
+   */
   @CheckForNull
-  private Map<Integer, Component> componentsByRef;
+  private volatile Map<Integer, Component> componentsByRef;
 
   private Component root;
 
@@ -23,11 +23,18 @@ import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import org.slf4j.MDC;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.logs.Profiler;
 
@@ -37,6 +44,9 @@ import static java.util.Objects.requireNonNull;
 
 /**
  * This crawler make any number of {@link TypeAwareVisitor} or {@link PathAwareVisitor} defined in a list visit a component tree, component per component, in the order of the list
+ * <p/>
+ * When a {@link ForkJoinPool} is provided and all the visitors are {@link SubtreeLocalVisitor}, the children of a
+ * component are visited concurrently in the pool.
  */
 public class VisitorsCrawler implements ComponentCrawler {
 
@@ -44,17 +54,35 @@ public class VisitorsCrawler implements ComponentCrawler {
   private final Map<ComponentVisitor, VisitorDuration> visitorCumulativeDurations;
   private final List<VisitorWrapper> preOrderVisitorWrappers;
   private final List<VisitorWrapper> postOrderVisitorWrappers;
+  @CheckForNull
+  private final ForkJoinPool forkJoinPool;
 
   public VisitorsCrawler(Iterable<ComponentVisitor> visitors) {
     this(visitors, false);
   }
 
   public VisitorsCrawler(Iterable<ComponentVisitor> visitors, boolean computeDuration) {
+    this(visitors, computeDuration, null);
+  }
+
+  /**
+   * @param forkJoinPool pool in which sibling subtrees are visited concurrently, ignored unless
+   *                     {@link #isConcurrent(Iterable)} is {@code true}
+   */
+  public VisitorsCrawler(Iterable<ComponentVisitor> visitors, boolean computeDuration, @Nullable ForkJoinPool forkJoinPool) {
     List<VisitorWrapper> visitorWrappers = from(visitors).transform(ToVisitorWrapper.INSTANCE).toList();
     this.preOrderVisitorWrappers = from(visitorWrappers).filter(MathPreOrderVisitor.INSTANCE).toList();
     this.postOrderVisitorWrappers = from(visitorWrappers).filter(MatchPostOrderVisitor.INSTANCE).toList();
     this.computeDuration = computeDuration;
     this.visitorCumulativeDurations = computeDuration ? from(visitors).toMap(VisitorWrapperToInitialDuration.INSTANCE) : Collections.emptyMap();
+    this.forkJoinPool = isConcurrent(visitors) ? forkJoinPool : null;
+  }
+
+  /**
+   * Whether sibling subtrees can be visited concurrently by the specified visitors
+   */
+  public static boolean isConcurrent(Iterable<ComponentVisitor> visitors) {
+    return !from(visitors).isEmpty() && from(visitors).allMatch(visitor -> visitor instanceof SubtreeLocalVisitor);
   }
 
   public Map<ComponentVisitor, Long> getCumulativeDurations() {
@@ -68,6 +96,12 @@ public class VisitorsCrawler implements ComponentCrawler {
 
   @Override
   public void visit(final Component component) {
+    if (forkJoinPool != null && !ForkJoinTask.inForkJoinPool()) {
+      VisitAction action = new VisitAction(component);
+      forkJoinPool.invoke(action);
+      action.rethrowFailure();
+      return;
+    }
     try {
       visitImpl(component);
     } catch (RuntimeException e) {
@@ -106,11 +140,67 @@ public class VisitorsCrawler implements ComponentCrawler {
   }
 
   private void visitChildren(Component component) {
-    for (Component child : component.getChildren()) {
+    List<Component> children = component.getChildren();
+    if (forkJoinPool != null && children.size() > 1) {
+      List<VisitAction> actions = new ArrayList<>(children.size());
+      for (Component child : children) {
+        actions.add(new VisitAction(child));
+      }
+      ForkJoinTask.invokeAll(actions);
+      for (VisitAction action : actions) {
+        action.rethrowFailure();
+      }
+      return;
+    }
+    for (Component child : children) {
       visit(child);
     }
   }
 
+  /**
+   * Visit of a subtree in the {@link ForkJoinPool}. Failure is kept to be rethrown as is by the parent, instead of
+   * letting {@link ForkJoinTask} rethrow a copy of it.
+   */
+  private class VisitAction extends RecursiveAction {
+    private final Component component;
+    // log context of the thread which created the action, for example the one of the Compute Engine worker
+    @CheckForNull
+    private final Map<String, String> logContext;
+    private RuntimeException failure;
+
+    private VisitAction(Component component) {
+      this.component = component;
+      this.logContext = MDC.getCopyOfContextMap();
+    }
+
+    @Override
+    protected void compute() {
+      Map<String, String> previousLogContext = MDC.getCopyOfContextMap();
+      setLogContext(logContext);
+      try {
+        visit(component);
+      } catch (RuntimeException e) {
+        this.failure = e;
+      } finally {
+        setLogContext(previousLogContext);
+      }
+    }
+
+    private void rethrowFailure() {
+      if (failure != null) {
+        throw failure;
+      }
+    }
+  }
+
+  private static void setLogContext(@Nullable Map<String, String> logContext) {
+    if (logContext == null) {
+      MDC.clear();
+    } else {
+      MDC.setContextMap(logContext);
+    }
+  }
+
   private void visitNode(Component component, VisitorWrapper visitor) {
     Profiler profiler = Profiler.create(Loggers.get(visitor.getWrappedVisitor().getClass()))
       .startTrace("Visiting component {}", component.getKey());
@@ -211,14 +301,15 @@ public class VisitorsCrawler implements ComponentCrawler {
   }
 
   private static final class VisitorDuration {
-    private long duration = 0;
+    // incremented concurrently when subtrees are visited in parallel
+    private final AtomicLong duration = new AtomicLong();
 
     public void increment(long duration) {
-      this.duration += duration;
+      this.duration.addAndGet(duration);
     }
 
     public long getDuration() {
-      return duration;
+      return duration.get();
     }
   }
 
@@ -197,32 +197,31 @@ public class FileMoveDetectionStep implements ComputationStep {
   }
 
   private ScoreMatrix computeScoreMatrix(Map<String, DbComponent> dtosByKey, Set<String> dbFileKeys, Map<String, File> reportFileSourcesByKey) {
-    int[][] scoreMatrix = new int[dbFileKeys.size()][reportFileSourcesByKey.size()];
+    List<String> reportFileKeys = new ArrayList<>(reportFileSourcesByKey.keySet());
+    List<File> reportFiles = new ArrayList<>(reportFileSourcesByKey.values());
+    // only the pairs of files which can reach MIN_REQUIRED_SCORE are scored
+    MoveCandidatesIndex candidatesIndex = new MoveCandidatesIndex(reportFiles, MIN_REQUIRED_SCORE);
+    List<ScoreMatrix.Score> scores = new ArrayList<>();
     int maxScore = 0;
 
     try (DbSession dbSession = dbClient.openSession(false)) {
-      int dbFileIndex = 0;
       for (String removedFileKey : dbFileKeys) {
         File fileInDb = getFile(dbSession, dtosByKey.get(removedFileKey));
         if (fileInDb == null) {
           continue;
         }
 
-        int reportFileIndex = 0;
-        for (Map.Entry<String, File> reportFileSourceAndKey : reportFileSourcesByKey.entrySet()) {
-          File unmatchedFile = reportFileSourceAndKey.getValue();
-          int score = fileSimilarity.score(fileInDb, unmatchedFile);
-          scoreMatrix[dbFileIndex][reportFileIndex] = score;
-          if (score > maxScore) {
-            maxScore = score;
+        for (int reportFileIndex : candidatesIndex.candidatesOf(fileInDb)) {
+          int score = fileSimilarity.score(fileInDb, reportFiles.get(reportFileIndex), MIN_REQUIRED_SCORE);
+          if (score >= MIN_REQUIRED_SCORE) {
+            scores.add(new ScoreMatrix.Score(removedFileKey, reportFileKeys.get(reportFileIndex), score));
+            maxScore = Math.max(maxScore, score);
           }
-          reportFileIndex++;
         }
-        dbFileIndex++;
       }
     }
 
-    return new ScoreMatrix(dbFileKeys, reportFileSourcesByKey, scoreMatrix, maxScore);
+    return new ScoreMatrix(scores, maxScore);
   }
 
   @CheckForNull
@@ -0,0 +1,145 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filemove;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.sonar.server.computation.task.projectanalysis.filemove.FileSimilarity.File;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Collections.emptyList;
+
+/**
+ * Index of files used to select, for a given file, the files which may reach a minimum score with
+ * {@link SourceSimilarityImpl}, so that the score is not computed for every pair of files.
+ * <p>
+ * A score of at least {@code minScore} requires a Levenshtein distance {@code d} lower or equal to
+ * {@link SourceSimilarityImpl#maxDistance(int, int)}, so the two files share at least {@code max(n, m) - d} lines.
+ * When the lines of every file are sorted in the same order, two files sharing so many lines share at least one of
+ * their {@code d + 1} first lines (prefix filtering). Rarest lines are sorted first, so that the first lines of a
+ * file are shared by few files. Unlike sketches such as MinHash, no pair of files reaching the minimum score is missed.
+ */
+final class MoveCandidatesIndex {
+
+  private final int minScore;
+  private final List<File> files;
+  private final Map<String, Integer> frequencies = new HashMap<>();
+  private final Map<Line, List<Integer>> filesByFirstLine = new HashMap<>();
+  private final Comparator<Line> rarestFirst;
+  private final int[] lastCandidateOf;
+  private int query = 0;
+
+  MoveCandidatesIndex(List<File> files, int minScore) {
+    this.minScore = minScore;
+    this.files = files;
+    this.lastCandidateOf = new int[files.size()];
+    for (File file : files) {
+      for (String lineHash : file.getLineHashes()) {
+        frequencies.merge(lineHash, 1, Integer::sum);
+      }
+    }
+    this.rarestFirst = Comparator.<Line>comparingInt(line -> frequencies.getOrDefault(line.hash, 0))
+      .thenComparing(line -> line.hash)
+      .thenComparingInt(line -> line.occurrence);
+    for (int i = 0; i < files.size(); i++) {
+      for (Line line : firstLines(files.get(i))) {
+        filesByFirstLine.computeIfAbsent(line, l -> new ArrayList<>(1)).add(i);
+      }
+    }
+  }
+
+  /**
+   * Indexes, in ascending order, of the files which may reach the minimum score with the given file.
+   */
+  List<Integer> candidatesOf(File file) {
+    int size = file.getLineHashes().size();
+    if (size == 0) {
+      // score of an empty file is always 0
+      return emptyList();
+    }
+    query++;
+    List<Integer> candidates = new ArrayList<>();
+    for (Line line : firstLines(file)) {
+      for (int candidate : filesByFirstLine.getOrDefault(line, emptyList())) {
+        if (lastCandidateOf[candidate] != query) {
+          lastCandidateOf[candidate] = query;
+          if (hasCompatibleSize(size, files.get(candidate).getLineHashes().size())) {
+            candidates.add(candidate);
+          }
+        }
+      }
+    }
+    candidates.sort(Comparator.naturalOrder());
+    return candidates;
+  }
+
+  private boolean hasCompatibleSize(int size1, int size2) {
+    return abs(size1 - size2) <= SourceSimilarityImpl.maxDistance(max(size1, size2), minScore);
+  }
+
+  private List<Line> firstLines(File file) {
+    List<String> lineHashes = file.getLineHashes();
+    int maxDistance = SourceSimilarityImpl.maxDistance(lineHashes.size(), minScore);
+    if (lineHashes.isEmpty() || maxDistance < 0) {
+      return emptyList();
+    }
+    // duplicated lines are distinguished by their occurrence, so that files share as many lines as their common lines
+    Map<String, Integer> occurrences = new HashMap<>();
+    List<Line> lines = new ArrayList<>(lineHashes.size());
+    for (String lineHash : lineHashes) {
+      lines.add(new Line(lineHash, occurrences.merge(lineHash, 1, Integer::sum)));
+    }
+    lines.sort(rarestFirst);
+    return lines.subList(0, min(lines.size(), maxDistance + 1));
+  }
+
+  private static final class Line {
+    private final String hash;
+    private final int occurrence;
+
+    private Line(String hash, int occurrence) {
+      this.hash = hash;
+      this.occurrence = occurrence;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Line line = (Line) o;
+      return occurrence == line.occurrence && hash.equals(line.hash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(hash, occurrence);
+    }
+  }
+}
@@ -19,56 +19,34 @@
  */
 package org.sonar.server.computation.task.projectanalysis.filemove;
 
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.List;
 
+/**
+ * Scores of the pairs of removed and added files which may be a file move. Pairs of files which can not reach
+ * {@link FileMoveDetectionStep#MIN_REQUIRED_SCORE} are not stored.
+ */
 final class ScoreMatrix {
-  private final Set<String> dbFileKeys;
-  private final Map<String, FileSimilarity.File> reportFileSourcesByKey;
-  private final int[][] scores;
+  private final List<Score> scores;
   private final int maxScore;
 
-  public ScoreMatrix(Set<String> dbFileKeys, Map<String, FileSimilarity.File> reportFileSourcesByKey, int[][] scores, int maxScore) {
-    this.dbFileKeys = dbFileKeys;
-    this.reportFileSourcesByKey = reportFileSourcesByKey;
+  public ScoreMatrix(List<Score> scores, int maxScore) {
     this.scores = scores;
     this.maxScore = maxScore;
   }
 
   public void accept(ScoreMatrixVisitor visitor) {
-    int dbFileIndex = 0;
-    for (String dbFileKey : dbFileKeys) {
-      int reportFileIndex = 0;
-      for (Map.Entry<String, FileSimilarity.File> reportFileSourceAndKey : reportFileSourcesByKey.entrySet()) {
-        int score = scores[dbFileIndex][reportFileIndex];
-        visitor.visit(dbFileKey, reportFileSourceAndKey.getKey(), score);
-        reportFileIndex++;
-      }
-      dbFileIndex++;
+    for (Score score : scores) {
+      visitor.visit(score.dbFileKey, score.reportFileKey, score.score);
     }
   }
 
   public String toCsv(char separator) {
     StringBuilder res = new StringBuilder();
-    // first row: empty column, then one column for each report file (its key)
-    res.append(separator);
-    for (Map.Entry<String, FileSimilarity.File> reportEntry : reportFileSourcesByKey.entrySet()) {
-      res.append(reportEntry.getKey()).append(separator);
-    }
-    // rows with data: column with db file (its key), then one column for each value
-    accept(new ScoreMatrixVisitor() {
-      private String previousDbFileKey = null;
-
-      @Override
-      public void visit(String dbFileKey, String reportFileKey, int score) {
-        if (!Objects.equals(previousDbFileKey, dbFileKey)) {
-          res.append('\n').append(dbFileKey).append(separator);
-          previousDbFileKey = dbFileKey;
-        }
-        res.append(score).append(separator);
-      }
-    });
+    // one row for each pair of files: db file (its key), report file (its key), then score
+    accept((dbFileKey, reportFileKey, score) -> res.append('\n')
+      .append(dbFileKey).append(separator)
+      .append(reportFileKey).append(separator)
+      .append(score));
     return res.toString();
   }
 
@@ -80,4 +58,16 @@ final class ScoreMatrix {
   public int getMaxScore() {
     return maxScore;
   }
+
+  public static final class Score {
+    private final String dbFileKey;
+    private final String reportFileKey;
+    private final int score;
+
+    public Score(String dbFileKey, String reportFileKey, int score) {
+      this.dbFileKey = dbFileKey;
+      this.reportFileKey = reportFileKey;
+      this.score = score;
+    }
+  }
 }
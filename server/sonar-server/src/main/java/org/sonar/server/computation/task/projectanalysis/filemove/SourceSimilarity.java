@@ -28,4 +28,10 @@ public interface SourceSimilarity {
    * Range: between 0 and 100
    */
   <T extends Object> int score(List<T> left, List<T> right);
+
+  /**
+   * Same as {@link #score(List, List)} when the score is at least {@code minScore}, otherwise 0. Faster than
+   * {@link #score(List, List)} as the lists are compared only as long as {@code minScore} can be reached.
+   */
+  <T extends Object> int score(List<T> left, List<T> right, int minScore);
 }
@@ -21,6 +21,7 @@ package org.sonar.server.computation.task.projectanalysis.filemove;
 
 import java.util.List;
 
+import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
@@ -32,7 +33,43 @@ public class SourceSimilarityImpl implements SourceSimilarity {
       return 0;
     }
     int distance = levenshteinDistance(left, right);
-    return (int) (100 * (1.0 - ((double) distance) / (max(left.size(), right.size()))));
+    return score(distance, max(left.size(), right.size()));
+  }
+
+  @Override
+  public <T> int score(List<T> left, List<T> right, int minScore) {
+    if (left.isEmpty() && right.isEmpty()) {
+      return 0;
+    }
+    int maxSize = max(left.size(), right.size());
+    int maxDistance = maxDistance(maxSize, minScore);
+    if (maxDistance < 0 || abs(left.size() - right.size()) > maxDistance) {
+      return 0;
+    }
+    int distance = levenshteinDistance(left, right, maxDistance);
+    if (distance > maxDistance) {
+      return 0;
+    }
+    return score(distance, maxSize);
+  }
+
+  private static int score(int distance, int maxSize) {
+    return (int) (100 * (1.0 - ((double) distance) / maxSize));
+  }
+
+  /**
+   * The greatest Levenshtein distance between two lists, the biggest one having {@code maxSize} elements, which
+   * gives a score of at least {@code minScore}. Returns -1 if {@code minScore} can not be reached.
+   */
+  static int maxDistance(int maxSize, int minScore) {
+    int distance = maxSize * (100 - min(100, max(0, minScore))) / 100;
+    while (distance >= 0 && score(distance, maxSize) < minScore) {
+      distance--;
+    }
+    while (distance < maxSize && score(distance + 1, maxSize) >= minScore) {
+      distance++;
+    }
+    return distance;
   }
 
   private static <T> int levenshteinDistance(List<T> left, List<T> right) {
@@ -78,4 +115,50 @@ public class SourceSimilarityImpl implements SourceSimilarity {
     // the distance is the cost for transforming all letters in both strings
     return cost[len0 - 1];
   }
+
+  /**
+   * Same as {@link #levenshteinDistance(List, List)} but only the cells of the matrix which are at most
+   * {@code maxDistance} away from the diagonal are computed. Returns {@code maxDistance + 1} as soon as the
+   * distance is known to be greater than {@code maxDistance}.
+   */
+  private static <T> int levenshteinDistance(List<T> left, List<T> right, int maxDistance) {
+    int len0 = left.size() + 1;
+    int len1 = right.size() + 1;
+    int tooFar = maxDistance + 1;
+
+    int[] cost = new int[len0];
+    int[] newcost = new int[len0];
+    for (int i = 0; i < len0; i++) {
+      cost[i] = min(i, tooFar);
+    }
+
+    for (int j = 1; j < len1; j++) {
+      int from = max(1, j - maxDistance);
+      int to = min(len0 - 1, j + maxDistance);
+      newcost[0] = min(j, tooFar);
+      newcost[from - 1] = from == 1 ? newcost[0] : tooFar;
+      int rowMin = newcost[from - 1];
+
+      for (int i = from; i <= to; i++) {
+        int match = left.get(i - 1).equals(right.get(j - 1)) ? 0 : 1;
+        int costReplace = cost[i - 1] + match;
+        int costInsert = cost[i] + 1;
+        int costDelete = newcost[i - 1] + 1;
+        newcost[i] = min(min(min(costInsert, costDelete), costReplace), tooFar);
+        rowMin = min(rowMin, newcost[i]);
+      }
+      // cell right after the band is read when computing next row
+      if (to + 1 < len0) {
+        newcost[to + 1] = tooFar;
+      }
+      if (rowMin > maxDistance) {
+        return tooFar;
+      }
+
+      int[] swap = cost;
+      cost = newcost;
+      newcost = swap;
+    }
+    return cost[len0 - 1];
+  }
 }
@@ -19,30 +19,214 @@
  */
 package org.sonar.server.computation.task.projectanalysis.issue;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.FileUtils;
+import org.picocontainer.Startable;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.TempFolder;
+import org.sonar.core.issue.DefaultIssue;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 
+import static java.util.Collections.emptyList;
+import static java.util.Collections.unmodifiableSet;
+
 /**
  * Loads all the project open issues from database, including manual issues.
+ * <p>
+ * By default the issues of each component are loaded with one query when the component is visited. When
+ * {@link #BULK_LOAD_PROPERTY} is enabled, the open issues of the whole branch are read once with a single
+ * cursor ordered by component uuid and spooled to a temporary file, indexed by component. The issues of a
+ * component are then read back from this file, so that memory only holds the index.
  */
-public class BaseIssuesLoader {
+public class BaseIssuesLoader implements Startable {
+
+  public static final String BULK_LOAD_PROPERTY = "sonar.ce.issues.bulkLoad";
 
   private final TreeRootHolder treeRootHolder;
   private final DbClient dbClient;
+  private final ComponentIssuesLoader componentIssuesLoader;
+  private final TempFolder tempFolder;
+  private final boolean bulkLoad;
+  @CheckForNull
+  private Spool spool;
 
-  public BaseIssuesLoader(TreeRootHolder treeRootHolder, DbClient dbClient) {
+  public BaseIssuesLoader(TreeRootHolder treeRootHolder, DbClient dbClient, ComponentIssuesLoader componentIssuesLoader, TempFolder tempFolder, Configuration config) {
     this.treeRootHolder = treeRootHolder;
     this.dbClient = dbClient;
+    this.componentIssuesLoader = componentIssuesLoader;
+    this.tempFolder = tempFolder;
+    this.bulkLoad = config.getBoolean(BULK_LOAD_PROPERTY).orElse(false);
+  }
+
+  @Override
+  public void start() {
+    // nothing to do, issues are loaded when first requested
+  }
+
+  @Override
+  public synchronized void stop() {
+    if (spool != null) {
+      spool.close();
+      spool = null;
+    }
   }
 
   /**
    * Uuids of all the components that have open issues on this project.
    */
   public Set<String> loadUuidsOfComponentsWithOpenIssues() {
+    if (bulkLoad) {
+      return spool().getComponentUuids();
+    }
     try (DbSession dbSession = dbClient.openSession(false)) {
       return dbClient.issueDao().selectComponentUuidsOfOpenIssuesForProjectUuid(dbSession, treeRootHolder.getRoot().getUuid());
     }
   }
+
+  /**
+   * Open issues of a component of this project, or of a file it has been moved from.
+   */
+  public List<DefaultIssue> loadForComponentUuid(String componentUuid) {
+    if (bulkLoad) {
+      return spool().read(componentUuid);
+    }
+    return componentIssuesLoader.loadForComponentUuid(componentUuid);
+  }
+
+  private synchronized Spool spool() {
+    if (spool == null) {
+      spool = Spool.write(tempFolder.newFile("base-issues", ".dat"), componentIssuesLoader, treeRootHolder.getRoot().getUuid());
+    }
+    return spool;
+  }
+
+  private static class Segment {
+    private final long offset;
+    private final int length;
+    private final int issueCount;
+
+    private Segment(long offset, int length, int issueCount) {
+      this.offset = offset;
+      this.length = length;
+      this.issueCount = issueCount;
+    }
+  }
+
+  /**
+   * Issues of a component are consecutive in the cursor and stored as a single segment. A component can
+   * still get several segments when the database collation does not order uuids like Java does.
+   */
+  private static class Spool {
+    private final File file;
+    private final RandomAccessFile input;
+    private final Map<String, List<Segment>> segmentsByComponentUuid;
+    private final DefaultIssueCodec codec = new DefaultIssueCodec();
+
+    private Spool(File file, Map<String, List<Segment>> segmentsByComponentUuid) throws IOException {
+      this.file = file;
+      this.input = new RandomAccessFile(file, "r");
+      this.segmentsByComponentUuid = segmentsByComponentUuid;
+    }
+
+    static Spool write(File file, ComponentIssuesLoader loader, String projectUuid) {
+      try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+        SpoolWriter writer = new SpoolWriter(output);
+        loader.loadForProjectUuid(projectUuid, writer::append);
+        writer.flushSegment();
+        return new Spool(file, writer.segmentsByComponentUuid);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to write base issues into file: " + file, e);
+      }
+    }
+
+    Set<String> getComponentUuids() {
+      return unmodifiableSet(segmentsByComponentUuid.keySet());
+    }
+
+    synchronized List<DefaultIssue> read(String componentUuid) {
+      List<Segment> segments = segmentsByComponentUuid.get(componentUuid);
+      if (segments == null) {
+        return emptyList();
+      }
+      try {
+        List<DefaultIssue> issues = new ArrayList<>();
+        for (Segment segment : segments) {
+          byte[] bytes = new byte[segment.length];
+          input.seek(segment.offset);
+          input.readFully(bytes);
+          CodedInputStream issuesInput = CodedInputStream.newInstance(bytes);
+          issuesInput.setSizeLimit(Integer.MAX_VALUE);
+          for (int i = 0; i < segment.issueCount; i++) {
+            issues.add(codec.decode(issuesInput));
+          }
+        }
+        return issues;
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to read base issues from file: " + file, e);
+      }
+    }
+
+    void close() {
+      try {
+        input.close();
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to close file: " + file, e);
+      } finally {
+        FileUtils.deleteQuietly(file);
+      }
+    }
+  }
+
+  private static class SpoolWriter {
+    private final RandomAccessFile output;
+    private final Map<String, List<Segment>> segmentsByComponentUuid = new HashMap<>();
+    private final DefaultIssueCodec codec = new DefaultIssueCodec();
+    private final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+    private final CodedOutputStream segmentOutput = CodedOutputStream.newInstance(segment);
+    @CheckForNull
+    private String componentUuid;
+    private int issueCount = 0;
+
+    private SpoolWriter(RandomAccessFile output) {
+      this.output = output;
+    }
+
+    void append(DefaultIssue issue) {
+      try {
+        if (!issue.componentUuid().equals(componentUuid)) {
+          flushSegment();
+          componentUuid = issue.componentUuid();
+        }
+        codec.encode(issue, segmentOutput);
+        issueCount++;
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to write base issue " + issue.key(), e);
+      }
+    }
+
+    void flushSegment() throws IOException {
+      segmentOutput.flush();
+      if (componentUuid != null && issueCount > 0) {
+        long offset = output.getFilePointer();
+        output.write(segment.toByteArray());
+        segmentsByComponentUuid.computeIfAbsent(componentUuid, uuid -> new ArrayList<>(1))
+          .add(new Segment(offset, segment.size(), issueCount));
+      }
+      segment.reset();
+      issueCount = 0;
+    }
+  }
 }
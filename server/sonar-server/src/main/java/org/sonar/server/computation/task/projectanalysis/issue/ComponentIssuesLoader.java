@@ -21,12 +21,13 @@ package org.sonar.server.computation.task.projectanalysis.issue;
 
 import java.util.ArrayList;
 import java.util.List;
-
+import java.util.function.Consumer;
 import org.sonar.api.rule.RuleKey;
 import org.sonar.api.rule.RuleStatus;
 import org.sonar.core.issue.DefaultIssue;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
+import org.sonar.db.issue.IssueDto;
 import org.sonar.db.issue.IssueMapper;
 import org.sonar.server.computation.task.projectanalysis.qualityprofile.ActiveRulesHolder;
 
@@ -44,23 +45,34 @@ public class ComponentIssuesLoader {
   public List<DefaultIssue> loadForComponentUuid(String componentUuid) {
     try (DbSession dbSession = dbClient.openSession(false)) {
       List<DefaultIssue> result = new ArrayList<>();
-      dbSession.getMapper(IssueMapper.class).scrollNonClosedByComponentUuid(componentUuid, resultContext -> {
-        DefaultIssue issue = (resultContext.getResultObject()).toDefaultIssue();
-
-        // TODO this field should be set outside this class
-        if (!isActive(issue.ruleKey()) || ruleRepository.getByKey(issue.ruleKey()).getStatus() == RuleStatus.REMOVED) {
-          issue.setOnDisabledRule(true);
-          // TODO to be improved, why setOnDisabledRule(true) is not enough ?
-          issue.setBeingClosed(true);
-        }
-        // FIXME
-        issue.setSelectedAt(System.currentTimeMillis());
-        result.add(issue);
-      });
+      dbSession.getMapper(IssueMapper.class).scrollNonClosedByComponentUuid(componentUuid, resultContext -> result.add(toDefaultIssue(resultContext.getResultObject())));
       return result;
     }
   }
 
+  /**
+   * Streams the open issues of all the components of the project with a single cursor, ordered by component uuid.
+   */
+  public void loadForProjectUuid(String projectUuid, Consumer<DefaultIssue> consumer) {
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      dbSession.getMapper(IssueMapper.class).scrollNonClosedByProjectUuid(projectUuid, resultContext -> consumer.accept(toDefaultIssue(resultContext.getResultObject())));
+    }
+  }
+
+  private DefaultIssue toDefaultIssue(IssueDto dto) {
+    DefaultIssue issue = dto.toDefaultIssue();
+
+    // TODO this field should be set outside this class
+    if (!isActive(issue.ruleKey()) || ruleRepository.getByKey(issue.ruleKey()).getStatus() == RuleStatus.REMOVED) {
+      issue.setOnDisabledRule(true);
+      // TODO to be improved, why setOnDisabledRule(true) is not enough ?
+      issue.setBeingClosed(true);
+    }
+    // FIXME
+    issue.setSelectedAt(System.currentTimeMillis());
+    return issue;
+  }
+
   private boolean isActive(RuleKey ruleKey) {
     return activeRulesHolder.get(ruleKey).isPresent();
   }
@@ -0,0 +1,425 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.issue;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.lang.SerializationUtils;
+import org.sonar.api.issue.IssueComment;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.db.protobuf.DbIssues;
+import org.sonar.server.util.cache.DiskCacheCodec;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encodes {@link DefaultIssue} with varints and length-prefixed strings. Nullable values are prefixed
+ * by a presence flag, collections by their size. An empty collection is decoded as an absent one.
+ * Values which have no dedicated encoding (unexpected types of {@link FieldDiffs.Diff} values or of
+ * locations) fall back to Java serialization.
+ */
+public class DefaultIssueCodec implements DiskCacheCodec<DefaultIssue> {
+
+  private static final int NULL_VALUE = 0;
+  private static final int STRING_VALUE = 1;
+  private static final int LONG_VALUE = 2;
+  private static final int INTEGER_VALUE = 3;
+  private static final int DOUBLE_VALUE = 4;
+  private static final int DATE_VALUE = 5;
+  private static final int SERIALIZED_VALUE = 6;
+
+  private static final int NO_LOCATIONS = 0;
+  private static final int DB_LOCATIONS = 1;
+  private static final int SERIALIZED_LOCATIONS = 2;
+
+  @Override
+  public void encode(DefaultIssue issue, CodedOutputStream output) throws IOException {
+    writeString(output, issue.key());
+    RuleType type = issue.type();
+    output.writeUInt32NoTag(type == null ? 0 : type.getDbConstant());
+    writeString(output, issue.componentUuid());
+    writeString(output, issue.componentKey());
+    writeString(output, issue.moduleUuid());
+    writeString(output, issue.moduleUuidPath());
+    writeString(output, issue.projectUuid());
+    writeString(output, issue.projectKey());
+    RuleKey ruleKey = issue.ruleKey();
+    writeString(output, ruleKey == null ? null : ruleKey.toString());
+    writeString(output, issue.language());
+    writeString(output, issue.severity());
+    output.writeBoolNoTag(issue.manualSeverity());
+    writeString(output, issue.message());
+    Integer line = issue.line();
+    output.writeUInt32NoTag(line == null ? 0 : line);
+    writeDouble(output, issue.gap());
+    writeLong(output, issue.effortInMinutes());
+    writeString(output, issue.status());
+    writeString(output, issue.resolution());
+    writeString(output, issue.assignee());
+    writeString(output, issue.checksum());
+    writeAttributes(output, issue.attributes());
+    writeString(output, issue.authorLogin());
+    writeComments(output, issue.comments());
+    writeTags(output, issue.tags());
+    writeLocations(output, issue.getLocations());
+    writeDate(output, issue.creationDate());
+    writeDate(output, issue.updateDate());
+    writeDate(output, issue.closeDate());
+    writeChanges(output, issue.changes(), issue.currentChange());
+    output.writeBoolNoTag(issue.isNew());
+    output.writeBoolNoTag(issue.isCopied());
+    output.writeBoolNoTag(issue.isBeingClosed());
+    output.writeBoolNoTag(issue.isOnDisabledRule());
+    output.writeBoolNoTag(issue.isChanged());
+    output.writeBoolNoTag(issue.mustSendNotifications());
+    writeLong(output, issue.selectedAt());
+  }
+
+  @Override
+  public DefaultIssue decode(CodedInputStream input) throws IOException {
+    DefaultIssue issue = new DefaultIssue();
+    issue.setKey(readString(input));
+    int type = input.readUInt32();
+    issue.setType(type == 0 ? null : RuleType.valueOf(type));
+    issue.setComponentUuid(readString(input));
+    issue.setComponentKey(readString(input));
+    issue.setModuleUuid(readString(input));
+    issue.setModuleUuidPath(readString(input));
+    issue.setProjectUuid(readString(input));
+    issue.setProjectKey(readString(input));
+    String ruleKey = readString(input);
+    issue.setRuleKey(ruleKey == null ? null : RuleKey.parse(ruleKey));
+    issue.setLanguage(readString(input));
+    issue.setSeverity(readString(input));
+    issue.setManualSeverity(input.readBool());
+    issue.setMessage(readString(input));
+    int line = input.readUInt32();
+    issue.setLine(line == 0 ? null : line);
+    issue.setGap(readDouble(input));
+    Long effort = readLong(input);
+    issue.setEffort(effort == null ? null : Duration.create(effort));
+    issue.setStatus(readString(input));
+    issue.setResolution(readString(input));
+    issue.setAssignee(readString(input));
+    issue.setChecksum(readString(input));
+    issue.setAttributes(readAttributes(input));
+    issue.setAuthorLogin(readString(input));
+    readComments(input, issue);
+    readTags(input, issue);
+    issue.setLocations(readLocations(input));
+    issue.setCreationDate(readDate(input));
+    issue.setUpdateDate(readDate(input));
+    issue.setCloseDate(readDate(input));
+    readChanges(input, issue);
+    issue.setNew(input.readBool());
+    issue.setCopied(input.readBool());
+    issue.setBeingClosed(input.readBool());
+    issue.setOnDisabledRule(input.readBool());
+    issue.setChanged(input.readBool());
+    issue.setSendNotifications(input.readBool());
+    issue.setSelectedAt(readLong(input));
+    return issue;
+  }
+
+  private static void writeAttributes(CodedOutputStream output, Map<String, String> attributes) throws IOException {
+    output.writeUInt32NoTag(attributes.size());
+    for (Map.Entry<String, String> entry : attributes.entrySet()) {
+      writeString(output, entry.getKey());
+      writeString(output, entry.getValue());
+    }
+  }
+
+  @CheckForNull
+  private static Map<String, String> readAttributes(CodedInputStream input) throws IOException {
+    int size = input.readUInt32();
+    if (size == 0) {
+      return null;
+    }
+    Map<String, String> attributes = new HashMap<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      attributes.put(readString(input), readString(input));
+    }
+    return attributes;
+  }
+
+  private static void writeComments(CodedOutputStream output, List<IssueComment> comments) throws IOException {
+    output.writeUInt32NoTag(comments.size());
+    for (IssueComment comment : comments) {
+      writeString(output, comment.key());
+      writeString(output, comment.issueKey());
+      writeString(output, comment.userLogin());
+      writeString(output, comment.markdownText());
+      writeDate(output, comment.createdAt());
+      writeDate(output, comment.updatedAt());
+      output.writeBoolNoTag(comment instanceof DefaultIssueComment && ((DefaultIssueComment) comment).isNew());
+    }
+  }
+
+  private static void readComments(CodedInputStream input, DefaultIssue issue) throws IOException {
+    int size = input.readUInt32();
+    for (int i = 0; i < size; i++) {
+      issue.addComment(new DefaultIssueComment()
+        .setKey(readString(input))
+        .setIssueKey(readString(input))
+        .setUserLogin(readString(input))
+        .setMarkdownText(readString(input))
+        .setCreatedAt(readDate(input))
+        .setUpdatedAt(readDate(input))
+        .setNew(input.readBool()));
+    }
+  }
+
+  private static void writeTags(CodedOutputStream output, Set<String> tags) throws IOException {
+    output.writeUInt32NoTag(tags.size());
+    for (String tag : tags) {
+      writeString(output, tag);
+    }
+  }
+
+  private static void readTags(CodedInputStream input, DefaultIssue issue) throws IOException {
+    int size = input.readUInt32();
+    if (size == 0) {
+      return;
+    }
+    Set<String> tags = new LinkedHashSet<>(size * 2);
+    for (int i = 0; i < size; i++) {
+      tags.add(readString(input));
+    }
+    issue.setTags(tags);
+  }
+
+  private static void writeLocations(CodedOutputStream output, @Nullable Object locations) throws IOException {
+    if (locations == null) {
+      output.writeUInt32NoTag(NO_LOCATIONS);
+    } else if (locations instanceof DbIssues.Locations) {
+      output.writeUInt32NoTag(DB_LOCATIONS);
+      output.writeByteArrayNoTag(((DbIssues.Locations) locations).toByteArray());
+    } else {
+      output.writeUInt32NoTag(SERIALIZED_LOCATIONS);
+      output.writeByteArrayNoTag(SerializationUtils.serialize((Serializable) locations));
+    }
+  }
+
+  @CheckForNull
+  private static Object readLocations(CodedInputStream input) throws IOException {
+    int kind = input.readUInt32();
+    switch (kind) {
+      case NO_LOCATIONS:
+        return null;
+      case DB_LOCATIONS:
+        return DbIssues.Locations.parseFrom(input.readByteArray());
+      case SERIALIZED_LOCATIONS:
+        return SerializationUtils.deserialize(input.readByteArray());
+      default:
+        throw new IllegalStateException("Unsupported kind of locations: " + kind);
+    }
+  }
+
+  /**
+   * The current change is usually also part of the changes, sometimes several times. Changes already written are
+   * referenced by their index so that decoded issues share the same instances.
+   */
+  private static void writeChanges(CodedOutputStream output, List<FieldDiffs> changes, @Nullable FieldDiffs currentChange) throws IOException {
+    output.writeUInt32NoTag(changes.size());
+    for (int i = 0; i < changes.size(); i++) {
+      writeChange(output, changes.subList(0, i), changes.get(i));
+    }
+    if (currentChange == null) {
+      output.writeUInt32NoTag(0);
+    } else {
+      output.writeUInt32NoTag(1);
+      writeChange(output, changes, currentChange);
+    }
+  }
+
+  private static void writeChange(CodedOutputStream output, List<FieldDiffs> previousChanges, FieldDiffs change) throws IOException {
+    int index = indexOfInstance(previousChanges, change);
+    output.writeUInt32NoTag(index + 1);
+    if (index >= 0) {
+      return;
+    }
+    writeString(output, change.issueKey());
+    writeString(output, change.userLogin());
+    writeDate(output, change.creationDate());
+    output.writeUInt32NoTag(change.diffs().size());
+    for (Map.Entry<String, FieldDiffs.Diff> entry : change.diffs().entrySet()) {
+      writeString(output, entry.getKey());
+      writeDiffValue(output, entry.getValue().oldValue());
+      writeDiffValue(output, entry.getValue().newValue());
+    }
+  }
+
+  private static void readChanges(CodedInputStream input, DefaultIssue issue) throws IOException {
+    int size = input.readUInt32();
+    List<FieldDiffs> changes = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      changes.add(readChange(input, changes));
+    }
+    boolean hasCurrentChange = input.readUInt32() == 1;
+    if (hasCurrentChange) {
+      // setCurrentChange() also adds the change to the list, which is then replaced
+      issue.setCurrentChange(readChange(input, changes));
+    }
+    if (size > 0 || hasCurrentChange) {
+      issue.setChanges(changes);
+    }
+  }
+
+  private static FieldDiffs readChange(CodedInputStream input, List<FieldDiffs> previousChanges) throws IOException {
+    int reference = input.readUInt32();
+    if (reference > 0) {
+      return previousChanges.get(reference - 1);
+    }
+    FieldDiffs change = new FieldDiffs()
+      .setIssueKey(readString(input))
+      .setUserLogin(readString(input))
+      .setCreationDate(readDate(input));
+    int diffs = input.readUInt32();
+    for (int i = 0; i < diffs; i++) {
+      change.setDiff(readString(input), readDiffValue(input), readDiffValue(input));
+    }
+    return change;
+  }
+
+  private static int indexOfInstance(List<FieldDiffs> changes, FieldDiffs change) {
+    for (int i = 0; i < changes.size(); i++) {
+      if (changes.get(i) == change) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static void writeDiffValue(CodedOutputStream output, @Nullable Serializable value) throws IOException {
+    if (value == null) {
+      output.writeUInt32NoTag(NULL_VALUE);
+    } else if (value instanceof String) {
+      output.writeUInt32NoTag(STRING_VALUE);
+      writeString(output, (String) value);
+    } else if (value instanceof Long) {
+      output.writeUInt32NoTag(LONG_VALUE);
+      output.writeInt64NoTag((Long) value);
+    } else if (value instanceof Integer) {
+      output.writeUInt32NoTag(INTEGER_VALUE);
+      output.writeInt32NoTag((Integer) value);
+    } else if (value instanceof Double) {
+      output.writeUInt32NoTag(DOUBLE_VALUE);
+      output.writeDoubleNoTag((Double) value);
+    } else if (value instanceof Date) {
+      output.writeUInt32NoTag(DATE_VALUE);
+      output.writeInt64NoTag(((Date) value).getTime());
+    } else {
+      output.writeUInt32NoTag(SERIALIZED_VALUE);
+      output.writeByteArrayNoTag(SerializationUtils.serialize(value));
+    }
+  }
+
+  @CheckForNull
+  private static Serializable readDiffValue(CodedInputStream input) throws IOException {
+    int kind = input.readUInt32();
+    switch (kind) {
+      case NULL_VALUE:
+        return null;
+      case STRING_VALUE:
+        return readString(input);
+      case LONG_VALUE:
+        return input.readInt64();
+      case INTEGER_VALUE:
+        return input.readInt32();
+      case DOUBLE_VALUE:
+        return input.readDouble();
+      case DATE_VALUE:
+        return new Date(input.readInt64());
+      case SERIALIZED_VALUE:
+        return (Serializable) SerializationUtils.deserialize(input.readByteArray());
+      default:
+        throw new IllegalStateException("Unsupported kind of value: " + kind);
+    }
+  }
+
+  private static void writeString(CodedOutputStream output, @Nullable String s) throws IOException {
+    if (s == null) {
+      output.writeUInt32NoTag(0);
+      return;
+    }
+    byte[] bytes = s.getBytes(UTF_8);
+    output.writeUInt32NoTag(bytes.length + 1);
+    output.writeRawBytes(bytes);
+  }
+
+  @CheckForNull
+  private static String readString(CodedInputStream input) throws IOException {
+    int length = input.readUInt32();
+    if (length == 0) {
+      return null;
+    }
+    return new String(input.readRawBytes(length - 1), UTF_8);
+  }
+
+  private static void writeLong(CodedOutputStream output, @Nullable Long l) throws IOException {
+    output.writeBoolNoTag(l != null);
+    if (l != null) {
+      output.writeInt64NoTag(l);
+    }
+  }
+
+  @CheckForNull
+  private static Long readLong(CodedInputStream input) throws IOException {
+    return input.readBool() ? input.readInt64() : null;
+  }
+
+  private static void writeDouble(CodedOutputStream output, @Nullable Double d) throws IOException {
+    output.writeBoolNoTag(d != null);
+    if (d != null) {
+      output.writeDoubleNoTag(d);
+    }
+  }
+
+  @CheckForNull
+  private static Double readDouble(CodedInputStream input) throws IOException {
+    return input.readBool() ? input.readDouble() : null;
+  }
+
+  private static void writeDate(CodedOutputStream output, @Nullable Date date) throws IOException {
+    writeLong(output, date == null ? null : date.getTime());
+  }
+
+  @CheckForNull
+  private static Date readDate(CodedInputStream input) throws IOException {
+    Long time = readLong(input);
+    return time == null ? null : new Date(time);
+  }
+}
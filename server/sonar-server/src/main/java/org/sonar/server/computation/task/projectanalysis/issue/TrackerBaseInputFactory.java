@@ -39,11 +39,11 @@ import org.sonar.server.computation.task.projectanalysis.filemove.MovedFilesRepo
 public class TrackerBaseInputFactory {
   private static final LineHashSequence EMPTY_LINE_HASH_SEQUENCE = new LineHashSequence(Collections.<String>emptyList());
 
-  private final ComponentIssuesLoader issuesLoader;
+  private final BaseIssuesLoader issuesLoader;
   private final DbClient dbClient;
   private final MovedFilesRepository movedFilesRepository;
 
-  public TrackerBaseInputFactory(ComponentIssuesLoader issuesLoader, DbClient dbClient, MovedFilesRepository movedFilesRepository) {
+  public TrackerBaseInputFactory(BaseIssuesLoader issuesLoader, DbClient dbClient, MovedFilesRepository movedFilesRepository) {
     this.issuesLoader = issuesLoader;
     this.dbClient = dbClient;
     this.movedFilesRepository = movedFilesRepository;
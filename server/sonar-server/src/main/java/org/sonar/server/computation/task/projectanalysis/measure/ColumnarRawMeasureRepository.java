@@ -0,0 +1,314 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.measure;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.Developer;
+import org.sonar.server.computation.task.projectanalysis.measure.MapBasedRawMeasureRepository.OverridePolicy;
+import org.sonar.server.computation.task.projectanalysis.metric.Metric;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Columnar implementation of MeasureRepository which supports only raw measures.
+ * <p/>
+ * Measures are stored per metric, in primitive arrays indexed by a dense ordinal of components, for example their
+ * report ref. Data, quality gate status and variations are stored in side tables allocated only when used.
+ * {@link Measure} objects are recreated when read, only measures of developers are kept as is.
+ * <p/>
+ * Intended to be used as a delegate of other MeasureRepository implementations (hence the final keyword).
+ */
+public final class ColumnarRawMeasureRepository implements MeasureRepository {
+  private static final Measure.ValueType[] VALUE_TYPES = Measure.ValueType.values();
+  private static final Measure.Level[] LEVELS = Measure.Level.values();
+
+  private final ToIntFunction<Component> componentToOrdinal;
+  private final Map<String, MetricColumn> columnsByMetricKey = new LinkedHashMap<>();
+
+  public ColumnarRawMeasureRepository(ToIntFunction<Component> componentToOrdinal) {
+    this.componentToOrdinal = requireNonNull(componentToOrdinal);
+  }
+
+  /**
+   * @throws UnsupportedOperationException all the time, not supported
+   */
+  @Override
+  public Optional<Measure> getBaseMeasure(Component component, Metric metric) {
+    throw new UnsupportedOperationException("This implementation of MeasureRepository supports only raw measures");
+  }
+
+  @Override
+  public int loadAsRawMeasures(Collection<Component> components, Collection<Metric> metrics) {
+    throw new UnsupportedOperationException("This implementation of MeasureRepository supports only raw measures");
+  }
+
+  @Override
+  public Optional<Measure> getRawMeasure(Component component, Metric metric) {
+    // fail fast
+    requireNonNull(component);
+    requireNonNull(metric);
+
+    MetricColumn column = columnsByMetricKey.get(metric.getKey());
+    if (column == null) {
+      return Optional.absent();
+    }
+    return Optional.fromNullable(column.get(componentToOrdinal.applyAsInt(component), null));
+  }
+
+  @Override
+  public void add(Component component, Metric metric, Measure measure) {
+    requireNonNull(component);
+    checkValueTypeConsistency(metric, measure);
+
+    if (find(component, metric, measure) != null) {
+      throw new UnsupportedOperationException(
+        format(
+          "a measure can be set only once for a specific Component (key=%s), Metric (key=%s). Use update method",
+          component.getKey(),
+          metric.getKey()));
+    }
+    add(component, metric, measure, OverridePolicy.OVERRIDE);
+  }
+
+  @Override
+  public void update(Component component, Metric metric, Measure measure) {
+    requireNonNull(component);
+    checkValueTypeConsistency(metric, measure);
+
+    if (find(component, metric, measure) == null) {
+      throw new UnsupportedOperationException(
+        format(
+          "a measure can be updated only if one already exists for a specific Component (key=%s), Metric (key=%s). Use add method",
+          component.getKey(),
+          metric.getKey()));
+    }
+    add(component, metric, measure, OverridePolicy.OVERRIDE);
+  }
+
+  private static void checkValueTypeConsistency(Metric metric, Measure measure) {
+    checkArgument(
+      measure.getValueType() == Measure.ValueType.NO_VALUE || measure.getValueType() == metric.getType().getValueType(),
+      format(
+        "Measure's ValueType (%s) is not consistent with the Metric's ValueType (%s)",
+        measure.getValueType(), metric.getType().getValueType()));
+  }
+
+  @Override
+  public Set<Measure> getRawMeasures(Component component, Metric metric) {
+    requireNonNull(metric);
+    requireNonNull(component);
+    MetricColumn column = columnsByMetricKey.get(metric.getKey());
+    if (column == null) {
+      return ImmutableSet.of();
+    }
+    ImmutableSet.Builder<Measure> builder = ImmutableSet.builder();
+    column.collect(componentToOrdinal.applyAsInt(component), builder::add);
+    return builder.build();
+  }
+
+  @Override
+  public SetMultimap<String, Measure> getRawMeasures(Component component) {
+    int ordinal = componentToOrdinal.applyAsInt(component);
+    ImmutableSetMultimap.Builder<String, Measure> builder = ImmutableSetMultimap.builder();
+    for (MetricColumn column : columnsByMetricKey.values()) {
+      column.collect(ordinal, measure -> builder.put(column.metricKey, measure));
+    }
+    return builder.build();
+  }
+
+  @CheckForNull
+  private Measure find(Component component, Metric metric, Measure measure) {
+    MetricColumn column = columnsByMetricKey.get(metric.getKey());
+    if (column == null) {
+      return null;
+    }
+    return column.get(componentToOrdinal.applyAsInt(component), measure.getDeveloper());
+  }
+
+  public void add(Component component, Metric metric, Measure measure, OverridePolicy overridePolicy) {
+    requireNonNull(component);
+    requireNonNull(measure);
+    requireNonNull(overridePolicy);
+
+    int ordinal = componentToOrdinal.applyAsInt(component);
+    MetricColumn column = columnsByMetricKey.computeIfAbsent(metric.getKey(), MetricColumn::new);
+    if (overridePolicy == OverridePolicy.OVERRIDE || column.get(ordinal, measure.getDeveloper()) == null) {
+      column.put(ordinal, measure);
+    }
+  }
+
+  private static final class MetricColumn {
+    private static final byte ABSENT = 0;
+
+    private final String metricKey;
+    // ordinal of the ValueType plus one, ABSENT when component has no measure
+    private byte[] valueTypes = new byte[0];
+    // numeric value, or ordinal of the Level
+    private double[] values = new double[0];
+    @CheckForNull
+    private String[] data;
+    @CheckForNull
+    private double[] variations;
+    @CheckForNull
+    private BitSet hasVariation;
+    @CheckForNull
+    private Map<Integer, QualityGateStatus> qualityGateStatuses;
+    @CheckForNull
+    private Map<Integer, Map<Developer, Measure>> developerMeasures;
+
+    private MetricColumn(String metricKey) {
+      this.metricKey = metricKey;
+    }
+
+    @CheckForNull
+    private Measure get(int ordinal, @Nullable Developer developer) {
+      if (developer != null) {
+        Map<Developer, Measure> measures = developerMeasures == null ? null : developerMeasures.get(ordinal);
+        return measures == null ? null : measures.get(developer);
+      }
+      if (ordinal >= valueTypes.length || valueTypes[ordinal] == ABSENT) {
+        return null;
+      }
+      Measure.ValueType valueType = VALUE_TYPES[valueTypes[ordinal] - 1];
+      Double value = null;
+      Measure.Level level = null;
+      if (valueType == Measure.ValueType.LEVEL) {
+        level = LEVELS[(int) values[ordinal]];
+      } else if (valueType != Measure.ValueType.STRING && valueType != Measure.ValueType.NO_VALUE) {
+        value = values[ordinal];
+      }
+      return Measure.fromStoredValues(valueType, value,
+        data == null ? null : data[ordinal],
+        level,
+        qualityGateStatuses == null ? null : qualityGateStatuses.get(ordinal),
+        hasVariation != null && hasVariation.get(ordinal) ? variations[ordinal] : null);
+    }
+
+    private void collect(int ordinal, Consumer<Measure> consumer) {
+      Measure measure = get(ordinal, null);
+      if (measure != null) {
+        consumer.accept(measure);
+      }
+      Map<Developer, Measure> measures = developerMeasures == null ? null : developerMeasures.get(ordinal);
+      if (measures != null) {
+        measures.values().forEach(consumer);
+      }
+    }
+
+    private void put(int ordinal, Measure measure) {
+      if (measure.getDeveloper() != null) {
+        if (developerMeasures == null) {
+          developerMeasures = new HashMap<>();
+        }
+        developerMeasures.computeIfAbsent(ordinal, o -> new HashMap<>()).put(measure.getDeveloper(), measure);
+        return;
+      }
+      ensureCapacity(ordinal);
+      valueTypes[ordinal] = (byte) (measure.getValueType().ordinal() + 1);
+      values[ordinal] = toDouble(measure);
+      putData(ordinal, measure.getData());
+      putVariation(ordinal, measure);
+      putQualityGateStatus(ordinal, measure);
+    }
+
+    private static double toDouble(Measure measure) {
+      switch (measure.getValueType()) {
+        case BOOLEAN:
+          return measure.getBooleanValue() ? 1.0d : 0.0d;
+        case INT:
+          return measure.getIntValue();
+        case LONG:
+          return measure.getLongValue();
+        case DOUBLE:
+          return measure.getDoubleValue();
+        case LEVEL:
+          return measure.getLevelValue().ordinal();
+        default:
+          return 0.0d;
+      }
+    }
+
+    private void putData(int ordinal, @Nullable String measureData) {
+      if (measureData != null && data == null) {
+        data = new String[valueTypes.length];
+      }
+      if (data != null) {
+        data[ordinal] = measureData;
+      }
+    }
+
+    private void putVariation(int ordinal, Measure measure) {
+      if (measure.hasVariation()) {
+        if (variations == null) {
+          variations = new double[valueTypes.length];
+          hasVariation = new BitSet();
+        }
+        variations[ordinal] = measure.getVariation();
+        hasVariation.set(ordinal);
+      } else if (hasVariation != null) {
+        hasVariation.clear(ordinal);
+      }
+    }
+
+    private void putQualityGateStatus(int ordinal, Measure measure) {
+      if (measure.hasQualityGateStatus()) {
+        if (qualityGateStatuses == null) {
+          qualityGateStatuses = new HashMap<>();
+        }
+        qualityGateStatuses.put(ordinal, measure.getQualityGateStatus());
+      } else if (qualityGateStatuses != null) {
+        qualityGateStatuses.remove(ordinal);
+      }
+    }
+
+    private void ensureCapacity(int ordinal) {
+      checkArgument(ordinal >= 0, "Ordinal of component must be positive: %s", ordinal);
+      if (ordinal < valueTypes.length) {
+        return;
+      }
+      int capacity = Math.max(ordinal + 1, valueTypes.length + (valueTypes.length >> 1));
+      valueTypes = Arrays.copyOf(valueTypes, capacity);
+      values = Arrays.copyOf(values, capacity);
+      if (data != null) {
+        data = Arrays.copyOf(data, capacity);
+      }
+      if (variations != null) {
+        variations = Arrays.copyOf(variations, capacity);
+      }
+    }
+  }
+}
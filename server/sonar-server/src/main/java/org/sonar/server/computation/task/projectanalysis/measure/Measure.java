@@ -100,6 +100,14 @@ public final class Measure {
     return new UpdateMeasureBuilder(measure);
   }
 
+  /**
+   * Recreates a measure, without developer, from values already validated and scaled by a {@link NewMeasureBuilder}.
+   */
+  static Measure fromStoredValues(ValueType valueType, @Nullable Double value, @Nullable String data, @Nullable Level dataLevel,
+    @Nullable QualityGateStatus qualityGateStatus, @Nullable Double variation) {
+    return new Measure(valueType, null, value, data, dataLevel, qualityGateStatus, variation);
+  }
+
   public static final class NewMeasureBuilder {
     private Developer developer;
     private QualityGateStatus qualityGateStatus;
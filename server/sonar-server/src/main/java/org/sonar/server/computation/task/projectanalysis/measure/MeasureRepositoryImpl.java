@@ -20,10 +20,9 @@
 package org.sonar.server.computation.task.projectanalysis.measure;
 
 import static java.util.Objects.requireNonNull;
-import static org.sonar.server.computation.task.projectanalysis.component.ComponentFunctions.toReportRef;
 
+import java.util.BitSet;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -46,7 +45,8 @@ import com.google.common.base.Optional;
 import com.google.common.collect.SetMultimap;
 
 public class MeasureRepositoryImpl implements MeasureRepository {
-  private final MapBasedRawMeasureRepository<Integer> delegate = new MapBasedRawMeasureRepository<>(toReportRef());
+  // report refs are a dense ordinal of components
+  private final ColumnarRawMeasureRepository delegate = new ColumnarRawMeasureRepository(component -> component.getReportAttributes().getRef());
   private final DbClient dbClient;
   private final BatchReportReader reportReader;
   private final BatchMeasureToMeasure batchMeasureToMeasure;
@@ -54,7 +54,7 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   private final ReportMetricValidator reportMetricValidator;
 
   private MeasureDtoToMeasure measureTransformer = new MeasureDtoToMeasure();
-  private final Set<Integer> loadedComponents = new HashSet<>();
+  private final BitSet loadedComponents = new BitSet();
 
   public MeasureRepositoryImpl(DbClient dbClient, BatchReportReader reportReader, MetricRepository metricRepository,
     ReportMetricValidator reportMetricValidator) {
@@ -142,11 +142,12 @@ public class MeasureRepositoryImpl implements MeasureRepository {
   }
 
   private void loadBatchMeasuresForComponent(Component component) {
-    if (loadedComponents.contains(component.getReportAttributes().getRef())) {
+    int ref = component.getReportAttributes().getRef();
+    if (loadedComponents.get(ref)) {
       return;
     }
 
-    try (CloseableIterator<ScannerReport.Measure> readIt = reportReader.readComponentMeasures(component.getReportAttributes().getRef())) {
+    try (CloseableIterator<ScannerReport.Measure> readIt = reportReader.readComponentMeasures(ref)) {
       while (readIt.hasNext()) {
         ScannerReport.Measure batchMeasure = readIt.next();
         String metricKey = batchMeasure.getMetricKey();
@@ -156,7 +157,7 @@ public class MeasureRepositoryImpl implements MeasureRepository {
         }
       }
     }
-    loadedComponents.add(component.getReportAttributes().getRef());
+    loadedComponents.set(ref);
   }
 
 }
@@ -24,33 +24,48 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Optional;
+import org.apache.commons.io.FileUtils;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.TempFolder;
 import org.sonar.api.utils.ZipUtils;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
 import org.sonar.ce.queue.CeTask;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.ce.CeTaskInputDao;
+import org.sonar.scanner.protocol.output.ReportArchive;
 import org.sonar.server.computation.task.projectanalysis.batch.MutableBatchReportDirectoryHolder;
 import org.sonar.server.computation.task.step.ComputationStep;
 
 /**
- * Extracts the content zip file of the {@link CeTask} to a temp directory and adds a {@link File}
- * representing that temp directory to the {@link MutableBatchReportDirectoryHolder}.
+ * Copies the content zip file of the {@link CeTask} to a temp directory and adds it, as a {@link ReportArchive}
+ * read in place, to the {@link MutableBatchReportDirectoryHolder}.
+ * <p/>
+ * When property {@link #EXTRACT_PROPERTY} is {@code true}, the zip file is extracted instead to the temp directory,
+ * which is added as a {@link File} to the {@link MutableBatchReportDirectoryHolder}.
  */
 public class ExtractReportStep implements ComputationStep {
 
+  public static final String EXTRACT_PROPERTY = "sonar.ce.report.extract";
+
+  private static final Logger LOGGER = Loggers.get(ExtractReportStep.class);
+  private static final String ARCHIVE_NAME = "report.zip";
+
   private final DbClient dbClient;
   private final CeTask task;
   private final TempFolder tempFolder;
   private final MutableBatchReportDirectoryHolder reportDirectoryHolder;
+  private final Configuration config;
 
   public ExtractReportStep(DbClient dbClient, CeTask task, TempFolder tempFolder,
-    MutableBatchReportDirectoryHolder reportDirectoryHolder) {
+    MutableBatchReportDirectoryHolder reportDirectoryHolder, Configuration config) {
     this.dbClient = dbClient;
     this.task = task;
     this.tempFolder = tempFolder;
     this.reportDirectoryHolder = reportDirectoryHolder;
+    this.config = config;
   }
 
   @Override
@@ -58,14 +73,22 @@ public class ExtractReportStep implements ComputationStep {
     try (DbSession dbSession = dbClient.openSession(false)) {
       Optional<CeTaskInputDao.DataStream> opt = dbClient.ceTaskInputDao().selectData(dbSession, task.getUuid());
       if (opt.isPresent()) {
-        File unzippedDir = tempFolder.newDir();
+        File dir = tempFolder.newDir();
         try (CeTaskInputDao.DataStream reportStream = opt.get();
-             InputStream zipStream = new BufferedInputStream(reportStream.getInputStream())) {
-          ZipUtils.unzip(zipStream, unzippedDir);
+          InputStream zipStream = new BufferedInputStream(reportStream.getInputStream())) {
+          if (config.getBoolean(EXTRACT_PROPERTY).orElse(false)) {
+            ZipUtils.unzip(zipStream, dir);
+            LOGGER.info("Analysis report extracted: {}", FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(dir)));
+            reportDirectoryHolder.setDirectory(dir);
+          } else {
+            // the archive is copied as is, as random access to its entries is not possible from the database stream
+            File zip = new File(dir, ARCHIVE_NAME);
+            FileUtils.copyInputStreamToFile(zipStream, zip);
+            reportDirectoryHolder.setArchive(new ReportArchive(zip));
+          }
         } catch (IOException e) {
           throw new IllegalStateException("Fail to extract report " + task.getUuid() + " from database", e);
         }
-        reportDirectoryHolder.setDirectory(unzippedDir);
       } else {
         throw MessageException.of("Analysis report " + task.getUuid() + " is missing in database");
       }
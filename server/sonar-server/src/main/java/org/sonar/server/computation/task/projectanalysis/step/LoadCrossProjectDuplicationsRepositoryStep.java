@@ -19,13 +19,25 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.DatabaseUtils;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.duplication.DuplicationUnitDto;
@@ -59,28 +71,55 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
 
   private static final Logger LOGGER = Loggers.get(LoadCrossProjectDuplicationsRepositoryStep.class);
 
+  /**
+   * Candidates of several files are loaded at once, until their distinct hashes reach this number, so that only
+   * the candidates of a group of files are kept in memory, while they are loaded with a single request per group.
+   */
+  private static final int MAX_HASHES_PER_LOOKUP = DatabaseUtils.PARTITION_SIZE_FOR_ORACLE;
+
   private final TreeRootHolder treeRootHolder;
   private final BatchReportReader reportReader;
   private final AnalysisMetadataHolder analysisMetadataHolder;
   private final IntegrateCrossProjectDuplications integrateCrossProjectDuplications;
   private final CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder;
   private final DbClient dbClient;
+  private final int maxHashesPerLookup;
 
   public LoadCrossProjectDuplicationsRepositoryStep(TreeRootHolder treeRootHolder, BatchReportReader reportReader,
     AnalysisMetadataHolder analysisMetadataHolder, CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder,
     IntegrateCrossProjectDuplications integrateCrossProjectDuplications, DbClient dbClient) {
+    this(treeRootHolder, reportReader, analysisMetadataHolder, crossProjectDuplicationStatusHolder, integrateCrossProjectDuplications, dbClient,
+      MAX_HASHES_PER_LOOKUP);
+  }
+
+  @VisibleForTesting
+  LoadCrossProjectDuplicationsRepositoryStep(TreeRootHolder treeRootHolder, BatchReportReader reportReader,
+    AnalysisMetadataHolder analysisMetadataHolder, CrossProjectDuplicationStatusHolder crossProjectDuplicationStatusHolder,
+    IntegrateCrossProjectDuplications integrateCrossProjectDuplications, DbClient dbClient, int maxHashesPerLookup) {
     this.treeRootHolder = treeRootHolder;
     this.reportReader = reportReader;
     this.analysisMetadataHolder = analysisMetadataHolder;
     this.integrateCrossProjectDuplications = integrateCrossProjectDuplications;
     this.crossProjectDuplicationStatusHolder = crossProjectDuplicationStatusHolder;
     this.dbClient = dbClient;
+    this.maxHashesPerLookup = maxHashesPerLookup;
   }
 
   @Override
   public void execute() {
     if (crossProjectDuplicationStatusHolder.isEnabled()) {
-      new DepthTraversalTypeAwareCrawler(new CrossProjectDuplicationVisitor()).visit(treeRootHolder.getRoot());
+      Analysis baseAnalysis = analysisMetadataHolder.getBaseAnalysis();
+      try (DbSession dbSession = dbClient.openSession(false)) {
+        CrossProjectDuplicationVisitor visitor = new CrossProjectDuplicationVisitor(dbSession, baseAnalysis == null ? null : baseAnalysis.getUuid());
+        new DepthTraversalTypeAwareCrawler(visitor).visit(treeRootHolder.getRoot());
+        visitor.computeCpdOfPendingFiles();
+      }
+    }
+  }
+
+  private List<CpdTextBlock> readCpdTextBlocks(Component file) {
+    try (CloseableIterator<CpdTextBlock> blocksIt = reportReader.readCpdTextBlocks(file.getReportAttributes().getRef())) {
+      return newArrayList(blocksIt);
     }
   }
 
@@ -89,25 +128,62 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
     return "Compute cross project duplications";
   }
 
+  /**
+   * The files of each language are grouped until their distinct hashes reach {@link #maxHashesPerLookup}. The candidates
+   * of the group are then loaded, and the duplications of its files are computed.
+   */
   private class CrossProjectDuplicationVisitor extends TypeAwareVisitorAdapter {
+    private final DbSession dbSession;
+    @CheckForNull
+    private final String analysisUuid;
+    private final Map<String, FileGroup> pendingFileGroupsByLanguage = new HashMap<>();
 
-    private CrossProjectDuplicationVisitor() {
+    private CrossProjectDuplicationVisitor(DbSession dbSession, @Nullable String analysisUuid) {
       super(CrawlerDepthLimit.FILE, PRE_ORDER);
+      this.dbSession = dbSession;
+      this.analysisUuid = analysisUuid;
     }
 
     @Override
     public void visitFile(Component file) {
-      List<CpdTextBlock> cpdTextBlocks;
-      try (CloseableIterator<CpdTextBlock> blocksIt = reportReader.readCpdTextBlocks(file.getReportAttributes().getRef())) {
-        cpdTextBlocks = newArrayList(blocksIt);
-        LOGGER.trace("Found {} cpd blocks on file {}", cpdTextBlocks.size(), file.getKey());
-        if (cpdTextBlocks.isEmpty()) {
-          return;
-        }
+      String language = file.getFileAttributes().getLanguageKey();
+      if (language == null) {
+        // candidates are searched in files of the same language
+        return;
+      }
+      List<CpdTextBlock> cpdTextBlocks = readCpdTextBlocks(file);
+      LOGGER.trace("Found {} cpd blocks on file {}", cpdTextBlocks.size(), file.getKey());
+      if (cpdTextBlocks.isEmpty()) {
+        return;
       }
 
-      Collection<String> hashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toList();
-      List<DuplicationUnitDto> dtos = selectDuplicates(file, hashes);
+      FileGroup fileGroup = pendingFileGroupsByLanguage.computeIfAbsent(language, FileGroup::new);
+      fileGroup.add(file, cpdTextBlocks);
+      if (fileGroup.hashes.size() >= maxHashesPerLookup) {
+        pendingFileGroupsByLanguage.remove(language);
+        computeCpd(fileGroup);
+      }
+    }
+
+    private void computeCpdOfPendingFiles() {
+      pendingFileGroupsByLanguage.values().forEach(this::computeCpd);
+      pendingFileGroupsByLanguage.clear();
+    }
+
+    private void computeCpd(FileGroup fileGroup) {
+      ListMultimap<String, DuplicationUnitDto> candidatesByHash = ArrayListMultimap.create();
+      dbClient.duplicationDao().scrollCandidates(dbSession, analysisUuid, fileGroup.language, fileGroup.hashes, context -> {
+        DuplicationUnitDto dto = context.getResultObject();
+        candidatesByHash.put(dto.getHash(), dto);
+      });
+      fileGroup.cpdTextBlocksByFile.forEach((file, cpdTextBlocks) -> computeCpd(file, cpdTextBlocks, candidatesByHash));
+    }
+
+    private void computeCpd(Component file, List<CpdTextBlock> cpdTextBlocks, ListMultimap<String, DuplicationUnitDto> candidatesByHash) {
+      // the set keeps the order of the blocks, so that candidates are in the same order at each analysis
+      Set<String> hashes = from(cpdTextBlocks).transform(CpdTextBlockToHash.INSTANCE).toSet();
+      List<DuplicationUnitDto> dtos = new ArrayList<>();
+      hashes.forEach(hash -> dtos.addAll(candidatesByHash.get(hash)));
       if (dtos.isEmpty()) {
         return;
       }
@@ -118,13 +194,23 @@ public class LoadCrossProjectDuplicationsRepositoryStep implements ComputationSt
 
       integrateCrossProjectDuplications.computeCpd(file, originBlocks, duplicatedBlocks);
     }
+  }
 
-    private List<DuplicationUnitDto> selectDuplicates(Component file, Collection<String> hashes) {
-      try (DbSession dbSession = dbClient.openSession(false)) {
-        Analysis projectAnalysis = analysisMetadataHolder.getBaseAnalysis();
-        String analysisUuid = projectAnalysis == null ? null : projectAnalysis.getUuid();
-        return dbClient.duplicationDao().selectCandidates(dbSession, analysisUuid, file.getFileAttributes().getLanguageKey(), hashes);
-      }
+  /**
+   * Files of the same language whose candidates are loaded at once, with their CPD blocks
+   */
+  private static class FileGroup {
+    private final String language;
+    private final Set<String> hashes = new HashSet<>();
+    private final Map<Component, List<CpdTextBlock>> cpdTextBlocksByFile = new LinkedHashMap<>();
+
+    private FileGroup(String language) {
+      this.language = language;
+    }
+
+    private void add(Component file, List<CpdTextBlock> cpdTextBlocks) {
+      cpdTextBlocksByFile.put(file, cpdTextBlocks);
+      cpdTextBlocks.forEach(block -> hashes.add(block.getHash()));
     }
   }
 
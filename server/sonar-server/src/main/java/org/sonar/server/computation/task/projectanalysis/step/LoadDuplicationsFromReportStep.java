@@ -20,6 +20,12 @@
 package org.sonar.server.computation.task.projectanalysis.step;
 
 import com.google.common.base.Function;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import javax.annotation.Nonnull;
 import org.sonar.core.util.CloseableIterator;
 import org.sonar.scanner.protocol.output.ScannerReport;
@@ -27,8 +33,10 @@ import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader
 import org.sonar.server.computation.task.projectanalysis.component.Component;
 import org.sonar.server.computation.task.projectanalysis.component.CrawlerDepthLimit;
 import org.sonar.server.computation.task.projectanalysis.component.DepthTraversalTypeAwareCrawler;
+import org.sonar.server.computation.task.projectanalysis.component.SubtreeLocalVisitor;
 import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
 import org.sonar.server.computation.task.projectanalysis.component.TypeAwareVisitorAdapter;
+import org.sonar.server.computation.task.projectanalysis.component.VisitorsCrawler;
 import org.sonar.server.computation.task.projectanalysis.duplication.DetailedTextBlock;
 import org.sonar.server.computation.task.projectanalysis.duplication.Duplicate;
 import org.sonar.server.computation.task.projectanalysis.duplication.Duplication;
@@ -44,6 +52,9 @@ import static org.sonar.server.computation.task.projectanalysis.component.Compon
 
 /**
  * Loads duplication information from the report and loads them into the {@link DuplicationRepository}.
+ * <p/>
+ * Duplications of the files are read from the report concurrently, then added to the repository in the order of the
+ * component tree.
  */
 public class LoadDuplicationsFromReportStep implements ComputationStep {
   private final TreeRootHolder treeRootHolder;
@@ -63,21 +74,58 @@ public class LoadDuplicationsFromReportStep implements ComputationStep {
 
   @Override
   public void execute() {
+    ReportDuplicationsReader reportDuplicationsReader = new ReportDuplicationsReader(batchReportReader);
+    ForkJoinPool forkJoinPool = new ForkJoinPool();
+    try {
+      new VisitorsCrawler(Collections.singletonList(reportDuplicationsReader), false, forkJoinPool).visit(treeRootHolder.getRoot());
+    } finally {
+      forkJoinPool.shutdown();
+    }
+
     new DepthTraversalTypeAwareCrawler(
       new TypeAwareVisitorAdapter(CrawlerDepthLimit.FILE, POST_ORDER) {
         @Override
         public void visitFile(Component file) {
-          try (CloseableIterator<ScannerReport.Duplication> duplications = batchReportReader.readComponentDuplications(file.getReportAttributes().getRef())) {
-            int idGenerator = 1;
-            while (duplications.hasNext()) {
-              loadDuplications(file, duplications.next(), idGenerator);
-              idGenerator++;
-            }
+          int idGenerator = 1;
+          for (ScannerReport.Duplication duplication : reportDuplicationsReader.getDuplications(file)) {
+            loadDuplications(file, duplication, idGenerator);
+            idGenerator++;
           }
         }
       }).visit(treeRootHolder.getRoot());
   }
 
+  /**
+   * Reads the duplications of each file from the report. The duplications of a file are only read by the visit of
+   * this file, so files are visited concurrently.
+   */
+  private static class ReportDuplicationsReader extends TypeAwareVisitorAdapter implements SubtreeLocalVisitor {
+    private final BatchReportReader batchReportReader;
+    private final Map<Component, List<ScannerReport.Duplication>> duplicationsByFile = new ConcurrentHashMap<>();
+
+    private ReportDuplicationsReader(BatchReportReader batchReportReader) {
+      super(CrawlerDepthLimit.FILE, POST_ORDER);
+      this.batchReportReader = batchReportReader;
+    }
+
+    @Override
+    public void visitFile(Component file) {
+      try (CloseableIterator<ScannerReport.Duplication> duplications = batchReportReader.readComponentDuplications(file.getReportAttributes().getRef())) {
+        List<ScannerReport.Duplication> fileDuplications = new ArrayList<>();
+        while (duplications.hasNext()) {
+          fileDuplications.add(duplications.next());
+        }
+        if (!fileDuplications.isEmpty()) {
+          duplicationsByFile.put(file, fileDuplications);
+        }
+      }
+    }
+
+    private List<ScannerReport.Duplication> getDuplications(Component file) {
+      return duplicationsByFile.getOrDefault(file, Collections.emptyList());
+    }
+  }
+
   private void loadDuplications(Component file, ScannerReport.Duplication duplication, int id) {
     duplicationRepository.add(file,
       new Duplication(
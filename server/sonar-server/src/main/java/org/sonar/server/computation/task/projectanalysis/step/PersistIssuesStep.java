@@ -19,12 +19,18 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.ibatis.executor.BatchResult;
 import org.sonar.api.issue.IssueComment;
 import org.sonar.api.utils.System2;
 import org.sonar.core.issue.DefaultIssue;
 import org.sonar.core.issue.DefaultIssueComment;
 import org.sonar.core.issue.FieldDiffs;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.BatchSession;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.issue.IssueChangeDto;
@@ -38,6 +44,12 @@ import org.sonar.server.computation.task.step.ComputationStep;
 
 public class PersistIssuesStep implements ComputationStep {
 
+  /**
+   * Statements are flushed by groups smaller than {@link BatchSession#MAX_BATCH_SIZE}, so that the update counts of
+   * the conditional updates of changed issues are not lost in an automatic commit of the batch session.
+   */
+  static final int UPDATE_BATCH_SIZE = 100;
+
   private final DbClient dbClient;
   private final System2 system2;
   private final UpdateConflictResolver conflictResolver;
@@ -53,6 +65,10 @@ public class PersistIssuesStep implements ComputationStep {
     this.issueCache = issueCache;
   }
 
+  /**
+   * All the issues are persisted in a single transaction, committed once all of them are processed: a failure
+   * leaves the issues of the previous analysis unchanged.
+   */
   @Override
   public void execute() {
     try (DbSession dbSession = dbClient.openSession(true);
@@ -60,26 +76,28 @@ public class PersistIssuesStep implements ComputationStep {
 
       IssueMapper mapper = dbSession.getMapper(IssueMapper.class);
       IssueChangeMapper changeMapper = dbSession.getMapper(IssueChangeMapper.class);
+      ChangedIssuesUpdater changedIssuesUpdater = new ChangedIssuesUpdater(dbSession);
       while (issues.hasNext()) {
         DefaultIssue issue = issues.next();
-        boolean saved = persistIssueIfRequired(mapper, issue);
+        boolean saved = persistIssueIfRequired(mapper, changedIssuesUpdater, issue);
         if (saved) {
-          insertChanges(changeMapper, issue);
+          insertChanges(changeMapper, changedIssuesUpdater, issue);
         }
       }
-      dbSession.flushStatements();
+      changedIssuesUpdater.flush();
       dbSession.commit();
     }
   }
 
-  private boolean persistIssueIfRequired(IssueMapper mapper, DefaultIssue issue) {
+  private boolean persistIssueIfRequired(IssueMapper mapper, ChangedIssuesUpdater changedIssuesUpdater, DefaultIssue issue) {
     if (issue.isNew() || issue.isCopied()) {
       persistNewIssue(mapper, issue);
+      changedIssuesUpdater.statementAdded();
       return true;
     }
 
     if (issue.isChanged()) {
-      persistChangedIssue(mapper, issue);
+      changedIssuesUpdater.update(issue);
       return true;
     }
     return false;
@@ -91,28 +109,79 @@ public class PersistIssuesStep implements ComputationStep {
     mapper.insert(dto);
   }
 
-  private void persistChangedIssue(IssueMapper mapper, DefaultIssue issue) {
-    IssueDto dto = IssueDto.toDtoForUpdate(issue, system2.now());
-    int updateCount = mapper.updateIfBeforeSelectedDate(dto);
-    if (updateCount == 0) {
-      // End-user and scan changed the issue at the same time.
-      // See https://jira.sonarsource.com/browse/SONAR-4309
-      conflictResolver.resolve(issue, mapper);
-    }
-  }
-
-  private static void insertChanges(IssueChangeMapper mapper, DefaultIssue issue) {
+  private static void insertChanges(IssueChangeMapper mapper, ChangedIssuesUpdater changedIssuesUpdater, DefaultIssue issue) {
     for (IssueComment comment : issue.comments()) {
       DefaultIssueComment c = (DefaultIssueComment) comment;
       if (c.isNew()) {
         IssueChangeDto changeDto = IssueChangeDto.of(c);
         mapper.insert(changeDto);
+        changedIssuesUpdater.statementAdded();
       }
     }
     FieldDiffs diffs = issue.currentChange();
     if (!issue.isNew() && diffs != null) {
       IssueChangeDto changeDto = IssueChangeDto.of(issue.key(), diffs);
       mapper.insert(changeDto);
+      changedIssuesUpdater.statementAdded();
+    }
+  }
+
+  /**
+   * Sends the conditional updates of changed issues as JDBC batches. When a batch is flushed, the issues whose
+   * update did not match any row have been changed by an end-user at the same time. They are reloaded with
+   * a single query and merged by {@link UpdateConflictResolver}.
+   * See https://jira.sonarsource.com/browse/SONAR-4309
+   * <p/>
+   * The other statements of the session are counted as well, so that the session is flushed before it reaches
+   * {@link BatchSession#MAX_BATCH_SIZE}.
+   */
+  private class ChangedIssuesUpdater {
+    private final DbSession session;
+    private final IssueMapper mapper;
+    private final Map<String, DefaultIssue> pendingIssuesByKey = new HashMap<>();
+    private int pendingStatements = 0;
+
+    private ChangedIssuesUpdater(DbSession session) {
+      this.session = session;
+      this.mapper = session.getMapper(IssueMapper.class);
+    }
+
+    void update(DefaultIssue issue) {
+      mapper.updateIfBeforeSelectedDate(IssueDto.toDtoForUpdate(issue, system2.now()));
+      pendingIssuesByKey.put(issue.key(), issue);
+      statementAdded();
+    }
+
+    void statementAdded() {
+      pendingStatements++;
+      if (pendingStatements >= UPDATE_BATCH_SIZE) {
+        flush();
+      }
+    }
+
+    void flush() {
+      pendingStatements = 0;
+      List<String> conflictingKeys = new ArrayList<>();
+      for (BatchResult batchResult : session.flushStatements()) {
+        if (!batchResult.getMappedStatement().getId().endsWith(".updateIfBeforeSelectedDate")) {
+          continue;
+        }
+        int[] updateCounts = batchResult.getUpdateCounts();
+        List<Object> dtos = batchResult.getParameterObjects();
+        for (int i = 0; i < updateCounts.length; i++) {
+          // some drivers return Statement.SUCCESS_NO_INFO, which can't be distinguished from a successful update
+          if (updateCounts[i] == 0) {
+            conflictingKeys.add(((IssueDto) dtos.get(i)).getKey());
+          }
+        }
+      }
+      if (!conflictingKeys.isEmpty()) {
+        for (IssueDto dbIssue : mapper.selectByKeys(conflictingKeys)) {
+          conflictResolver.resolve(pendingIssuesByKey.get(dbIssue.getKey()), dbIssue, mapper);
+        }
+        session.flushStatements();
+      }
+      pendingIssuesByKey.clear();
     }
   }
 
@@ -19,8 +19,13 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableMap;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
 import org.sonar.server.computation.task.container.TaskContainer;
 import org.sonar.server.computation.task.projectanalysis.filemove.FileMoveDetectionStep;
 import org.sonar.server.computation.task.step.ComputationStep;
@@ -104,6 +109,34 @@ public class ReportComputationSteps extends AbstractComputationSteps {
 
     PublishTaskResultStep.class);
 
+  /**
+   * Steps which only read the computed data and persist them with their own {@link org.sonar.db.DbSession}.
+   * They are executed concurrently once components and analysis are persisted.
+   * <p>
+   * None of them depends on another one: they write distinct tables, or distinct rows of FILE_SOURCES. Each repository
+   * which is lazily filled without synchronization is read by a single one of them, while the holders they share are
+   * not modified anymore or are synchronized. ReportComputationStepsTest fails if a step sharing another dependency
+   * is added.
+   */
+  private static final Map<Class<? extends ComputationStep>, Set<Class<? extends ComputationStep>>> CONCURRENT_STEP_DEPENDENCIES = ImmutableMap
+    .<Class<? extends ComputationStep>, Set<Class<? extends ComputationStep>>>builder()
+    // reads MeasureRepository, writes PROJECT_MEASURES
+    .put(PersistMeasuresStep.class, Collections.emptySet())
+    // reads IssueCache and RuleRepository, writes ISSUES and ISSUE_CHANGES
+    .put(PersistIssuesStep.class, Collections.emptySet())
+    // reads the components of the report, writes PROJECT_LINKS
+    .put(PersistProjectLinksStep.class, Collections.emptySet())
+    // reads EventRepository, writes EVENTS
+    .put(PersistEventsStep.class, Collections.emptySet())
+    // reads SourceLinesRepository, ScmInfoRepository, DuplicationRepository and coverage, highlighting and symbols
+    // of the report, writes the rows of FILE_SOURCES of type SOURCE
+    .put(PersistFileSourcesStep.class, Collections.emptySet())
+    // reads the tests and coverage details of the report, writes the rows of FILE_SOURCES of type TEST
+    .put(PersistTestsStep.class, Collections.emptySet())
+    // reads CrossProjectDuplicationStatusHolder and CPD text blocks of the report, writes DUPLICATIONS_INDEX
+    .put(PersistCrossProjectDuplicationIndexStep.class, Collections.emptySet())
+    .build();
+
   public ReportComputationSteps(TaskContainer taskContainer) {
     super(taskContainer);
   }
@@ -117,4 +150,10 @@ public class ReportComputationSteps extends AbstractComputationSteps {
     return STEPS;
   }
 
+  @Override
+  @CheckForNull
+  public Set<Class<? extends ComputationStep>> concurrentStepDependencies(Class<? extends ComputationStep> stepClass) {
+    return CONCURRENT_STEP_DEPENDENCIES.get(stepClass);
+  }
+
 }
@@ -0,0 +1,272 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.webhook;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.CheckForNull;
+import okhttp3.HttpUrl;
+import org.picocontainer.Startable;
+import org.sonar.api.ce.ComputeEngineSide;
+import org.sonar.api.config.Configuration;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.log.Logger;
+import org.sonar.api.utils.log.Loggers;
+
+/**
+ * Calls webhooks in a pool of threads, so that the Compute Engine workers do not wait for the
+ * remote servers.
+ * <ul>
+ *   <li>the number of concurrent calls to a same host is bounded</li>
+ *   <li>calls failing because of a connectivity problem, a timeout or a server error (HTTP 5xx) are
+ *   attempted again after an exponential delay</li>
+ *   <li>calls which are not completed when stopping are persisted as failed deliveries</li>
+ * </ul>
+ * The HTTP connections are pooled by the {@link okhttp3.OkHttpClient} of {@link WebhookCallerImpl}.
+ */
+@ComputeEngineSide
+public class WebhookDispatcherImpl implements WebhookDispatcher, Startable {
+
+  static final String THREADS_PROPERTY = "sonar.ce.webhooks.threads";
+  static final String MAX_CALLS_PER_HOST_PROPERTY = "sonar.ce.webhooks.maxConcurrentCallsPerHost";
+  static final String MAX_ATTEMPTS_PROPERTY = "sonar.ce.webhooks.maxAttempts";
+  static final String RETRY_DELAY_PROPERTY = "sonar.ce.webhooks.retryDelayInMs";
+
+  private static final Logger LOGGER = Loggers.get(WebhookDispatcherImpl.class);
+  private static final int DEFAULT_THREADS = 4;
+  private static final int DEFAULT_MAX_CALLS_PER_HOST = 2;
+  private static final int DEFAULT_MAX_ATTEMPTS = 3;
+  private static final long DEFAULT_RETRY_DELAY_MS = 5_000L;
+  private static final long STOP_TIMEOUT_MS = 30_000L;
+
+  private final WebhookCaller caller;
+  private final WebhookDeliveryStorage deliveryStorage;
+  private final System2 system2;
+  private final int threads;
+  private final int maxCallsPerHost;
+  private final int maxAttempts;
+  private final long retryDelayMs;
+  private final Map<String, HostQueue> queuesByHost = new HashMap<>();
+  private final Set<Call> waitingForRetry = ConcurrentHashMap.newKeySet();
+  private ScheduledThreadPoolExecutor executor;
+
+  public WebhookDispatcherImpl(WebhookCaller caller, WebhookDeliveryStorage deliveryStorage, System2 system2, Configuration config) {
+    this.caller = caller;
+    this.deliveryStorage = deliveryStorage;
+    this.system2 = system2;
+    this.threads = config.getInt(THREADS_PROPERTY).orElse(DEFAULT_THREADS);
+    this.maxCallsPerHost = config.getInt(MAX_CALLS_PER_HOST_PROPERTY).orElse(DEFAULT_MAX_CALLS_PER_HOST);
+    this.maxAttempts = config.getInt(MAX_ATTEMPTS_PROPERTY).orElse(DEFAULT_MAX_ATTEMPTS);
+    this.retryDelayMs = config.getLong(RETRY_DELAY_PROPERTY).orElse(DEFAULT_RETRY_DELAY_MS);
+  }
+
+  @Override
+  public void start() {
+    executor = new ScheduledThreadPoolExecutor(threads,
+      new ThreadFactoryBuilder()
+        .setNameFormat("Webhook-%d")
+        .setDaemon(true)
+        .build());
+    // retries which are still waiting when stopping are not executed, see stop()
+    executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+  }
+
+  @Override
+  public void stop() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        LOGGER.warn("Webhooks are still being sent after {}ms, they are abandoned", STOP_TIMEOUT_MS);
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // the failures of the calls which won't be attempted again are kept
+    waitingForRetry.forEach(call -> persist(call.lastDelivery));
+    waitingForRetry.clear();
+    drainHostQueues().forEach(this::abandon);
+  }
+
+  private List<Call> drainHostQueues() {
+    List<Call> calls = new ArrayList<>();
+    synchronized (queuesByHost) {
+      queuesByHost.values().forEach(hostQueue -> calls.addAll(hostQueue.waiting));
+      queuesByHost.clear();
+    }
+    return calls;
+  }
+
+  @Override
+  public void dispatch(Webhook webhook, WebhookPayload payload) {
+    submit(new Call(webhook, payload));
+  }
+
+  private void submit(Call call) {
+    HostQueue hostQueue;
+    synchronized (queuesByHost) {
+      hostQueue = queuesByHost.computeIfAbsent(call.host, host -> new HostQueue());
+      if (hostQueue.running >= maxCallsPerHost) {
+        hostQueue.waiting.add(call);
+        return;
+      }
+      hostQueue.running++;
+    }
+    run(call);
+  }
+
+  private void run(Call call) {
+    try {
+      executor.execute(() -> execute(call));
+    } catch (RejectedExecutionException e) {
+      abandon(call);
+      executeNext(call.host);
+    }
+  }
+
+  /**
+   * Persists the failure of a call which is not sent because Compute Engine is stopping
+   */
+  private void abandon(Call call) {
+    LOGGER.warn("Webhook '{}' is not sent because Compute Engine is stopping", call.webhook.getName());
+    if (call.lastDelivery != null) {
+      persist(call.lastDelivery);
+    } else {
+      persist(new WebhookDelivery.Builder()
+        .setWebhook(call.webhook)
+        .setPayload(call.payload)
+        .setAt(system2.now())
+        .setError(new IllegalStateException("Compute Engine is stopping"))
+        .build());
+    }
+  }
+
+  private void execute(Call call) {
+    try {
+      call.attempts++;
+      WebhookDelivery delivery = caller.call(call.webhook, call.payload);
+      if (call.attempts < maxAttempts && isRetryable(delivery)) {
+        scheduleRetry(call, delivery);
+      } else {
+        persist(delivery);
+      }
+    } catch (RuntimeException e) {
+      LOGGER.error("Fail to send webhook '{}'", call.webhook.getName(), e);
+    } finally {
+      executeNext(call.host);
+    }
+  }
+
+  private void executeNext(String host) {
+    Call next;
+    synchronized (queuesByHost) {
+      HostQueue hostQueue = queuesByHost.get(host);
+      if (hostQueue == null) {
+        // drained by stop()
+        return;
+      }
+      next = hostQueue.waiting.poll();
+      if (next == null) {
+        hostQueue.running--;
+        if (hostQueue.running == 0) {
+          queuesByHost.remove(host);
+        }
+        return;
+      }
+    }
+    run(next);
+  }
+
+  private void scheduleRetry(Call call, WebhookDelivery delivery) {
+    long delayMs = retryDelayMs << (call.attempts - 1);
+    LOGGER.debug("Failed to send webhook '{}' | url={} | attempt {}, retrying in {}ms",
+      call.webhook.getName(), call.webhook.getUrl(), call.attempts, delayMs);
+    call.lastDelivery = delivery;
+    waitingForRetry.add(call);
+    try {
+      executor.schedule(() -> {
+        if (waitingForRetry.remove(call)) {
+          submit(call);
+        }
+      }, delayMs, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // stopping, the failure is persisted by stop()
+    }
+  }
+
+  private void persist(WebhookDelivery delivery) {
+    log(delivery);
+    deliveryStorage.persist(delivery);
+  }
+
+  @VisibleForTesting
+  static boolean isRetryable(WebhookDelivery delivery) {
+    return delivery.getError().isPresent() || delivery.getHttpStatus().filter(status -> status >= 500).isPresent();
+  }
+
+  private static void log(WebhookDelivery delivery) {
+    Optional<String> error = delivery.getErrorMessage();
+    if (error.isPresent()) {
+      LOGGER.debug("Failed to send webhook '{}' | url={} | message={}",
+        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), error.get());
+    } else {
+      LOGGER.debug("Sent webhook '{}' | url={} | time={}ms | status={}",
+        delivery.getWebhook().getName(), delivery.getWebhook().getUrl(), delivery.getDurationInMs().orElse(-1), delivery.getHttpStatus().orElse(-1));
+    }
+  }
+
+  private static String hostOf(String url) {
+    HttpUrl httpUrl = HttpUrl.parse(url);
+    // invalid URLs are not called anyway, see WebhookCallerImpl
+    return httpUrl == null ? url : httpUrl.host();
+  }
+
+  private static class HostQueue {
+    private final Queue<Call> waiting = new ArrayDeque<>();
+    private int running = 0;
+  }
+
+  private static class Call {
+    private final Webhook webhook;
+    private final WebhookPayload payload;
+    private final String host;
+    private int attempts = 0;
+    @CheckForNull
+    private WebhookDelivery lastDelivery;
+
+    private Call(Webhook webhook, WebhookPayload payload) {
+      this.webhook = webhook;
+      this.payload = payload;
+      this.host = hostOf(webhook.getUrl());
+    }
+  }
+}
@@ -25,8 +25,6 @@ public class WebhookModule extends Module {
   @Override
   protected void configureModule() {
     add(
-      WebhookCallerImpl.class,
-      WebhookDeliveryStorage.class,
       WebhookPayloadFactoryImpl.class,
       WebhookPostTask.class);
   }
@@ -19,14 +19,31 @@
  */
 package org.sonar.server.computation.task.step;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.slf4j.MDC;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.core.util.logs.Profiler;
 
+/**
+ * Executes the {@link ComputationSteps} in sequence. Steps declared as concurrent by
+ * {@link ComputationSteps#concurrentStepDependencies(Class)} are executed on a bounded pool as soon as
+ * their dependencies are completed, while the next step which is not concurrent waits for all of them.
+ */
 public final class ComputationStepExecutor {
   private static final Logger LOGGER = Loggers.get(ComputationStepExecutor.class);
+  private static final int MAX_CONCURRENT_STEPS = 4;
 
   private final ComputationSteps steps;
   @CheckForNull
@@ -46,10 +63,9 @@ public final class ComputationStepExecutor {
   }
 
   public void execute() {
-    Profiler stepProfiler = Profiler.create(LOGGER);
     boolean allStepsExecuted = false;
     try {
-      executeSteps(stepProfiler);
+      executeSteps();
       allStepsExecuted = true;
     } finally {
       if (listener != null) {
@@ -58,11 +74,81 @@ public final class ComputationStepExecutor {
     }
   }
 
-  private void executeSteps(Profiler stepProfiler) {
-    for (ComputationStep step : steps.instances()) {
-      stepProfiler.start();
-      step.execute();
-      stepProfiler.stopDebug(step.getDescription());
+  private void executeSteps() {
+    ExecutorService executorService = null;
+    Map<Class<? extends ComputationStep>, CompletableFuture<Void>> concurrentSteps = new LinkedHashMap<>();
+    try {
+      for (ComputationStep step : steps.instances()) {
+        Set<Class<? extends ComputationStep>> dependencies = steps.concurrentStepDependencies(step.getClass());
+        if (dependencies == null) {
+          awaitCompletion(concurrentSteps.values());
+          concurrentSteps.clear();
+          executeStep(step);
+        } else {
+          if (executorService == null) {
+            executorService = Executors.newFixedThreadPool(MAX_CONCURRENT_STEPS,
+              new ThreadFactoryBuilder().setNameFormat("CeStep-%d").setDaemon(true).build());
+          }
+          concurrentSteps.put(step.getClass(), submit(step, dependencies, concurrentSteps, executorService));
+        }
+      }
+      awaitCompletion(concurrentSteps.values());
+    } finally {
+      if (executorService != null) {
+        executorService.shutdownNow();
+      }
+    }
+  }
+
+  private static CompletableFuture<Void> submit(ComputationStep step, Set<Class<? extends ComputationStep>> dependencies,
+    Map<Class<? extends ComputationStep>, CompletableFuture<Void>> concurrentSteps, ExecutorService executorService) {
+    // dependencies which are not running concurrently are already completed
+    CompletableFuture<?>[] runningDependencies = dependencies.stream()
+      .map(concurrentSteps::get)
+      .filter(Objects::nonNull)
+      .toArray(CompletableFuture[]::new);
+    Map<String, String> logContext = MDC.getCopyOfContextMap();
+    return CompletableFuture.allOf(runningDependencies).thenRunAsync(() -> {
+      if (logContext != null) {
+        MDC.setContextMap(logContext);
+      }
+      try {
+        executeStep(step);
+      } finally {
+        MDC.clear();
+      }
+    }, executorService);
+  }
+
+  private static void executeStep(ComputationStep step) {
+    Profiler stepProfiler = Profiler.create(LOGGER).start();
+    step.execute();
+    stepProfiler.stopDebug(step.getDescription());
+  }
+
+  /**
+   * Waits for all the steps, even when one of them fails, so that no step is still running when the execution ends.
+   * The failure of the first step is then thrown as is.
+   */
+  private static void awaitCompletion(Iterable<CompletableFuture<Void>> futures) {
+    Throwable failure = null;
+    for (CompletableFuture<Void> future : futures) {
+      try {
+        future.join();
+      } catch (CompletionException | CancellationException e) {
+        if (failure == null) {
+          failure = e.getCause() == null ? e : e.getCause();
+        }
+      }
+    }
+    if (failure != null) {
+      if (failure instanceof RuntimeException) {
+        throw (RuntimeException) failure;
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      throw new IllegalStateException(failure);
     }
   }
 
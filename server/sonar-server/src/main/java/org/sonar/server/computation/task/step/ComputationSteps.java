@@ -20,6 +20,8 @@
 package org.sonar.server.computation.task.step;
 
 import java.util.List;
+import java.util.Set;
+import javax.annotation.CheckForNull;
 
 /**
  * Ordered list of steps classes and instances to be executed in a Compute Engine process.
@@ -36,4 +38,16 @@ public interface ComputationSteps {
    * ordered by execution sequence.
    */
   Iterable<ComputationStep> instances();
+
+  /**
+   * Steps which must be completed before the specified step is executed, when this step can be executed
+   * concurrently with other steps. Dependencies must precede the step in the execution sequence.
+   * <p/>
+   * Returns {@code null} when the step must be executed alone, once all the steps which precede it are completed.
+   * This is the default.
+   */
+  @CheckForNull
+  default Set<Class<? extends ComputationStep>> concurrentStepDependencies(Class<? extends ComputationStep> stepClass) {
+    return null;
+  }
 }
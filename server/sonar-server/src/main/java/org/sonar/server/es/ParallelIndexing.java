@@ -0,0 +1,93 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.sonar.core.util.stream.MoreCollectors.toList;
+
+/**
+ * Indexes slices of the database, for example all the documents of a project, with a small pool of threads.
+ * Each slice is expected to read the database with its own session and to feed a {@link BulkIndexer} shared
+ * by all slices, so that reading rows from database is not blocked by the bulk requests.
+ */
+public class ParallelIndexing {
+
+  private static final int MAX_THREADS = 4;
+
+  private ParallelIndexing() {
+    // only static methods
+  }
+
+  /**
+   * Calls {@code sliceIndexer} for each slice and waits for all of them. The first failure is thrown
+   * and cancels the slices that are not started yet.
+   */
+  public static <S> void forEach(Collection<S> slices, Consumer<S> sliceIndexer) {
+    forEach(slices, defaultThreads(Runtime.getRuntime().availableProcessors()), sliceIndexer);
+  }
+
+  @VisibleForTesting
+  static int defaultThreads(int cores) {
+    return Math.max(1, Math.min(MAX_THREADS, cores / 2));
+  }
+
+  @VisibleForTesting
+  static <S> void forEach(Collection<S> slices, int threads, Consumer<S> sliceIndexer) {
+    if (threads <= 1 || slices.size() <= 1) {
+      slices.forEach(sliceIndexer);
+      return;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, slices.size()), new ThreadFactoryBuilder()
+      .setNameFormat("es-indexer-%d")
+      .setDaemon(true)
+      .build());
+    try {
+      List<Future<?>> futures = slices.stream()
+        .map(slice -> executor.submit(() -> sliceIndexer.accept(slice)))
+        .collect(toList(slices.size()));
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while indexing", e);
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException("Fail to index", cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -45,6 +45,7 @@ import org.sonar.server.es.IndexingListener;
 import org.sonar.server.es.IndexingResult;
 import org.sonar.server.es.OneToManyResilientIndexingListener;
 import org.sonar.server.es.OneToOneResilientIndexingListener;
+import org.sonar.server.es.ParallelIndexing;
 import org.sonar.server.es.ProjectIndexer;
 import org.sonar.server.permission.index.AuthorizationScope;
 import org.sonar.server.permission.index.NeedAuthorizationIndexer;
@@ -91,9 +92,19 @@ public class IssueIndexer implements ProjectIndexer, NeedAuthorizationIndexer {
 
   @Override
   public void indexOnStartup(Set<IndexType> uninitializedIndexTypes) {
-    try (IssueIterator issues = issueIteratorFactory.createForAll()) {
-      doIndex(issues, Size.LARGE, IndexingListener.FAIL_ON_ERROR);
+    List<String> branchUuids;
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      branchUuids = dbClient.componentDao().selectAllRootUuids(dbSession);
     }
+    BulkIndexer bulk = createBulkIndexer(Size.LARGE, IndexingListener.FAIL_ON_ERROR);
+    bulk.start();
+    // each branch is read with its own DB session, so that branches are loaded in parallel
+    ParallelIndexing.forEach(branchUuids, branchUuid -> {
+      try (IssueIterator issues = issueIteratorFactory.createForProject(branchUuid)) {
+        issues.forEachRemaining(issue -> bulk.add(newIndexRequest(issue)));
+      }
+    });
+    bulk.stop();
   }
 
   @Override
@@ -43,6 +43,7 @@ import org.sonar.server.es.IndexType;
 import org.sonar.server.es.IndexingListener;
 import org.sonar.server.es.IndexingResult;
 import org.sonar.server.es.OneToOneResilientIndexingListener;
+import org.sonar.server.es.ParallelIndexing;
 import org.sonar.server.es.ProjectIndexer;
 import org.sonar.server.permission.index.AuthorizationScope;
 import org.sonar.server.permission.index.NeedAuthorizationIndexer;
@@ -69,7 +70,19 @@ public class ProjectMeasuresIndexer implements ProjectIndexer, NeedAuthorization
 
   @Override
   public void indexOnStartup(Set<IndexType> uninitializedIndexTypes) {
-    doIndex(Size.LARGE, null);
+    List<String> projectUuids;
+    try (DbSession dbSession = dbClient.openSession(false)) {
+      projectUuids = dbClient.componentDao().selectAllRootUuids(dbSession);
+    }
+    BulkIndexer bulkIndexer = createBulkIndexer(Size.LARGE, IndexingListener.FAIL_ON_ERROR);
+    bulkIndexer.start();
+    // each project is read with its own DB session, so that projects are loaded in parallel
+    ParallelIndexing.forEach(projectUuids, projectUuid -> {
+      try (DbSession dbSession = dbClient.openSession(false)) {
+        addProjects(dbSession, bulkIndexer, projectUuid);
+      }
+    });
+    bulkIndexer.stop();
   }
 
   @Override
@@ -135,16 +148,20 @@ public class ProjectMeasuresIndexer implements ProjectIndexer, NeedAuthorization
   }
 
   private void doIndex(Size size, @Nullable String projectUuid) {
-    try (DbSession dbSession = dbClient.openSession(false);
-      ProjectMeasuresIndexerIterator rowIt = ProjectMeasuresIndexerIterator.create(dbSession, projectUuid)) {
-
+    try (DbSession dbSession = dbClient.openSession(false)) {
       BulkIndexer bulkIndexer = createBulkIndexer(size, IndexingListener.FAIL_ON_ERROR);
       bulkIndexer.start();
+      addProjects(dbSession, bulkIndexer, projectUuid);
+      bulkIndexer.stop();
+    }
+  }
+
+  private static void addProjects(DbSession dbSession, BulkIndexer bulkIndexer, @Nullable String projectUuid) {
+    try (ProjectMeasuresIndexerIterator rowIt = ProjectMeasuresIndexerIterator.create(dbSession, projectUuid)) {
       while (rowIt.hasNext()) {
         ProjectMeasures doc = rowIt.next();
         bulkIndexer.add(newIndexRequest(toProjectMeasuresDoc(doc)));
       }
-      bulkIndexer.stop();
     }
   }
 
@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.List;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
@@ -79,6 +80,7 @@ public class DefaultNotificationManager implements NotificationManager {
   /**
    * Give the notification queue so that it can be processed
    */
+  @CheckForNull
   public Notification getFromQueue() {
     int batchSize = 1;
     List<NotificationQueueDto> notificationDtos = notificationQueueDao.selectOldest(batchSize);
@@ -87,13 +89,49 @@ public class DefaultNotificationManager implements NotificationManager {
     }
     notificationQueueDao.delete(notificationDtos);
 
-    return convertToNotification(notificationDtos);
+    return toNotification(notificationDtos.get(0));
   }
 
-  private Notification convertToNotification(List<NotificationQueueDto> notifications) {
+  /**
+   * Claims the oldest notifications of the queue and returns the ones claimed by this server. A claim expires after
+   * {@code claimDurationInMs}, so that the notifications claimed by a server which crashed before delivering them are
+   * eventually claimed again. Several servers may read the queue concurrently in a cluster, so a notification claimed by
+   * another server is not returned.
+   * <p>
+   * Claimed notifications are kept in queue until they are removed by {@link #removeFromQueue(List)}.
+   */
+  public List<NotificationQueueDto> claimFromQueue(int batchSize, long now, long claimDurationInMs) {
+    long expiredBefore = now - claimDurationInMs;
+    List<NotificationQueueDto> oldest = notificationQueueDao.selectOldestClaimable(batchSize, expiredBefore);
+    if (oldest.isEmpty()) {
+      return oldest;
+    }
+    return notificationQueueDao.claim(oldest, now, expiredBefore);
+  }
+
+  /**
+   * Removes claimed notifications from the queue, once they have been delivered.
+   */
+  public void removeFromQueue(List<NotificationQueueDto> notificationDtos) {
+    notificationQueueDao.delete(notificationDtos);
+  }
+
+  /**
+   * Cancels the claims of notifications which have not been delivered, so that they can be claimed again without
+   * waiting for the claims to expire.
+   */
+  public void releaseFromQueue(List<NotificationQueueDto> notificationDtos) {
+    notificationQueueDao.release(notificationDtos);
+  }
+
+  /**
+   * @return {@code null} if the notification has been queued by a previous version of SonarQube and can't be read anymore
+   * @throws SonarException if the notification can't be deserialized
+   */
+  @CheckForNull
+  public Notification toNotification(NotificationQueueDto notificationDto) {
     try {
-      // If batchSize is increased then we should return a list instead of a single element
-      return notifications.get(0).toNotification();
+      return notificationDto.toNotification();
     } catch (InvalidClassException e) {
       // SONAR-4739
       if (!alreadyLoggedDeserializationIssue) {
@@ -0,0 +1,53 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.notification;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import org.sonar.api.notifications.NotificationChannel;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Bounds the number of deliveries that are concurrently processed by each {@link NotificationChannel}, for example
+ * to not open more connections to the SMTP server than it accepts.
+ */
+class NotificationChannelLimiter {
+
+  private final int maxConcurrentDeliveries;
+  private final ConcurrentMap<String, Semaphore> permitsByChannelKey = new ConcurrentHashMap<>();
+
+  NotificationChannelLimiter(int maxConcurrentDeliveries) {
+    checkArgument(maxConcurrentDeliveries > 0, "Max number of concurrent deliveries per channel must be strictly positive: %s", maxConcurrentDeliveries);
+    this.maxConcurrentDeliveries = maxConcurrentDeliveries;
+  }
+
+  void deliver(NotificationChannel channel, Runnable delivery) throws InterruptedException {
+    Semaphore permits = permitsByChannelKey.computeIfAbsent(channel.getKey(), key -> new Semaphore(maxConcurrentDeliveries));
+    permits.acquire();
+    try {
+      delivery.run();
+    } finally {
+      permits.release();
+    }
+  }
+
+}
@@ -21,9 +21,18 @@ package org.sonar.server.notification;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.CheckForNull;
 import org.picocontainer.Startable;
 import org.sonar.api.Properties;
 import org.sonar.api.Property;
@@ -32,6 +41,7 @@ import org.sonar.api.notifications.Notification;
 import org.sonar.api.server.ServerSide;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
+import org.sonar.db.notification.NotificationQueueDto;
 
 @Properties({
   @Property(
@@ -43,28 +53,68 @@ import org.sonar.api.utils.log.Loggers;
     key = NotificationDaemon.PROPERTY_DELAY_BEFORE_REPORTING_STATUS,
     defaultValue = "600",
     name = "Delay before reporting notification status, in seconds",
+    global = false),
+  @Property(
+    key = NotificationDaemon.PROPERTY_BATCH_SIZE,
+    defaultValue = "" + NotificationDaemon.DEFAULT_BATCH_SIZE,
+    name = "Number of notifications read from the queue at once",
+    global = false),
+  @Property(
+    key = NotificationDaemon.PROPERTY_WORKERS,
+    defaultValue = "" + NotificationDaemon.DEFAULT_WORKERS,
+    name = "Number of threads delivering notifications",
+    global = false),
+  @Property(
+    key = NotificationDaemon.PROPERTY_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL,
+    defaultValue = "" + NotificationDaemon.DEFAULT_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL,
+    name = "Max number of notifications concurrently delivered by each channel",
+    global = false),
+  @Property(
+    key = NotificationDaemon.PROPERTY_CLAIM_DURATION,
+    defaultValue = "" + NotificationDaemon.DEFAULT_CLAIM_DURATION,
+    name = "Delay after which notifications claimed by a server which did not deliver them can be claimed again, in seconds",
     global = false)
 })
 @ServerSide
 public class NotificationDaemon implements Startable {
   private static final String THREAD_NAME_PREFIX = "sq-notification-service-";
+  private static final String WORKER_THREAD_NAME_PREFIX = "sq-notification-worker-";
 
   private static final Logger LOG = Loggers.get(NotificationDaemon.class);
 
   public static final String PROPERTY_DELAY = "sonar.notifications.delay";
   public static final String PROPERTY_DELAY_BEFORE_REPORTING_STATUS = "sonar.notifications.runningDelayBeforeReportingStatus";
+  public static final String PROPERTY_BATCH_SIZE = "sonar.notifications.batchSize";
+  public static final String PROPERTY_WORKERS = "sonar.notifications.workers";
+  public static final String PROPERTY_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL = "sonar.notifications.maxConcurrentDeliveriesPerChannel";
+  public static final String PROPERTY_CLAIM_DURATION = "sonar.notifications.claimDuration";
+  static final int DEFAULT_BATCH_SIZE = 100;
+  static final int DEFAULT_WORKERS = 4;
+  static final int DEFAULT_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL = 2;
+  static final long DEFAULT_CLAIM_DURATION = 3_600L;
 
   private final long delayInSeconds;
   private final long delayBeforeReportingStatusInSeconds;
+  private final int batchSize;
+  private final int workers;
+  private final long claimDurationInMs;
+  private final NotificationChannelLimiter channelLimiter;
   private final DefaultNotificationManager manager;
   private final NotificationService service;
+  private final AtomicLong deliveredCount = new AtomicLong();
+  private final AtomicLong failedCount = new AtomicLong();
 
   private ScheduledExecutorService executorService;
+  private ExecutorService workerService;
   private boolean stopping = false;
 
   public NotificationDaemon(Configuration config, DefaultNotificationManager manager, NotificationService service) {
     this.delayInSeconds = config.getLong(PROPERTY_DELAY).get();
     this.delayBeforeReportingStatusInSeconds = config.getLong(PROPERTY_DELAY_BEFORE_REPORTING_STATUS).get();
+    this.batchSize = config.getInt(PROPERTY_BATCH_SIZE).orElse(DEFAULT_BATCH_SIZE);
+    this.workers = config.getInt(PROPERTY_WORKERS).orElse(DEFAULT_WORKERS);
+    this.claimDurationInMs = config.getLong(PROPERTY_CLAIM_DURATION).orElse(DEFAULT_CLAIM_DURATION) * 1000;
+    this.channelLimiter = new NotificationChannelLimiter(config.getInt(PROPERTY_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL).orElse(DEFAULT_MAX_CONCURRENT_DELIVERIES_PER_CHANNEL));
     this.manager = manager;
     this.service = service;
   }
@@ -76,14 +126,22 @@ public class NotificationDaemon implements Startable {
         .setNameFormat(THREAD_NAME_PREFIX + "%d")
         .setPriority(Thread.MIN_PRIORITY)
         .build());
+    workerService = Executors.newFixedThreadPool(workers,
+      new ThreadFactoryBuilder()
+        .setNameFormat(WORKER_THREAD_NAME_PREFIX + "%d")
+        .setPriority(Thread.MIN_PRIORITY)
+        .build());
     executorService.scheduleWithFixedDelay(() -> {
       try {
         processQueue();
+      } catch (InterruptedException e) {
+        // stopping
+        Thread.currentThread().interrupt();
       } catch (Exception e) {
         LOG.error("Error in NotificationService", e);
       }
     }, 0, delayInSeconds, TimeUnit.SECONDS);
-    LOG.info("Notification service started (delay {} sec.)", delayInSeconds);
+    LOG.info("Notification service started (delay {} sec., {} workers)", delayInSeconds, workers);
   }
 
   @Override
@@ -91,7 +149,13 @@ public class NotificationDaemon implements Startable {
     try {
       stopping = true;
       executorService.shutdown();
-      executorService.awaitTermination(5, TimeUnit.SECONDS);
+      workerService.shutdown();
+      if (!executorService.awaitTermination(5, TimeUnit.SECONDS)) {
+        // interrupts the delivery of the current batch, so that its pending notifications are released
+        executorService.shutdownNow();
+        executorService.awaitTermination(5, TimeUnit.SECONDS);
+      }
+      workerService.awaitTermination(5, TimeUnit.SECONDS);
     } catch (InterruptedException e) {
       LOG.error("Error during stop of notification service", e);
       Thread.currentThread().interrupt();
@@ -99,15 +163,19 @@ public class NotificationDaemon implements Startable {
     LOG.info("Notification service stopped");
   }
 
-  private synchronized void processQueue() {
+  private synchronized void processQueue() throws InterruptedException {
     long start = now();
     long lastLog = start;
     long notifSentCount = 0;
+    long lastRemainingNotifCount = -1;
 
-    Notification notifToSend = manager.getFromQueue();
-    while (notifToSend != null) {
-      service.deliver(notifToSend);
-      notifSentCount++;
+    // notifications are claimed before being delivered, so that they are delivered by a single node of the cluster,
+    // and are removed from the queue once delivered. The claims of the notifications which are not delivered when the
+    // server stops are released, and the ones of a server which crashed expire, so that they are delivered again.
+    List<NotificationQueueDto> batch = manager.claimFromQueue(batchSize, start, claimDurationInMs);
+    while (!batch.isEmpty()) {
+      deliver(batch);
+      notifSentCount += batch.size();
       if (stopping) {
         break;
       }
@@ -117,11 +185,83 @@ public class NotificationDaemon implements Startable {
         lastLog = now;
         long spentTimeInMinutes = (now - start) / (60 * 1000);
         log(notifSentCount, remainingNotifCount, spentTimeInMinutes);
+        if (lastRemainingNotifCount >= 0 && remainingNotifCount > lastRemainingNotifCount) {
+          LOG.warn("Notifications are queued faster than they are delivered ({} waiting, {} previously). " +
+            "Consider increasing the property {}.", remainingNotifCount, lastRemainingNotifCount, PROPERTY_WORKERS);
+        }
+        lastRemainingNotifCount = remainingNotifCount;
+      }
+      batch = manager.claimFromQueue(batchSize, now, claimDurationInMs);
+    }
+  }
+
+  private void deliver(List<NotificationQueueDto> batch) throws InterruptedException {
+    List<NotificationQueueDto> processed = new ArrayList<>(batch.size());
+    try {
+      Map<NotificationQueueDto, Future<?>> deliveries = new LinkedHashMap<>();
+      for (NotificationQueueDto dto : batch) {
+        Notification notification = toNotification(dto);
+        if (notification == null) {
+          // the notification would block the queue forever if it was kept
+          failedCount.incrementAndGet();
+          processed.add(dto);
+        } else {
+          deliveries.put(dto, workerService.submit(() -> {
+            service.deliver(notification, channelLimiter);
+            return null;
+          }));
+        }
+      }
+      for (Map.Entry<NotificationQueueDto, Future<?>> delivery : deliveries.entrySet()) {
+        try {
+          delivery.getValue().get();
+          deliveredCount.incrementAndGet();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof InterruptedException) {
+            // the worker has been interrupted by the stop of the server before delivering the notification
+            continue;
+          }
+          failedCount.incrementAndGet();
+          LOG.error("Fail to deliver notification", e.getCause());
+        }
+        processed.add(delivery.getKey());
       }
-      notifToSend = manager.getFromQueue();
+    } finally {
+      if (!processed.isEmpty()) {
+        manager.removeFromQueue(processed);
+      }
+      if (processed.size() < batch.size()) {
+        List<NotificationQueueDto> pending = new ArrayList<>(batch);
+        pending.removeAll(processed);
+        manager.releaseFromQueue(pending);
+      }
+    }
+  }
+
+  @CheckForNull
+  private Notification toNotification(NotificationQueueDto dto) {
+    try {
+      return manager.toNotification(dto);
+    } catch (RuntimeException e) {
+      LOG.error("Notification is ignored because it can't be read", e);
+      return null;
     }
   }
 
+  /**
+   * Number of notifications delivered since startup
+   */
+  public long getDeliveredCount() {
+    return deliveredCount.get();
+  }
+
+  /**
+   * Number of notifications which could not be read or delivered since startup. They are removed from the queue.
+   */
+  public long getFailedCount() {
+    return failedCount.get();
+  }
+
   @VisibleForTesting
   void log(long notifSentCount, long remainingNotifCount, long spentTimeInMinutes) {
     LOG.info("{} notifications sent during the past {} minutes and {} still waiting to be sent",
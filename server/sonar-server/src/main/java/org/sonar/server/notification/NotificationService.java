@@ -60,6 +60,27 @@ public class NotificationService {
   }
 
   public void deliver(Notification notification) {
+    SetMultimap<String, NotificationChannel> recipients = findRecipients(notification);
+    for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
+      for (NotificationChannel channel : entry.getValue()) {
+        deliver(notification, entry.getKey(), channel);
+      }
+    }
+  }
+
+  /**
+   * Same as {@link #deliver(Notification)}, but the concurrent deliveries of each channel are bounded by {@code limiter}.
+   */
+  void deliver(Notification notification, NotificationChannelLimiter limiter) throws InterruptedException {
+    SetMultimap<String, NotificationChannel> recipients = findRecipients(notification);
+    for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
+      for (NotificationChannel channel : entry.getValue()) {
+        limiter.deliver(channel, () -> deliver(notification, entry.getKey(), channel));
+      }
+    }
+  }
+
+  private SetMultimap<String, NotificationChannel> findRecipients(Notification notification) {
     SetMultimap<String, NotificationChannel> recipients = HashMultimap.create();
     for (NotificationDispatcher dispatcher : dispatchers) {
       NotificationDispatcher.Context context = new ContextImpl(recipients);
@@ -70,22 +91,16 @@ public class NotificationService {
         LOG.warn(String.format("Unable to dispatch notification %s using %s", notification, dispatcher), e);
       }
     }
-    dispatch(notification, recipients);
+    return recipients;
   }
 
-  private static void dispatch(Notification notification, SetMultimap<String, NotificationChannel> recipients) {
-    for (Map.Entry<String, Collection<NotificationChannel>> entry : recipients.asMap().entrySet()) {
-      String username = entry.getKey();
-      Collection<NotificationChannel> userChannels = entry.getValue();
-      LOG.debug("For user {} via {}", username, userChannels);
-      for (NotificationChannel channel : userChannels) {
-        try {
-          channel.deliver(notification, username);
-        } catch (Exception e) {
-          // catch all exceptions in order to deliver via other channels
-          LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
-        }
-      }
+  private static void deliver(Notification notification, String username, NotificationChannel channel) {
+    LOG.debug("For user {} via {}", username, channel);
+    try {
+      channel.deliver(notification, username);
+    } catch (Exception e) {
+      // catch all exceptions in order to deliver via other channels
+      LOG.warn("Unable to deliver notification " + notification + " for user " + username + " via " + channel, e);
     }
   }
 
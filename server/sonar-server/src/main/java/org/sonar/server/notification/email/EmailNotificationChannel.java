@@ -21,9 +21,20 @@ package org.sonar.server.notification.email;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.mail.EmailException;
 import org.apache.commons.mail.SimpleEmail;
+import org.picocontainer.Startable;
 import org.sonar.api.config.EmailSettings;
 import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
@@ -45,7 +56,7 @@ import org.sonar.plugins.emailnotifications.api.EmailTemplate;
  *
  * @since 2.10
  */
-public class EmailNotificationChannel extends NotificationChannel {
+public class EmailNotificationChannel extends NotificationChannel implements Startable {
 
   private static final Logger LOG = Loggers.get(EmailNotificationChannel.class);
 
@@ -55,6 +66,12 @@ public class EmailNotificationChannel extends NotificationChannel {
    */
   private static final int SOCKET_TIMEOUT = 30_000;
 
+  /**
+   * Connections to the SMTP server which have not been used for this delay are closed rather than reused, as the
+   * server has probably closed them already.
+   */
+  private static final long MAX_IDLE_CONNECTION_DURATION = 30_000L;
+
   /**
    * Email Header Field: "List-ID".
    * Value of this field should contain mailing list identifier as specified in <a href="http://tools.ietf.org/html/rfc2919">RFC 2919</a>.
@@ -86,6 +103,12 @@ public class EmailNotificationChannel extends NotificationChannel {
   private EmailTemplate[] templates;
   private UserFinder userFinder;
 
+  /**
+   * Connections to the SMTP server which are not used by a delivery. The most recently used ones are at the head, so
+   * that the other ones expire when fewer connections are needed.
+   */
+  private final Deque<IdleConnection> idleConnections = new ArrayDeque<>();
+
   public EmailNotificationChannel(EmailSettings configuration, EmailTemplate[] templates, UserFinder userFinder) {
     this.configuration = configuration;
     this.templates = templates;
@@ -178,13 +201,137 @@ public class EmailNotificationChannel extends NotificationChannel {
       }
       email.setSocketConnectionTimeout(SOCKET_TIMEOUT);
       email.setSocketTimeout(SOCKET_TIMEOUT);
-      email.send();
+      email.buildMimeMessage();
+      sendMimeMessage(email.getMailSession(), email.getMimeMessage());
 
     } finally {
       Thread.currentThread().setContextClassLoader(classloader);
     }
   }
 
+  /**
+   * Same as {@link SimpleEmail#sendMimeMessage()}, except that the connection to the SMTP server is reused by the
+   * next emails instead of being closed.
+   */
+  private void sendMimeMessage(Session session, MimeMessage message) throws EmailException {
+    String connectionKey = connectionKey();
+    try {
+      message.saveChanges();
+      Transport idle = takeIdleConnection(connectionKey);
+      if (idle != null) {
+        try {
+          sendMimeMessage(idle, message, connectionKey);
+          return;
+        } catch (SendFailedException e) {
+          throw e;
+        } catch (MessagingException e) {
+          // the server closed the connection in the meantime
+          LOG.debug("Fail to reuse connection to SMTP server", e);
+        }
+      }
+      Transport transport = session.getTransport();
+      transport.connect();
+      sendMimeMessage(transport, message, connectionKey);
+    } catch (MessagingException e) {
+      throw new EmailException("Sending the email to the following server failed : " + configuration.getSmtpHost() + ":" + configuration.getSmtpPort(), e);
+    }
+  }
+
+  private void sendMimeMessage(Transport transport, MimeMessage message, String connectionKey) throws MessagingException {
+    try {
+      transport.sendMessage(message, message.getAllRecipients());
+    } catch (SendFailedException e) {
+      // the connection is still valid, only the recipients were rejected
+      releaseConnection(transport, connectionKey);
+      throw e;
+    } catch (MessagingException e) {
+      close(transport);
+      throw e;
+    }
+    releaseConnection(transport, connectionKey);
+  }
+
+  /**
+   * Connections can't be reused once SMTP settings have been changed
+   */
+  private String connectionKey() {
+    return String.join("|", configuration.getSmtpHost(), String.valueOf(configuration.getSmtpPort()),
+      StringUtils.defaultString(configuration.getSecureConnection()), StringUtils.defaultString(configuration.getSmtpUsername()),
+      StringUtils.defaultString(configuration.getSmtpPassword()));
+  }
+
+  @CheckForNull
+  private Transport takeIdleConnection(String connectionKey) {
+    long now = System.currentTimeMillis();
+    List<Transport> expired = new ArrayList<>();
+    Transport reusable = null;
+    synchronized (idleConnections) {
+      while (reusable == null && !idleConnections.isEmpty()) {
+        IdleConnection idle = idleConnections.pollFirst();
+        if (idle.key.equals(connectionKey) && now - idle.since < MAX_IDLE_CONNECTION_DURATION && idle.transport.isConnected()) {
+          reusable = idle.transport;
+        } else {
+          expired.add(idle.transport);
+        }
+      }
+      if (!idleConnections.isEmpty() && now - idleConnections.peekLast().since >= MAX_IDLE_CONNECTION_DURATION) {
+        expired.add(idleConnections.pollLast().transport);
+      }
+    }
+    expired.forEach(EmailNotificationChannel::close);
+    return reusable;
+  }
+
+  private void releaseConnection(Transport transport, String connectionKey) {
+    synchronized (idleConnections) {
+      idleConnections.addFirst(new IdleConnection(transport, connectionKey, System.currentTimeMillis()));
+    }
+  }
+
+  private static void close(Transport transport) {
+    try {
+      transport.close();
+    } catch (MessagingException e) {
+      LOG.debug("Fail to close connection to SMTP server", e);
+    }
+  }
+
+  /**
+   * Visibility has been relaxed for tests.
+   */
+  int idleConnectionCount() {
+    synchronized (idleConnections) {
+      return idleConnections.size();
+    }
+  }
+
+  @Override
+  public void start() {
+    // nothing to do
+  }
+
+  @Override
+  public void stop() {
+    List<IdleConnection> connections;
+    synchronized (idleConnections) {
+      connections = new ArrayList<>(idleConnections);
+      idleConnections.clear();
+    }
+    connections.forEach(idle -> close(idle.transport));
+  }
+
+  private static final class IdleConnection {
+    private final Transport transport;
+    private final String key;
+    private final long since;
+
+    private IdleConnection(Transport transport, String key, long since) {
+      this.transport = transport;
+      this.key = key;
+      this.since = since;
+    }
+  }
+
   private void configureSecureConnection(SimpleEmail email) {
     if (StringUtils.equalsIgnoreCase(configuration.getSecureConnection(), "ssl")) {
       email.setSSLOnConnect(true);
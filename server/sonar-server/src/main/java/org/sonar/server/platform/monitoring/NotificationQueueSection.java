@@ -0,0 +1,71 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo.Section;
+import org.sonar.server.notification.DefaultNotificationManager;
+import org.sonar.server.notification.NotificationDaemon;
+
+import static org.sonar.process.systeminfo.SystemInfoUtils.setAttribute;
+
+/**
+ * Delivery of the queued notifications. A queue which keeps growing means that notifications are queued faster
+ * than they are delivered.
+ */
+public class NotificationQueueSection extends BaseSectionMBean implements NotificationQueueSectionMBean {
+
+  private final DefaultNotificationManager manager;
+  private final NotificationDaemon daemon;
+
+  public NotificationQueueSection(DefaultNotificationManager manager, NotificationDaemon daemon) {
+    this.manager = manager;
+    this.daemon = daemon;
+  }
+
+  @Override
+  public String name() {
+    return "NotificationQueue";
+  }
+
+  @Override
+  public long getPendingCount() {
+    return manager.count();
+  }
+
+  @Override
+  public long getDeliveredCount() {
+    return daemon.getDeliveredCount();
+  }
+
+  @Override
+  public long getFailedCount() {
+    return daemon.getFailedCount();
+  }
+
+  @Override
+  public Section toProtobuf() {
+    Section.Builder protobuf = Section.newBuilder();
+    protobuf.setName("Web Notification Queue");
+    setAttribute(protobuf, "Pending", getPendingCount());
+    setAttribute(protobuf, "Delivered", getDeliveredCount());
+    setAttribute(protobuf, "Failed", getFailedCount());
+    return protobuf.build();
+  }
+}
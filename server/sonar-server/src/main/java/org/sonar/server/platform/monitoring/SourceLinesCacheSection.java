@@ -0,0 +1,73 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo.Section;
+import org.sonar.server.source.SourceLinesCache;
+
+import static org.sonar.process.systeminfo.SystemInfoUtils.setAttribute;
+
+/**
+ * Usage of the cache of source lines displayed by web services
+ */
+public class SourceLinesCacheSection extends BaseSectionMBean implements SourceLinesCacheSectionMBean {
+
+  private final SourceLinesCache cache;
+
+  public SourceLinesCacheSection(SourceLinesCache cache) {
+    this.cache = cache;
+  }
+
+  @Override
+  public String name() {
+    return "SourceLinesCache";
+  }
+
+  @Override
+  public long getHitCount() {
+    return cache.stats().hitCount();
+  }
+
+  @Override
+  public long getMissCount() {
+    return cache.stats().missCount();
+  }
+
+  @Override
+  public long getEvictionCount() {
+    return cache.stats().evictionCount();
+  }
+
+  @Override
+  public long getSize() {
+    return cache.size();
+  }
+
+  @Override
+  public Section toProtobuf() {
+    Section.Builder protobuf = Section.newBuilder();
+    protobuf.setName("Web Source Lines Cache");
+    setAttribute(protobuf, "Hits", getHitCount());
+    setAttribute(protobuf, "Misses", getMissCount());
+    setAttribute(protobuf, "Evictions", getEvictionCount());
+    setAttribute(protobuf, "Size", getSize());
+    return protobuf.build();
+  }
+}
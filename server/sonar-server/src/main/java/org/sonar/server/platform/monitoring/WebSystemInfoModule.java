@@ -47,8 +47,10 @@ public class WebSystemInfoModule {
       EsStateSection.class,
       EsIndexesSection.class,
       LoggingSection.class,
+      NotificationQueueSection.class,
       PluginsSection.class,
       SettingsSection.class,
+      SourceLinesCacheSection.class,
       StandaloneSystemSection.class,
 
       OfficialDistribution.class,
@@ -68,8 +70,10 @@ public class WebSystemInfoModule {
       GlobalSystemSection.class,
       LoggingSection.class,
       NodeSystemSection.class,
+      NotificationQueueSection.class,
       PluginsSection.class,
       SettingsSection.class,
+      SourceLinesCacheSection.class,
 
       OfficialDistribution.class,
 
@@ -180,6 +180,7 @@ import org.sonar.server.rule.ws.TagsAction;
 import org.sonar.server.serverid.ws.ServerIdWsModule;
 import org.sonar.server.setting.ws.SettingsWsModule;
 import org.sonar.server.source.HtmlSourceDecorator;
+import org.sonar.server.source.SourceLinesCache;
 import org.sonar.server.source.SourceService;
 import org.sonar.server.source.ws.HashAction;
 import org.sonar.server.source.ws.IndexAction;
@@ -435,6 +436,7 @@ public class PlatformLevel4 extends PlatformLevel {
 
       // source
       HtmlSourceDecorator.class,
+      SourceLinesCache.class,
       SourceService.class,
       SourcesWs.class,
       org.sonar.server.source.ws.ShowAction.class,
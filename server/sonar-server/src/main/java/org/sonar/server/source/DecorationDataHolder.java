@@ -19,73 +19,101 @@
  */
 package org.sonar.server.source;
 
-import com.google.common.collect.Lists;
-
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Iterator;
 import java.util.List;
 
+/**
+ * Offsets of the HTML tags to be injected in a text, parsed once from the serialized highlighting and symbols into
+ * arrays sorted by offset. Tags starting at the same offset are kept in the order they are loaded.
+ */
 class DecorationDataHolder {
 
-  private static final String ENTITY_SEPARATOR = ";";
-  private static final String FIELD_SEPARATOR = ",";
+  private static final char ENTITY_SEPARATOR = ';';
+  private static final char FIELD_SEPARATOR = ',';
   private static final String SYMBOL_PREFIX = "sym-";
   private static final String HIGHLIGHTABLE = "sym";
+  private static final int INITIAL_CAPACITY = 16;
 
-  private List<OpeningHtmlTag> openingTagsEntries;
+  private int[] openingTagsOffsets = new int[INITIAL_CAPACITY];
+  private String[] openingTagsCssClasses = new String[INITIAL_CAPACITY];
+  private int openingTagsCount;
   private int openingTagsIndex;
-  private List<Integer> closingTagsOffsets;
+  private int[] closingTagsOffsets = new int[INITIAL_CAPACITY];
+  private int closingTagsCount;
   private int closingTagsIndex;
 
-  DecorationDataHolder() {
-    openingTagsEntries = Lists.newArrayList();
-    closingTagsOffsets = Lists.newArrayList();
-  }
-
   void loadSymbolReferences(String symbolsReferences) {
-    String[] symbols = symbolsReferences.split(ENTITY_SEPARATOR);
-    for (String symbol : symbols) {
-      String[] symbolFields = symbol.split(FIELD_SEPARATOR);
-      int declarationStartOffset = Integer.parseInt(symbolFields[0]);
-      int declarationEndOffset = Integer.parseInt(symbolFields[1]);
+    for (int entityStart = 0; entityStart < symbolsReferences.length(); entityStart = entityEnd(symbolsReferences, entityStart) + 1) {
+      int entityEnd = entityEnd(symbolsReferences, entityStart);
+      if (entityEnd == entityStart) {
+        continue;
+      }
+      int declarationEnd = fieldEnd(symbolsReferences, entityStart, entityEnd);
+      int endEnd = fieldEnd(symbolsReferences, declarationEnd + 1, entityEnd);
+      int declarationStartOffset = parseInt(symbolsReferences, entityStart, declarationEnd);
+      int declarationEndOffset = parseInt(symbolsReferences, declarationEnd + 1, endEnd);
       int symbolLength = declarationEndOffset - declarationStartOffset;
-      String[] symbolOccurrences = Arrays.copyOfRange(symbolFields, 2, symbolFields.length);
-      loadSymbolOccurrences(declarationStartOffset, symbolLength, symbolOccurrences);
+      String cssClass = symbolCssClass(declarationStartOffset);
+      for (int occurrenceStart = endEnd + 1; occurrenceStart < entityEnd; occurrenceStart = fieldEnd(symbolsReferences, occurrenceStart, entityEnd) + 1) {
+        int occurrenceStartOffset = parseInt(symbolsReferences, occurrenceStart, fieldEnd(symbolsReferences, occurrenceStart, entityEnd));
+        addTag(occurrenceStartOffset, occurrenceStartOffset + symbolLength, cssClass);
+      }
     }
+    sortTags();
   }
 
   void loadLineSymbolReferences(String symbolsReferences) {
-    String[] symbols = symbolsReferences.split(ENTITY_SEPARATOR);
-    for (String symbol : symbols) {
-      String[] symbolFields = symbol.split(FIELD_SEPARATOR);
-      int startOffset = Integer.parseInt(symbolFields[0]);
-      int endOffset = Integer.parseInt(symbolFields[1]);
-      int symbolLength = endOffset - startOffset;
-      int symbolId = Integer.parseInt(symbolFields[2]);
-      loadSymbolOccurrences(symbolId, symbolLength, new String[] { Integer.toString(startOffset) });
+    for (int entityStart = 0; entityStart < symbolsReferences.length(); entityStart = entityEnd(symbolsReferences, entityStart) + 1) {
+      int entityEnd = entityEnd(symbolsReferences, entityStart);
+      if (entityEnd == entityStart) {
+        continue;
+      }
+      int startEnd = fieldEnd(symbolsReferences, entityStart, entityEnd);
+      int endEnd = fieldEnd(symbolsReferences, startEnd + 1, entityEnd);
+      int startOffset = parseInt(symbolsReferences, entityStart, startEnd);
+      int endOffset = parseInt(symbolsReferences, startEnd + 1, endEnd);
+      int symbolId = parseInt(symbolsReferences, endEnd + 1, fieldEnd(symbolsReferences, endEnd + 1, entityEnd));
+      addTag(startOffset, endOffset, symbolCssClass(symbolId));
     }
+    sortTags();
   }
 
-
   void loadSyntaxHighlightingData(String syntaxHighlightingRules) {
-    String[] rules = syntaxHighlightingRules.split(ENTITY_SEPARATOR);
-    for (String rule : rules) {
-      String[] ruleFields = rule.split(FIELD_SEPARATOR);
-      int startOffset = Integer.parseInt(ruleFields[0]);
-      int endOffset = Integer.parseInt(ruleFields[1]);
+    for (int entityStart = 0; entityStart < syntaxHighlightingRules.length(); entityStart = entityEnd(syntaxHighlightingRules, entityStart) + 1) {
+      int entityEnd = entityEnd(syntaxHighlightingRules, entityStart);
+      if (entityEnd == entityStart) {
+        continue;
+      }
+      int startEnd = fieldEnd(syntaxHighlightingRules, entityStart, entityEnd);
+      int endEnd = fieldEnd(syntaxHighlightingRules, startEnd + 1, entityEnd);
+      int startOffset = parseInt(syntaxHighlightingRules, entityStart, startEnd);
+      int endOffset = parseInt(syntaxHighlightingRules, startEnd + 1, endEnd);
       if (startOffset < endOffset) {
-        insertAndPreserveOrder(new OpeningHtmlTag(startOffset, ruleFields[2]), openingTagsEntries);
-        insertAndPreserveOrder(endOffset, closingTagsOffsets);
+        String cssClass = syntaxHighlightingRules.substring(Math.min(endEnd + 1, entityEnd), fieldEnd(syntaxHighlightingRules, endEnd + 1, entityEnd));
+        addTag(startOffset, endOffset, cssClass);
       }
     }
+    sortTags();
   }
 
   List<OpeningHtmlTag> getOpeningTagsEntries() {
-    return openingTagsEntries;
+    List<OpeningHtmlTag> entries = new ArrayList<>(openingTagsCount);
+    for (int i = 0; i < openingTagsCount; i++) {
+      entries.add(new OpeningHtmlTag(openingTagsOffsets[i], openingTagsCssClasses[i]));
+    }
+    return entries;
   }
 
-  OpeningHtmlTag getCurrentOpeningTagEntry() {
-    return openingTagsIndex < openingTagsEntries.size() ? openingTagsEntries.get(openingTagsIndex) : null;
+  /**
+   * Start offset of the next tag to open, or -1 if all tags are open.
+   */
+  int getCurrentOpeningTagOffset() {
+    return openingTagsIndex < openingTagsCount ? openingTagsOffsets[openingTagsIndex] : -1;
+  }
+
+  String getCurrentOpeningTagCssClass() {
+    return openingTagsCssClasses[openingTagsIndex];
   }
 
   void nextOpeningTagEntry() {
@@ -93,41 +121,90 @@ class DecorationDataHolder {
   }
 
   List<Integer> getClosingTagsOffsets() {
-    return closingTagsOffsets;
+    List<Integer> offsets = new ArrayList<>(closingTagsCount);
+    for (int i = 0; i < closingTagsCount; i++) {
+      offsets.add(closingTagsOffsets[i]);
+    }
+    return offsets;
   }
 
   int getCurrentClosingTagOffset() {
-    return closingTagsIndex < closingTagsOffsets.size() ? closingTagsOffsets.get(closingTagsIndex) : -1;
+    return closingTagsIndex < closingTagsCount ? closingTagsOffsets[closingTagsIndex] : -1;
   }
 
   void nextClosingTagOffset() {
     closingTagsIndex++;
   }
 
-  private void loadSymbolOccurrences(int declarationStartOffset, int symbolLength, String[] symbolOccurrences) {
-    for (String symbolOccurrence : symbolOccurrences) {
-      int occurrenceStartOffset = Integer.parseInt(symbolOccurrence);
-      int occurrenceEndOffset = occurrenceStartOffset + symbolLength;
-      insertAndPreserveOrder(new OpeningHtmlTag(occurrenceStartOffset, SYMBOL_PREFIX + declarationStartOffset + " " + HIGHLIGHTABLE), openingTagsEntries);
-      insertAndPreserveOrder(occurrenceEndOffset, closingTagsOffsets);
+  private static String symbolCssClass(int symbolId) {
+    return SYMBOL_PREFIX + symbolId + " " + HIGHLIGHTABLE;
+  }
+
+  private void addTag(int startOffset, int endOffset, String cssClass) {
+    if (openingTagsCount == openingTagsOffsets.length) {
+      openingTagsOffsets = Arrays.copyOf(openingTagsOffsets, openingTagsCount * 2);
+      openingTagsCssClasses = Arrays.copyOf(openingTagsCssClasses, openingTagsCount * 2);
+    }
+    openingTagsOffsets[openingTagsCount] = startOffset;
+    openingTagsCssClasses[openingTagsCount] = cssClass;
+    openingTagsCount++;
+
+    if (closingTagsCount == closingTagsOffsets.length) {
+      closingTagsOffsets = Arrays.copyOf(closingTagsOffsets, closingTagsCount * 2);
     }
+    closingTagsOffsets[closingTagsCount] = endOffset;
+    closingTagsCount++;
   }
 
-  private void insertAndPreserveOrder(OpeningHtmlTag newEntry, List<OpeningHtmlTag> openingHtmlTags) {
-    int insertionIndex = 0;
-    Iterator<OpeningHtmlTag> tagIterator = openingHtmlTags.iterator();
-    while (tagIterator.hasNext() && tagIterator.next().getStartOffset() <= newEntry.getStartOffset()) {
-      insertionIndex++;
+  /**
+   * Opening tags are sorted by offset then by order of loading, each being packed in a long as
+   * {@code offset << 32 | index}.
+   */
+  private void sortTags() {
+    long[] keys = new long[openingTagsCount];
+    for (int i = 0; i < openingTagsCount; i++) {
+      keys[i] = ((long) openingTagsOffsets[i] << 32) | i;
     }
-    openingHtmlTags.add(insertionIndex, newEntry);
+    Arrays.sort(keys);
+    String[] cssClasses = Arrays.copyOf(openingTagsCssClasses, openingTagsCount);
+    for (int i = 0; i < openingTagsCount; i++) {
+      openingTagsOffsets[i] = (int) (keys[i] >> 32);
+      openingTagsCssClasses[i] = cssClasses[(int) keys[i]];
+    }
+    Arrays.sort(closingTagsOffsets, 0, closingTagsCount);
+  }
+
+  private static int entityEnd(String s, int from) {
+    int end = s.indexOf(ENTITY_SEPARATOR, from);
+    return end < 0 ? s.length() : end;
   }
 
-  private void insertAndPreserveOrder(int newOffset, List<Integer> orderedOffsets) {
-    int insertionIndex = 0;
-    Iterator<Integer> entriesIterator = orderedOffsets.iterator();
-    while (entriesIterator.hasNext() && entriesIterator.next() <= newOffset) {
-      insertionIndex++;
+  private static int fieldEnd(String s, int from, int entityEnd) {
+    for (int i = from; i < entityEnd; i++) {
+      if (s.charAt(i) == FIELD_SEPARATOR) {
+        return i;
+      }
+    }
+    return entityEnd;
+  }
+
+  /**
+   * Parses the unsigned integer of {@code s} between {@code begin} and {@code end} without creating a substring.
+   * Other values fall back to {@link Integer#parseInt(String)}.
+   */
+  private static int parseInt(String s, int begin, int end) {
+    // 9 digits never overflow an int
+    if (begin >= end || end - begin > 9) {
+      return Integer.parseInt(s.substring(Math.min(begin, end), end));
+    }
+    int value = 0;
+    for (int i = begin; i < end; i++) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return Integer.parseInt(s.substring(begin, end));
+      }
+      value = value * 10 + (c - '0');
     }
-    orderedOffsets.add(insertionIndex, newOffset);
+    return value;
   }
 }
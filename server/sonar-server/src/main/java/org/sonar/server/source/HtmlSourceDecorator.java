@@ -19,7 +19,6 @@
  */
 package org.sonar.server.source;
 
-import java.util.List;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.apache.commons.lang.StringUtils;
@@ -38,17 +37,10 @@ public class HtmlSourceDecorator {
     if (StringUtils.isNotBlank(symbols)) {
       decorationDataHolder.loadLineSymbolReferences(symbols);
     }
-    HtmlTextDecorator textDecorator = new HtmlTextDecorator();
-    List<String> decoratedSource = textDecorator.decorateTextWithHtml(sourceLine, decorationDataHolder, 1, 1);
-    if (decoratedSource == null) {
-      return null;
-    } else {
-      if (decoratedSource.isEmpty()) {
-        return "";
-      } else {
-        return decoratedSource.get(0);
-      }
-    }
+    // only the first line is emitted, directly into the result
+    StringBuilder decoratedSource = new StringBuilder(sourceLine.length());
+    new HtmlTextDecorator().decorateTextWithHtml(sourceLine, decorationDataHolder, 1, 1, decoratedSource::append);
+    return decoratedSource.toString();
   }
 
 }
@@ -19,16 +19,12 @@
  */
 package org.sonar.server.source;
 
-import com.google.common.io.Closeables;
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-import java.util.Collection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.function.Consumer;
 import javax.annotation.Nullable;
-import org.sonar.api.utils.log.Loggers;
-
-import static com.google.common.collect.Lists.newArrayList;
 
 class HtmlTextDecorator {
 
@@ -41,83 +37,95 @@ class HtmlTextDecorator {
   static final String ENCODED_HTML_CLOSING = "&gt;";
   static final String ENCODED_AMPERSAND = "&amp;";
 
+  private static final int END_OF_STREAM = -1;
+
   List<String> decorateTextWithHtml(String text, DecorationDataHolder decorationDataHolder) {
     return decorateTextWithHtml(text, decorationDataHolder, null, null);
   }
 
   List<String> decorateTextWithHtml(String text, DecorationDataHolder decorationDataHolder, @Nullable Integer from, @Nullable Integer to) {
+    List<String> decoratedHtmlLines = new ArrayList<>();
+    decorateTextWithHtml(text, decorationDataHolder, from, to, line -> decoratedHtmlLines.add(line.toString()));
+    return decoratedHtmlLines;
+  }
 
+  /**
+   * Decorates the text in a single pass. Each line in the range is given to {@code lineConsumer} as a builder which is
+   * reused for the next line, so it must be copied if it is retained.
+   */
+  void decorateTextWithHtml(String text, DecorationDataHolder decorationDataHolder, @Nullable Integer from, @Nullable Integer to,
+    Consumer<CharSequence> lineConsumer) {
     StringBuilder currentHtmlLine = new StringBuilder();
-    List<String> decoratedHtmlLines = newArrayList();
+    // most recently opened tag first
+    Deque<String> openTags = new ArrayDeque<>();
     int currentLine = 1;
-
-    BufferedReader stringBuffer = null;
-    try {
-      stringBuffer = new BufferedReader(new StringReader(text));
-
-      CharactersReader charsReader = new CharactersReader(stringBuffer);
-
-      while (charsReader.readNextChar()) {
-        if (shouldStop(currentLine, to)) {
-          break;
-        }
-        if (shouldStartNewLine(charsReader)) {
-          if (canAddLine(currentLine, from)) {
-            decoratedHtmlLines.add(currentHtmlLine.toString());
-          }
-          currentLine++;
-          currentHtmlLine = new StringBuilder();
-        }
-        addCharToCurrentLine(charsReader, currentHtmlLine, decorationDataHolder);
+    int previousValue = 0;
+    int currentValue = 0;
+    int currentIndex = 0;
+
+    for (; currentIndex < text.length(); currentIndex++) {
+      previousValue = currentValue;
+      currentValue = text.charAt(currentIndex);
+      if (shouldStop(currentLine, to)) {
+        break;
       }
-
-      closeCurrentSyntaxTags(charsReader, currentHtmlLine);
-
-      if (shouldStartNewLine(charsReader)) {
-        addLine(decoratedHtmlLines, currentHtmlLine.toString(), currentLine, from, to);
+      if (shouldStartNewLine(previousValue, currentValue)) {
+        if (canAddLine(currentLine, from)) {
+          lineConsumer.accept(currentHtmlLine);
+        }
         currentLine++;
-        addLine(decoratedHtmlLines, "", currentLine, from, to);
-      } else if (currentHtmlLine.length() > 0) {
-        addLine(decoratedHtmlLines, currentHtmlLine.toString(), currentLine, from, to);
+        currentHtmlLine.setLength(0);
       }
-
-    } catch (IOException exception) {
-      String errorMsg = "An exception occurred while highlighting the syntax of one of the project's files";
-      Loggers.get(HtmlTextDecorator.class).error(errorMsg);
-      throw new IllegalStateException(errorMsg, exception);
-    } finally {
-      Closeables.closeQuietly(stringBuffer);
+      addCharToCurrentLine(currentIndex, previousValue, currentValue, openTags, currentHtmlLine, decorationDataHolder);
+    }
+    if (currentIndex == text.length()) {
+      previousValue = currentValue;
+      currentValue = END_OF_STREAM;
     }
 
-    return decoratedHtmlLines;
+    closeCurrentSyntaxTags(openTags, currentHtmlLine);
+
+    if (shouldStartNewLine(previousValue, currentValue)) {
+      addLine(lineConsumer, currentHtmlLine, currentLine, from, to);
+      currentLine++;
+      currentHtmlLine.setLength(0);
+      addLine(lineConsumer, currentHtmlLine, currentLine, from, to);
+    } else if (currentHtmlLine.length() > 0) {
+      addLine(lineConsumer, currentHtmlLine, currentLine, from, to);
+    }
   }
 
-  private void addCharToCurrentLine(CharactersReader charsReader, StringBuilder currentHtmlLine, DecorationDataHolder decorationDataHolder) {
-    if (shouldStartNewLine(charsReader)) {
-      if (shouldReopenPendingTags(charsReader)) {
-        reopenCurrentSyntaxTags(charsReader, currentHtmlLine);
-      }
+  private static void addCharToCurrentLine(int currentIndex, int previousValue, int currentValue, Deque<String> openTags,
+    StringBuilder currentHtmlLine, DecorationDataHolder decorationDataHolder) {
+    if (shouldStartNewLine(previousValue, currentValue) && shouldReopenPendingTags(previousValue, currentValue)) {
+      reopenCurrentSyntaxTags(openTags, currentHtmlLine);
     }
 
-    int numberOfTagsToClose = getNumberOfTagsToClose(charsReader.getCurrentIndex(), decorationDataHolder);
-    closeCompletedTags(charsReader, numberOfTagsToClose, currentHtmlLine);
+    while (currentIndex == decorationDataHolder.getCurrentClosingTagOffset()) {
+      injectClosingHtml(currentHtmlLine);
+      openTags.remove();
+      decorationDataHolder.nextClosingTagOffset();
+    }
 
-    if (shouldClosePendingTags(charsReader)) {
-      closeCurrentSyntaxTags(charsReader, currentHtmlLine);
+    if (shouldClosePendingTags(previousValue, currentValue)) {
+      closeCurrentSyntaxTags(openTags, currentHtmlLine);
     }
 
-    Collection<String> tagsToOpen = getTagsToOpen(charsReader.getCurrentIndex(), decorationDataHolder);
-    openNewTags(charsReader, tagsToOpen, currentHtmlLine);
+    while (currentIndex == decorationDataHolder.getCurrentOpeningTagOffset()) {
+      String cssClass = decorationDataHolder.getCurrentOpeningTagCssClass();
+      injectOpeningHtmlForRule(cssClass, currentHtmlLine);
+      openTags.push(cssClass);
+      decorationDataHolder.nextOpeningTagEntry();
+    }
 
-    if (shouldAppendCharToHtmlOutput(charsReader)) {
-      char currentChar = (char) charsReader.getCurrentValue();
-      currentHtmlLine.append(normalize(currentChar));
+    if (currentValue != CR_END_OF_LINE && currentValue != LF_END_OF_LINE) {
+      appendNormalized((char) currentValue, currentHtmlLine);
     }
   }
 
-  private static void addLine(List<String> decoratedHtmlLines, String line, int currentLine, @Nullable Integer from, @Nullable Integer to) {
+  private static void addLine(Consumer<CharSequence> lineConsumer, StringBuilder line, int currentLine, @Nullable Integer from, @Nullable Integer to) {
     if (canAddLine(currentLine, from) && !shouldStop(currentLine, to)) {
-      decoratedHtmlLines.add(line);
+      lineConsumer.accept(line);
     }
   }
 
@@ -129,93 +137,50 @@ class HtmlTextDecorator {
     return to != null && to < currentLine;
   }
 
-  private char[] normalize(char currentChar) {
-    char[] normalizedChars;
+  private static void appendNormalized(char currentChar, StringBuilder decoratedText) {
     if (currentChar == HTML_OPENING) {
-      normalizedChars = ENCODED_HTML_OPENING.toCharArray();
+      decoratedText.append(ENCODED_HTML_OPENING);
     } else if (currentChar == HTML_CLOSING) {
-      normalizedChars = ENCODED_HTML_CLOSING.toCharArray();
+      decoratedText.append(ENCODED_HTML_CLOSING);
     } else if (currentChar == AMPERSAND) {
-      normalizedChars = ENCODED_AMPERSAND.toCharArray();
+      decoratedText.append(ENCODED_AMPERSAND);
     } else {
-      normalizedChars = new char[] {currentChar};
-    }
-    return normalizedChars;
-  }
-
-  private boolean shouldAppendCharToHtmlOutput(CharactersReader charsReader) {
-    return charsReader.getCurrentValue() != CR_END_OF_LINE && charsReader.getCurrentValue() != LF_END_OF_LINE;
-  }
-
-  private int getNumberOfTagsToClose(int currentIndex, DecorationDataHolder dataHolder) {
-    int numberOfTagsToClose = 0;
-
-    while (currentIndex == dataHolder.getCurrentClosingTagOffset()) {
-      numberOfTagsToClose++;
-      dataHolder.nextClosingTagOffset();
-    }
-    return numberOfTagsToClose;
-  }
-
-  private Collection<String> getTagsToOpen(int currentIndex, DecorationDataHolder dataHolder) {
-    Collection<String> tagsToOpen = newArrayList();
-    while (dataHolder.getCurrentOpeningTagEntry() != null && currentIndex == dataHolder.getCurrentOpeningTagEntry().getStartOffset()) {
-      tagsToOpen.add(dataHolder.getCurrentOpeningTagEntry().getCssClass());
-      dataHolder.nextOpeningTagEntry();
+      decoratedText.append(currentChar);
     }
-    return tagsToOpen;
   }
 
-  private boolean shouldClosePendingTags(CharactersReader charactersReader) {
-    return charactersReader.getCurrentValue() == CR_END_OF_LINE
-      || (charactersReader.getCurrentValue() == LF_END_OF_LINE && charactersReader.getPreviousValue() != CR_END_OF_LINE)
-      || (charactersReader.getCurrentValue() == CharactersReader.END_OF_STREAM && charactersReader.getPreviousValue() != LF_END_OF_LINE);
+  private static boolean shouldClosePendingTags(int previousValue, int currentValue) {
+    return currentValue == CR_END_OF_LINE
+      || (currentValue == LF_END_OF_LINE && previousValue != CR_END_OF_LINE)
+      || (currentValue == END_OF_STREAM && previousValue != LF_END_OF_LINE);
   }
 
-  private boolean shouldReopenPendingTags(CharactersReader charactersReader) {
-    return (charactersReader.getPreviousValue() == LF_END_OF_LINE && charactersReader.getCurrentValue() != LF_END_OF_LINE)
-      || (charactersReader.getPreviousValue() == CR_END_OF_LINE && charactersReader.getCurrentValue() != CR_END_OF_LINE
-        && charactersReader.getCurrentValue() != LF_END_OF_LINE);
+  private static boolean shouldReopenPendingTags(int previousValue, int currentValue) {
+    return (previousValue == LF_END_OF_LINE && currentValue != LF_END_OF_LINE)
+      || (previousValue == CR_END_OF_LINE && currentValue != CR_END_OF_LINE && currentValue != LF_END_OF_LINE);
   }
 
-  private boolean shouldStartNewLine(CharactersReader charactersReader) {
-    return charactersReader.getPreviousValue() == LF_END_OF_LINE
-      || (charactersReader.getPreviousValue() == CR_END_OF_LINE && charactersReader.getCurrentValue() != LF_END_OF_LINE);
-  }
-
-  private void closeCompletedTags(CharactersReader charactersReader, int numberOfTagsToClose,
-    StringBuilder decoratedText) {
-    for (int i = 0; i < numberOfTagsToClose; i++) {
-      injectClosingHtml(decoratedText);
-      charactersReader.removeLastOpenTag();
-    }
-  }
-
-  private void openNewTags(CharactersReader charactersReader, Collection<String> tagsToOpen,
-    StringBuilder decoratedText) {
-    for (String tagToOpen : tagsToOpen) {
-      injectOpeningHtmlForRule(tagToOpen, decoratedText);
-      charactersReader.registerOpenTag(tagToOpen);
-    }
+  private static boolean shouldStartNewLine(int previousValue, int currentValue) {
+    return previousValue == LF_END_OF_LINE || (previousValue == CR_END_OF_LINE && currentValue != LF_END_OF_LINE);
   }
 
-  private void closeCurrentSyntaxTags(CharactersReader charactersReader, StringBuilder decoratedText) {
-    for (int i = 0; i < charactersReader.getOpenTags().size(); i++) {
+  private static void closeCurrentSyntaxTags(Deque<String> openTags, StringBuilder decoratedText) {
+    for (int i = 0; i < openTags.size(); i++) {
       injectClosingHtml(decoratedText);
     }
   }
 
-  private void reopenCurrentSyntaxTags(CharactersReader charactersReader, StringBuilder decoratedText) {
-    for (String tags : charactersReader.getOpenTags()) {
-      injectOpeningHtmlForRule(tags, decoratedText);
+  private static void reopenCurrentSyntaxTags(Deque<String> openTags, StringBuilder decoratedText) {
+    for (String tag : openTags) {
+      injectOpeningHtmlForRule(tag, decoratedText);
     }
   }
 
-  private void injectOpeningHtmlForRule(String textType, StringBuilder decoratedText) {
+  private static void injectOpeningHtmlForRule(String textType, StringBuilder decoratedText) {
     decoratedText.append("<span class=\"").append(textType).append("\">");
   }
 
-  private void injectClosingHtml(StringBuilder decoratedText) {
+  private static void injectClosingHtml(StringBuilder decoratedText) {
     decoratedText.append("</span>");
   }
 }
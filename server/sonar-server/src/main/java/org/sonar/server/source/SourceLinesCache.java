@@ -0,0 +1,138 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import java.util.List;
+import java.util.Objects;
+import javax.annotation.CheckForNull;
+import org.sonar.api.Properties;
+import org.sonar.api.Property;
+import org.sonar.api.config.Configuration;
+import org.sonar.db.protobuf.DbFileSources;
+
+/**
+ * Bounded cache of the lines returned by {@link SourceService}, as decoded from DB, raw text or HTML. Entries are keyed
+ * by the hash of the source data, so an analysis changing the source of a file makes its entries obsolete. Least
+ * recently used entries are evicted first.
+ * <p>
+ * Entries are weighed by their number of characters, see {@link #PROPERTY_MAX_CHARACTERS}.
+ */
+@Properties({
+  @Property(
+    key = SourceLinesCache.PROPERTY_MAX_CHARACTERS,
+    defaultValue = "" + SourceLinesCache.DEFAULT_MAX_CHARACTERS,
+    name = "Max number of characters of the source lines kept in cache",
+    global = false)
+})
+public class SourceLinesCache {
+
+  public static final String PROPERTY_MAX_CHARACTERS = "sonar.web.sourceLinesCache.maxCharacters";
+  static final long DEFAULT_MAX_CHARACTERS = 20_000_000L;
+
+  private final Cache<Key, List<?>> cache;
+
+  public SourceLinesCache(Configuration config) {
+    this(config.getLong(PROPERTY_MAX_CHARACTERS).orElse(DEFAULT_MAX_CHARACTERS));
+  }
+
+  @VisibleForTesting
+  SourceLinesCache(long maxCharacters) {
+    this.cache = CacheBuilder.newBuilder()
+      .maximumWeight(maxCharacters)
+      .weigher((Key key, List<?> lines) -> weigh(lines))
+      .recordStats()
+      .build();
+  }
+
+  private static int weigh(List<?> lines) {
+    long weight = 0;
+    for (Object line : lines) {
+      if (line instanceof CharSequence) {
+        weight += ((CharSequence) line).length();
+      } else if (line instanceof DbFileSources.Line) {
+        // encoded size of the line, including its source, highlighting and symbols
+        weight += ((DbFileSources.Line) line).getSerializedSize();
+      } else {
+        weight++;
+      }
+    }
+    return (int) Math.max(1, Math.min(Integer.MAX_VALUE, weight));
+  }
+
+  @CheckForNull
+  @SuppressWarnings("unchecked")
+  <E> List<E> get(Key key) {
+    return (List<E>) cache.getIfPresent(key);
+  }
+
+  <E> void put(Key key, List<E> lines) {
+    cache.put(key, lines);
+  }
+
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  enum Format {
+    DB, RAW_TEXT, HTML
+  }
+
+  static final class Key {
+    private final String fileUuid;
+    private final String dataHash;
+    private final int from;
+    private final int toInclusive;
+    private final Format format;
+
+    Key(String fileUuid, String dataHash, int from, int toInclusive, Format format) {
+      this.fileUuid = fileUuid;
+      this.dataHash = dataHash;
+      this.from = from;
+      this.toInclusive = toInclusive;
+      this.format = format;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Key key = (Key) o;
+      return from == key.from && toInclusive == key.toInclusive && format == key.format
+        && fileUuid.equals(key.fileUuid) && dataHash.equals(key.dataHash);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(fileUuid, dataHash, from, toInclusive, format);
+    }
+  }
+}
@@ -19,13 +19,17 @@
  */
 package org.sonar.server.source;
 
+import java.util.List;
 import java.util.Optional;
 import java.util.function.Function;
+import javax.annotation.CheckForNull;
 import org.sonar.core.util.stream.MoreCollectors;
 import org.sonar.db.DbClient;
 import org.sonar.db.DbSession;
 import org.sonar.db.protobuf.DbFileSources;
 import org.sonar.db.source.FileSourceDto;
+import org.sonar.server.source.SourceLinesCache.Format;
+import org.sonar.server.source.SourceLinesCache.Key;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -33,10 +37,12 @@ public class SourceService {
 
   private final DbClient dbClient;
   private final HtmlSourceDecorator htmlDecorator;
+  private final SourceLinesCache cache;
 
-  public SourceService(DbClient dbClient, HtmlSourceDecorator htmlDecorator) {
+  public SourceService(DbClient dbClient, HtmlSourceDecorator htmlDecorator, SourceLinesCache cache) {
     this.dbClient = dbClient;
     this.htmlDecorator = htmlDecorator;
+    this.cache = cache;
   }
 
   /**
@@ -45,7 +51,7 @@ public class SourceService {
    * @param toInclusive starts from 1, must be greater than or equal param {@code from}
    */
   public Optional<Iterable<DbFileSources.Line>> getLines(DbSession dbSession, String fileUuid, int from, int toInclusive) {
-    return getLines(dbSession, fileUuid, from, toInclusive, Function.identity());
+    return getLines(dbSession, fileUuid, from, toInclusive, Format.DB, Function.identity());
   }
 
   /**
@@ -53,25 +59,43 @@ public class SourceService {
    * @see #getLines(DbSession, String, int, int)
    */
   public Optional<Iterable<String>> getLinesAsRawText(DbSession dbSession, String fileUuid, int from, int toInclusive) {
-    return getLines(dbSession, fileUuid, from, toInclusive, DbFileSources.Line::getSource);
+    return getLines(dbSession, fileUuid, from, toInclusive, Format.RAW_TEXT, DbFileSources.Line::getSource);
   }
 
   public Optional<Iterable<String>> getLinesAsHtml(DbSession dbSession, String fileUuid, int from, int toInclusive) {
-    return getLines(dbSession, fileUuid, from, toInclusive, lineToHtml());
+    return getLines(dbSession, fileUuid, from, toInclusive, Format.HTML, lineToHtml());
   }
 
-  private <E> Optional<Iterable<E>> getLines(DbSession dbSession, String fileUuid, int from, int toInclusive, Function<DbFileSources.Line, E> function) {
+  private <E> Optional<Iterable<E>> getLines(DbSession dbSession, String fileUuid, int from, int toInclusive, Format format,
+    Function<DbFileSources.Line, E> function) {
     verifyLine(from);
     checkArgument(toInclusive >= from, String.format("Line number must greater than or equal to %d, got %d", from, toInclusive));
+    String dataHash = dbClient.fileSourceDao().selectSourceDataHashByFileUuid(dbSession, fileUuid);
+    // lines are not cached when source has no hash, as they could not be invalidated
+    Key key = dataHash == null ? null : new Key(fileUuid, dataHash, from, toInclusive, format);
+    List<E> lines = key == null ? null : cache.get(key);
+    if (lines == null) {
+      lines = loadLines(dbSession, fileUuid, from, toInclusive, function);
+      if (lines == null) {
+        return Optional.empty();
+      }
+      if (key != null) {
+        cache.put(key, lines);
+      }
+    }
+    return Optional.of(lines);
+  }
+
+  @CheckForNull
+  private <E> List<E> loadLines(DbSession dbSession, String fileUuid, int from, int toInclusive, Function<DbFileSources.Line, E> function) {
     FileSourceDto dto = dbClient.fileSourceDao().selectSourceByFileUuid(dbSession, fileUuid);
     if (dto == null) {
-      return Optional.empty();
+      return null;
     }
-    return Optional.of(dto.getSourceData().getLinesList().stream()
-      .filter(line -> line.hasLine() && line.getLine() >= from)
-      .limit((toInclusive - from) + 1L)
+    // only the requested lines are decoded
+    return dto.getSourceDataLines(from, (toInclusive - from) + 1).stream()
       .map(function)
-      .collect(MoreCollectors.toList()));
+      .collect(MoreCollectors.toList());
   }
 
   private static void verifyLine(int line) {
@@ -19,12 +19,21 @@
  */
 package org.sonar.server.util.cache;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import javax.annotation.CheckForNull;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.sonar.api.utils.System2;
@@ -33,15 +42,28 @@ import org.sonar.server.util.ObjectInputStreamIterator;
 
 /**
  * Serialize and deserialize objects on disk. No search capabilities, only traversal (full scan).
+ * <p>
+ * By default objects are written with Java serialization. When a {@link DiskCacheCodec} is provided, objects
+ * are encoded with it and grouped in blocks of about {@link #BLOCK_SIZE} bytes, optionally compressed with LZ4.
  */
 public class DiskCache<O extends Serializable> {
 
+  static final int BLOCK_SIZE = 64 * 1024;
+  private static final int RAW_BLOCK = 0;
+  private static final int LZ4_BLOCK = 1;
+  private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+
   private final File file;
   private final System2 system2;
+  @CheckForNull
+  private final DiskCacheCodec<O> codec;
+  private final boolean compressed;
 
   public DiskCache(File file, System2 system2) {
     this.system2 = system2;
     this.file = file;
+    this.codec = null;
+    this.compressed = false;
     OutputStream output = null;
     boolean threw = true;
     try {
@@ -63,47 +85,216 @@ public class DiskCache<O extends Serializable> {
     }
   }
 
+  public DiskCache(File file, System2 system2, DiskCacheCodec<O> codec, boolean compressed) {
+    this.system2 = system2;
+    this.file = file;
+    this.codec = codec;
+    this.compressed = compressed;
+    try {
+      // blocks are only appended, the file starts empty
+      system2.close(new FileOutputStream(file));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write into file: " + file, e);
+    }
+  }
+
   public DiskAppender newAppender() {
-    return new DiskAppender();
+    if (codec == null) {
+      return new SerializationAppender();
+    }
+    return new BlockAppender(codec);
   }
 
   public CloseableIterator<O> traverse() {
     try {
-      return new ObjectInputStreamIterator<>(FileUtils.openInputStream(file));
+      if (codec == null) {
+        return new ObjectInputStreamIterator<>(FileUtils.openInputStream(file));
+      }
+      return new BlockIterator(codec, new DataInputStream(FileUtils.openInputStream(file)));
     } catch (IOException e) {
       throw new IllegalStateException("Fail to traverse file: " + file, e);
     }
   }
 
-  public class DiskAppender implements AutoCloseable {
-    private final ObjectOutputStream output;
+  public abstract class DiskAppender implements AutoCloseable {
+    private final OutputStream output;
 
-    private DiskAppender() {
-      try {
-        this.output = new ObjectOutputStream(new FileOutputStream(file, true)) {
-          @Override
-          protected void writeStreamHeader() throws IOException {
-            // do not write stream headers as it's already done in constructor of DiskCache
-          }
-        };
-      } catch (IOException e) {
-        throw new IllegalStateException("Fail to open file " + file, e);
-      }
+    private DiskAppender(OutputStream output) {
+      this.output = output;
     }
 
     public DiskAppender append(O object) {
       try {
-        output.writeObject(object);
-        output.reset();
+        write(object);
         return this;
       } catch (IOException e) {
         throw new IllegalStateException("Fail to write into file " + file, e);
       }
     }
 
+    abstract void write(O object) throws IOException;
+
+    void flush() throws IOException {
+      // nothing is buffered by default
+    }
+
     @Override
     public void close() {
+      try {
+        flush();
+      } catch (IOException e) {
+        IOUtils.closeQuietly(output);
+        throw new IllegalStateException("Fail to write into file " + file, e);
+      }
       system2.close(output);
     }
   }
+
+  private class SerializationAppender extends DiskAppender {
+    private final ObjectOutputStream output;
+
+    private SerializationAppender() {
+      this(openSerializationStream());
+    }
+
+    private SerializationAppender(ObjectOutputStream output) {
+      super(output);
+      this.output = output;
+    }
+
+    @Override
+    void write(O object) throws IOException {
+      output.writeObject(object);
+      output.reset();
+    }
+  }
+
+  private ObjectOutputStream openSerializationStream() {
+    try {
+      return new ObjectOutputStream(new FileOutputStream(file, true)) {
+        @Override
+        protected void writeStreamHeader() throws IOException {
+          // do not write stream headers as it's already done in constructor of DiskCache
+        }
+      };
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to open file " + file, e);
+    }
+  }
+
+  private DataOutputStream openBlockStream() {
+    try {
+      return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to open file " + file, e);
+    }
+  }
+
+  /**
+   * Each block is written as a type byte, the length of the encoded objects, the length of the
+   * stored bytes and finally the stored bytes.
+   */
+  private class BlockAppender extends DiskAppender {
+    private final DiskCacheCodec<O> blockCodec;
+    private final DataOutputStream output;
+    private final ByteArrayOutputStream block = new ByteArrayOutputStream(BLOCK_SIZE);
+    private final CodedOutputStream blockOutput = CodedOutputStream.newInstance(block);
+    private int blockStart = 0;
+
+    private BlockAppender(DiskCacheCodec<O> blockCodec) {
+      this(blockCodec, openBlockStream());
+    }
+
+    private BlockAppender(DiskCacheCodec<O> blockCodec, DataOutputStream output) {
+      super(output);
+      this.blockCodec = blockCodec;
+      this.output = output;
+    }
+
+    @Override
+    void write(O object) throws IOException {
+      blockCodec.encode(object, blockOutput);
+      if (blockOutput.getTotalBytesWritten() - blockStart >= BLOCK_SIZE) {
+        flush();
+      }
+    }
+
+    @Override
+    void flush() throws IOException {
+      blockOutput.flush();
+      blockStart = blockOutput.getTotalBytesWritten();
+      if (block.size() == 0) {
+        return;
+      }
+      byte[] raw = block.toByteArray();
+      block.reset();
+      if (compressed) {
+        LZ4Compressor compressor = LZ4_FACTORY.fastCompressor();
+        byte[] stored = new byte[compressor.maxCompressedLength(raw.length)];
+        int storedLength = compressor.compress(raw, 0, raw.length, stored, 0, stored.length);
+        writeBlock(LZ4_BLOCK, raw.length, stored, storedLength);
+      } else {
+        writeBlock(RAW_BLOCK, raw.length, raw, raw.length);
+      }
+    }
+
+    private void writeBlock(int type, int rawLength, byte[] stored, int storedLength) throws IOException {
+      output.writeByte(type);
+      output.writeInt(rawLength);
+      output.writeInt(storedLength);
+      output.write(stored, 0, storedLength);
+    }
+  }
+
+  private class BlockIterator extends CloseableIterator<O> {
+    private final DiskCacheCodec<O> blockCodec;
+    private final DataInputStream input;
+    private CodedInputStream block = null;
+
+    private BlockIterator(DiskCacheCodec<O> blockCodec, DataInputStream input) {
+      this.blockCodec = blockCodec;
+      this.input = input;
+    }
+
+    @Override
+    protected O doNext() {
+      try {
+        while (block == null || block.isAtEnd()) {
+          if (!readBlock()) {
+            return null;
+          }
+        }
+        return blockCodec.decode(block);
+      } catch (IOException e) {
+        throw new IllegalStateException("Fail to traverse file: " + file, e);
+      }
+    }
+
+    private boolean readBlock() throws IOException {
+      int type = input.read();
+      if (type == -1) {
+        return false;
+      }
+      int rawLength = input.readInt();
+      byte[] stored = new byte[input.readInt()];
+      input.readFully(stored);
+      byte[] raw;
+      if (type == LZ4_BLOCK) {
+        raw = new byte[rawLength];
+        LZ4_FACTORY.fastDecompressor().decompress(stored, 0, raw, 0, rawLength);
+      } else if (type == RAW_BLOCK) {
+        raw = stored;
+      } else {
+        throw new IllegalStateException("Unsupported block type " + type + " in file: " + file);
+      }
+      block = CodedInputStream.newInstance(raw);
+      block.setSizeLimit(Integer.MAX_VALUE);
+      return true;
+    }
+
+    @Override
+    protected void doClose() {
+      IOUtils.closeQuietly(input);
+    }
+  }
 }
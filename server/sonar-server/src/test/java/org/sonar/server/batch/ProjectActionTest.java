@@ -62,6 +62,28 @@ public class ProjectActionTest {
     assertThat(queryArgumentCaptor.getValue().getBranch()).isEqualTo("my_branch");
   }
 
+  @Test
+  public void return_delta_of_files_changed_since_version() {
+    ProjectRepositories projectRepositories = new ProjectRepositories()
+      .addFileData("module-1", "src/Foo.java", new FileData("abc", "rev1"))
+      .setFilesVersion(2_000L)
+      .setFilesDelta(true)
+      .setFilesFingerprint(123L);
+    ArgumentCaptor<ProjectDataQuery> queryArgumentCaptor = ArgumentCaptor.forClass(ProjectDataQuery.class);
+    when(projectDataLoader.load(queryArgumentCaptor.capture())).thenReturn(projectRepositories);
+
+    WsProjectResponse wsProjectResponse = ws.newRequest()
+      .setParam("key", "org.codehaus.sonar:sonar")
+      .setParam("changedSince", "1000")
+      .executeProtobuf(WsProjectResponse.class);
+
+    assertThat(queryArgumentCaptor.getValue().getChangedSince()).isEqualTo(1_000L);
+    assertThat(wsProjectResponse.getFilesVersion()).isEqualTo(2_000L);
+    assertThat(wsProjectResponse.getFilesDelta()).isTrue();
+    assertThat(wsProjectResponse.getFilesFingerprint()).isEqualTo(123L);
+    assertThat(wsProjectResponse.getFileDataByModuleAndPath().get("module-1").getFileDataByPath()).containsOnlyKeys("src/Foo.java");
+  }
+
   /**
    * SONAR-7084
    */
@@ -38,6 +38,7 @@ import org.sonar.db.organization.OrganizationDto;
 import org.sonar.db.property.PropertyDto;
 import org.sonar.db.source.FileSourceDto;
 import org.sonar.scanner.protocol.input.FileData;
+import org.sonar.scanner.protocol.input.FilesFingerprint;
 import org.sonar.scanner.protocol.input.ProjectRepositories;
 import org.sonar.server.component.ComponentFinder;
 import org.sonar.server.exceptions.BadRequestException;
@@ -605,6 +606,73 @@ public class ProjectDataLoaderTest {
     assertThat(ref.fileData(moduleBranch.getKey(), moduleFile.path()).hash()).isEqualTo("789456");
   }
 
+  @Test
+  public void return_files_version_from_last_analysis() {
+    OrganizationDto organizationDto = db.organizations().insert();
+    ComponentDto project = db.components().insertPrivateProject(organizationDto);
+    userSession.logIn().addProjectPermission(SCAN_EXECUTION, project);
+    db.components().insertSnapshot(project, s -> s.setBuildDate(1_000L));
+
+    ProjectRepositories ref = underTest.load(ProjectDataQuery.create().setModuleKey(project.getKey()));
+
+    assertThat(ref.filesVersion()).isEqualTo(1_000L);
+    assertThat(ref.isFilesDelta()).isFalse();
+  }
+
+  @Test
+  public void files_version_is_null_if_project_has_never_been_analyzed() {
+    OrganizationDto organizationDto = db.organizations().insert();
+    ComponentDto project = db.components().insertPrivateProject(organizationDto);
+    userSession.logIn().addProjectPermission(SCAN_EXECUTION, project);
+
+    ProjectRepositories ref = underTest.load(ProjectDataQuery.create().setModuleKey(project.getKey()));
+
+    assertThat(ref.filesVersion()).isNull();
+  }
+
+  @Test
+  public void return_only_files_changed_since_requested_version() {
+    OrganizationDto organizationDto = db.organizations().insert();
+    ComponentDto project = db.components().insertPrivateProject(organizationDto);
+    userSession.logIn().addProjectPermission(SCAN_EXECUTION, project);
+    db.components().insertSnapshot(project, s -> s.setBuildDate(2_000L));
+    ComponentDto unchangedFile = db.components().insertComponent(newFileDto(project));
+    dbClient.fileSourceDao().insert(dbSession, newFileSourceDto(unchangedFile).setUpdatedAt(1_000L));
+    ComponentDto changedFile = db.components().insertComponent(newFileDto(project));
+    dbClient.fileSourceDao().insert(dbSession, newFileSourceDto(changedFile).setUpdatedAt(2_500L).setSrcHash("789"));
+    dbSession.commit();
+
+    ProjectRepositories full = underTest.load(ProjectDataQuery.create().setModuleKey(project.getKey()));
+    ProjectRepositories delta = underTest.load(ProjectDataQuery.create().setModuleKey(project.getKey()).setChangedSince(1_500L));
+
+    assertThat(full.fileDataByPath(project.getKey())).containsOnlyKeys(unchangedFile.path(), changedFile.path());
+    assertThat(delta.isFilesDelta()).isTrue();
+    assertThat(delta.fileDataByPath(project.getKey())).containsOnlyKeys(changedFile.path());
+    assertThat(delta.fileData(project.getKey(), changedFile.path()).hash()).isEqualTo("789");
+    // fingerprint is about all files
+    assertThat(delta.filesFingerprint()).isEqualTo(full.filesFingerprint());
+    assertThat(delta.filesFingerprint()).isEqualTo(new FilesFingerprint()
+      .add(project.getKey(), changedFile.path())
+      .add(project.getKey(), unchangedFile.path())
+      .value());
+  }
+
+  @Test
+  public void return_all_files_if_requested_version_is_more_recent_than_last_analysis() {
+    OrganizationDto organizationDto = db.organizations().insert();
+    ComponentDto project = db.components().insertPrivateProject(organizationDto);
+    userSession.logIn().addProjectPermission(SCAN_EXECUTION, project);
+    db.components().insertSnapshot(project, s -> s.setBuildDate(2_000L));
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    dbClient.fileSourceDao().insert(dbSession, newFileSourceDto(file).setUpdatedAt(1_000L));
+    dbSession.commit();
+
+    ProjectRepositories ref = underTest.load(ProjectDataQuery.create().setModuleKey(project.getKey()).setChangedSince(3_000L));
+
+    assertThat(ref.isFilesDelta()).isFalse();
+    assertThat(ref.fileDataByPath(project.getKey())).containsOnlyKeys(file.path());
+  }
+
   @Test
   public void fails_with_NPE_if_query_is_null() {
     expectedException.expect(NullPointerException.class);
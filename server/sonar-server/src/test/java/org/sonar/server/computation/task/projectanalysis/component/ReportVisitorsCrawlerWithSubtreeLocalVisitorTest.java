@@ -0,0 +1,156 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.DIRECTORY;
+import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.FILE;
+import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.MODULE;
+import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.PROJECT;
+import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.POST_ORDER;
+import static org.sonar.server.computation.task.projectanalysis.component.ComponentVisitor.Order.PRE_ORDER;
+
+public class ReportVisitorsCrawlerWithSubtreeLocalVisitorTest {
+
+  private static final int FILES_PER_DIRECTORY = 50;
+
+  private ForkJoinPool forkJoinPool = new ForkJoinPool(4);
+  private int ref = 1;
+
+  @After
+  public void tearDown() {
+    forkJoinPool.shutdown();
+  }
+
+  @Test
+  public void merge_results_of_concurrently_visited_subtrees_in_post_order() {
+    Component module1 = component(MODULE, directory(), directory());
+    Component module2 = component(MODULE, directory(), directory(), directory());
+    Component project = component(PROJECT, module1, module2);
+    FileCounter preOrderVisitor = new FileCounter(PRE_ORDER);
+    FileCounter postOrderVisitor = new FileCounter(POST_ORDER);
+
+    VisitorsCrawler underTest = new VisitorsCrawler(Arrays.asList(preOrderVisitor, postOrderVisitor), true, forkJoinPool);
+    underTest.visit(project);
+
+    assertThat(postOrderVisitor.counts.get(project)).isEqualTo(5 * FILES_PER_DIRECTORY);
+    assertThat(postOrderVisitor.counts.get(module1)).isEqualTo(2 * FILES_PER_DIRECTORY);
+    assertThat(postOrderVisitor.counts.get(module2)).isEqualTo(3 * FILES_PER_DIRECTORY);
+    // children are not yet visited during pre-order visit
+    assertThat(preOrderVisitor.counts.get(project)).isZero();
+    assertThat(underTest.getCumulativeDurations()).hasSize(2);
+  }
+
+  @Test
+  public void isConcurrent_only_when_all_visitors_are_subtree_local() {
+    FileCounter subtreeLocalVisitor = new FileCounter(POST_ORDER);
+    TypeAwareVisitor otherVisitor = new TypeAwareVisitorAdapter(CrawlerDepthLimit.FILE, POST_ORDER) {
+    };
+
+    assertThat(VisitorsCrawler.isConcurrent(Arrays.asList(subtreeLocalVisitor))).isTrue();
+    assertThat(VisitorsCrawler.isConcurrent(Arrays.asList(subtreeLocalVisitor, otherVisitor))).isFalse();
+    assertThat(VisitorsCrawler.isConcurrent(new ArrayList<>())).isFalse();
+  }
+
+  @Test
+  public void failure_in_a_subtree_goes_up_as_VisitException() {
+    RuntimeException toBeThrown = new RuntimeException("Faking failure of visitor");
+    Component project = component(PROJECT, component(MODULE, directory(), directory()));
+    FileCounter failingVisitor = new FileCounter(POST_ORDER) {
+      @Override
+      public void visitFile(Component file) {
+        throw toBeThrown;
+      }
+    };
+
+    try {
+      new VisitorsCrawler(Arrays.asList(failingVisitor), false, forkJoinPool).visit(project);
+      fail("VisitException should have been raised");
+    } catch (VisitException e) {
+      assertThat(e.getCause()).isSameAs(toBeThrown);
+      assertThat(e.getMessage()).startsWith("Visit of Component {key=");
+    }
+  }
+
+  @Test
+  public void log_context_of_caller_is_set_when_visiting_subtrees_concurrently() {
+    Component project = component(PROJECT, component(MODULE, directory(), directory()), component(MODULE, directory()));
+    Map<Component, String> taskUuidsByFile = new ConcurrentHashMap<>();
+    FileCounter visitor = new FileCounter(POST_ORDER) {
+      @Override
+      public void visitFile(Component file) {
+        taskUuidsByFile.put(file, String.valueOf(MDC.get("ceTaskUuid")));
+      }
+    };
+
+    MDC.put("ceTaskUuid", "TASK_1");
+    try {
+      new VisitorsCrawler(Arrays.asList(visitor), false, forkJoinPool).visit(project);
+    } finally {
+      MDC.clear();
+    }
+
+    assertThat(taskUuidsByFile).hasSize(3 * FILES_PER_DIRECTORY);
+    assertThat(taskUuidsByFile.values()).containsOnly("TASK_1");
+  }
+
+  private Component directory() {
+    List<Component> files = new ArrayList<>();
+    for (int i = 0; i < FILES_PER_DIRECTORY; i++) {
+      files.add(component(FILE));
+    }
+    return component(DIRECTORY, files.toArray(new Component[0]));
+  }
+
+  private Component component(Component.Type type, Component... children) {
+    return ReportComponent.builder(type, ref++).addChildren(children).build();
+  }
+
+  private static class FileCounter extends TypeAwareVisitorAdapter implements SubtreeLocalVisitor {
+    private final Map<Component, Integer> counts = new ConcurrentHashMap<>();
+
+    private FileCounter(ComponentVisitor.Order order) {
+      super(CrawlerDepthLimit.FILE, order);
+    }
+
+    @Override
+    public void visitFile(Component file) {
+      counts.put(file, 1);
+    }
+
+    @Override
+    public void visitAny(Component component) {
+      if (component.getType() != FILE) {
+        counts.put(component, component.getChildren().stream().mapToInt(child -> counts.getOrDefault(child, 0)).sum());
+      }
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.filemove;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.sonar.server.computation.task.projectanalysis.filemove.FileSimilarity.File;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.server.computation.task.projectanalysis.filemove.FileMoveDetectionStep.MIN_REQUIRED_SCORE;
+
+public class MoveCandidatesIndexTest {
+
+  private SourceSimilarityImpl sourceSimilarity = new SourceSimilarityImpl();
+
+  @Test
+  public void candidates_share_lines_with_file() {
+    File file = file("a", "b", "c", "d", "e", "f", "g");
+    MoveCandidatesIndex underTest = new MoveCandidatesIndex(asList(
+      file("h", "i", "j", "k", "l", "m", "n"),
+      file("a", "b", "c", "d", "e", "f", "g"),
+      file("a", "b", "c", "d", "e", "f", "x"),
+      file("a", "b", "c", "d", "e", "f", "g", "a", "b", "c", "d", "e", "f", "g")), MIN_REQUIRED_SCORE);
+
+    assertThat(underTest.candidatesOf(file)).containsExactly(1, 2);
+  }
+
+  @Test
+  public void empty_files_have_no_candidates() {
+    MoveCandidatesIndex underTest = new MoveCandidatesIndex(asList(file(), file("a")), 0);
+
+    assertThat(underTest.candidatesOf(file())).isEmpty();
+  }
+
+  @Test
+  public void candidates_include_all_files_reaching_min_score() {
+    Random random = new Random(42);
+    List<File> files = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      files.add(randomFile(random));
+    }
+    MoveCandidatesIndex underTest = new MoveCandidatesIndex(files, MIN_REQUIRED_SCORE);
+
+    for (int i = 0; i < 200; i++) {
+      File file = edit(files.get(random.nextInt(files.size())), random);
+      List<Integer> candidates = underTest.candidatesOf(file);
+      for (int j = 0; j < files.size(); j++) {
+        if (sourceSimilarity.score(file.getLineHashes(), files.get(j).getLineHashes()) >= MIN_REQUIRED_SCORE) {
+          assertThat(candidates).contains(j);
+        }
+      }
+    }
+  }
+
+  private static File randomFile(Random random) {
+    List<String> lines = new ArrayList<>();
+    int size = 1 + random.nextInt(40);
+    for (int i = 0; i < size; i++) {
+      // few distinct lines, so that many files are similar
+      lines.add(String.valueOf(random.nextInt(3)));
+    }
+    return new File("path", lines);
+  }
+
+  private static File edit(File file, Random random) {
+    List<String> lines = new ArrayList<>(file.getLineHashes());
+    int edits = random.nextInt(4);
+    for (int i = 0; i < edits; i++) {
+      int index = random.nextInt(lines.size() + 1);
+      if (index < lines.size() && random.nextBoolean()) {
+        lines.remove(index);
+      } else {
+        lines.add(index, String.valueOf(random.nextInt(3)));
+      }
+    }
+    return new File("path", lines);
+  }
+
+  private static File file(String... lines) {
+    return new File("path", lines.length == 0 ? emptyList() : asList(lines));
+  }
+}
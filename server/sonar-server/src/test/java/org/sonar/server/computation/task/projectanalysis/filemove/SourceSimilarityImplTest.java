@@ -19,7 +19,9 @@
  */
 package org.sonar.server.computation.task.projectanalysis.filemove;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -59,4 +61,44 @@ public class SourceSimilarityImplTest {
   public void two_empty_lists_are_not_considered_as_equal() {
     assertThat(underTest.score(emptyList(), emptyList())).isEqualTo(0);
   }
+
+  @Test
+  public void score_with_min_score_is_zero_if_lower_than_min_score() {
+    assertThat(underTest.score(asList("a", "b", "c", "d"), asList("a", "b", "e", "f"), 50)).isEqualTo(50);
+    assertThat(underTest.score(asList("a", "b", "c", "d"), asList("a", "b", "e", "f"), 51)).isEqualTo(0);
+    assertThat(underTest.score(asList("a", "b", "c"), asList("a", "b", "c"), 100)).isEqualTo(100);
+    assertThat(underTest.score(asList("a"), asList("a", "b", "c"), 85)).isEqualTo(0);
+    assertThat(underTest.score(emptyList(), emptyList(), 0)).isEqualTo(0);
+  }
+
+  @Test
+  public void score_with_min_score_is_same_as_score_when_reached() {
+    Random random = new Random(42);
+    for (int i = 0; i < 1_000; i++) {
+      List<Integer> left = randomLines(random);
+      List<Integer> right = randomLines(random);
+      int minScore = random.nextInt(101);
+      int score = underTest.score(left, right);
+
+      assertThat(underTest.score(left, right, minScore)).isEqualTo(score >= minScore ? score : 0);
+    }
+  }
+
+  @Test
+  public void maxDistance_is_greatest_distance_reaching_min_score() {
+    assertThat(SourceSimilarityImpl.maxDistance(100, 85)).isEqualTo(15);
+    assertThat(SourceSimilarityImpl.maxDistance(20, 85)).isEqualTo(3);
+    assertThat(SourceSimilarityImpl.maxDistance(6, 85)).isEqualTo(0);
+    assertThat(SourceSimilarityImpl.maxDistance(10, 0)).isEqualTo(10);
+    assertThat(SourceSimilarityImpl.maxDistance(10, 101)).isEqualTo(-1);
+  }
+
+  private static List<Integer> randomLines(Random random) {
+    List<Integer> lines = new ArrayList<>();
+    int size = random.nextInt(30);
+    for (int i = 0; i < size; i++) {
+      lines.add(random.nextInt(4));
+    }
+    return lines;
+  }
 }
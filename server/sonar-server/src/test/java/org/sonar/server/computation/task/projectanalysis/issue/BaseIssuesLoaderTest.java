@@ -0,0 +1,106 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.issue;
+
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.issue.Issue;
+import org.sonar.api.utils.System2;
+import org.sonar.api.utils.internal.JUnitTempFolder;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.db.DbTester;
+import org.sonar.db.component.ComponentDto;
+import org.sonar.db.issue.IssueDto;
+import org.sonar.db.rule.RuleDefinitionDto;
+import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolderRule;
+import org.sonar.server.computation.task.projectanalysis.qualityprofile.ActiveRulesHolderRule;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.db.component.ComponentTesting.newFileDto;
+import static org.sonar.server.computation.task.projectanalysis.component.Component.Type.PROJECT;
+
+public class BaseIssuesLoaderTest {
+
+  @Rule
+  public DbTester db = DbTester.create(System2.INSTANCE);
+  @Rule
+  public JUnitTempFolder tempFolder = new JUnitTempFolder();
+  @Rule
+  public TreeRootHolderRule treeRootHolder = new TreeRootHolderRule();
+  @Rule
+  public RuleRepositoryRule ruleRepository = new RuleRepositoryRule();
+  @Rule
+  public ActiveRulesHolderRule activeRulesHolder = new ActiveRulesHolderRule();
+
+  private MapSettings settings = new MapSettings();
+  private ComponentIssuesLoader componentIssuesLoader = new ComponentIssuesLoader(db.getDbClient(), ruleRepository, activeRulesHolder);
+
+  @Test
+  public void load_issues_of_component_with_one_query_per_component_by_default() {
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto file = db.components().insertComponent(newFileDto(project));
+    RuleDefinitionDto rule = insertRule();
+    IssueDto issue = db.issues().insert(rule, project, file, i -> i.setStatus(Issue.STATUS_OPEN));
+    BaseIssuesLoader underTest = newLoader(project);
+
+    assertThat(underTest.loadForComponentUuid(file.uuid())).extracting(DefaultIssue::key).containsExactly(issue.getKey());
+    assertThat(underTest.loadUuidsOfComponentsWithOpenIssues()).containsExactly(file.uuid());
+  }
+
+  @Test
+  public void bulk_load_issues_of_all_components_of_project() {
+    settings.setProperty(BaseIssuesLoader.BULK_LOAD_PROPERTY, true);
+    ComponentDto project = db.components().insertPrivateProject();
+    ComponentDto file1 = db.components().insertComponent(newFileDto(project));
+    ComponentDto file2 = db.components().insertComponent(newFileDto(project));
+    ComponentDto fileWithoutIssues = db.components().insertComponent(newFileDto(project));
+    RuleDefinitionDto rule = insertRule();
+    IssueDto issue1 = db.issues().insert(rule, project, file1, i -> i.setStatus(Issue.STATUS_OPEN).setMessage("first"));
+    IssueDto issue2 = db.issues().insert(rule, project, file1, i -> i.setStatus(Issue.STATUS_CONFIRMED));
+    IssueDto issue3 = db.issues().insert(rule, project, file2, i -> i.setStatus(Issue.STATUS_REOPENED));
+    db.issues().insert(rule, project, file2, i -> i.setStatus(Issue.STATUS_CLOSED));
+    BaseIssuesLoader underTest = newLoader(project);
+
+    assertThat(underTest.loadUuidsOfComponentsWithOpenIssues()).containsOnly(file1.uuid(), file2.uuid());
+    List<DefaultIssue> issuesOfFile1 = underTest.loadForComponentUuid(file1.uuid());
+    assertThat(issuesOfFile1).extracting(DefaultIssue::key).containsOnly(issue1.getKey(), issue2.getKey());
+    assertThat(issuesOfFile1).filteredOn(i -> i.key().equals(issue1.getKey())).extracting(DefaultIssue::message).containsExactly("first");
+    assertThat(underTest.loadForComponentUuid(file2.uuid())).extracting(DefaultIssue::key).containsExactly(issue3.getKey());
+    assertThat(underTest.loadForComponentUuid(fileWithoutIssues.uuid())).isEmpty();
+    // issues can be read again, for example when a file has been moved
+    assertThat(underTest.loadForComponentUuid(file2.uuid())).extracting(DefaultIssue::key).containsExactly(issue3.getKey());
+
+    underTest.stop();
+  }
+
+  private RuleDefinitionDto insertRule() {
+    RuleDefinitionDto rule = db.rules().insert();
+    ruleRepository.add(rule.getKey());
+    return rule;
+  }
+
+  private BaseIssuesLoader newLoader(ComponentDto project) {
+    treeRootHolder.setRoot(ReportComponent.builder(PROJECT, 1).setUuid(project.uuid()).setKey(project.getDbKey()).build());
+    return new BaseIssuesLoader(treeRootHolder, db.getDbClient(), componentIssuesLoader, tempFolder, settings.asConfig());
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.issue;
+
+import java.io.File;
+import java.util.Date;
+import java.util.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.api.issue.IssueComment;
+import org.sonar.api.rule.RuleKey;
+import org.sonar.api.rule.Severity;
+import org.sonar.api.rules.RuleType;
+import org.sonar.api.utils.Duration;
+import org.sonar.api.utils.System2;
+import org.sonar.core.issue.DefaultIssue;
+import org.sonar.core.issue.DefaultIssueComment;
+import org.sonar.core.issue.FieldDiffs;
+import org.sonar.core.issue.IssueChangeContext;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.db.protobuf.DbCommons;
+import org.sonar.db.protobuf.DbIssues;
+import org.sonar.server.util.cache.DiskCache;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+public class DefaultIssueCodecTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void encode_and_decode_all_fields() throws Exception {
+    DefaultIssue issue = newIssue("ABCDE");
+
+    DefaultIssue decoded = roundTrip(issue);
+
+    assertThat(decoded.key()).isEqualTo("ABCDE");
+    assertThat(decoded.type()).isEqualTo(RuleType.BUG);
+    assertThat(decoded.componentUuid()).isEqualTo("FILE_UUID");
+    assertThat(decoded.componentKey()).isEqualTo("FILE_KEY");
+    assertThat(decoded.moduleUuid()).isEqualTo("MODULE_UUID");
+    assertThat(decoded.moduleUuidPath()).isEqualTo(".MODULE_UUID.");
+    assertThat(decoded.projectUuid()).isEqualTo("PROJECT_UUID");
+    assertThat(decoded.projectKey()).isEqualTo("PROJECT_KEY");
+    assertThat(decoded.ruleKey()).isEqualTo(RuleKey.of("java", "S001"));
+    assertThat(decoded.language()).isEqualTo("java");
+    assertThat(decoded.severity()).isEqualTo(Severity.MAJOR);
+    assertThat(decoded.manualSeverity()).isTrue();
+    assertThat(decoded.message()).isEqualTo("message with accents: éàç");
+    assertThat(decoded.line()).isEqualTo(42);
+    assertThat(decoded.gap()).isEqualTo(1.5);
+    assertThat(decoded.effort()).isEqualTo(Duration.create(10L));
+    assertThat(decoded.status()).isEqualTo("OPEN");
+    assertThat(decoded.resolution()).isNull();
+    assertThat(decoded.assignee()).isEqualTo("john");
+    assertThat(decoded.checksum()).isEqualTo("c0ffee");
+    assertThat(decoded.attributes()).containsOnly(entry("jira", "FOO-1"));
+    assertThat(decoded.authorLogin()).isEqualTo("jane");
+    assertThat(decoded.tags()).containsExactly("security", "cwe");
+    assertThat((DbIssues.Locations) decoded.getLocations()).isEqualTo(issue.getLocations());
+    assertThat(decoded.creationDate()).isEqualTo(new Date(1_000_000L));
+    assertThat(decoded.updateDate()).isEqualTo(new Date(2_000_000L));
+    assertThat(decoded.closeDate()).isNull();
+    assertThat(decoded.isNew()).isFalse();
+    assertThat(decoded.isCopied()).isTrue();
+    assertThat(decoded.isBeingClosed()).isTrue();
+    assertThat(decoded.isOnDisabledRule()).isTrue();
+    assertThat(decoded.isChanged()).isTrue();
+    assertThat(decoded.mustSendNotifications()).isTrue();
+    assertThat(decoded.selectedAt()).isEqualTo(3_000_000L);
+
+    List<IssueComment> comments = decoded.comments();
+    assertThat(comments).hasSize(1);
+    DefaultIssueComment comment = (DefaultIssueComment) comments.get(0);
+    assertThat(comment.key()).isEqualTo("COMMENT");
+    assertThat(comment.issueKey()).isEqualTo("ABCDE");
+    assertThat(comment.userLogin()).isEqualTo("john");
+    assertThat(comment.markdownText()).isEqualTo("a *comment*");
+    assertThat(comment.createdAt()).isEqualTo(new Date(1_500_000L));
+    assertThat(comment.updatedAt()).isNull();
+    assertThat(comment.isNew()).isTrue();
+  }
+
+  @Test
+  public void keep_current_change_as_part_of_the_changes() throws Exception {
+    DefaultIssue issue = newIssue("ABCDE");
+
+    DefaultIssue decoded = roundTrip(issue);
+
+    FieldDiffs currentChange = decoded.currentChange();
+    assertThat(currentChange.userLogin()).isEqualTo("john");
+    assertThat(currentChange.creationDate()).isEqualTo(new Date(2_000_000L));
+    assertThat(currentChange.get("severity").oldValue()).isEqualTo(Severity.MINOR);
+    assertThat(currentChange.get("severity").newValue()).isEqualTo(Severity.MAJOR);
+    assertThat(currentChange.get("effort").oldValue()).isEqualTo(5L);
+    assertThat(currentChange.get("effort").newValue()).isEqualTo(10L);
+    assertThat(currentChange.get("line").oldValue()).isNull();
+    assertThat(currentChange.get("line").newValue()).isEqualTo(42);
+
+    List<FieldDiffs> changes = decoded.changes();
+    assertThat(changes).hasSize(4);
+    assertThat(changes.get(0).issueKey()).isEqualTo("ABCDE");
+    assertThat(changes.get(0).get("status").newValue()).isEqualTo("REOPENED");
+    assertThat(changes.get(1)).isSameAs(currentChange);
+    assertThat(changes.get(2)).isSameAs(currentChange);
+    assertThat(changes.get(3)).isSameAs(currentChange);
+  }
+
+  @Test
+  public void encode_and_decode_issue_with_only_mandatory_fields() throws Exception {
+    DefaultIssue issue = new DefaultIssue()
+      .setKey("ABCDE")
+      .setRuleKey(RuleKey.of("java", "S001"))
+      .setStatus("OPEN");
+
+    DefaultIssue decoded = roundTrip(issue);
+
+    assertThat(decoded.key()).isEqualTo("ABCDE");
+    assertThat(decoded.type()).isNull();
+    assertThat(decoded.line()).isNull();
+    assertThat(decoded.gap()).isNull();
+    assertThat(decoded.effort()).isNull();
+    assertThat(decoded.creationDate()).isNull();
+    assertThat(decoded.tags()).isEmpty();
+    assertThat(decoded.attributes()).isEmpty();
+    assertThat(decoded.comments()).isEmpty();
+    assertThat(decoded.changes()).isEmpty();
+    assertThat(decoded.currentChange()).isNull();
+    assertThat((Object) decoded.getLocations()).isNull();
+    assertThat(decoded.isNew()).isTrue();
+    assertThat(decoded.selectedAt()).isNull();
+  }
+
+  @Test
+  public void cache_is_much_smaller_than_with_java_serialization() throws Exception {
+    File serializedFile = temp.newFile();
+    DiskCache<DefaultIssue> serializedCache = new DiskCache<>(serializedFile, System2.INSTANCE);
+    File encodedFile = temp.newFile();
+    IssueCache encodedCache = new IssueCache(encodedFile, System2.INSTANCE);
+
+    try (DiskCache<DefaultIssue>.DiskAppender serializedAppender = serializedCache.newAppender();
+      DiskCache<DefaultIssue>.DiskAppender encodedAppender = encodedCache.newAppender()) {
+      for (int i = 0; i < 1_000; i++) {
+        DefaultIssue issue = newIssue("ISSUE_" + i);
+        serializedAppender.append(issue);
+        encodedAppender.append(issue);
+      }
+    }
+
+    assertThat(encodedFile.length() * 5).isLessThan(serializedFile.length());
+    try (CloseableIterator<DefaultIssue> issues = encodedCache.traverse()) {
+      assertThat(newArrayList(issues)).extracting(DefaultIssue::key).hasSize(1_000).startsWith("ISSUE_0", "ISSUE_1").endsWith("ISSUE_999");
+    }
+  }
+
+  private DefaultIssue roundTrip(DefaultIssue issue) throws Exception {
+    IssueCache cache = new IssueCache(temp.newFile(), System2.INSTANCE);
+    cache.newAppender().append(issue).close();
+    try (CloseableIterator<DefaultIssue> issues = cache.traverse()) {
+      DefaultIssue decoded = issues.next();
+      assertThat(issues.hasNext()).isFalse();
+      return decoded;
+    }
+  }
+
+  private static DefaultIssue newIssue(String key) {
+    DefaultIssue issue = new DefaultIssue()
+      .setKey(key)
+      .setType(RuleType.BUG)
+      .setComponentUuid("FILE_UUID")
+      .setComponentKey("FILE_KEY")
+      .setModuleUuid("MODULE_UUID")
+      .setModuleUuidPath(".MODULE_UUID.")
+      .setProjectUuid("PROJECT_UUID")
+      .setProjectKey("PROJECT_KEY")
+      .setRuleKey(RuleKey.of("java", "S001"))
+      .setLanguage("java")
+      .setSeverity(Severity.MAJOR)
+      .setManualSeverity(true)
+      .setMessage("message with accents: éàç")
+      .setLine(42)
+      .setGap(1.5)
+      .setEffort(Duration.create(10L))
+      .setStatus("OPEN")
+      .setAssignee("john")
+      .setChecksum("c0ffee")
+      .setAttribute("jira", "FOO-1")
+      .setAuthorLogin("jane")
+      .setTags(newArrayList("security", "cwe"))
+      .setLocations(DbIssues.Locations.newBuilder()
+        .setTextRange(DbCommons.TextRange.newBuilder().setStartLine(42).setEndLine(43).build())
+        .build())
+      .setCreationDate(new Date(1_000_000L))
+      .setUpdateDate(new Date(2_000_000L))
+      .setNew(false)
+      .setCopied(true)
+      .setBeingClosed(true)
+      .setOnDisabledRule(true)
+      .setChanged(true)
+      .setSendNotifications(true)
+      .setSelectedAt(3_000_000L);
+    issue.addComment(new DefaultIssueComment()
+      .setKey("COMMENT")
+      .setIssueKey(key)
+      .setUserLogin("john")
+      .setMarkdownText("a *comment*")
+      .setCreatedAt(new Date(1_500_000L))
+      .setNew(true));
+    issue.addChange(new FieldDiffs()
+      .setIssueKey(key)
+      .setUserLogin("jane")
+      .setCreationDate(new Date(1_200_000L))
+      .setDiff("status", "CONFIRMED", "REOPENED"));
+    IssueChangeContext context = IssueChangeContext.createUser(new Date(2_000_000L), "john");
+    issue.setFieldChange(context, "severity", Severity.MINOR, Severity.MAJOR);
+    issue.setFieldChange(context, "effort", 5L, 10L);
+    issue.setFieldChange(context, "line", null, 42);
+    return issue;
+  }
+}
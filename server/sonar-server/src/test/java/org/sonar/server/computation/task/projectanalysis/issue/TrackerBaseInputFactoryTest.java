@@ -39,7 +39,7 @@ public class TrackerBaseInputFactoryTest {
   private static final String FILE_UUID = "uuid";
   private static final ReportComponent FILE = ReportComponent.builder(Component.Type.FILE, 1).setUuid(FILE_UUID).build();
 
-  private ComponentIssuesLoader issuesLoader = mock(ComponentIssuesLoader.class);
+  private BaseIssuesLoader issuesLoader = mock(BaseIssuesLoader.class);
   private DbClient dbClient = mock(DbClient.class);
   private DbSession dbSession = mock(DbSession.class);
   private FileSourceDao fileSourceDao = mock(FileSourceDao.class);
@@ -0,0 +1,151 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.measure;
+
+import com.google.common.collect.SetMultimap;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.server.computation.task.projectanalysis.component.Component;
+import org.sonar.server.computation.task.projectanalysis.component.Developer;
+import org.sonar.server.computation.task.projectanalysis.component.DumbDeveloper;
+import org.sonar.server.computation.task.projectanalysis.component.ReportComponent;
+import org.sonar.server.computation.task.projectanalysis.measure.MapBasedRawMeasureRepository.OverridePolicy;
+import org.sonar.server.computation.task.projectanalysis.metric.Metric;
+import org.sonar.server.computation.task.projectanalysis.metric.MetricImpl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.guava.api.Assertions.assertThat;
+import static org.sonar.server.computation.task.projectanalysis.measure.Measure.newMeasureBuilder;
+
+public class ColumnarRawMeasureRepositoryTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private static final ReportComponent FILE_COMPONENT = ReportComponent.builder(Component.Type.FILE, 1).setKey("file").build();
+  private static final ReportComponent OTHER_COMPONENT = ReportComponent.builder(Component.Type.FILE, 100_000).setKey("other").build();
+  private static final Developer SOME_DEVELOPER = new DumbDeveloper("DEV1");
+
+  private final Metric intMetric = new MetricImpl(1, "int", "int", Metric.MetricType.INT);
+  private final Metric longMetric = new MetricImpl(2, "long", "long", Metric.MetricType.WORK_DUR);
+  private final Metric doubleMetric = new MetricImpl(3, "double", "double", Metric.MetricType.FLOAT);
+  private final Metric booleanMetric = new MetricImpl(4, "boolean", "boolean", Metric.MetricType.BOOL);
+  private final Metric stringMetric = new MetricImpl(5, "string", "string", Metric.MetricType.STRING);
+  private final Metric levelMetric = new MetricImpl(6, "level", "level", Metric.MetricType.LEVEL);
+
+  private ColumnarRawMeasureRepository underTest = new ColumnarRawMeasureRepository(component -> component.getReportAttributes().getRef());
+
+  @Test
+  public void measures_are_read_with_their_values() {
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create(12, "some data"));
+    underTest.add(FILE_COMPONENT, longMetric, newMeasureBuilder().create(123_456_789_012L));
+    underTest.add(FILE_COMPONENT, doubleMetric, newMeasureBuilder().setVariation(-1.5d).create(0.123d, 2));
+    underTest.add(FILE_COMPONENT, booleanMetric, newMeasureBuilder().create(true));
+    underTest.add(FILE_COMPONENT, stringMetric, newMeasureBuilder().create("foo"));
+    underTest.add(FILE_COMPONENT, levelMetric, newMeasureBuilder().setQualityGateStatus(new QualityGateStatus(Measure.Level.WARN, "bar")).create(Measure.Level.ERROR));
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, intMetric).get().getIntValue()).isEqualTo(12);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, intMetric).get().getData()).isEqualTo("some data");
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, intMetric).get().hasVariation()).isFalse();
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, longMetric).get().getLongValue()).isEqualTo(123_456_789_012L);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, doubleMetric).get().getDoubleValue()).isEqualTo(0.12d);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, doubleMetric).get().getVariation()).isEqualTo(-1.5d);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, booleanMetric).get().getBooleanValue()).isTrue();
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, stringMetric).get().getStringValue()).isEqualTo("foo");
+    Measure level = underTest.getRawMeasure(FILE_COMPONENT, levelMetric).get();
+    assertThat(level.getLevelValue()).isEqualTo(Measure.Level.ERROR);
+    assertThat(level.getQualityGateStatus()).isEqualTo(new QualityGateStatus(Measure.Level.WARN, "bar"));
+    assertThat(level.getData()).isNull();
+
+    assertThat(underTest.getRawMeasure(OTHER_COMPONENT, intMetric)).isAbsent();
+    SetMultimap<String, Measure> rawMeasures = underTest.getRawMeasures(FILE_COMPONENT);
+    assertThat(rawMeasures.keySet()).containsOnly("int", "long", "double", "boolean", "string", "level");
+    assertThat(underTest.getRawMeasures(OTHER_COMPONENT).isEmpty()).isTrue();
+  }
+
+  @Test
+  public void measure_without_value_is_stored() {
+    underTest.add(OTHER_COMPONENT, intMetric, newMeasureBuilder().createNoValue());
+
+    assertThat(underTest.getRawMeasure(OTHER_COMPONENT, intMetric).get().getValueType()).isEqualTo(Measure.ValueType.NO_VALUE);
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, intMetric)).isAbsent();
+  }
+
+  @Test
+  public void update_replaces_all_values() {
+    underTest.add(FILE_COMPONENT, doubleMetric, newMeasureBuilder().setVariation(2d).create(1d, 1, "data"));
+    underTest.update(FILE_COMPONENT, doubleMetric, newMeasureBuilder().create(3d, 1));
+
+    Measure measure = underTest.getRawMeasure(FILE_COMPONENT, doubleMetric).get();
+    assertThat(measure.getDoubleValue()).isEqualTo(3d);
+    assertThat(measure.getData()).isNull();
+    assertThat(measure.hasVariation()).isFalse();
+  }
+
+  @Test
+  public void add_fails_if_measure_already_exists() {
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create(1));
+
+    expectedException.expect(UnsupportedOperationException.class);
+    expectedException.expectMessage("a measure can be set only once for a specific Component (key=file), Metric (key=int). Use update method");
+
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create(2));
+  }
+
+  @Test
+  public void update_fails_if_measure_does_not_exist() {
+    expectedException.expect(UnsupportedOperationException.class);
+    expectedException.expectMessage("a measure can be updated only if one already exists for a specific Component (key=file), Metric (key=int). Use add method");
+
+    underTest.update(FILE_COMPONENT, intMetric, newMeasureBuilder().create(2));
+  }
+
+  @Test
+  public void add_does_not_override_existing_measure_with_DO_NOT_OVERRIDE_policy() {
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create(1));
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create(2), OverridePolicy.DO_NOT_OVERRIDE);
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, intMetric).get().getIntValue()).isEqualTo(1);
+
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create(2), OverridePolicy.OVERRIDE);
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, intMetric).get().getIntValue()).isEqualTo(2);
+  }
+
+  @Test
+  public void measures_of_developers_are_stored_next_to_measure_of_component() {
+    Measure developerMeasure = newMeasureBuilder().forDeveloper(SOME_DEVELOPER).create(10);
+    underTest.add(FILE_COMPONENT, intMetric, developerMeasure);
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create(20));
+
+    assertThat(underTest.getRawMeasure(FILE_COMPONENT, intMetric).get().getIntValue()).isEqualTo(20);
+    assertThat(underTest.getRawMeasures(FILE_COMPONENT, intMetric)).hasSize(2).contains(developerMeasure);
+    assertThat(underTest.getRawMeasures(FILE_COMPONENT).get("int")).hasSize(2);
+  }
+
+  @Test
+  public void fail_with_IAE_if_value_type_is_not_consistent_with_metric() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Measure's ValueType (STRING) is not consistent with the Metric's ValueType (INT)");
+
+    underTest.add(FILE_COMPONENT, intMetric, newMeasureBuilder().create("foo"));
+  }
+}
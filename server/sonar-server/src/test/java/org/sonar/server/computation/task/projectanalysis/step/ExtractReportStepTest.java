@@ -22,10 +22,13 @@ package org.sonar.server.computation.task.projectanalysis.step;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.System2;
 import org.sonar.api.utils.ZipUtils;
@@ -35,8 +38,8 @@ import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.ce.queue.CeTask;
 import org.sonar.db.DbTester;
 import org.sonar.db.ce.CeTaskTypes;
+import org.sonar.scanner.protocol.output.ReportArchive;
 import org.sonar.server.computation.task.projectanalysis.batch.BatchReportDirectoryHolderImpl;
-import org.sonar.server.computation.task.projectanalysis.batch.MutableBatchReportDirectoryHolder;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -56,10 +59,11 @@ public class ExtractReportStepTest {
   @Rule
   public DbTester dbTester = DbTester.create(System2.INSTANCE);
 
-  private MutableBatchReportDirectoryHolder reportDirectoryHolder = new BatchReportDirectoryHolderImpl();
+  private BatchReportDirectoryHolderImpl reportDirectoryHolder = new BatchReportDirectoryHolderImpl();
   private CeTask ceTask = new CeTask.Builder().setOrganizationUuid("org1").setType(CeTaskTypes.REPORT).setUuid(TASK_UUID).build();
+  private MapSettings settings = new MapSettings();
 
-  private ExtractReportStep underTest = new ExtractReportStep(dbTester.getDbClient(), ceTask, tempFolder, reportDirectoryHolder);
+  private ExtractReportStep underTest = new ExtractReportStep(dbTester.getDbClient(), ceTask, tempFolder, reportDirectoryHolder, settings.asConfig());
 
   @Test
   public void fail_if_report_zip_does_not_exist() throws Exception {
@@ -71,12 +75,9 @@ public class ExtractReportStepTest {
 
   @Test
   public void unzip_report() throws Exception {
-    File reportFile = generateReport();
-    try (InputStream input = FileUtils.openInputStream(reportFile)) {
-      dbTester.getDbClient().ceTaskInputDao().insert(dbTester.getSession(), TASK_UUID, input);
-    }
-    dbTester.getSession().commit();
-    dbTester.getSession().close();
+    settings.setProperty(ExtractReportStep.EXTRACT_PROPERTY, true);
+    underTest = new ExtractReportStep(dbTester.getDbClient(), ceTask, tempFolder, reportDirectoryHolder, settings.asConfig());
+    insertReport();
 
     underTest.execute();
 
@@ -85,6 +86,34 @@ public class ExtractReportStepTest {
     assertThat(unzippedDir).isDirectory().exists();
     assertThat(unzippedDir.listFiles()).hasSize(1);
     assertThat(new File(unzippedDir, "metadata.pb")).hasContent("{metadata}");
+    assertThat(reportDirectoryHolder.getArchive()).isEmpty();
+  }
+
+  @Test
+  public void read_report_in_place_by_default() throws Exception {
+    insertReport();
+
+    underTest.execute();
+
+    // directory contains only the zip file, which is not extracted
+    ReportArchive archive = reportDirectoryHolder.getArchive().get();
+    assertThat(reportDirectoryHolder.getDirectory().listFiles()).containsOnly(archive.getFile());
+    assertThat(archive.has("metadata.pb")).isTrue();
+    assertThat(IOUtils.toString(archive.open("metadata.pb"), StandardCharsets.UTF_8)).isEqualTo("{metadata}");
+    assertThat(archive.getBytesRead()).isEqualTo(10L);
+
+    reportDirectoryHolder.stop();
+    assertThat(logTester.logs(LoggerLevel.INFO)).containsExactly("Analysis report read in place: 10 bytes read from archive of "
+      + FileUtils.byteCountToDisplaySize(archive.getFile().length()) + ", nothing extracted");
+  }
+
+  private void insertReport() throws IOException {
+    File reportFile = generateReport();
+    try (InputStream input = FileUtils.openInputStream(reportFile)) {
+      dbTester.getDbClient().ceTaskInputDao().insert(dbTester.getSession(), TASK_UUID, input);
+    }
+    dbTester.getSession().commit();
+    dbTester.getSession().close();
   }
 
   private File generateReport() throws IOException {
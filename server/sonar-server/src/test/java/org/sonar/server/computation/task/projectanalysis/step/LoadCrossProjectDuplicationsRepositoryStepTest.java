@@ -55,6 +55,7 @@ import org.sonar.server.computation.task.step.ComputationStep;
 
 import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.anyCollection;
 import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -259,6 +260,197 @@ public class LoadCrossProjectDuplicationsRepositoryStepTest {
         .build());
   }
 
+  @Test
+  public void call_compute_cpd_on_each_file_with_its_own_duplications() throws Exception {
+    Component otherCurrentFile = ReportComponent.builder(FILE, 3)
+      .setKey("OTHER_CURRENT_FILE_KEY")
+      .setFileAttributes(new FileAttributes(false, XOO_LANGUAGE, 1))
+      .build();
+    treeRootHolder.setRoot(ReportComponent.builder(PROJECT, PROJECT_REF).addChildren(CURRENT_FILE, otherCurrentFile).build());
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+
+    ScannerReport.CpdTextBlock originBlock1 = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash("a8998353e96320ec")
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build();
+    ScannerReport.CpdTextBlock originBlock2 = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash("b1234353e96320ff")
+      .setStartLine(10)
+      .setEndLine(25)
+      .setStartTokenIndex(5)
+      .setEndTokenIndex(15)
+      .build();
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(originBlock1));
+    batchReportReader.putDuplicationBlocks(3, asList(originBlock2));
+
+    DuplicationUnitDto duplicate1 = new DuplicationUnitDto()
+      .setHash(originBlock1.getHash())
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    DuplicationUnitDto duplicate2 = new DuplicationUnitDto()
+      .setHash(originBlock2.getHash())
+      .setStartLine(20)
+      .setEndLine(35)
+      .setIndexInFile(1)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    dbClient.duplicationDao().insert(dbSession, duplicate1);
+    dbClient.duplicationDao().insert(dbSession, duplicate2);
+    dbSession.commit();
+
+    underTest.execute();
+
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), anyCollection(),
+      eq(asList(
+        new Block.Builder()
+          .setResourceId(otherFile.getDbKey())
+          .setBlockHash(new ByteArray(duplicate1.getHash()))
+          .setIndexInFile(duplicate1.getIndexInFile())
+          .setLines(duplicate1.getStartLine(), duplicate1.getEndLine())
+          .build())));
+    verify(integrateCrossProjectDuplications).computeCpd(eq(otherCurrentFile), anyCollection(),
+      eq(asList(
+        new Block.Builder()
+          .setResourceId(otherFile.getDbKey())
+          .setBlockHash(new ByteArray(duplicate2.getHash()))
+          .setIndexInFile(duplicate2.getIndexInFile())
+          .setLines(duplicate2.getStartLine(), duplicate2.getEndLine())
+          .build())));
+  }
+
+  @Test
+  public void call_compute_cpd_on_each_file_when_candidates_are_loaded_in_many_lookups() throws Exception {
+    Component otherCurrentFile = ReportComponent.builder(FILE, 3)
+      .setKey("OTHER_CURRENT_FILE_KEY")
+      .setFileAttributes(new FileAttributes(false, XOO_LANGUAGE, 1))
+      .build();
+    treeRootHolder.setRoot(ReportComponent.builder(PROJECT, PROJECT_REF).addChildren(CURRENT_FILE, otherCurrentFile).build());
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+
+    ScannerReport.CpdTextBlock originBlock1 = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash("a8998353e96320ec")
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build();
+    ScannerReport.CpdTextBlock originBlock2 = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash("b1234353e96320ff")
+      .setStartLine(10)
+      .setEndLine(25)
+      .setStartTokenIndex(5)
+      .setEndTokenIndex(15)
+      .build();
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(originBlock1));
+    batchReportReader.putDuplicationBlocks(3, asList(originBlock2));
+
+    DuplicationUnitDto duplicate1 = new DuplicationUnitDto()
+      .setHash(originBlock1.getHash())
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    DuplicationUnitDto duplicate2 = new DuplicationUnitDto()
+      .setHash(originBlock2.getHash())
+      .setStartLine(20)
+      .setEndLine(35)
+      .setIndexInFile(1)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    dbClient.duplicationDao().insert(dbSession, duplicate1);
+    dbClient.duplicationDao().insert(dbSession, duplicate2);
+    dbSession.commit();
+
+    new LoadCrossProjectDuplicationsRepositoryStep(treeRootHolder, batchReportReader, analysisMetadataHolder, crossProjectDuplicationStatusHolder,
+      integrateCrossProjectDuplications, dbClient, 1).execute();
+
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), anyCollection(),
+      eq(asList(
+        new Block.Builder()
+          .setResourceId(otherFile.getDbKey())
+          .setBlockHash(new ByteArray(duplicate1.getHash()))
+          .setIndexInFile(duplicate1.getIndexInFile())
+          .setLines(duplicate1.getStartLine(), duplicate1.getEndLine())
+          .build())));
+    verify(integrateCrossProjectDuplications).computeCpd(eq(otherCurrentFile), anyCollection(),
+      eq(asList(
+        new Block.Builder()
+          .setResourceId(otherFile.getDbKey())
+          .setBlockHash(new ByteArray(duplicate2.getHash()))
+          .setIndexInFile(duplicate2.getIndexInFile())
+          .setLines(duplicate2.getStartLine(), duplicate2.getEndLine())
+          .build())));
+  }
+
+  @Test
+  public void duplicated_blocks_are_in_the_order_of_cpd_blocks_of_the_file() throws Exception {
+    when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(true);
+    analysisMetadataHolder.setBaseAnalysis(baseProjectAnalysis);
+
+    ComponentDto otherProject = createProject("OTHER_PROJECT_KEY");
+    SnapshotDto otherProjectSnapshot = createProjectSnapshot(otherProject);
+    ComponentDto otherFile = createFile("OTHER_FILE_KEY", otherProject);
+
+    ScannerReport.CpdTextBlock originBlock1 = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash("f1234353e96320ff")
+      .setStartLine(10)
+      .setEndLine(25)
+      .setStartTokenIndex(0)
+      .setEndTokenIndex(10)
+      .build();
+    ScannerReport.CpdTextBlock originBlock2 = ScannerReport.CpdTextBlock.newBuilder()
+      .setHash("a8998353e96320ec")
+      .setStartLine(30)
+      .setEndLine(45)
+      .setStartTokenIndex(11)
+      .setEndTokenIndex(20)
+      .build();
+    batchReportReader.putDuplicationBlocks(FILE_REF, asList(originBlock1, originBlock2));
+
+    DuplicationUnitDto duplicate2 = new DuplicationUnitDto()
+      .setHash(originBlock2.getHash())
+      .setStartLine(40)
+      .setEndLine(55)
+      .setIndexInFile(0)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    DuplicationUnitDto duplicate1 = new DuplicationUnitDto()
+      .setHash(originBlock1.getHash())
+      .setStartLine(60)
+      .setEndLine(75)
+      .setIndexInFile(1)
+      .setAnalysisUuid(otherProjectSnapshot.getUuid())
+      .setComponentUuid(otherFile.uuid());
+    dbClient.duplicationDao().insert(dbSession, duplicate2);
+    dbClient.duplicationDao().insert(dbSession, duplicate1);
+    dbSession.commit();
+
+    underTest.execute();
+
+    Class<ArrayList<Block>> listClass = (Class<ArrayList<Block>>) (Class) ArrayList.class;
+    ArgumentCaptor<ArrayList<Block>> duplicationBlocks = ArgumentCaptor.forClass(listClass);
+    verify(integrateCrossProjectDuplications).computeCpd(eq(CURRENT_FILE), anyCollection(), duplicationBlocks.capture());
+    assertThat(duplicationBlocks.getValue()).extracting(Block::getBlockHash)
+      .containsExactly(new ByteArray(originBlock1.getHash()), new ByteArray(originBlock2.getHash()));
+  }
+
   @Test
   public void nothing_to_do_when_cross_project_duplication_is_disabled() throws Exception {
     when(crossProjectDuplicationStatusHolder.isEnabled()).thenReturn(false);
@@ -316,6 +316,24 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(past);
   }
 
+  @Test
+  public void update_sources_of_unchanged_file_when_coverage_changed() {
+    long past = 150000L;
+    insertPreviousSource("137f72c3708c6bd0de00a0e5a69c699b", past);
+    initBasicReport(1, Component.Status.SAME);
+    reportReader.putCoverage(FILE1_REF, newArrayList(ScannerReport.LineCoverage.newBuilder()
+      .setLine(1)
+      .setConditions(10)
+      .build()));
+
+    underTest.execute();
+
+    FileSourceDto fileSourceDto = dbClient.fileSourceDao().selectSourceByFileUuid(session, FILE1_UUID);
+    assertThat(fileSourceDto.getSourceData().getLines(0).getConditions()).isEqualTo(10);
+    assertThat(fileSourceDto.getDataHash()).isNotEqualTo("29f25900140c94db38035128cb6de6a2");
+    assertThat(fileSourceDto.getUpdatedAt()).isEqualTo(NOW);
+  }
+
   @Test
   public void update_sources_when_source_updated() {
     // Existing sources
@@ -459,10 +477,32 @@ public class PersistFileSourcesStepTest extends BaseStepTest {
     assertThat(fileSourceDto.getRevision()).isNull();
   }
 
+  private void insertPreviousSource(String srcHash, long updatedAt) {
+    dbClient.fileSourceDao().insert(dbTester.getSession(), new FileSourceDto()
+      .setProjectUuid(PROJECT_UUID)
+      .setFileUuid(FILE1_UUID)
+      .setSrcHash(srcHash)
+      .setLineHashes("137f72c3708c6bd0de00a0e5a69c699b")
+      .setDataHash("29f25900140c94db38035128cb6de6a2")
+      .setSourceData(DbFileSources.Data.newBuilder()
+        .addLines(DbFileSources.Line.newBuilder()
+          .setLine(1)
+          .setSource("line1")
+          .build())
+        .build())
+      .setCreatedAt(updatedAt)
+      .setUpdatedAt(updatedAt));
+    dbTester.getSession().commit();
+  }
+
   private void initBasicReport(int numberOfLines) {
+    initBasicReport(numberOfLines, Component.Status.UNAVAILABLE);
+  }
+
+  private void initBasicReport(int numberOfLines, Component.Status fileStatus) {
     treeRootHolder.setRoot(ReportComponent.builder(Component.Type.PROJECT, 1).setUuid(PROJECT_UUID).setKey(PROJECT_KEY).addChildren(
       ReportComponent.builder(Component.Type.MODULE, 2).setUuid("MODULE").setKey("MODULE_KEY").addChildren(
-        ReportComponent.builder(Component.Type.FILE, FILE1_REF).setUuid(FILE1_UUID).setKey("MODULE_KEY:src/Foo.java")
+        ReportComponent.builder(Component.Type.FILE, FILE1_REF).setUuid(FILE1_UUID).setKey("MODULE_KEY:src/Foo.java").setStatus(fileStatus)
           .setFileAttributes(new FileAttributes(false, null, numberOfLines)).build())
         .build())
       .build());
@@ -48,8 +48,10 @@ import org.sonar.server.computation.task.projectanalysis.issue.IssueCache;
 import org.sonar.server.computation.task.projectanalysis.issue.RuleRepositoryImpl;
 import org.sonar.server.computation.task.projectanalysis.issue.UpdateConflictResolver;
 import org.sonar.server.computation.task.step.ComputationStep;
+import org.sonar.server.util.cache.DiskCache;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -238,4 +240,145 @@ public class PersistIssuesStepTest extends BaseStepTest {
     dbTester.assertDbUnit(getClass(), "add_change-result.xml", new String[] {"id", "created_at", "updated_at"}, "issue_changes");
   }
 
+  @Test
+  public void update_changed_issues_by_batch_and_resolve_conflicts() {
+    RuleDefinitionDto rule = dbTester.rules().insert();
+    ComponentDto project = dbTester.components().insertPrivateProject();
+    ComponentDto file = dbTester.components().insertComponent(ComponentTesting.newFileDto(project, null));
+    int count = PersistIssuesStep.UPDATE_BATCH_SIZE + 10;
+    String conflictingKey = "ISSUE_" + (count - 1);
+    for (int i = 0; i < count; i++) {
+      String key = "ISSUE_" + i;
+      dbTester.issues().insert(rule, project, file, issue -> issue
+        .setKee(key)
+        .setStatus(Issue.STATUS_OPEN)
+        .setAssignee(null)
+        .setUpdatedAt(1_000L));
+    }
+    // assigned by a user after being loaded by the analysis
+    IssueDto conflictingIssue = dbClient.issueDao().selectOrFailByKey(session, conflictingKey);
+    dbClient.issueDao().update(session, conflictingIssue.setAssignee("john").setUpdatedAt(3_000L));
+    session.commit();
+
+    try (DiskCache<DefaultIssue>.DiskAppender appender = issueCache.newAppender()) {
+      for (int i = 0; i < count; i++) {
+        appender.append(new DefaultIssue()
+          .setKey("ISSUE_" + i)
+          .setType(RuleType.CODE_SMELL)
+          .setRuleKey(rule.getKey())
+          .setComponentUuid(file.uuid())
+          .setProjectUuid(project.uuid())
+          .setSeverity(Severity.BLOCKER)
+          .setStatus(Issue.STATUS_CLOSED)
+          .setResolution(Issue.RESOLUTION_FIXED)
+          .setSelectedAt(2_000L)
+          .setNew(false)
+          .setChanged(true));
+      }
+    }
+
+    step.execute();
+
+    for (int i = 0; i < count - 1; i++) {
+      IssueDto result = dbClient.issueDao().selectOrFailByKey(session, "ISSUE_" + i);
+      assertThat(result.getStatus()).isEqualTo(Issue.STATUS_CLOSED);
+      assertThat(result.getUpdatedAt()).isEqualTo(NOW);
+    }
+    IssueDto result = dbClient.issueDao().selectOrFailByKey(session, conflictingKey);
+    assertThat(result.getAssignee()).isEqualTo("john");
+    assertThat(result.getStatus()).isEqualTo(Issue.STATUS_OPEN);
+    assertThat(result.getUpdatedAt()).isGreaterThan(3_000L);
+  }
+
+  @Test
+  public void resolve_conflicts_of_changed_issues_mixed_with_new_issues() {
+    RuleDefinitionDto rule = dbTester.rules().insert();
+    ComponentDto project = dbTester.components().insertPrivateProject();
+    ComponentDto file = dbTester.components().insertComponent(ComponentTesting.newFileDto(project, null));
+    int count = PersistIssuesStep.UPDATE_BATCH_SIZE;
+    String conflictingKey = "ISSUE_" + (count / 2);
+    for (int i = 0; i < count; i++) {
+      insertOpenIssue(rule, project, file, "ISSUE_" + i);
+    }
+    IssueDto conflictingIssue = dbClient.issueDao().selectOrFailByKey(session, conflictingKey);
+    dbClient.issueDao().update(session, conflictingIssue.setAssignee("john").setUpdatedAt(3_000L));
+    session.commit();
+
+    // more statements than BatchSession#MAX_BATCH_SIZE
+    try (DiskCache<DefaultIssue>.DiskAppender appender = issueCache.newAppender()) {
+      for (int i = 0; i < count; i++) {
+        appender.append(newIssue(rule, project, file, "NEW_A_" + i).setNew(true));
+        appender.append(newIssue(rule, project, file, "NEW_B_" + i).setNew(true));
+        appender.append(newClosedIssue(rule, project, file, "ISSUE_" + i));
+      }
+    }
+
+    step.execute();
+
+    assertThat(dbClient.issueDao().selectOrFailByKey(session, "NEW_B_" + (count - 1)).getStatus()).isEqualTo(Issue.STATUS_OPEN);
+    assertThat(dbClient.issueDao().selectOrFailByKey(session, "ISSUE_0").getStatus()).isEqualTo(Issue.STATUS_CLOSED);
+    IssueDto result = dbClient.issueDao().selectOrFailByKey(session, conflictingKey);
+    assertThat(result.getAssignee()).isEqualTo("john");
+    assertThat(result.getStatus()).isEqualTo(Issue.STATUS_OPEN);
+  }
+
+  @Test
+  public void nothing_is_persisted_when_persisting_an_issue_fails() {
+    RuleDefinitionDto rule = dbTester.rules().insert();
+    ComponentDto project = dbTester.components().insertPrivateProject();
+    ComponentDto file = dbTester.components().insertComponent(ComponentTesting.newFileDto(project, null));
+    int count = PersistIssuesStep.UPDATE_BATCH_SIZE + 10;
+    for (int i = 0; i < count; i++) {
+      insertOpenIssue(rule, project, file, "ISSUE_" + i);
+    }
+    session.commit();
+
+    try (DiskCache<DefaultIssue>.DiskAppender appender = issueCache.newAppender()) {
+      for (int i = 0; i < count; i++) {
+        appender.append(newClosedIssue(rule, project, file, "ISSUE_" + i));
+      }
+      appender.append(newIssue(rule, project, file, "NEW").setRuleKey(RuleKey.of("xoo", "unknown")).setNew(true));
+    }
+
+    try {
+      step.execute();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessageContaining("Can not find rule for key xoo:unknown");
+    }
+
+    for (int i = 0; i < count; i++) {
+      IssueDto result = dbClient.issueDao().selectOrFailByKey(session, "ISSUE_" + i);
+      assertThat(result.getStatus()).isEqualTo(Issue.STATUS_OPEN);
+      assertThat(result.getUpdatedAt()).isEqualTo(1_000L);
+    }
+  }
+
+  private void insertOpenIssue(RuleDefinitionDto rule, ComponentDto project, ComponentDto file, String key) {
+    dbTester.issues().insert(rule, project, file, issue -> issue
+      .setKee(key)
+      .setStatus(Issue.STATUS_OPEN)
+      .setAssignee(null)
+      .setUpdatedAt(1_000L));
+  }
+
+  private static DefaultIssue newClosedIssue(RuleDefinitionDto rule, ComponentDto project, ComponentDto file, String key) {
+    return newIssue(rule, project, file, key)
+      .setStatus(Issue.STATUS_CLOSED)
+      .setResolution(Issue.RESOLUTION_FIXED)
+      .setSelectedAt(2_000L)
+      .setNew(false)
+      .setChanged(true);
+  }
+
+  private static DefaultIssue newIssue(RuleDefinitionDto rule, ComponentDto project, ComponentDto file, String key) {
+    return new DefaultIssue()
+      .setKey(key)
+      .setType(RuleType.CODE_SMELL)
+      .setRuleKey(rule.getKey())
+      .setComponentUuid(file.uuid())
+      .setProjectUuid(project.uuid())
+      .setSeverity(Severity.BLOCKER)
+      .setStatus(Issue.STATUS_OPEN);
+  }
 }
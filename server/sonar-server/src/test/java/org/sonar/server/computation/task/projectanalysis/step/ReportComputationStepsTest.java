@@ -19,21 +19,83 @@
  */
 package org.sonar.server.computation.task.projectanalysis.step;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.i18n.I18n;
+import org.sonar.api.utils.System2;
 import org.sonar.core.platform.ComponentContainer;
 import org.sonar.core.platform.ContainerPopulator;
+import org.sonar.core.util.UuidFactory;
+import org.sonar.core.util.stream.MoreCollectors;
+import org.sonar.db.DbClient;
 import org.sonar.server.computation.task.container.TaskContainer;
 import org.sonar.server.computation.task.container.TaskContainerImpl;
+import org.sonar.server.computation.task.projectanalysis.analysis.AnalysisMetadataHolder;
+import org.sonar.server.computation.task.projectanalysis.batch.BatchReportReader;
+import org.sonar.server.computation.task.projectanalysis.component.TreeRootHolder;
+import org.sonar.server.computation.task.projectanalysis.metric.MetricRepository;
+import org.sonar.server.computation.task.step.ComputationStep;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 
 public class ReportComputationStepsTest {
+
+  /**
+   * Dependencies which can be shared by steps executed concurrently, as they are thread-safe or not modified anymore
+   * when persisting
+   */
+  private static final Set<Class<?>> THREAD_SAFE_DEPENDENCIES = ImmutableSet.of(DbClient.class, System2.class, UuidFactory.class, I18n.class,
+    TreeRootHolder.class, BatchReportReader.class, AnalysisMetadataHolder.class, MetricRepository.class);
+
   @Rule
   public ExpectedException expectedException = ExpectedException.none();
 
+  private ReportComputationSteps underTest = new ReportComputationSteps(mock(TaskContainer.class));
+
+  @Test
+  public void only_reviewed_persistence_steps_are_executed_concurrently() {
+    List<Class<? extends ComputationStep>> concurrentSteps = underTest.orderedStepClasses().stream()
+      .filter(step -> underTest.concurrentStepDependencies(step) != null)
+      .collect(MoreCollectors.toList());
+
+    // before adding a step, check that it does not read data written by another step of this list, nor share with
+    // them a repository which is not thread-safe
+    assertThat(concurrentSteps).containsExactly(
+      PersistMeasuresStep.class,
+      PersistIssuesStep.class,
+      PersistProjectLinksStep.class,
+      PersistEventsStep.class,
+      PersistFileSourcesStep.class,
+      PersistTestsStep.class,
+      PersistCrossProjectDuplicationIndexStep.class);
+  }
+
+  @Test
+  public void independent_concurrent_steps_share_only_thread_safe_dependencies() {
+    List<Class<? extends ComputationStep>> concurrentSteps = underTest.orderedStepClasses().stream()
+      .filter(step -> underTest.concurrentStepDependencies(step) != null)
+      .collect(MoreCollectors.toList());
+
+    for (Class<? extends ComputationStep> step : concurrentSteps) {
+      for (Class<? extends ComputationStep> otherStep : concurrentSteps) {
+        if (step != otherStep && !underTest.concurrentStepDependencies(step).contains(otherStep) && !underTest.concurrentStepDependencies(otherStep).contains(step)) {
+          Set<Class<?>> sharedDependencies = Sets.difference(
+            Sets.intersection(constructorParameterTypes(step), constructorParameterTypes(otherStep)),
+            THREAD_SAFE_DEPENDENCIES);
+          assertThat(sharedDependencies).as("Dependencies shared by %s and %s", step.getSimpleName(), otherStep.getSimpleName()).isEmpty();
+        }
+      }
+    }
+  }
+
   @Test
   public void instances_throws_ISE_if_container_does_not_have_any_step() throws Exception {
     expectedException.expect(IllegalStateException.class);
@@ -69,4 +131,10 @@ public class ReportComputationStepsTest {
 
     Lists.newArrayList(new ReportComputationSteps(computeEngineContainer).instances());
   }
+
+  private static Set<Class<?>> constructorParameterTypes(Class<?> stepClass) {
+    return Arrays.stream(stepClass.getConstructors())
+      .flatMap(constructor -> Arrays.stream(constructor.getParameterTypes()))
+      .collect(MoreCollectors.toSet());
+  }
 }
@@ -19,8 +19,8 @@
  */
 package org.sonar.server.computation.task.projectanalysis.webhook;
 
-import java.util.LinkedList;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
@@ -28,7 +28,7 @@ import static java.util.Objects.requireNonNull;
 
 public class TestWebhookCaller implements WebhookCaller {
 
-  private final Queue<Item> deliveries = new LinkedList<>();
+  private final Queue<Item> deliveries = new ConcurrentLinkedQueue<>();
   private final AtomicInteger countSent = new AtomicInteger(0);
 
   public TestWebhookCaller enqueueSuccess(long at, int httpCode, int durationMs) {
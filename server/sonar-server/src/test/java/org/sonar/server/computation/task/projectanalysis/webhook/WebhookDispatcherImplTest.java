@@ -0,0 +1,267 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.computation.task.projectanalysis.webhook;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.utils.internal.TestSystem2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+
+public class WebhookDispatcherImplTest {
+
+  private static final long NOW = 1_500_000_000_000L;
+  private static final WebhookPayload PAYLOAD = new WebhookPayload("P1", "{json}");
+
+  private MapSettings settings = new MapSettings().setProperty(WebhookDispatcherImpl.RETRY_DELAY_PROPERTY, 1L);
+  private TestWebhookCaller caller = new TestWebhookCaller();
+  private WebhookDeliveryStorage deliveryStorage = mock(WebhookDeliveryStorage.class);
+  private WebhookDispatcherImpl underTest;
+
+  @After
+  public void tearDown() {
+    if (underTest != null) {
+      underTest.stop();
+    }
+  }
+
+  @Test
+  public void dispatch_does_not_wait_for_webhook_to_be_called() throws Exception {
+    CountDownLatch called = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    start((webhook, payload) -> {
+      called.countDown();
+      await(release);
+      return newDelivery(webhook, payload, 200);
+    });
+
+    underTest.dispatch(newWebhook("http://foo"), PAYLOAD);
+
+    assertThat(called.await(5, TimeUnit.SECONDS)).isTrue();
+    verifyZeroInteractions(deliveryStorage);
+    release.countDown();
+    verify(deliveryStorage, timeout(5_000)).persist(any(WebhookDelivery.class));
+  }
+
+  @Test
+  public void retry_failed_calls() {
+    caller.enqueueFailure(NOW, new IOException("Fail to connect"))
+      .enqueueSuccess(NOW, 503, 10)
+      .enqueueSuccess(NOW, 200, 10);
+    start(caller);
+
+    underTest.dispatch(newWebhook("http://foo"), PAYLOAD);
+
+    ArgumentCaptor<WebhookDelivery> delivery = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage, timeout(5_000)).persist(delivery.capture());
+    assertThat(caller.countSent()).isEqualTo(3);
+    assertThat(delivery.getValue().getHttpStatus()).contains(200);
+  }
+
+  @Test
+  public void persist_last_failure_when_max_attempts_is_reached() {
+    settings.setProperty(WebhookDispatcherImpl.MAX_ATTEMPTS_PROPERTY, 2);
+    caller.enqueueSuccess(NOW, 500, 10)
+      .enqueueSuccess(NOW, 502, 10);
+    start(caller);
+
+    underTest.dispatch(newWebhook("http://foo"), PAYLOAD);
+
+    ArgumentCaptor<WebhookDelivery> delivery = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage, timeout(5_000)).persist(delivery.capture());
+    assertThat(caller.countSent()).isEqualTo(2);
+    assertThat(delivery.getValue().getHttpStatus()).contains(502);
+  }
+
+  @Test
+  public void do_not_retry_client_errors() {
+    caller.enqueueSuccess(NOW, 404, 10);
+    start(caller);
+
+    underTest.dispatch(newWebhook("http://foo"), PAYLOAD);
+
+    verify(deliveryStorage, timeout(5_000)).persist(any(WebhookDelivery.class));
+    assertThat(caller.countSent()).isEqualTo(1);
+  }
+
+  @Test
+  public void persist_failure_of_calls_waiting_for_retry_when_stopping() {
+    settings.setProperty(WebhookDispatcherImpl.RETRY_DELAY_PROPERTY, 3_600_000L);
+    caller.enqueueFailure(NOW, new IOException("Fail to connect"));
+    start(caller);
+    underTest.dispatch(newWebhook("http://foo"), PAYLOAD);
+    while (caller.countSent() == 0) {
+      Thread.yield();
+    }
+
+    underTest.stop();
+    underTest = null;
+
+    ArgumentCaptor<WebhookDelivery> delivery = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage).persist(delivery.capture());
+    assertThat(delivery.getValue().getErrorMessage()).contains("Fail to connect");
+  }
+
+  @Test
+  public void persist_failure_of_calls_waiting_for_host_when_stopping() throws Exception {
+    settings.setProperty(WebhookDispatcherImpl.MAX_CALLS_PER_HOST_PROPERTY, 1);
+    CountDownLatch called = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    start((webhook, payload) -> {
+      called.countDown();
+      await(release);
+      return newDelivery(webhook, payload, 200);
+    });
+    underTest.dispatch(newWebhook("http://foo/hook1"), PAYLOAD);
+    underTest.dispatch(newWebhook("http://foo/hook2"), PAYLOAD);
+    assertThat(called.await(5, TimeUnit.SECONDS)).isTrue();
+
+    Thread stopping = new Thread(underTest::stop);
+    stopping.start();
+    // waiting for the running call to complete
+    while (stopping.getState() != Thread.State.TIMED_WAITING) {
+      Thread.yield();
+    }
+    release.countDown();
+    stopping.join(5_000);
+    underTest = null;
+
+    ArgumentCaptor<WebhookDelivery> delivery = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage, times(2)).persist(delivery.capture());
+    assertThat(delivery.getAllValues().get(0).getHttpStatus()).contains(200);
+    assertThat(delivery.getAllValues().get(1).getWebhook().getUrl()).isEqualTo("http://foo/hook2");
+    assertThat(delivery.getAllValues().get(1).getErrorMessage()).contains("Compute Engine is stopping");
+    assertThat(delivery.getAllValues().get(1).getAt()).isEqualTo(NOW);
+  }
+
+  @Test
+  public void persist_failure_of_calls_dispatched_after_stop() {
+    start(caller);
+    underTest.stop();
+
+    underTest.dispatch(newWebhook("http://foo"), PAYLOAD);
+    underTest = null;
+
+    ArgumentCaptor<WebhookDelivery> delivery = ArgumentCaptor.forClass(WebhookDelivery.class);
+    verify(deliveryStorage).persist(delivery.capture());
+    assertThat(delivery.getValue().getErrorMessage()).contains("Compute Engine is stopping");
+    assertThat(caller.countSent()).isZero();
+  }
+
+  @Test
+  public void bound_concurrent_calls_to_same_host() {
+    settings.setProperty(WebhookDispatcherImpl.MAX_CALLS_PER_HOST_PROPERTY, 1);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    start((webhook, payload) -> {
+      maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+      sleep(20);
+      running.decrementAndGet();
+      return newDelivery(webhook, payload, 200);
+    });
+
+    for (int i = 0; i < 4; i++) {
+      underTest.dispatch(newWebhook("http://foo/hook" + i), PAYLOAD);
+    }
+
+    verify(deliveryStorage, timeout(5_000).times(4)).persist(any(WebhookDelivery.class));
+    assertThat(maxRunning.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void calls_to_other_hosts_are_not_blocked_by_a_slow_host() {
+    settings.setProperty(WebhookDispatcherImpl.MAX_CALLS_PER_HOST_PROPERTY, 1);
+    CountDownLatch release = new CountDownLatch(1);
+    start((webhook, payload) -> {
+      if (webhook.getUrl().contains("slow")) {
+        await(release);
+      }
+      return newDelivery(webhook, payload, 200);
+    });
+
+    underTest.dispatch(newWebhook("http://slow/1"), PAYLOAD);
+    underTest.dispatch(newWebhook("http://slow/2"), PAYLOAD);
+    underTest.dispatch(newWebhook("http://fast/1"), PAYLOAD);
+
+    verify(deliveryStorage, timeout(5_000)).persist(any(WebhookDelivery.class));
+    release.countDown();
+    verify(deliveryStorage, timeout(5_000).times(3)).persist(any(WebhookDelivery.class));
+  }
+
+  @Test
+  public void isRetryable() {
+    Webhook webhook = newWebhook("http://foo");
+    assertThat(WebhookDispatcherImpl.isRetryable(newDelivery(webhook, PAYLOAD, 200))).isFalse();
+    assertThat(WebhookDispatcherImpl.isRetryable(newDelivery(webhook, PAYLOAD, 404))).isFalse();
+    assertThat(WebhookDispatcherImpl.isRetryable(newDelivery(webhook, PAYLOAD, 500))).isTrue();
+    assertThat(WebhookDispatcherImpl.isRetryable(new WebhookDelivery.Builder()
+      .setWebhook(webhook)
+      .setPayload(PAYLOAD)
+      .setError(new IOException("timeout"))
+      .build())).isTrue();
+  }
+
+  private void start(WebhookCaller webhookCaller) {
+    underTest = new WebhookDispatcherImpl(webhookCaller, deliveryStorage, new TestSystem2().setNow(NOW), settings.asConfig());
+    underTest.start();
+  }
+
+  private static Webhook newWebhook(String url) {
+    return new Webhook("P1_UUID", "TASK_1", "hook", url);
+  }
+
+  private static WebhookDelivery newDelivery(Webhook webhook, WebhookPayload payload, int httpStatus) {
+    return new WebhookDelivery.Builder()
+      .setWebhook(webhook)
+      .setPayload(payload)
+      .setAt(NOW)
+      .setHttpStatus(httpStatus)
+      .setDurationInMs(10)
+      .build();
+  }
+
+  private static void await(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private static void sleep(long ms) {
+    try {
+      Thread.sleep(ms);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
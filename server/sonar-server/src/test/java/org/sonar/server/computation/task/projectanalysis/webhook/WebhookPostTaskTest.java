@@ -28,6 +28,7 @@ import org.junit.Test;
 import org.sonar.api.ce.posttask.CeTask;
 import org.sonar.api.ce.posttask.PostProjectAnalysisTaskTester;
 import org.sonar.api.config.internal.MapSettings;
+import org.sonar.api.utils.System2;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
 import org.sonar.server.computation.task.projectanalysis.component.ConfigurationRepository;
@@ -55,6 +56,12 @@ public class WebhookPostTaskTest {
   private final TestWebhookCaller caller = new TestWebhookCaller();
   private final WebhookPayloadFactory payloadFactory = new TestWebhookPayloadFactory();
   private final WebhookDeliveryStorage deliveryStorage = mock(WebhookDeliveryStorage.class);
+  private final WebhookDispatcherImpl dispatcher = new WebhookDispatcherImpl(caller, deliveryStorage, System2.INSTANCE,
+    new MapSettings()
+      // calls are sent in the order of the expected responses of caller
+      .setProperty(WebhookDispatcherImpl.THREADS_PROPERTY, 1)
+      .setProperty(WebhookDispatcherImpl.MAX_ATTEMPTS_PROPERTY, 1)
+      .asConfig());
 
   @Test
   public void do_nothing_if_no_webhooks() {
@@ -126,8 +133,9 @@ public class WebhookPostTaskTest {
 
   private void execute() {
     ConfigurationRepository settingsRepository = new TestSettingsRepository(settings.asConfig());
-    WebhookPostTask task = new WebhookPostTask(settingsRepository, payloadFactory, caller, deliveryStorage);
+    WebhookPostTask task = new WebhookPostTask(settingsRepository, payloadFactory, dispatcher, deliveryStorage);
 
+    dispatcher.start();
     PostProjectAnalysisTaskTester.of(task)
       .at(new Date())
       .withCeTask(newCeTaskBuilder()
@@ -141,5 +149,7 @@ public class WebhookPostTaskTest {
         .build())
       .withScannerContext(newScannerContextBuilder().build())
       .execute();
+    // wait for webhooks to be sent
+    dispatcher.stop();
   }
 }
@@ -19,8 +19,14 @@
  */
 package org.sonar.server.computation.task.step;
 
+import com.google.common.collect.ImmutableSet;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
@@ -152,6 +158,123 @@ public class ComputationStepExecutorTest {
     new ComputationStepExecutor(mockComputationSteps(computationStep1), listener).execute();
   }
 
+  @Test
+  public void execute_concurrent_steps_in_parallel_and_wait_for_them_before_next_sequential_step() {
+    CountDownLatch bothStarted = new CountDownLatch(2);
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    ComputationStep concurrent1 = new ConcurrentStep1(() -> awaitOtherStep(bothStarted, executed, "concurrent1"));
+    ComputationStep concurrent2 = new ConcurrentStep2(() -> awaitOtherStep(bothStarted, executed, "concurrent2"));
+    ComputationStep last = new SequentialStep(() -> executed.add("last"));
+
+    new ComputationStepExecutor(mockConcurrentComputationSteps(Collections.emptySet(), concurrent1, concurrent2, last), listener)
+      .execute();
+
+    assertThat(executed).containsOnly("concurrent1", "concurrent2", "last");
+    assertThat(executed.get(2)).isEqualTo("last");
+    verify(listener).finished(true);
+  }
+
+  @Test
+  public void execute_concurrent_step_after_its_dependencies() {
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    ComputationStep concurrent1 = new ConcurrentStep1(() -> {
+      sleep();
+      executed.add("concurrent1");
+    });
+    ComputationStep concurrent2 = new ConcurrentStep2(() -> executed.add("concurrent2"));
+
+    new ComputationStepExecutor(mockConcurrentComputationSteps(ImmutableSet.of(ConcurrentStep1.class), concurrent1, concurrent2))
+      .execute();
+
+    assertThat(executed).containsExactly("concurrent1", "concurrent2");
+  }
+
+  @Test
+  public void execute_let_exception_thrown_by_concurrent_step_go_up_as_is_and_stops_execution() {
+    RuntimeException toBeThrown = new RuntimeException("simulating failing concurrent step");
+    List<String> executed = Collections.synchronizedList(new ArrayList<>());
+    ComputationStep concurrent1 = new ConcurrentStep1(() -> {
+      throw toBeThrown;
+    });
+    ComputationStep concurrent2 = new ConcurrentStep2(() -> executed.add("concurrent2"));
+    ComputationStep last = new SequentialStep(() -> executed.add("last"));
+
+    try {
+      new ComputationStepExecutor(mockConcurrentComputationSteps(Collections.emptySet(), concurrent1, concurrent2, last), listener)
+        .execute();
+      fail("exception toBeThrown should have been raised");
+    } catch (RuntimeException e) {
+      assertThat(e).isSameAs(toBeThrown);
+      assertThat(executed).containsExactly("concurrent2");
+      verify(listener).finished(false);
+    }
+  }
+
+  private static void awaitOtherStep(CountDownLatch bothStarted, List<String> executed, String name) {
+    bothStarted.countDown();
+    try {
+      // fails if steps are not executed concurrently
+      assertThat(bothStarted.await(10, TimeUnit.SECONDS)).isTrue();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executed.add(name);
+  }
+
+  private static void sleep() {
+    try {
+      Thread.sleep(100);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Steps {@link ConcurrentStep1} and {@link ConcurrentStep2} are concurrent, {@link ConcurrentStep2} depending on {@code step2Dependencies}
+   */
+  private static ComputationSteps mockConcurrentComputationSteps(Set<Class<? extends ComputationStep>> step2Dependencies, ComputationStep... computationSteps) {
+    ComputationSteps steps = mockComputationSteps(computationSteps);
+    when(steps.concurrentStepDependencies(ConcurrentStep1.class)).thenReturn(Collections.emptySet());
+    when(steps.concurrentStepDependencies(ConcurrentStep2.class)).thenReturn(step2Dependencies);
+    return steps;
+  }
+
+  private static class TestStep implements ComputationStep {
+    private final Runnable runnable;
+
+    private TestStep(Runnable runnable) {
+      this.runnable = runnable;
+    }
+
+    @Override
+    public void execute() {
+      runnable.run();
+    }
+
+    @Override
+    public String getDescription() {
+      return getClass().getSimpleName();
+    }
+  }
+
+  private static class ConcurrentStep1 extends TestStep {
+    private ConcurrentStep1(Runnable runnable) {
+      super(runnable);
+    }
+  }
+
+  private static class ConcurrentStep2 extends TestStep {
+    private ConcurrentStep2(Runnable runnable) {
+      super(runnable);
+    }
+  }
+
+  private static class SequentialStep extends TestStep {
+    private SequentialStep(Runnable runnable) {
+      super(runnable);
+    }
+  }
+
   private static ComputationSteps mockComputationSteps(ComputationStep... computationSteps) {
     ComputationSteps steps = mock(ComputationSteps.class);
     when(steps.instances()).thenReturn(Arrays.asList(computationSteps));
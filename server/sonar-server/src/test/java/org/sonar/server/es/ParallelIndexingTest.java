@@ -0,0 +1,82 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.es;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import static java.util.Arrays.asList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ParallelIndexingTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test
+  public void default_threads_depend_on_cores() {
+    assertThat(ParallelIndexing.defaultThreads(1)).isEqualTo(1);
+    assertThat(ParallelIndexing.defaultThreads(2)).isEqualTo(1);
+    assertThat(ParallelIndexing.defaultThreads(4)).isEqualTo(2);
+    assertThat(ParallelIndexing.defaultThreads(32)).isEqualTo(4);
+  }
+
+  @Test
+  public void index_all_slices() {
+    List<Integer> slices = IntStream.range(0, 100).boxed().collect(Collectors.toList());
+    Set<Integer> indexed = ConcurrentHashMap.newKeySet();
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    ParallelIndexing.forEach(slices, 3, slice -> {
+      indexed.add(slice);
+      threads.add(Thread.currentThread().getName());
+    });
+
+    assertThat(indexed).containsExactlyInAnyOrder(slices.toArray(new Integer[0]));
+    assertThat(threads).isNotEmpty().doesNotContain(Thread.currentThread().getName());
+  }
+
+  @Test
+  public void index_in_caller_thread_if_single_thread() {
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+
+    ParallelIndexing.forEach(asList("a", "b"), 1, slice -> threads.add(Thread.currentThread().getName()));
+
+    assertThat(threads).containsOnly(Thread.currentThread().getName());
+  }
+
+  @Test
+  public void propagate_failure_of_slice() {
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Fail to index b");
+
+    ParallelIndexing.forEach(asList("a", "b", "c"), 2, slice -> {
+      if (slice.equals("b")) {
+        throw new IllegalStateException("Fail to index " + slice);
+      }
+    });
+  }
+}
@@ -24,6 +24,7 @@ import com.google.common.collect.Multimap;
 import java.io.InvalidClassException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import org.junit.Before;
@@ -39,8 +40,10 @@ import org.sonar.db.property.PropertiesDao;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.only;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
@@ -106,6 +109,48 @@ public class DefaultNotificationManagerTest {
     inOrder.verify(notificationQueueDao).delete(dtos);
   }
 
+  @Test
+  public void claimFromQueue_returns_notifications_claimed_by_this_server() {
+    NotificationQueueDto dto1 = NotificationQueueDto.toNotificationQueueDto(new Notification("test"));
+    NotificationQueueDto dto2 = NotificationQueueDto.toNotificationQueueDto(new Notification("test"));
+    when(notificationQueueDao.selectOldestClaimable(10, 1_000L)).thenReturn(Arrays.asList(dto1, dto2));
+    // dto1 has been claimed by another server in the meantime
+    when(notificationQueueDao.claim(Arrays.asList(dto1, dto2), 1_500L, 1_000L)).thenReturn(Arrays.asList(dto2));
+
+    assertThat(manager.claimFromQueue(10, 1_500L, 500L)).containsExactly(dto2);
+
+    // notifications are kept in queue until they are delivered
+    verify(notificationQueueDao, never()).delete(any(List.class));
+  }
+
+  @Test
+  public void claimFromQueue_does_nothing_if_queue_is_empty() {
+    when(notificationQueueDao.selectOldestClaimable(10, 1_000L)).thenReturn(Collections.emptyList());
+
+    assertThat(manager.claimFromQueue(10, 1_500L, 500L)).isEmpty();
+
+    verify(notificationQueueDao, never()).claim(any(List.class), anyLong(), anyLong());
+  }
+
+  @Test
+  public void removeFromQueue_deletes_notifications() {
+    List<NotificationQueueDto> dtos = Arrays.asList(NotificationQueueDto.toNotificationQueueDto(new Notification("test")));
+
+    manager.removeFromQueue(dtos);
+
+    verify(notificationQueueDao).delete(dtos);
+  }
+
+  @Test
+  public void releaseFromQueue_cancels_claims_of_notifications() {
+    List<NotificationQueueDto> dtos = Arrays.asList(NotificationQueueDto.toNotificationQueueDto(new Notification("test")));
+
+    manager.releaseFromQueue(dtos);
+
+    verify(notificationQueueDao).release(dtos);
+    verify(notificationQueueDao, never()).delete(any(List.class));
+  }
+
   // SONAR-4739
   @Test
   public void shouldNotFailWhenUnableToDeserialize() throws Exception {
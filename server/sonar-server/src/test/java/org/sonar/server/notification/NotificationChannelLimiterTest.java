@@ -0,0 +1,102 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.notification;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.notifications.NotificationChannel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NotificationChannelLimiterTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  @Test(timeout = 10_000)
+  public void bound_concurrent_deliveries_of_each_channel() throws Exception {
+    NotificationChannelLimiter underTest = new NotificationChannelLimiter(2);
+    NotificationChannel email = mockChannel("email");
+    NotificationChannel slack = mockChannel("slack");
+    AtomicInteger concurrentEmails = new AtomicInteger();
+    AtomicInteger maxConcurrentEmails = new AtomicInteger();
+    AtomicInteger slackDeliveries = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(6);
+    try {
+      for (int i = 0; i < 5; i++) {
+        executor.submit(() -> {
+          underTest.deliver(email, () -> {
+            maxConcurrentEmails.accumulateAndGet(concurrentEmails.incrementAndGet(), Math::max);
+            awaitQuietly(release);
+            concurrentEmails.decrementAndGet();
+          });
+          return null;
+        });
+      }
+      while (concurrentEmails.get() < 2) {
+        Thread.sleep(10);
+      }
+      // other channels are not blocked by the busy one
+      executor.submit(() -> {
+        underTest.deliver(slack, slackDeliveries::incrementAndGet);
+        return null;
+      }).get(5, TimeUnit.SECONDS);
+      assertThat(slackDeliveries.get()).isEqualTo(1);
+
+      release.countDown();
+      executor.shutdown();
+      assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+      assertThat(maxConcurrentEmails.get()).isEqualTo(2);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void fail_if_max_concurrent_deliveries_is_not_positive() {
+    expectedException.expect(IllegalArgumentException.class);
+    expectedException.expectMessage("Max number of concurrent deliveries per channel must be strictly positive: 0");
+
+    new NotificationChannelLimiter(0);
+  }
+
+  private static NotificationChannel mockChannel(String key) {
+    NotificationChannel channel = mock(NotificationChannel.class);
+    when(channel.getKey()).thenReturn(key);
+    return channel;
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
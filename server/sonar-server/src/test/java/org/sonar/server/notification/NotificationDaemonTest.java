@@ -22,6 +22,7 @@ package org.sonar.server.notification;
 import com.google.common.collect.Sets;
 import java.util.Arrays;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.sonar.api.config.PropertyDefinitions;
@@ -30,13 +31,23 @@ import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.notifications.Notification;
 import org.sonar.api.notifications.NotificationChannel;
 import org.sonar.db.DbClient;
+import org.sonar.db.notification.NotificationQueueDto;
 import org.sonar.db.property.PropertiesDao;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
@@ -51,6 +62,7 @@ public class NotificationDaemonTest {
 
   private DefaultNotificationManager manager = mock(DefaultNotificationManager.class);
   private Notification notification = mock(Notification.class);
+  private NotificationQueueDto notificationDto = mock(NotificationQueueDto.class);
   private NotificationChannel emailChannel = mock(NotificationChannel.class);
   private NotificationChannel gtalkChannel = mock(NotificationChannel.class);
   private NotificationDispatcher commentOnIssueAssignedToMe = mock(NotificationDispatcher.class);
@@ -69,7 +81,8 @@ public class NotificationDaemonTest {
     when(commentOnIssueCreatedByMe.getType()).thenReturn("issue-changes");
     when(qualityGateChange.getKey()).thenReturn("QGateChange");
     when(qualityGateChange.getType()).thenReturn("qgate-changes");
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(null);
+    when(manager.claimFromQueue(anyInt(), anyLong(), anyLong())).thenReturn(singletonList(notificationDto)).thenReturn(emptyList());
+    when(manager.toNotification(notificationDto)).thenReturn(notification);
 
     MapSettings settings = new MapSettings(new PropertyDefinitions(NotificationDaemon.class)).setProperty("sonar.notifications.delay", 1L);
 
@@ -175,7 +188,7 @@ public class NotificationDaemonTest {
   @Test
   public void shouldNotStopWhenException() {
     setUpMocks();
-    when(manager.getFromQueue()).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(notification).thenReturn(null);
+    when(manager.claimFromQueue(anyInt(), anyLong(), anyLong())).thenThrow(new RuntimeException("Unexpected exception")).thenReturn(singletonList(notificationDto)).thenReturn(emptyList());
     doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
     doAnswer(addUser(CREATOR_SIMON, emailChannel)).when(commentOnIssueCreatedByMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
 
@@ -217,7 +230,7 @@ public class NotificationDaemonTest {
   public void shouldLogEvery10Minutes() {
     setUpMocks();
     // Emulate 2 notifications in DB
-    when(manager.getFromQueue()).thenReturn(notification).thenReturn(notification).thenReturn(null);
+    when(manager.claimFromQueue(anyInt(), anyLong(), anyLong())).thenReturn(singletonList(notificationDto)).thenReturn(singletonList(notificationDto)).thenReturn(emptyList());
     when(manager.count()).thenReturn(1L).thenReturn(0L);
     underTest = spy(underTest);
     // Emulate processing of each notification take 10 min to have a log each time
@@ -228,6 +241,88 @@ public class NotificationDaemonTest {
     underTest.stop();
   }
 
+  @Test
+  public void claim_notifications_from_queue_before_delivering_them() {
+    setUpMocks();
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+
+    underTest.start();
+    verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    underTest.stop();
+
+    InOrder inOrder = inOrder(emailChannel, manager);
+    inOrder.verify(manager).claimFromQueue(anyInt());
+    inOrder.verify(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+  }
+
+  @Test
+  public void remove_notifications_from_queue_once_delivered() {
+    setUpMocks();
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+
+    underTest.start();
+    verify(manager, timeout(2000)).removeFromQueue(singletonList(notificationDto));
+    underTest.stop();
+
+    InOrder inOrder = inOrder(emailChannel, manager);
+    inOrder.verify(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+    inOrder.verify(manager).removeFromQueue(singletonList(notificationDto));
+    verify(manager, never()).releaseFromQueue(anyListOf(NotificationQueueDto.class));
+    assertThat(underTest.getDeliveredCount()).isEqualTo(1);
+    assertThat(underTest.getFailedCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void release_notifications_whose_delivery_is_interrupted() {
+    setUpMocks();
+    doAnswer(addUser(ASSIGNEE_SIMON, new NotificationChannel[] {emailChannel, gtalkChannel}))
+      .when(commentOnIssueAssignedToMe).dispatch(same(notification), any(NotificationDispatcher.Context.class));
+    // the worker is interrupted, as when the server stops, so the delivery through the second channel is not done
+    doAnswer(interruptWorker()).when(emailChannel).deliver(notification, ASSIGNEE_SIMON);
+    doAnswer(interruptWorker()).when(gtalkChannel).deliver(notification, ASSIGNEE_SIMON);
+
+    underTest.start();
+    verify(manager, timeout(2000)).releaseFromQueue(singletonList(notificationDto));
+    underTest.stop();
+
+    verify(manager, never()).removeFromQueue(anyListOf(NotificationQueueDto.class));
+    assertThat(underTest.getDeliveredCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void deliver_notifications_by_batch() {
+    setUpMocks();
+    Notification notification2 = mock(Notification.class);
+    NotificationQueueDto notificationDto2 = mock(NotificationQueueDto.class);
+    when(manager.claimFromQueue(anyInt(), anyLong(), anyLong())).thenReturn(asList(notificationDto, notificationDto2)).thenReturn(emptyList());
+    when(manager.toNotification(notificationDto2)).thenReturn(notification2);
+    doAnswer(addUser(ASSIGNEE_SIMON, emailChannel)).when(commentOnIssueAssignedToMe).dispatch(any(Notification.class), any(NotificationDispatcher.Context.class));
+    MapSettings settings = new MapSettings(new PropertyDefinitions(NotificationDaemon.class))
+      .setProperty("sonar.notifications.delay", 1L)
+      .setProperty("sonar.notifications.batchSize", 50);
+    underTest = new NotificationDaemon(settings.asConfig(), manager, service);
+
+    underTest.start();
+    verify(emailChannel, timeout(2000)).deliver(notification, ASSIGNEE_SIMON);
+    verify(emailChannel, timeout(2000)).deliver(notification2, ASSIGNEE_SIMON);
+    underTest.stop();
+
+    verify(manager, atLeastOnce()).claimFromQueue(eq(50), anyLong(), anyLong());
+  }
+
+  @Test
+  public void ignore_unreadable_notifications() {
+    setUpMocks();
+    when(manager.toNotification(notificationDto)).thenThrow(new IllegalStateException("Unable to read notification"));
+
+    underTest.start();
+    verify(manager, timeout(2000)).removeFromQueue(singletonList(notificationDto));
+    underTest.stop();
+
+    verify(emailChannel, never()).deliver(any(Notification.class), anyString());
+    assertThat(underTest.getFailedCount()).isEqualTo(1);
+  }
+
   @Test
   public void hasProjectSubscribersForType() {
     setUpMocks();
@@ -244,6 +339,13 @@ public class NotificationDaemonTest {
     assertThat(service.hasProjectSubscribersForTypes("PROJECT_UUID", Sets.newHashSet("issue-changes"))).isTrue();
   }
 
+  private static Answer<Object> interruptWorker() {
+    return invocation -> {
+      Thread.currentThread().interrupt();
+      return null;
+    };
+  }
+
   private static Answer<Object> addUser(final String user, final NotificationChannel channel) {
     return addUser(user, new NotificationChannel[] {channel});
   }
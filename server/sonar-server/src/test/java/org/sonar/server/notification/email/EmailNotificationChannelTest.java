@@ -169,6 +169,27 @@ public class EmailNotificationChannelTest {
     underTest.deliver(emailMessage);
   }
 
+  @Test
+  public void reuse_connection_to_send_next_emails() {
+    configure();
+
+    underTest.deliver(new EmailMessage().setTo("user1@nowhere").setSubject("Foo").setMessage("Bar"));
+    underTest.deliver(new EmailMessage().setTo("user2@nowhere").setSubject("Foo").setMessage("Bar"));
+
+    assertThat(smtpServer.getMessages()).extracting(WiserMessage::getEnvelopeReceiver).containsExactly("user1@nowhere", "user2@nowhere");
+    assertThat(underTest.idleConnectionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void close_idle_connections_when_stopping() {
+    configure();
+    underTest.deliver(new EmailMessage().setTo("user@nowhere").setSubject("Foo").setMessage("Bar"));
+
+    underTest.stop();
+
+    assertThat(underTest.idleConnectionCount()).isEqualTo(0);
+  }
+
   @Test
   public void shouldSendTestEmailWithSTARTTLS() {
     smtpServer.getServer().setEnableTLS(true);
@@ -0,0 +1,55 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import org.junit.Test;
+import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo;
+import org.sonar.server.notification.DefaultNotificationManager;
+import org.sonar.server.notification.NotificationDaemon;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sonar.process.systeminfo.SystemInfoUtils.attribute;
+
+public class NotificationQueueSectionTest {
+
+  private DefaultNotificationManager manager = mock(DefaultNotificationManager.class);
+  private NotificationDaemon daemon = mock(NotificationDaemon.class);
+  private NotificationQueueSection underTest = new NotificationQueueSection(manager, daemon);
+
+  @Test
+  public void jmx_name_is_not_empty() {
+    assertThat(underTest.name()).isEqualTo("NotificationQueue");
+  }
+
+  @Test
+  public void queue_statistics() {
+    when(manager.count()).thenReturn(12L);
+    when(daemon.getDeliveredCount()).thenReturn(30L);
+    when(daemon.getFailedCount()).thenReturn(2L);
+
+    ProtobufSystemInfo.Section section = underTest.toProtobuf();
+    assertThat(section.getName()).isEqualTo("Web Notification Queue");
+    assertThat(attribute(section, "Pending").getLongValue()).isEqualTo(12L);
+    assertThat(attribute(section, "Delivered").getLongValue()).isEqualTo(30L);
+    assertThat(attribute(section, "Failed").getLongValue()).isEqualTo(2L);
+  }
+}
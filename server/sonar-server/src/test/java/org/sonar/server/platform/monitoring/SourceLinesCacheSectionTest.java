@@ -0,0 +1,54 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.platform.monitoring;
+
+import com.google.common.cache.CacheStats;
+import org.junit.Test;
+import org.sonar.process.systeminfo.protobuf.ProtobufSystemInfo;
+import org.sonar.server.source.SourceLinesCache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.sonar.process.systeminfo.SystemInfoUtils.attribute;
+
+public class SourceLinesCacheSectionTest {
+
+  private SourceLinesCache cache = mock(SourceLinesCache.class);
+  private SourceLinesCacheSection underTest = new SourceLinesCacheSection(cache);
+
+  @Test
+  public void jmx_name_is_not_empty() {
+    assertThat(underTest.name()).isEqualTo("SourceLinesCache");
+  }
+
+  @Test
+  public void cache_statistics() {
+    when(cache.stats()).thenReturn(new CacheStats(10L, 3L, 0L, 0L, 0L, 2L));
+    when(cache.size()).thenReturn(5L);
+
+    ProtobufSystemInfo.Section section = underTest.toProtobuf();
+    assertThat(section.getName()).isEqualTo("Web Source Lines Cache");
+    assertThat(attribute(section, "Hits").getLongValue()).isEqualTo(10L);
+    assertThat(attribute(section, "Misses").getLongValue()).isEqualTo(3L);
+    assertThat(attribute(section, "Evictions").getLongValue()).isEqualTo(2L);
+    assertThat(attribute(section, "Size").getLongValue()).isEqualTo(5L);
+  }
+}
@@ -71,4 +71,18 @@ public class DecorationDataHolderTest {
     assertThat(offsets.get(7)).isEqualTo(130);
     assertThat(offsets.get(8)).isEqualTo(145);
   }
+
+  @Test
+  public void should_sort_tags_loaded_out_of_order() {
+    DecorationDataHolder holder = new DecorationDataHolder();
+    holder.loadSyntaxHighlightingData("20,25,k;0,12,cppd;0,4,a;");
+    holder.loadLineSymbolReferences("2,4,7");
+
+    assertThat(holder.getOpeningTagsEntries()).containsExactly(
+      new OpeningHtmlTag(0, "cppd"),
+      new OpeningHtmlTag(0, "a"),
+      new OpeningHtmlTag(2, "sym-7 sym"),
+      new OpeningHtmlTag(20, "k"));
+    assertThat(holder.getClosingTagsOffsets()).containsExactly(4, 4, 12, 25);
+  }
 }
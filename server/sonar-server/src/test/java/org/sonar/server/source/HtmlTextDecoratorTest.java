@@ -21,6 +21,7 @@ package org.sonar.server.source;
 
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -400,4 +401,19 @@ public class HtmlTextDecoratorTest {
       "<span class=\"cppd\"> *   &lt;li&gt;Create a javadoc generator&lt;/li&gt;</span>"
     );
   }
+
+  @Test
+  public void lines_are_streamed_to_consumer() {
+    String code = "int a = 1 < 2;" + LF_END_OF_LINE + "int b;";
+
+    DecorationDataHolder decorationData = new DecorationDataHolder();
+    decorationData.loadSyntaxHighlightingData("0,3,k;15,18,k;");
+
+    List<String> htmlOutput = new ArrayList<>();
+    new HtmlTextDecorator().decorateTextWithHtml(code, decorationData, null, null, line -> htmlOutput.add(line.toString()));
+
+    assertThat(htmlOutput).containsExactly(
+      "<span class=\"k\">int</span> a = 1 &lt; 2;",
+      "<span class=\"k\">int</span> b;");
+  }
 }
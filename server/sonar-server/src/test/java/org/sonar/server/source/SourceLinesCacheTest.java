@@ -0,0 +1,104 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.server.source;
+
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+import org.sonar.db.protobuf.DbFileSources;
+import org.sonar.server.source.SourceLinesCache.Format;
+import org.sonar.server.source.SourceLinesCache.Key;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SourceLinesCacheTest {
+
+  private SourceLinesCache underTest = new SourceLinesCache(4);
+
+  @Test
+  public void get_returns_lines_of_same_key() {
+    List<String> lines = Arrays.asList("a", "b");
+    underTest.put(new Key("FILE", "HASH", 1, 2, Format.HTML), lines);
+
+    assertThat(underTest.<String>get(new Key("FILE", "HASH", 1, 2, Format.HTML))).isSameAs(lines);
+    assertThat(underTest.<String>get(new Key("FILE", "HASH", 1, 2, Format.RAW_TEXT))).isNull();
+    assertThat(underTest.<String>get(new Key("FILE", "OTHER_HASH", 1, 2, Format.HTML))).isNull();
+    assertThat(underTest.<String>get(new Key("FILE", "HASH", 1, 3, Format.HTML))).isNull();
+    assertThat(underTest.stats().hitCount()).isEqualTo(1);
+    assertThat(underTest.stats().missCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void least_recently_used_entries_are_evicted_when_max_characters_is_exceeded() {
+    Key first = new Key("FILE", "HASH", 1, 2, Format.DB);
+    Key second = new Key("FILE", "HASH", 3, 4, Format.DB);
+    Key third = new Key("FILE", "HASH", 5, 6, Format.DB);
+    underTest.put(first, Arrays.asList("a", "b"));
+    underTest.put(second, Arrays.asList("c", "d"));
+    underTest.get(first);
+    underTest.put(third, Arrays.asList("e", "f"));
+
+    assertThat(underTest.size()).isEqualTo(2);
+    assertThat(underTest.<String>get(second)).isNull();
+    assertThat(underTest.<String>get(first)).containsExactly("a", "b");
+    assertThat(underTest.stats().evictionCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void entries_are_weighed_by_characters() {
+    Key big = new Key("FILE", "HASH", 1, 1, Format.HTML);
+    Key small = new Key("FILE", "HASH", 1, 2, Format.RAW_TEXT);
+    underTest.put(big, Arrays.asList("<span>a</span>"));
+
+    assertThat(underTest.<String>get(big)).isNull();
+
+    underTest.put(small, Arrays.asList("ab", "cd"));
+    assertThat(underTest.<String>get(small)).containsExactly("ab", "cd");
+  }
+
+  @Test
+  public void db_lines_are_weighed_by_their_encoded_size() {
+    DbFileSources.Line line = DbFileSources.Line.newBuilder().setLine(1).setSource("abcdef").build();
+    Key key = new Key("FILE", "HASH", 1, 1, Format.DB);
+    underTest.put(key, Arrays.asList(line));
+
+    assertThat(underTest.<DbFileSources.Line>get(key)).isNull();
+
+    SourceLinesCache biggerCache = new SourceLinesCache(100);
+    biggerCache.put(key, Arrays.asList(line));
+    assertThat(biggerCache.<DbFileSources.Line>get(key)).containsExactly(line);
+  }
+
+  @Test
+  public void max_characters_is_configurable() {
+    MapSettings settings = new MapSettings();
+    settings.setProperty(SourceLinesCache.PROPERTY_MAX_CHARACTERS, "1");
+    SourceLinesCache cache = new SourceLinesCache(settings.asConfig());
+    Key key = new Key("FILE", "HASH", 1, 1, Format.RAW_TEXT);
+    cache.put(key, Arrays.asList("ab"));
+
+    assertThat(cache.<String>get(key)).isNull();
+
+    SourceLinesCache defaultCache = new SourceLinesCache(new MapSettings().asConfig());
+    defaultCache.put(key, Arrays.asList("ab"));
+    assertThat(defaultCache.<String>get(key)).containsExactly("ab");
+  }
+}
@@ -27,6 +27,7 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.utils.System2;
 import org.sonar.db.DbTester;
 import org.sonar.db.protobuf.DbFileSources;
@@ -35,6 +36,8 @@ import org.sonar.server.source.index.FileSourceTesting;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class SourceServiceTest {
@@ -49,12 +52,12 @@ public class SourceServiceTest {
 
   HtmlSourceDecorator htmlDecorator = mock(HtmlSourceDecorator.class);
 
-  SourceService underTest = new SourceService(dbTester.getDbClient(), htmlDecorator);
+  SourceService underTest = new SourceService(dbTester.getDbClient(), htmlDecorator, new SourceLinesCache(new MapSettings().asConfig()));
 
   @Before
   public void injectFakeLines() throws IOException {
     FileSourceDto dto = new FileSourceDto();
-    dto.setFileUuid(FILE_UUID).setProjectUuid("PROJECT_UUID");
+    dto.setFileUuid(FILE_UUID).setProjectUuid("PROJECT_UUID").setDataHash("HASH_1");
     dto.setSourceData(FileSourceTesting.newFakeData(10).build());
     dbTester.getDbClient().fileSourceDao().insert(dbTester.getSession(), dto);
     dbTester.commit();
@@ -91,6 +94,23 @@ public class SourceServiceTest {
     assertThat(lines).containsExactly("HTML_5", "HTML_6", "HTML_7");
   }
 
+  @Test
+  public void html_lines_are_cached_until_source_data_changes() throws Exception {
+    when(htmlDecorator.getDecoratedSourceAsHtml("SOURCE_5", "HIGHLIGHTING_5", "SYMBOLS_5")).thenReturn("HTML_5");
+
+    assertThat(underTest.getLinesAsHtml(dbTester.getSession(), FILE_UUID, 5, 5).get()).containsExactly("HTML_5");
+    assertThat(underTest.getLinesAsHtml(dbTester.getSession(), FILE_UUID, 5, 5).get()).containsExactly("HTML_5");
+    verify(htmlDecorator, times(1)).getDecoratedSourceAsHtml("SOURCE_5", "HIGHLIGHTING_5", "SYMBOLS_5");
+
+    FileSourceDto dto = dbTester.getDbClient().fileSourceDao().selectSourceByFileUuid(dbTester.getSession(), FILE_UUID);
+    dto.setDataHash("HASH_2");
+    dbTester.getDbClient().fileSourceDao().update(dbTester.getSession(), dto);
+    dbTester.commit();
+
+    assertThat(underTest.getLinesAsHtml(dbTester.getSession(), FILE_UUID, 5, 5).get()).containsExactly("HTML_5");
+    verify(htmlDecorator, times(2)).getDecoratedSourceAsHtml("SOURCE_5", "HIGHLIGHTING_5", "SYMBOLS_5");
+  }
+
   @Test
   public void getLines_fails_if_range_starts_at_zero() {
     expectedException.expect(IllegalArgumentException.class);
@@ -26,6 +26,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
+import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.utils.System2;
 import org.sonar.api.web.UserRole;
 import org.sonar.db.DbTester;
@@ -82,7 +83,7 @@ public class LinesActionTest {
         return "<p>" + invocationOnMock.getArguments()[0] + "</p>";
       }
     });
-    sourceService = new SourceService(db.getDbClient(), htmlSourceDecorator);
+    sourceService = new SourceService(db.getDbClient(), htmlSourceDecorator, new SourceLinesCache(new MapSettings().asConfig()));
     componentDao = new ComponentDao();
     wsTester = new WsTester(new SourcesWs(
       new LinesAction(TestComponentFinder.from(db), db.getDbClient(), sourceService, htmlSourceDecorator, userSession)));
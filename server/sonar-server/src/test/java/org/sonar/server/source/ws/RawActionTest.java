@@ -22,6 +22,7 @@ package org.sonar.server.source.ws;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.sonar.api.config.internal.MapSettings;
 import org.sonar.api.resources.Qualifiers;
 import org.sonar.api.utils.System2;
 import org.sonar.api.web.UserRole;
@@ -53,7 +54,7 @@ public class RawActionTest {
   private ResourceTypesRule resourceTypes = new ResourceTypesRule().setRootQualifiers(Qualifiers.PROJECT);
 
   private WsActionTester ws = new WsActionTester(new RawAction(db.getDbClient(),
-    new SourceService(db.getDbClient(), null), userSession,
+    new SourceService(db.getDbClient(), null, new SourceLinesCache(new MapSettings().asConfig())), userSession,
     new ComponentFinder(db.getDbClient(), resourceTypes)));
 
   @Test
@@ -19,15 +19,20 @@
  */
 package org.sonar.server.util.cache;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.utils.System2;
 import org.sonar.core.util.CloseableIterator;
 
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
-
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.fail;
 
@@ -77,4 +82,55 @@ public class DiskCacheTest {
       assertThat(e).hasMessage("expected error");
     }
   }
+
+  @Test
+  public void write_and_read_with_codec() throws Exception {
+    DiskCache<String> cache = new DiskCache<>(temp.newFile(), System2.INSTANCE, new StringCodec(), false);
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).isEmpty();
+    }
+
+    cache.newAppender()
+      .append("foo")
+      .append("bar")
+      .close();
+    cache.newAppender()
+      .append("baz")
+      .close();
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactly("foo", "bar", "baz");
+    }
+  }
+
+  @Test
+  public void write_and_read_compressed_blocks() throws Exception {
+    File file = temp.newFile();
+    DiskCache<String> cache = new DiskCache<>(file, System2.INSTANCE, new StringCodec(), true);
+    List<String> expected = new ArrayList<>();
+    try (DiskCache<String>.DiskAppender appender = cache.newAppender()) {
+      // several blocks
+      for (int i = 0; i < 10_000; i++) {
+        String value = "value of a quite repetitive object #" + i;
+        expected.add(value);
+        appender.append(value);
+      }
+    }
+
+    assertThat(file.length()).isLessThan(DiskCache.BLOCK_SIZE * 3L);
+    try (CloseableIterator<String> traverse = cache.traverse()) {
+      assertThat(traverse).containsExactlyElementsOf(expected);
+    }
+  }
+
+  private static class StringCodec implements DiskCacheCodec<String> {
+    @Override
+    public void encode(String object, CodedOutputStream output) throws IOException {
+      output.writeStringNoTag(object);
+    }
+
+    @Override
+    public String decode(CodedInputStream input) throws IOException {
+      return input.readString();
+    }
+  }
 }
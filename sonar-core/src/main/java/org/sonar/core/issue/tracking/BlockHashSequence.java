@@ -19,7 +19,6 @@
  */
 package org.sonar.core.issue.tracking;
 
-import java.util.List;
 import javax.annotation.Nullable;
 
 public class BlockHashSequence {
@@ -28,21 +27,25 @@ public class BlockHashSequence {
   /**
    * Hashes of blocks around lines. Line 1 is at index 0.
    */
-  private final int[] blockHashes;
+  private final long[] blockHashes;
 
   BlockHashSequence(LineHashSequence lineHashSequence, int halfBlockSize) {
-    this.blockHashes = new int[lineHashSequence.length()];
+    long[] lineHashes = new long[lineHashSequence.length()];
+    for (int line = 1; line <= lineHashes.length; line++) {
+      lineHashes[line - 1] = hash(lineHashSequence.getHashForLine(line));
+    }
+    this.blockHashes = new long[lineHashes.length];
 
-    BlockHashFactory blockHashFactory = new BlockHashFactory(lineHashSequence.getHashes(), halfBlockSize);
-    for (int line = 1; line <= lineHashSequence.length(); line++) {
+    BlockHashFactory blockHashFactory = new BlockHashFactory(lineHashes, halfBlockSize);
+    for (int line = 1; line <= lineHashes.length; line++) {
       blockHashes[line - 1] = blockHashFactory.getHash();
       if (line - halfBlockSize > 0) {
-        blockHashFactory.remove(lineHashSequence.getHashForLine(line - halfBlockSize).hashCode());
+        blockHashFactory.remove(lineHashes[line - halfBlockSize - 1]);
       }
-      if (line + 1 + halfBlockSize <= lineHashSequence.length()) {
-        blockHashFactory.add(lineHashSequence.getHashForLine(line + 1 + halfBlockSize).hashCode());
+      if (line + 1 + halfBlockSize <= lineHashes.length) {
+        blockHashFactory.add(lineHashes[line + halfBlockSize]);
       } else {
-        blockHashFactory.add(0);
+        blockHashFactory.add(0L);
       }
     }
   }
@@ -51,10 +54,22 @@ public class BlockHashSequence {
     return new BlockHashSequence(lineHashSequence, DEFAULT_HALF_BLOCK_SIZE);
   }
 
+  /**
+   * 64-bit FNV-1a hash of the line hash, so that blocks of different lines hardly ever get the same hash
+   */
+  private static long hash(String lineHash) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < lineHash.length(); i++) {
+      hash ^= lineHash.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
   /**
    * Hash of block around line. Line must be in range of valid lines. It starts with 1.
    */
-  public int getBlockHashForLine(int line) {
+  public long getBlockHashForLine(int line) {
     return blockHashes[line - 1];
   }
 
@@ -63,31 +78,31 @@ public class BlockHashSequence {
   }
 
   private static class BlockHashFactory {
-    private static final int PRIME_BASE = 31;
+    private static final long PRIME_BASE = 31L;
 
-    private final int power;
-    private int hash = 0;
+    private final long power;
+    private long hash = 0L;
 
-    public BlockHashFactory(List<String> hashes, int halfBlockSize) {
-      int pow = 1;
+    public BlockHashFactory(long[] hashes, int halfBlockSize) {
+      long pow = 1L;
       for (int i = 0; i < halfBlockSize * 2; i++) {
         pow = pow * PRIME_BASE;
       }
       this.power = pow;
-      for (int i = 1; i <= Math.min(hashes.size(), halfBlockSize + 1); i++) {
-        add(hashes.get(i - 1).hashCode());
+      for (int i = 1; i <= Math.min(hashes.length, halfBlockSize + 1); i++) {
+        add(hashes[i - 1]);
       }
     }
 
-    public void add(int value) {
+    public void add(long value) {
       hash = hash * PRIME_BASE + value;
     }
 
-    public void remove(int value) {
+    public void remove(long value) {
       hash = hash - power * value;
     }
 
-    public int getHash() {
+    public long getHash() {
       return hash;
     }
 
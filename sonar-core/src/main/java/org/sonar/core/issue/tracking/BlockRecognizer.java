@@ -25,9 +25,7 @@ import com.google.common.collect.Multimap;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
 
@@ -41,37 +39,24 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
 
     Multimap<Integer, RAW> rawsByLine = groupByLine(tracking.getUnmatchedRaws(), rawHashSequence);
     Multimap<Integer, BASE> basesByLine = groupByLine(tracking.getUnmatchedBases(), baseHashSequence);
-    Map<Integer, HashOccurrence> occurrencesByHash = new HashMap<>();
+    if (rawsByLine.isEmpty() || basesByLine.isEmpty()) {
+      return;
+    }
 
+    HashOccurrences occurrences = new HashOccurrences(basesByLine.keySet().size());
     for (Integer line : basesByLine.keySet()) {
-      int hash = baseHashSequence.getBlockHashForLine(line);
-      HashOccurrence hashOccurrence = occurrencesByHash.get(hash);
-      if (hashOccurrence == null) {
-        // first occurrence in base
-        hashOccurrence = new HashOccurrence();
-        hashOccurrence.baseLine = line;
-        hashOccurrence.baseCount = 1;
-        occurrencesByHash.put(hash, hashOccurrence);
-      } else {
-        hashOccurrence.baseCount++;
-      }
+      occurrences.addBase(baseHashSequence.getBlockHashForLine(line), line);
     }
-
     for (Integer line : rawsByLine.keySet()) {
-      int hash = rawHashSequence.getBlockHashForLine(line);
-      HashOccurrence hashOccurrence = occurrencesByHash.get(hash);
-      if (hashOccurrence != null) {
-        hashOccurrence.rawLine = line;
-        hashOccurrence.rawCount++;
-      }
+      occurrences.addRaw(rawHashSequence.getBlockHashForLine(line), line);
     }
 
-    for (HashOccurrence hashOccurrence : occurrencesByHash.values()) {
-      if (hashOccurrence.baseCount == 1 && hashOccurrence.rawCount == 1) {
+    for (int i = 0; i < occurrences.size; i++) {
+      if (occurrences.baseCounts[i] == 1 && occurrences.rawCounts[i] == 1) {
         // Guaranteed that baseLine has been moved to rawLine, so we can map all issues on baseLine to all issues on rawLine
-        map(rawsByLine.get(hashOccurrence.rawLine), basesByLine.get(hashOccurrence.baseLine), tracking);
-        basesByLine.removeAll(hashOccurrence.baseLine);
-        rawsByLine.removeAll(hashOccurrence.rawLine);
+        map(rawsByLine.get(occurrences.rawLines[i]), basesByLine.get(occurrences.baseLines[i]), tracking);
+        basesByLine.removeAll(occurrences.baseLines[i]);
+        rawsByLine.removeAll(occurrences.rawLines[i]);
       }
     }
 
@@ -80,10 +65,11 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
       return;
     }
 
+    BlockWeights weights = new BlockWeights(baseInput.getLineHashSequence(), rawInput.getLineHashSequence());
     List<LinePair> possibleLinePairs = Lists.newArrayList();
     for (Integer baseLine : basesByLine.keySet()) {
       for (Integer rawLine : rawsByLine.keySet()) {
-        int weight = lengthOfMaximalBlock(baseInput.getLineHashSequence(), baseLine, rawInput.getLineHashSequence(), rawLine);
+        int weight = weights.lengthOfMaximalBlock(baseLine, rawLine);
         possibleLinePairs.add(new LinePair(baseLine, rawLine, weight));
       }
     }
@@ -99,26 +85,7 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
    * @param startLineB number of line from second version of text (numbering starts from 1)
    */
   static int lengthOfMaximalBlock(LineHashSequence hashesA, int startLineA, LineHashSequence hashesB, int startLineB) {
-    if (!hashesA.getHashForLine(startLineA).equals(hashesB.getHashForLine(startLineB))) {
-      return 0;
-    }
-    int length = 0;
-    int ai = startLineA;
-    int bi = startLineB;
-    while (ai <= hashesA.length() && bi <= hashesB.length() && hashesA.getHashForLine(ai).equals(hashesB.getHashForLine(bi))) {
-      ai++;
-      bi++;
-      length++;
-    }
-    ai = startLineA;
-    bi = startLineB;
-    while (ai > 0 && bi > 0 && hashesA.getHashForLine(ai).equals(hashesB.getHashForLine(bi))) {
-      ai--;
-      bi--;
-      length++;
-    }
-    // Note that position (startA, startB) was counted twice
-    return length - 1;
+    return new BlockWeights(hashesA, hashesB).lengthOfMaximalBlock(startLineA, startLineB);
   }
 
   private void map(Collection<RAW> raws, Collection<BASE> bases, Tracking<RAW, BASE> result) {
@@ -155,11 +122,114 @@ class BlockRecognizer<RAW extends Trackable, BASE extends Trackable> {
     }
   }
 
-  private static class HashOccurrence {
-    int baseLine;
-    int rawLine;
-    int baseCount;
-    int rawCount;
+  /**
+   * Occurrences of the block hashes of base lines, indexed by open addressing on primitive hashes. Entries are
+   * kept in insertion order.
+   */
+  private static class HashOccurrences {
+    private final long[] hashes;
+    // index of entry + 1 by slot, 0 for free slots
+    private final int[] entryBySlot;
+    private final int mask;
+    private final int[] baseLines;
+    private final int[] rawLines;
+    private final int[] baseCounts;
+    private final int[] rawCounts;
+    private int size = 0;
+
+    HashOccurrences(int maxSize) {
+      int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) * 2;
+      this.hashes = new long[capacity];
+      this.entryBySlot = new int[capacity];
+      this.mask = capacity - 1;
+      this.baseLines = new int[maxSize];
+      this.rawLines = new int[maxSize];
+      this.baseCounts = new int[maxSize];
+      this.rawCounts = new int[maxSize];
+    }
+
+    void addBase(long hash, int line) {
+      int slot = slot(hash);
+      int entry = entryBySlot[slot] - 1;
+      if (entry < 0) {
+        // first occurrence in base
+        entry = size;
+        size++;
+        hashes[slot] = hash;
+        entryBySlot[slot] = entry + 1;
+        baseLines[entry] = line;
+      }
+      baseCounts[entry]++;
+    }
+
+    void addRaw(long hash, int line) {
+      int entry = entryBySlot[slot(hash)] - 1;
+      if (entry >= 0) {
+        rawLines[entry] = line;
+        rawCounts[entry]++;
+      }
+    }
+
+    private int slot(long hash) {
+      int slot = Long.hashCode(hash * 0x9E3779B97F4A7C15L) & mask;
+      while (entryBySlot[slot] != 0 && hashes[slot] != hash) {
+        slot = (slot + 1) & mask;
+      }
+      return slot;
+    }
+  }
+
+  /**
+   * Lengths of the blocks of identical lines between two versions of a text. All the pairs of lines of a block
+   * have the same length, so the last block found on each diagonal is kept to not walk through long blocks
+   * (for example in generated files) once per pair.
+   */
+  private static class BlockWeights {
+    private final LineHashSequence hashesA;
+    private final LineHashSequence hashesB;
+    // last block found on diagonal (lineA - lineB + lengthB), as lines of first version of text
+    private final int[] blockStarts;
+    private final int[] blockEnds;
+
+    BlockWeights(LineHashSequence hashesA, LineHashSequence hashesB) {
+      this.hashesA = hashesA;
+      this.hashesB = hashesB;
+      this.blockStarts = new int[hashesA.length() + hashesB.length() + 1];
+      this.blockEnds = new int[blockStarts.length];
+    }
+
+    int lengthOfMaximalBlock(int startLineA, int startLineB) {
+      if (!sameLine(startLineA, startLineB)) {
+        return 0;
+      }
+      int diagonal = startLineA - startLineB + hashesB.length();
+      if (blockStarts[diagonal] > startLineA || startLineA > blockEnds[diagonal]) {
+        int ai = startLineA;
+        int bi = startLineB;
+        while (sameLine(ai + 1, bi + 1)) {
+          ai++;
+          bi++;
+        }
+        blockEnds[diagonal] = ai;
+        ai = startLineA;
+        bi = startLineB;
+        while (sameLine(ai - 1, bi - 1)) {
+          ai--;
+          bi--;
+        }
+        blockStarts[diagonal] = ai;
+      }
+      return blockEnds[diagonal] - blockStarts[diagonal] + 1;
+    }
+
+    private boolean sameLine(int lineA, int lineB) {
+      if (!hashesA.hasLine(lineA) || !hashesB.hasLine(lineB)) {
+        return false;
+      }
+      String hashA = hashesA.getHashForLine(lineA);
+      String hashB = hashesB.getHashForLine(lineB);
+      return hashA.hashCode() == hashB.hashCode() && hashA.equals(hashB);
+    }
   }
 
   private enum LinePairComparator implements Comparator<LinePair> {
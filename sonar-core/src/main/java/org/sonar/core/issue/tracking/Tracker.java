@@ -19,15 +19,14 @@
  */
 package org.sonar.core.issue.tracking;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Multimap;
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
-import javax.annotation.Nonnull;
+import javax.annotation.CheckForNull;
 import org.apache.commons.lang.StringUtils;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.InstantiationStrategy;
-import org.sonar.api.rule.RuleKey;
 
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 @ScannerSide
@@ -35,22 +34,23 @@ public class Tracker<RAW extends Trackable, BASE extends Trackable> {
 
   public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
     Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+    BaseIndex<BASE> baseIndex = new BaseIndex<>(baseInput.getIssues().size());
 
     // 1. match issues with same rule, same line and same line hash, but not necessarily with same message
-    match(tracking, LineAndLineHashKeyFactory.INSTANCE);
+    match(tracking, baseIndex, LineAndLineHashKeyFactory.INSTANCE);
 
     // 2. detect code moves by comparing blocks of codes
     detectCodeMoves(rawInput, baseInput, tracking);
 
     // 3. match issues with same rule, same message and same line hash
-    match(tracking, LineHashAndMessageKeyFactory.INSTANCE);
+    match(tracking, baseIndex, LineHashAndMessageKeyFactory.INSTANCE);
 
     // 4. match issues with same rule, same line and same message
-    match(tracking, LineAndMessageKeyFactory.INSTANCE);
+    match(tracking, baseIndex, LineAndMessageKeyFactory.INSTANCE);
 
     // 5. match issues with same rule and same line hash but different line and different message.
     // See SONAR-2812
-    match(tracking, LineHashKeyFactory.INSTANCE);
+    match(tracking, baseIndex, LineHashKeyFactory.INSTANCE);
 
     return tracking;
   }
@@ -61,189 +61,168 @@ public class Tracker<RAW extends Trackable, BASE extends Trackable> {
     }
   }
 
-  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
+  private void match(Tracking<RAW, BASE> tracking, BaseIndex<BASE> baseIndex, SearchKeyFactory factory) {
     if (tracking.isComplete()) {
       return;
     }
 
-    Multimap<SearchKey, BASE> baseSearch = ArrayListMultimap.create();
-    for (BASE base : tracking.getUnmatchedBases()) {
-      baseSearch.put(factory.create(base), base);
-    }
-
+    baseIndex.index(tracking.getUnmatchedBases(), factory);
     for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = factory.create(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      if (!bases.isEmpty()) {
-        // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
-        // Message could be checked to take the best one.
-        BASE match = bases.iterator().next();
+      // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
+      // Message could be checked to take the best one.
+      BASE match = baseIndex.pollFirst(raw, factory);
+      if (match != null) {
         tracking.match(raw, match);
-        baseSearch.remove(rawKey, match);
       }
     }
   }
 
-  private interface SearchKey {
-  }
-
-  private interface SearchKeyFactory {
-    SearchKey create(Trackable trackable);
-  }
-
-  private static class LineAndLineHashKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String lineHash;
-    private final Integer line;
-
-    LineAndLineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+  /**
+   * Unmatched base issues indexed by the hash of their search key, in an open-addressing table whose arrays are
+   * reused by all the matching passes. Issues with the same search key are returned in the order of the bases.
+   */
+  private static class BaseIndex<BASE extends Trackable> {
+    private final List<BASE> bases;
+    private final int[] hashes;
+    // index of next base in the same slot + 1, 0 for the last one
+    private final int[] nexts;
+    private final boolean[] polled;
+    // index of first base of slot + 1, 0 for free slots
+    private final int[] firsts;
+    private final int shift;
+
+    BaseIndex(int maxSize) {
+      int capacity = Integer.highestOneBit(Math.max(2, maxSize) * 2 - 1) * 2;
+      this.bases = new ArrayList<>(maxSize);
+      this.hashes = new int[maxSize];
+      this.nexts = new int[maxSize];
+      this.polled = new boolean[maxSize];
+      this.firsts = new int[capacity];
+      this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    void index(Iterable<BASE> unmatchedBases, SearchKeyFactory factory) {
+      bases.clear();
+      Arrays.fill(firsts, 0);
+      for (BASE base : unmatchedBases) {
+        bases.add(base);
+      }
+      // bases are prepended to their slot, so they are added in reverse order
+      for (int i = bases.size() - 1; i >= 0; i--) {
+        int hash = factory.hashCode(bases.get(i));
+        int slot = slot(hash);
+        hashes[i] = hash;
+        polled[i] = false;
+        nexts[i] = firsts[slot];
+        firsts[slot] = i + 1;
+      }
     }
 
-    @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
+    @CheckForNull
+    BASE pollFirst(Trackable raw, SearchKeyFactory factory) {
+      int hash = factory.hashCode(raw);
+      for (int i = firsts[slot(hash)] - 1; i >= 0; i = nexts[i] - 1) {
+        if (!polled[i] && hashes[i] == hash && factory.equals(raw, bases.get(i))) {
+          polled[i] = true;
+          return bases.get(i);
+        }
       }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && lineHash.equals(that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      return null;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    private int slot(int hash) {
+      return (hash * 0x9E3779B9) >>> shift;
     }
   }
 
-  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndLineHashKey(t);
-    }
+  /**
+   * Search keys are not allocated. Their hash and equality are computed directly on issues.
+   */
+  private interface SearchKeyFactory {
+    int hashCode(Trackable trackable);
+
+    boolean equals(Trackable a, Trackable b);
   }
 
-  private static class LineHashAndMessageKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String message;
-    private final String lineHash;
+  private static String lineHash(Trackable trackable) {
+    return StringUtils.defaultString(trackable.getLineHash(), "");
+  }
 
-    LineHashAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
-    }
+  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
+    INSTANCE;
 
     @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
-      }
-      LineHashAndMessageKey that = (LineHashAndMessageKey) o;
-      // start with most discriminant field
-      return lineHash.equals(that.lineHash)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
+    public int hashCode(Trackable t) {
+      int result = t.getRuleKey().hashCode();
+      result = 31 * result + lineHash(t).hashCode();
+      result = 31 * result + Objects.hashCode(t.getLine());
+      return result;
     }
 
     @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + lineHash.hashCode();
-      return result;
+    public boolean equals(Trackable a, Trackable b) {
+      // start with most discriminant field
+      return Objects.equals(a.getLine(), b.getLine())
+        && lineHash(a).equals(lineHash(b))
+        && a.getRuleKey().equals(b.getRuleKey());
     }
   }
 
   private enum LineHashAndMessageKeyFactory implements SearchKeyFactory {
     INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashAndMessageKey(t);
-    }
-  }
-
-  private static class LineAndMessageKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String message;
-    private final Integer line;
-
-    LineAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.line = trackable.getLine();
-    }
 
     @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
-      }
-      LineAndMessageKey that = (LineAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
+    public int hashCode(Trackable t) {
+      int result = t.getRuleKey().hashCode();
+      result = 31 * result + t.getMessage().hashCode();
+      result = 31 * result + lineHash(t).hashCode();
+      return result;
     }
 
     @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    public boolean equals(Trackable a, Trackable b) {
+      // start with most discriminant field
+      return lineHash(a).equals(lineHash(b))
+        && a.getMessage().equals(b.getMessage())
+        && a.getRuleKey().equals(b.getRuleKey());
     }
   }
 
   private enum LineAndMessageKeyFactory implements SearchKeyFactory {
     INSTANCE;
-    @Override
-    public SearchKey create(Trackable t) {
-      return new LineAndMessageKey(t);
-    }
-  }
-
-  private static class LineHashKey implements SearchKey {
-    private final RuleKey ruleKey;
-    private final String lineHash;
 
-    LineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.lineHash = StringUtils.defaultString(trackable.getLineHash(), "");
+    @Override
+    public int hashCode(Trackable t) {
+      int result = t.getRuleKey().hashCode();
+      result = 31 * result + t.getMessage().hashCode();
+      result = 31 * result + Objects.hashCode(t.getLine());
+      return result;
     }
 
     @Override
-    public boolean equals(@Nonnull Object o) {
-      if (this == o) {
-        return true;
-      }
-      LineHashKey that = (LineHashKey) o;
+    public boolean equals(Trackable a, Trackable b) {
       // start with most discriminant field
-      return lineHash.equals(that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      return Objects.equals(a.getLine(), b.getLine())
+        && a.getMessage().equals(b.getMessage())
+        && a.getRuleKey().equals(b.getRuleKey());
     }
+  }
+
+  private enum LineHashKeyFactory implements SearchKeyFactory {
+    INSTANCE;
 
     @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + lineHash.hashCode();
+    public int hashCode(Trackable t) {
+      int result = t.getRuleKey().hashCode();
+      result = 31 * result + lineHash(t).hashCode();
       return result;
     }
-  }
 
-  private enum LineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
     @Override
-    public SearchKey create(Trackable t) {
-      return new LineHashKey(t);
+    public boolean equals(Trackable a, Trackable b) {
+      // start with most discriminant field
+      return lineHash(a).equals(lineHash(b))
+        && a.getRuleKey().equals(b.getRuleKey());
     }
   }
 }
@@ -41,6 +41,13 @@ public class BlockRecognizerTest {
     assertThat(compute(seq("bcde"), seq("abcde"), 3, 4)).isEqualTo(4);
   }
 
+  @Test
+  public void lengthOfMaximalBlock_of_repeated_lines() {
+    assertThat(compute(seq("xxxxxxxxxx"), seq("axxxxxxxxxx"), 3, 4)).isEqualTo(10);
+    assertThat(compute(seq("xxxxxxxxxx"), seq("axxxxxxxxxx"), 3, 3)).isEqualTo(9);
+    assertThat(compute(seq("xxxxyxxxxx"), seq("axxxxxxxxxx"), 3, 3)).isEqualTo(3);
+  }
+
   private int compute(LineHashSequence seqA, LineHashSequence seqB, int ai, int bi) {
     return BlockRecognizer.lengthOfMaximalBlock(seqA, ai, seqB, bi);
   }
@@ -20,6 +20,7 @@
 package org.sonar.core.issue.tracking;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
 import javax.annotation.Nullable;
@@ -381,6 +382,47 @@ public class TrackerTest {
     assertThat(tracking.baseFor(raw1)).isEqualTo(base1);
   }
 
+  @Test
+  public void issues_with_same_search_key_are_matched_in_order() {
+    FakeInput baseInput = new FakeInput("H1", "H2");
+    Issue base1 = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue base2 = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue base3 = baseInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    FakeInput rawInput = new FakeInput("H1", "H2");
+    Issue raw1 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+    Issue raw2 = rawInput.createIssueOnLine(1, RULE_SYSTEM_PRINT, "msg");
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base2);
+    assertThat(tracking.getUnmatchedBases()).containsExactly(base3);
+  }
+
+  @Test
+  public void recognize_blocks_in_large_generated_file() {
+    String[] baseLines = new String[50_000];
+    Arrays.fill(baseLines, "x");
+    baseLines[24_999] = "unique";
+    String[] rawLines = new String[50_100];
+    Arrays.fill(rawLines, 0, 100, "inserted");
+    System.arraycopy(baseLines, 0, rawLines, 100, baseLines.length);
+    FakeInput baseInput = new FakeInput(baseLines);
+    Issue base1 = baseInput.createIssueOnLine(25_000, RULE_SYSTEM_PRINT, "msg1");
+    Issue base2 = baseInput.createIssueOnLine(30_000, RULE_SYSTEM_PRINT, "msg2");
+    Issue base3 = baseInput.createIssueOnLine(40_000, RULE_SYSTEM_PRINT, "msg3");
+    FakeInput rawInput = new FakeInput(rawLines);
+    Issue raw1 = rawInput.createIssueOnLine(25_100, RULE_SYSTEM_PRINT, "msg1");
+    Issue raw2 = rawInput.createIssueOnLine(30_100, RULE_SYSTEM_PRINT, "other msg2");
+    Issue raw3 = rawInput.createIssueOnLine(40_100, RULE_SYSTEM_PRINT, "other msg3");
+
+    Tracking<Issue, Issue> tracking = tracker.track(rawInput, baseInput);
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base2);
+    assertThat(tracking.baseFor(raw3)).isSameAs(base3);
+  }
+
   private static class Issue implements Trackable {
     private final RuleKey ruleKey;
     private final Integer line;
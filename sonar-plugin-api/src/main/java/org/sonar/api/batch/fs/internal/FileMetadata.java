@@ -20,12 +20,15 @@
 package org.sonar.api.batch.fs.internal;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.SequenceInputStream;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.Immutable;
@@ -47,12 +50,21 @@ import org.sonar.api.batch.fs.internal.charhandler.LineOffsetCounter;
 public class FileMetadata {
   private static final char LINE_FEED = '\n';
   private static final char CARRIAGE_RETURN = '\r';
+  // files larger than that are read through the char handlers, without buffering all their bytes
+  private static final int MAX_BUFFERED_BYTES = 16 * 1024 * 1024;
 
   /**
    * Compute hash of a file ignoring line ends differences.
    * Maximum performance is needed.
    */
   public Metadata readMetadata(InputStream stream, Charset encoding, String filePath, @Nullable CharHandler otherHandler) {
+    if (otherHandler == null && (StandardCharsets.UTF_8.equals(encoding) || StandardCharsets.US_ASCII.equals(encoding))) {
+      return readUtf8Metadata(stream, encoding, filePath);
+    }
+    return readMetadataWithHandlers(stream, encoding, filePath, otherHandler);
+  }
+
+  private static Metadata readMetadataWithHandlers(InputStream stream, Charset encoding, String filePath, @Nullable CharHandler otherHandler) {
     LineCounter lineCounter = new LineCounter(filePath, encoding);
     FileHashComputer fileHashComputer = new FileHashComputer(filePath);
     LineOffsetCounter lineOffsetCounter = new LineOffsetCounter();
@@ -72,6 +84,39 @@ public class FileMetadata {
     return readMetadata(stream, encoding, filePath, null);
   }
 
+  /**
+   * Fast path working on bytes, without per-char dispatch to handlers. Falls back to
+   * {@link #readMetadataWithHandlers(InputStream, Charset, String, CharHandler)} for large files and for content
+   * that needs to be decoded.
+   */
+  private static Metadata readUtf8Metadata(InputStream stream, Charset encoding, String filePath) {
+    byte[] buffer = new byte[8192];
+    int length = 0;
+    try (InputStream input = stream) {
+      int read = 0;
+      while (read != -1 && length <= MAX_BUFFERED_BYTES) {
+        if (length == buffer.length) {
+          buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, MAX_BUFFERED_BYTES + 1));
+        }
+        read = input.read(buffer, length, buffer.length - length);
+        if (read > 0) {
+          length += read;
+        }
+      }
+      if (read != -1) {
+        // too large, remaining bytes are streamed
+        return readMetadataWithHandlers(new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), input), encoding, filePath, null);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(String.format("Fail to read file '%s' with encoding '%s'", filePath, encoding), e);
+    }
+    Metadata metadata = new Utf8MetadataReader(buffer, length, StandardCharsets.US_ASCII.equals(encoding)).read();
+    if (metadata == null) {
+      return readMetadataWithHandlers(new ByteArrayInputStream(buffer, 0, length), encoding, filePath, null);
+    }
+    return metadata;
+  }
+
   /**
    * For testing purpose
    */
@@ -0,0 +1,169 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.api.batch.fs.internal;
+
+import java.security.MessageDigest;
+import java.util.Arrays;
+import javax.annotation.CheckForNull;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Computes {@link Metadata} directly from the bytes of a file encoded in UTF-8 (or US-ASCII), without decoding it
+ * into chars. It produces the same result than the {@link org.sonar.api.batch.fs.internal.charhandler.CharHandler}s
+ * used by {@link FileMetadata}:
+ * <ul>
+ *   <li>the hash is computed on the bytes of the lines, as a valid UTF-8 content is encoded back to the same bytes</li>
+ *   <li>offsets are expressed in chars, so a sequence of bytes counts for one or two chars depending on the code point</li>
+ * </ul>
+ * Content that would be decoded with replacement chars (malformed input, or U+FFFD, which is reported by
+ * {@link org.sonar.api.batch.fs.internal.charhandler.LineCounter}) is not supported.
+ */
+class Utf8MetadataReader {
+  private static final byte LINE_FEED = '\n';
+  private static final byte CARRIAGE_RETURN = '\r';
+  private static final int REPLACEMENT_CHAR = 0xFFFD;
+
+  private final byte[] bytes;
+  private final int length;
+  private final boolean asciiOnly;
+
+  private int[] lineOffsets = new int[64];
+  private int lineCount = 0;
+  // length of the last decoded multi-bytes sequence
+  private int sequenceLength;
+
+  Utf8MetadataReader(byte[] bytes, int length, boolean asciiOnly) {
+    this.bytes = bytes;
+    this.length = length;
+    this.asciiOnly = asciiOnly;
+  }
+
+  /**
+   * @return {@code null} if content must be decoded in chars to compute metadata
+   */
+  @CheckForNull
+  Metadata read() {
+    MessageDigest md5 = DigestUtils.getMd5Digest();
+    int nonBlankLines = 0;
+    boolean blankLine = true;
+    int charOffset = 0;
+    int lineStart = 0;
+    addLineOffset(0);
+
+    int i = 0;
+    while (i < length) {
+      int b = bytes[i] & 0xFF;
+      if (b == LINE_FEED || b == CARRIAGE_RETURN) {
+        md5.update(bytes, lineStart, i - lineStart);
+        md5.update(LINE_FEED);
+        charOffset++;
+        i++;
+        if (b == CARRIAGE_RETURN && i < length && bytes[i] == LINE_FEED) {
+          charOffset++;
+          i++;
+        }
+        if (!blankLine) {
+          nonBlankLines++;
+        }
+        blankLine = true;
+        addLineOffset(charOffset);
+        lineStart = i;
+      } else if (b < 0x80) {
+        if (blankLine && !Character.isWhitespace(b)) {
+          blankLine = false;
+        }
+        charOffset++;
+        i++;
+      } else {
+        int codePoint = asciiOnly ? -1 : decode(i);
+        if (codePoint < 0 || codePoint == REPLACEMENT_CHAR) {
+          return null;
+        }
+        if (blankLine && !Character.isWhitespace(codePoint)) {
+          blankLine = false;
+        }
+        charOffset += Character.charCount(codePoint);
+        i += sequenceLength;
+      }
+    }
+    md5.update(bytes, lineStart, length - lineStart);
+    if (!blankLine) {
+      nonBlankLines++;
+    }
+    return new Metadata(lineCount, nonBlankLines, Hex.encodeHexString(md5.digest()), Arrays.copyOf(lineOffsets, lineCount), charOffset);
+  }
+
+  private void addLineOffset(int offset) {
+    if (lineCount == lineOffsets.length) {
+      lineOffsets = Arrays.copyOf(lineOffsets, lineCount + (lineCount >> 1));
+    }
+    lineOffsets[lineCount] = offset;
+    lineCount++;
+  }
+
+  /**
+   * Decodes the well-formed multi-bytes sequence starting at the given index, as defined by table 3-7 of the Unicode standard.
+   * @return the code point, or -1 if the sequence is malformed or truncated
+   */
+  private int decode(int index) {
+    int b0 = bytes[index] & 0xFF;
+    int min = 0x80;
+    int max = 0xBF;
+    int codePoint;
+    if (b0 >= 0xC2 && b0 <= 0xDF) {
+      sequenceLength = 2;
+      codePoint = b0 & 0x1F;
+    } else if (b0 >= 0xE0 && b0 <= 0xEF) {
+      sequenceLength = 3;
+      codePoint = b0 & 0x0F;
+      if (b0 == 0xE0) {
+        min = 0xA0;
+      } else if (b0 == 0xED) {
+        // surrogates
+        max = 0x9F;
+      }
+    } else if (b0 >= 0xF0 && b0 <= 0xF4) {
+      sequenceLength = 4;
+      codePoint = b0 & 0x07;
+      if (b0 == 0xF0) {
+        min = 0x90;
+      } else if (b0 == 0xF4) {
+        max = 0x8F;
+      }
+    } else {
+      return -1;
+    }
+    if (index + sequenceLength > length) {
+      return -1;
+    }
+    for (int k = 1; k < sequenceLength; k++) {
+      int b = bytes[index + k] & 0xFF;
+      if (b < min || b > max) {
+        return -1;
+      }
+      codePoint = (codePoint << 6) | (b & 0x3F);
+      // only the second byte has specific bounds
+      min = 0x80;
+      max = 0xBF;
+    }
+    return codePoint;
+  }
+}
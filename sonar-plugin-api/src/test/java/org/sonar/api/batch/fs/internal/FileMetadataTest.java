@@ -19,8 +19,10 @@
  */
 package org.sonar.api.batch.fs.internal;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
@@ -32,6 +34,7 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.api.batch.fs.internal.FileMetadata.LineHashConsumer;
+import org.sonar.api.batch.fs.internal.charhandler.CharHandler;
 import org.sonar.api.utils.log.LogTester;
 import org.sonar.api.utils.log.LoggerLevel;
 
@@ -299,4 +302,78 @@ public class FileMetadataTest {
       "glyphicons-halflings-regular.woff at line 1 for encoding UTF-8. Please fix file content or configure the encoding to be used using property 'sonar.sourceEncoding'.");
   }
 
+  @Test
+  public void bytes_and_chars_produce_same_metadata() throws Exception {
+    String[] contents = {
+      "",
+      "\r",
+      "\n\n",
+      "foo\r\r\nbar\r",
+      " \t \nfoo\u000Bbar\r\n\u001C\n",
+      "föo\r\nbàr\r\n\u1D11Ebaßz\r\n",
+      // surrogate pair, encoded on 4 bytes
+      "a\uD834\uDD1Eb\nc",
+      // ideographic space is a whitespace
+      "\u3000\n\u00A0\n",
+      "\uFEFFfoo"};
+
+    for (String content : contents) {
+      byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+      Metadata fromBytes = new FileMetadata().readMetadata(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, "foo");
+      // another handler forces the decoding in chars
+      Metadata fromChars = new FileMetadata().readMetadata(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, "foo", new CharHandler() {
+      });
+
+      assertThat(fromBytes.lines()).as(content).isEqualTo(fromChars.lines());
+      assertThat(fromBytes.nonBlankLines()).as(content).isEqualTo(fromChars.nonBlankLines());
+      assertThat(fromBytes.hash()).as(content).isEqualTo(fromChars.hash());
+      assertThat(fromBytes.originalLineOffsets()).as(content).isEqualTo(fromChars.originalLineOffsets());
+      assertThat(fromBytes.lastValidOffset()).as(content).isEqualTo(fromChars.lastValidOffset());
+    }
+  }
+
+  @Test
+  public void non_ascii_bytes_in_us_ascii_file_are_decoded() throws Exception {
+    byte[] bytes = "föo\n".getBytes(StandardCharsets.UTF_8);
+
+    Metadata metadata = new FileMetadata().readMetadata(new ByteArrayInputStream(bytes), StandardCharsets.US_ASCII, "foo");
+
+    assertThat(metadata.hash()).isEqualTo(md5Hex("f\ufffd\ufffdo\n"));
+    assertThat(metadata.originalLineOffsets()).containsOnly(0, 5);
+    assertThat(logTester.logs(LoggerLevel.WARN)).hasSize(1);
+  }
+
+  @Test
+  public void literal_replacement_char_is_reported() throws Exception {
+    byte[] bytes = "foo\n\ufffd".getBytes(StandardCharsets.UTF_8);
+
+    Metadata metadata = new FileMetadata().readMetadata(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, "foo");
+
+    assertThat(metadata.lines()).isEqualTo(2);
+    assertThat(logTester.logs(LoggerLevel.WARN).get(0)).contains("Invalid character encountered in file foo at line 2");
+  }
+
+  @Test
+  public void utf8_stream_is_closed_when_read_fails() throws Exception {
+    boolean[] closed = {false};
+    ByteArrayInputStream stream = new ByteArrayInputStream(new byte[0]) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        throw new IllegalStateException("read failure");
+      }
+
+      @Override
+      public void close() throws IOException {
+        closed[0] = true;
+      }
+    };
+
+    try {
+      new FileMetadata().readMetadata(stream, StandardCharsets.UTF_8, "foo");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("read failure");
+    }
+    assertThat(closed[0]).isTrue();
+  }
 }
@@ -22,14 +22,20 @@ package org.sonar.scanner.cpd;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayDeque;
 import java.util.Collection;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.CheckForNull;
 import org.sonar.api.batch.fs.InputComponent;
 import org.sonar.api.batch.fs.InputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputComponent;
@@ -55,6 +61,7 @@ import static com.google.common.collect.FluentIterable.from;
  * Runs on the root module, at the end of the project analysis.
  * It executes copy paste detection involving all files of all modules, which were indexed during sensors execution for each module
  * by {@link CpdSensor). The sensor is responsible for handling exclusions and block sizes.
+ * Files are processed concurrently (see {@link CpdSettings#getThreads()}), but duplications are saved in the order of the index.
  */
 public class CpdExecutor {
   private static final Logger LOG = Loggers.get(CpdExecutor.class);
@@ -62,6 +69,8 @@ public class CpdExecutor {
   private static final int TIMEOUT = 5 * 60 * 1000;
   static final int MAX_CLONE_GROUP_PER_FILE = 100;
   static final int MAX_CLONE_PART_PER_GROUP = 100;
+  // maximum number of files with computed but not yet saved duplications, per thread
+  private static final int MAX_PENDING_FILES_PER_THREAD = 4;
 
   private final SonarCpdBlockIndex index;
   private final ReportPublisher publisher;
@@ -69,7 +78,7 @@ public class CpdExecutor {
   private final ProgressReport progressReport;
   private final CpdSettings settings;
   private final BranchConfiguration branchConfiguration;
-  private int count;
+  private final AtomicInteger count = new AtomicInteger();
   private int total;
 
   public CpdExecutor(CpdSettings settings, SonarCpdBlockIndex index, ReportPublisher publisher, InputComponentStore inputComponentCache,
@@ -97,22 +106,49 @@ public class CpdExecutor {
     if (filesWithoutBlocks > 0) {
       LOG.info("{} {} had no CPD blocks", filesWithoutBlocks, pluralize(filesWithoutBlocks));
     }
+    int threads = Math.max(1, settings.getThreads());
     progressReport.start(String.format("Calculating CPD for %d %s", total, pluralize(total)));
-    ExecutorService executorService = Executors.newSingleThreadExecutor();
+    // detection of each file is done in a dedicated pool, so that it can be interrupted on timeout
+    ExecutorService detectionService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("CpdDetection-%d").build());
+    ExecutorService workerService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("CpdExecutor-%d").build());
     try {
       Iterator<ResourceBlocks> it = index.iterator();
+      // results are saved by the current thread in the order of the index, whatever the order of completion
+      Deque<Future<FileDuplications>> pending = new ArrayDeque<>();
 
       while (it.hasNext()) {
         ResourceBlocks resourceBlocks = it.next();
-        runCpdAnalysis(executorService, resourceBlocks.resourceId(), resourceBlocks.blocks(), timeout);
-        count++;
+        pending.add(workerService.submit(() -> detect(detectionService, resourceBlocks.resourceId(), resourceBlocks.blocks(), timeout)));
+        if (pending.size() >= threads * MAX_PENDING_FILES_PER_THREAD) {
+          saveNext(pending);
+        }
+      }
+      while (!pending.isEmpty()) {
+        saveNext(pending);
       }
       progressReport.stop("CPD calculation finished");
     } catch (Exception e) {
       progressReport.stop("");
       throw e;
     } finally {
-      executorService.shutdown();
+      workerService.shutdownNow();
+      detectionService.shutdownNow();
+    }
+  }
+
+  private void saveNext(Deque<Future<FileDuplications>> pending) {
+    FileDuplications result;
+    try {
+      result = pending.removeFirst().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted during detection of duplications", e);
+    } catch (ExecutionException e) {
+      // Unwrap ExecutionException
+      throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+    }
+    if (result != null) {
+      saveDuplications(result.component, result.duplications);
     }
   }
 
@@ -122,15 +158,27 @@ public class CpdExecutor {
 
   @VisibleForTesting
   void runCpdAnalysis(ExecutorService executorService, String componentKey, final Collection<Block> fileBlocks, long timeout) {
+    FileDuplications result = detect(executorService, componentKey, fileBlocks, timeout);
+    if (result != null) {
+      saveDuplications(result.component, result.duplications);
+    }
+  }
+
+  /**
+   * Can be called concurrently: the index is only read once sorted.
+   * @return {@code null} if the component is unknown or if detection timed out
+   */
+  @CheckForNull
+  private FileDuplications detect(ExecutorService executorService, String componentKey, final Collection<Block> fileBlocks, long timeout) {
     DefaultInputComponent component = (DefaultInputComponent) componentStore.getByKey(componentKey);
     if (component == null) {
       LOG.error("Resource not found in component store: {}. Skipping CPD computation for it", componentKey);
-      return;
+      return null;
     }
 
     InputFile inputFile = (InputFile) component;
     LOG.debug("Detection of duplications for {}", inputFile.absolutePath());
-    progressReport.message(String.format("%d/%d - current file: %s", count, total, inputFile.absolutePath()));
+    progressReport.message(String.format("%d/%d - current file: %s", count.incrementAndGet(), total, inputFile.absolutePath()));
 
     List<CloneGroup> duplications;
     Future<List<CloneGroup>> futureResult = executorService.submit(() -> SuffixTreeCloneDetectionAlgorithm.detect(index, fileBlocks));
@@ -139,7 +187,7 @@ public class CpdExecutor {
     } catch (TimeoutException e) {
       LOG.warn("Timeout during detection of duplications for " + inputFile.absolutePath());
       futureResult.cancel(true);
-      return;
+      return null;
     } catch (Exception e) {
       throw new IllegalStateException("Fail during detection of duplication for " + inputFile.absolutePath(), e);
     }
@@ -153,7 +201,7 @@ public class CpdExecutor {
       filtered = duplications;
     }
 
-    saveDuplications(component, filtered);
+    return new FileDuplications(component, filtered);
   }
 
   @VisibleForTesting
@@ -212,4 +260,14 @@ public class CpdExecutor {
     }
     return dupBuilder.build();
   }
+
+  private static class FileDuplications {
+    private final DefaultInputComponent component;
+    private final List<CloneGroup> duplications;
+
+    private FileDuplications(DefaultInputComponent component, List<CloneGroup> duplications) {
+      this.component = component;
+      this.duplications = duplications;
+    }
+  }
 }
@@ -49,4 +49,11 @@ public class CpdSettings {
   int getMinimumTokens(String languageKey) {
     return settings.getInt("sonar.cpd." + languageKey + ".minimumTokens").orElse(100);
   }
+
+  /**
+   * Number of files for which duplications are detected concurrently. Defaults to the number of available processors.
+   */
+  int getThreads() {
+    return settings.getInt("sonar.cpd.threads").orElse(Runtime.getRuntime().availableProcessors());
+  }
 }
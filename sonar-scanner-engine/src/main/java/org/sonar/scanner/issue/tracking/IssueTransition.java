@@ -65,7 +65,14 @@ public class IssueTransition {
       localIssueTracking.init();
     }
 
-    ScannerReportReader reader = new ScannerReportReader(reportPublisher.getReportDir().toFile());
+    // issues appended during analysis must be visible to the reader
+    reportPublisher.getWriter().flush();
+    try (ScannerReportReader reader = new ScannerReportReader(reportPublisher.getReportDir().toFile())) {
+      trackComponents(reader);
+    }
+  }
+
+  private void trackComponents(ScannerReportReader reader) {
     int nbComponents = inputComponentStore.all().size();
 
     if (nbComponents == 0) {
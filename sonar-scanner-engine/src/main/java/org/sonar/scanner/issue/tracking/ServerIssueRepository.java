@@ -19,6 +19,13 @@
  */
 package org.sonar.scanner.issue.tracking;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.picocontainer.Startable;
 import org.sonar.api.batch.InstantiationStrategy;
 import org.sonar.api.batch.ScannerSide;
 import org.sonar.api.batch.fs.InputComponent;
@@ -29,15 +36,20 @@ import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.api.utils.log.Profiler;
 import org.sonar.core.component.ComponentKeys;
+import org.sonar.scanner.analysis.DefaultAnalysisMode;
 import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
 import org.sonar.scanner.repository.ServerIssuesLoader;
 import org.sonar.scanner.scan.filesystem.InputComponentStore;
 import org.sonar.scanner.storage.Storage;
 import org.sonar.scanner.storage.Storages;
 
+/**
+ * In issues mode, server issues are downloaded and parsed in background while modules are being analyzed.
+ * They are attached to the input components once all of them are indexed, when issues are tracked.
+ */
 @InstantiationStrategy(InstantiationStrategy.PER_BATCH)
 @ScannerSide
-public class ServerIssueRepository {
+public class ServerIssueRepository implements Startable {
 
   private static final Logger LOG = Loggers.get(ServerIssueRepository.class);
   private static final String LOG_MSG = "Load server issues";
@@ -46,22 +58,68 @@ public class ServerIssueRepository {
   private Storage<ServerIssue> issuesCache;
   private final ServerIssuesLoader previousIssuesLoader;
   private final InputComponentStore componentStore;
+  private final DefaultAnalysisMode mode;
+  private Storage<ServerIssue> downloadedIssues;
+  private ExecutorService executor;
+  private Future<?> download;
 
-  public ServerIssueRepository(Storages caches, ServerIssuesLoader previousIssuesLoader, InputComponentStore componentStore) {
+  public ServerIssueRepository(Storages caches, ServerIssuesLoader previousIssuesLoader, InputComponentStore componentStore, DefaultAnalysisMode mode) {
     this.caches = caches;
     this.previousIssuesLoader = previousIssuesLoader;
     this.componentStore = componentStore;
+    this.mode = mode;
+  }
+
+  @Override
+  public void start() {
+    if (mode.isIssues()) {
+      startDownload();
+    }
+  }
+
+  private void startDownload() {
+    caches.registerValueCoder(ServerIssue.class, new ServerIssueValueCoder());
+    downloadedIssues = caches.createCache("downloadedPreviousIssues");
+    String rootKey = ((DefaultInputModule) componentStore.root()).getKeyWithBranch();
+    executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("ServerIssuesLoader").setDaemon(true).build());
+    download = executor.submit(() -> previousIssuesLoader.load(rootKey, issue -> downloadedIssues.put(issue.getKey(), issue)));
   }
 
   public void load() {
     Profiler profiler = Profiler.create(LOG).startInfo(LOG_MSG);
     this.issuesCache = caches.createCache("previousIssues");
-    caches.registerValueCoder(ServerIssue.class, new ServerIssueValueCoder());
-    DefaultInputModule root = (DefaultInputModule) componentStore.root();
-    previousIssuesLoader.load(root.getKeyWithBranch(), this::store);
+    if (download == null) {
+      startDownload();
+    }
+    awaitDownload();
+    for (ServerIssue issue : downloadedIssues.values()) {
+      store(issue);
+    }
+    downloadedIssues.clear();
     profiler.stopInfo();
   }
 
+  private void awaitDownload() {
+    try {
+      download.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while loading server issues", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause());
+      throw new IllegalStateException("Unable to get previous issues", e.getCause());
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Override
+  public void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+    }
+  }
+
   public Iterable<ServerIssue> byComponent(InputComponent component) {
     return issuesCache.values(((DefaultInputComponent) component).batchId());
   }
@@ -66,9 +66,15 @@ public class ComponentsPublisher implements ReportPublisherStep {
 
   @Override
   public void publish(ScannerReportWriter writer) {
+    // issues appended during analysis are read back to know which components have issues
+    writer.flush();
     this.reader = new ScannerReportReader(writer.getFileStructure().root());
     this.writer = writer;
-    recursiveWriteComponent((DefaultInputComponent) moduleHierarchy.root());
+    try {
+      recursiveWriteComponent((DefaultInputComponent) moduleHierarchy.root());
+    } finally {
+      reader.close();
+    }
   }
 
   /**
@@ -30,7 +30,9 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import okhttp3.HttpUrl;
 import org.apache.commons.io.FileUtils;
@@ -41,11 +43,12 @@ import org.sonar.api.config.Configuration;
 import org.sonar.api.platform.Server;
 import org.sonar.api.utils.MessageException;
 import org.sonar.api.utils.TempFolder;
-import org.sonar.api.utils.ZipUtils;
 import org.sonar.api.utils.log.Logger;
 import org.sonar.api.utils.log.Loggers;
 import org.sonar.scanner.bootstrap.GlobalAnalysisMode;
 import org.sonar.scanner.bootstrap.ScannerWsClient;
+import org.sonar.scanner.protocol.output.ReportArchive;
+import org.sonar.scanner.protocol.output.ReportSegmentCompression;
 import org.sonar.scanner.protocol.output.ScannerReportWriter;
 import org.sonar.scanner.scan.branch.BranchConfiguration;
 import org.sonarqube.ws.MediaTypes;
@@ -66,6 +69,8 @@ public class ReportPublisher implements Startable {
   public static final String KEEP_REPORT_PROP_KEY = "sonar.scanner.keepReport";
   public static final String VERBOSE_KEY = "sonar.verbose";
   public static final String METADATA_DUMP_FILENAME = "report-task.txt";
+  public static final String SEGMENTS_PROP_KEY = "sonar.scanner.reportSegments";
+  public static final String SEGMENTS_COMPRESSION_PROP_KEY = "sonar.scanner.reportSegments.compression";
   private static final String CHARACTERISTIC = "characteristic";
 
   private final Configuration settings;
@@ -97,7 +102,7 @@ public class ReportPublisher implements Startable {
   @Override
   public void start() {
     reportDir = moduleHierarchy.root().getWorkDir().resolve("scanner-report");
-    writer = new ScannerReportWriter(reportDir.toFile());
+    writer = new ScannerReportWriter(reportDir.toFile(), segmentCompression());
     contextPublisher.init(writer);
 
     if (!analysisMode.isIssues() && !analysisMode.isMediumTest()) {
@@ -108,8 +113,27 @@ public class ReportPublisher implements Startable {
     }
   }
 
+  /**
+   * @return {@code null} if the data of each component must be written in its own file
+   */
+  @CheckForNull
+  private ReportSegmentCompression segmentCompression() {
+    if (!settings.getBoolean(SEGMENTS_PROP_KEY).orElse(false)) {
+      return null;
+    }
+    String compression = settings.get(SEGMENTS_COMPRESSION_PROP_KEY).orElse(ReportSegmentCompression.LZ4.name());
+    try {
+      return ReportSegmentCompression.valueOf(compression.toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException e) {
+      throw MessageException.of("Unsupported value of property " + SEGMENTS_COMPRESSION_PROP_KEY + ": " + compression);
+    }
+  }
+
   @Override
   public void stop() {
+    if (writer != null) {
+      writer.close();
+    }
     if (!shouldKeepReport()) {
       deleteQuietly(reportDir);
     }
@@ -148,12 +172,13 @@ public class ReportPublisher implements Startable {
       for (ReportPublisherStep publisher : publishers) {
         publisher.publish(writer);
       }
+      writer.close();
       long stopTime = System.currentTimeMillis();
       LOG.info("Analysis report generated in {}ms, dir size={}", stopTime - startTime, FileUtils.byteCountToDisplaySize(FileUtils.sizeOfDirectory(reportDir.toFile())));
 
       startTime = System.currentTimeMillis();
       File reportZip = temp.newFile("scanner-report", ".zip");
-      ZipUtils.zipDir(reportDir.toFile(), reportZip);
+      ReportArchive.zip(reportDir.toFile(), reportZip);
       stopTime = System.currentTimeMillis();
       LOG.info("Analysis reports compressed in {}ms, zip size={}", stopTime - startTime, FileUtils.byteCountToDisplaySize(FileUtils.sizeOf(reportZip)));
       return reportZip;
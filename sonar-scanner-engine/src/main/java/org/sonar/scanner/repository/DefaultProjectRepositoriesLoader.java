@@ -22,17 +22,30 @@ package org.sonar.scanner.repository;
 import com.google.common.base.Throwables;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Date;
 import java.util.Map;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.utils.MessageException;
+import org.sonar.home.cache.FileCache;
 import org.sonar.scanner.bootstrap.ScannerWsClient;
+import org.sonar.scanner.protocol.input.FilesFingerprint;
 import org.sonar.scanner.util.ScannerUtils;
 import org.sonarqube.ws.WsBatch;
 import org.sonarqube.ws.WsBatch.WsProjectResponse;
@@ -42,21 +55,37 @@ import org.sonarqube.ws.client.GetRequest;
 import org.sonarqube.ws.client.HttpException;
 import org.sonarqube.ws.client.WsResponse;
 
+/**
+ * Project repositories are kept in the user cache, without settings, so that next analyses only download the files
+ * changed since the last analysis.
+ */
 public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoader {
   private static final Logger LOG = LoggerFactory.getLogger(DefaultProjectRepositoriesLoader.class);
   private static final String BATCH_PROJECT_URL = "/batch/project.protobuf";
+  private static final String CACHE_DIR = "_projects";
   private ScannerWsClient wsClient;
+  private FileCache fileCache;
 
-  public DefaultProjectRepositoriesLoader(ScannerWsClient wsClient) {
+  public DefaultProjectRepositoriesLoader(ScannerWsClient wsClient, FileCache fileCache) {
     this.wsClient = wsClient;
+    this.fileCache = fileCache;
   }
 
   @Override
   public ProjectRepositories load(String projectKey, boolean issuesMode, @Nullable String branchBase) {
-    GetRequest request = new GetRequest(getUrl(projectKey, issuesMode, branchBase));
-    try (WsResponse response = wsClient.call(request)) {
-      InputStream is = response.contentStream();
-      return processStream(is, projectKey);
+    File cacheFile = cacheFile(projectKey, branchBase);
+    WsProjectResponse cached = readCache(cacheFile);
+    try {
+      WsProjectResponse response = call(getUrl(projectKey, issuesMode, branchBase, cached), projectKey);
+      if (response.getFilesDelta()) {
+        response = applyDelta(cached, response);
+        if (response == null) {
+          LOG.debug("Local copy of project repository is outdated - downloading it again");
+          response = call(getUrl(projectKey, issuesMode, branchBase, null), projectKey);
+        }
+      }
+      writeCache(cacheFile, response);
+      return toProjectRepositories(response);
     } catch (RuntimeException e) {
       if (shouldThrow(e)) {
         throw e;
@@ -67,7 +96,15 @@ public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoad
     }
   }
 
-  private static String getUrl(String projectKey, boolean issuesMode, @Nullable String branchBase) {
+  private WsProjectResponse call(String url, String projectKey) {
+    GetRequest request = new GetRequest(url);
+    try (WsResponse response = wsClient.call(request)) {
+      InputStream is = response.contentStream();
+      return processStream(is, projectKey);
+    }
+  }
+
+  private static String getUrl(String projectKey, boolean issuesMode, @Nullable String branchBase, @Nullable WsProjectResponse cached) {
     StringBuilder builder = new StringBuilder();
 
     builder.append(BATCH_PROJECT_URL)
@@ -78,6 +115,9 @@ public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoad
     if (branchBase != null) {
       builder.append("&branch=").append(branchBase);
     }
+    if (cached != null) {
+      builder.append("&changedSince=").append(cached.getFilesVersion());
+    }
     return builder.toString();
   }
 
@@ -95,33 +135,106 @@ public class DefaultProjectRepositoriesLoader implements ProjectRepositoriesLoad
     return false;
   }
 
-  private static ProjectRepositories processStream(InputStream is, String projectKey) {
+  private static WsProjectResponse processStream(InputStream is, String projectKey) {
     try {
-      WsProjectResponse response = WsProjectResponse.parseFrom(is);
+      return WsProjectResponse.parseFrom(is);
+    } catch (IOException e) {
+      throw new IllegalStateException("Couldn't load project repository for " + projectKey, e);
+    } finally {
+      IOUtils.closeQuietly(is);
+    }
+  }
+
+  /**
+   * @return the cached files updated with the changed ones, or {@code null} if the result does not match the files known by server
+   */
+  @CheckForNull
+  private static WsProjectResponse applyDelta(@Nullable WsProjectResponse cached, WsProjectResponse delta) {
+    if (cached == null) {
+      return null;
+    }
+    WsProjectResponse.Builder merged = delta.toBuilder().setFilesDelta(false);
+    Map<String, FileDataByPath> fileDataByModuleAndPath = merged.getMutableFileDataByModuleAndPath();
+    fileDataByModuleAndPath.clear();
+    for (Map.Entry<String, FileDataByPath> e : cached.getFileDataByModuleAndPath().entrySet()) {
+      FileDataByPath.Builder fileDataByPath = FileDataByPath.newBuilder();
+      fileDataByPath.getMutableFileDataByPath().putAll(e.getValue().getFileDataByPath());
+      FileDataByPath changed = delta.getFileDataByModuleAndPath().get(e.getKey());
+      if (changed != null) {
+        fileDataByPath.getMutableFileDataByPath().putAll(changed.getFileDataByPath());
+      }
+      fileDataByModuleAndPath.put(e.getKey(), fileDataByPath.build());
+    }
+    for (Map.Entry<String, FileDataByPath> e : delta.getFileDataByModuleAndPath().entrySet()) {
+      fileDataByModuleAndPath.putIfAbsent(e.getKey(), e.getValue());
+    }
+
+    FilesFingerprint fingerprint = new FilesFingerprint();
+    fileDataByModuleAndPath.forEach((moduleKey, fileDataByPath) -> fileDataByPath.getFileDataByPath().keySet().forEach(path -> fingerprint.add(moduleKey, path)));
+    if (fingerprint.value() != delta.getFilesFingerprint()) {
+      return null;
+    }
+    return merged.build();
+  }
 
-      Table<String, String, FileData> fileDataTable = HashBasedTable.create();
-      Table<String, String, String> settings = HashBasedTable.create();
+  private File cacheFile(String projectKey, @Nullable String branchBase) {
+    String key = DigestUtils.md5Hex(String.join("|", String.valueOf(wsClient.baseUrl()), projectKey, String.valueOf(branchBase)));
+    return new File(new File(fileCache.getDir(), CACHE_DIR), key + ".protobuf");
+  }
 
-      Map<String, Settings> settingsByModule = response.getSettingsByModule();
-      for (Map.Entry<String, Settings> e1 : settingsByModule.entrySet()) {
-        for (Map.Entry<String, String> e2 : e1.getValue().getSettings().entrySet()) {
-          settings.put(e1.getKey(), e2.getKey(), e2.getValue());
-        }
+  @CheckForNull
+  private static WsProjectResponse readCache(File cacheFile) {
+    if (!cacheFile.exists()) {
+      return null;
+    }
+    try (InputStream is = new BufferedInputStream(new FileInputStream(cacheFile))) {
+      WsProjectResponse cached = WsProjectResponse.parseFrom(is);
+      return cached.hasFilesVersion() ? cached : null;
+    } catch (IOException | RuntimeException e) {
+      LOG.debug("Fail to read local copy of project repository: " + cacheFile, e);
+      return null;
+    }
+  }
+
+  private static void writeCache(File cacheFile, WsProjectResponse response) {
+    if (!response.hasFilesVersion()) {
+      FileUtils.deleteQuietly(cacheFile);
+      return;
+    }
+    WsProjectResponse.Builder withoutSettings = response.toBuilder();
+    // settings may contain secured values, they are always downloaded
+    withoutSettings.getMutableSettingsByModule().clear();
+    try {
+      Files.createDirectories(cacheFile.toPath().getParent());
+      Path tmpFile = Files.createTempFile(cacheFile.toPath().getParent(), "project", ".tmp");
+      try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+        withoutSettings.build().writeTo(os);
       }
+      Files.move(tmpFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      LOG.debug("Fail to write local copy of project repository: " + cacheFile, e);
+    }
+  }
 
-      Map<String, FileDataByPath> fileDataByModuleAndPath = response.getFileDataByModuleAndPath();
-      for (Map.Entry<String, FileDataByPath> e1 : fileDataByModuleAndPath.entrySet()) {
-        for (Map.Entry<String, WsBatch.WsProjectResponse.FileData> e2 : e1.getValue().getFileDataByPath().entrySet()) {
-          FileData fd = new FileData(e2.getValue().getHash(), e2.getValue().getRevision());
-          fileDataTable.put(e1.getKey(), e2.getKey(), fd);
-        }
+  private static ProjectRepositories toProjectRepositories(WsProjectResponse response) {
+    Table<String, String, FileData> fileDataTable = HashBasedTable.create();
+    Table<String, String, String> settings = HashBasedTable.create();
+
+    Map<String, Settings> settingsByModule = response.getSettingsByModule();
+    for (Map.Entry<String, Settings> e1 : settingsByModule.entrySet()) {
+      for (Map.Entry<String, String> e2 : e1.getValue().getSettings().entrySet()) {
+        settings.put(e1.getKey(), e2.getKey(), e2.getValue());
       }
+    }
 
-      return new ProjectRepositories(settings, fileDataTable, new Date(response.getLastAnalysisDate()));
-    } catch (IOException e) {
-      throw new IllegalStateException("Couldn't load project repository for " + projectKey, e);
-    } finally {
-      IOUtils.closeQuietly(is);
+    Map<String, FileDataByPath> fileDataByModuleAndPath = response.getFileDataByModuleAndPath();
+    for (Map.Entry<String, FileDataByPath> e1 : fileDataByModuleAndPath.entrySet()) {
+      for (Map.Entry<String, WsBatch.WsProjectResponse.FileData> e2 : e1.getValue().getFileDataByPath().entrySet()) {
+        FileData fd = new FileData(e2.getValue().getHash(), e2.getValue().getRevision());
+        fileDataTable.put(e1.getKey(), e2.getKey(), fd);
+      }
     }
+
+    return new ProjectRepositories(settings, fileDataTable, new Date(response.getLastAnalysisDate()));
   }
 }
@@ -29,15 +29,18 @@ import java.nio.file.Files;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.sonar.api.batch.ScannerSide;
@@ -47,6 +50,7 @@ import org.sonar.api.batch.fs.InputFileFilter;
 import org.sonar.api.batch.fs.internal.DefaultInputDir;
 import org.sonar.api.batch.fs.internal.DefaultInputFile;
 import org.sonar.api.batch.fs.internal.DefaultInputModule;
+import org.sonar.api.config.Configuration;
 import org.sonar.api.scan.filesystem.PathResolver;
 import org.sonar.api.utils.MessageException;
 import org.sonar.scanner.scan.DefaultComponentTree;
@@ -54,10 +58,23 @@ import org.sonar.scanner.util.ProgressReport;
 
 /**
  * Index input files into {@link InputComponentStore}.
+ * <p>
+ * Indexing is a pipeline of stages, each one feeding the next one through a bounded queue:
+ * <ol>
+ *   <li>walk of the directories, in the current thread</li>
+ *   <li>exclusions, language detection and creation of the input files, see {@link #INDEXING_THREADS_KEY}</li>
+ *   <li>computation of metadata, only when {@link InputFileBuilder#PRELOAD_FILE_METADATA_KEY} is enabled, see {@link #METADATA_THREADS_KEY}</li>
+ * </ol>
+ * When the queue of a stage is full, the previous stage executes the task itself, which slows down the production of new tasks.
+ * </p>
  */
 @ScannerSide
 public class FileIndexer {
 
+  public static final String INDEXING_THREADS_KEY = "sonar.scanner.indexingThreads";
+  public static final String METADATA_THREADS_KEY = "sonar.scanner.metadataThreads";
+  private static final int QUEUE_SIZE_PER_THREAD = 100;
+
   private static final Logger LOG = LoggerFactory.getLogger(FileIndexer.class);
   private final InputFileFilter[] filters;
   private final ExclusionFilters exclusionFilters;
@@ -67,8 +84,11 @@ public class FileIndexer {
   private final BatchIdGenerator batchIdGenerator;
   private final InputComponentStore componentStore;
   private final ModuleFileSystemInitializer moduleFileSystemInitializer;
+  private final Configuration settings;
   private ExecutorService executorService;
-  private final List<Future<Void>> tasks;
+  private ExecutorService metadataExecutorService;
+  private final Queue<Future<Void>> tasks;
+  private final Queue<Future<Void>> metadataTasks;
   private final DefaultModuleFileSystem defaultModuleFileSystem;
   private final LanguageDetection langDetection;
 
@@ -76,7 +96,7 @@ public class FileIndexer {
 
   public FileIndexer(BatchIdGenerator batchIdGenerator, InputComponentStore componentStore, DefaultInputModule module, ExclusionFilters exclusionFilters,
     DefaultComponentTree componentTree, InputFileBuilder inputFileBuilder, ModuleFileSystemInitializer initializer, DefaultModuleFileSystem defaultModuleFileSystem,
-    LanguageDetection languageDetection,
+    LanguageDetection languageDetection, Configuration settings,
     InputFileFilter[] filters) {
     this.batchIdGenerator = batchIdGenerator;
     this.componentStore = componentStore;
@@ -88,39 +108,67 @@ public class FileIndexer {
     this.langDetection = languageDetection;
     this.filters = filters;
     this.exclusionFilters = exclusionFilters;
-    this.tasks = new ArrayList<>();
+    this.settings = settings;
+    this.tasks = new ConcurrentLinkedQueue<>();
+    this.metadataTasks = new ConcurrentLinkedQueue<>();
   }
 
   public FileIndexer(BatchIdGenerator batchIdGenerator, InputComponentStore componentStore, DefaultInputModule module, ExclusionFilters exclusionFilters,
     DefaultComponentTree componentTree, InputFileBuilder inputFileBuilder, ModuleFileSystemInitializer initializer, DefaultModuleFileSystem defaultModuleFileSystem,
-    LanguageDetection languageDetection) {
-    this(batchIdGenerator, componentStore, module, exclusionFilters, componentTree, inputFileBuilder, initializer, defaultModuleFileSystem, languageDetection,
+    LanguageDetection languageDetection, Configuration settings) {
+    this(batchIdGenerator, componentStore, module, exclusionFilters, componentTree, inputFileBuilder, initializer, defaultModuleFileSystem, languageDetection, settings,
       new InputFileFilter[0]);
   }
 
   public void index() {
-    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
-    this.executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("FileIndexer-%d").build());
+    this.executorService = newStageExecutor(stageThreads(settings, INDEXING_THREADS_KEY), "FileIndexer-%d");
+    this.metadataExecutorService = newStageExecutor(stageThreads(settings, METADATA_THREADS_KEY), "FileMetadata-%d");
+    try {
+      doIndex();
+    } finally {
+      // no-op when all tasks completed, otherwise cancels the remaining ones of both stages
+      executorService.shutdownNow();
+      metadataExecutorService.shutdownNow();
+    }
+  }
 
+  private void doIndex() {
     progressReport = new ProgressReport("Report about progress of file indexation", TimeUnit.SECONDS.toMillis(10));
     progressReport.start("Index files");
     exclusionFilters.prepare();
 
     Progress progress = new Progress();
 
+    long start = System.nanoTime();
     indexFiles(moduleFileSystemInitializer.sources(), InputFile.Type.MAIN, progress);
     indexFiles(moduleFileSystemInitializer.tests(), InputFile.Type.TEST, progress);
+    progress.walk.add(System.nanoTime() - start);
 
-    waitForTasksToComplete();
+    waitForTasksToComplete(executorService, tasks);
+    waitForTasksToComplete(metadataExecutorService, metadataTasks);
 
     progressReport.stop(progress.count() + " " + pluralizeFiles(progress.count()) + " indexed");
+    progress.log();
 
     if (exclusionFilters.hasPattern()) {
       LOG.info("{} {} ignored because of inclusion/exclusion patterns", progress.excludedByPatternsCount(), pluralizeFiles(progress.excludedByPatternsCount()));
     }
   }
 
-  private void waitForTasksToComplete() {
+  /**
+   * Number of threads of a stage: the value of the property, at least 1, or the number of available processors minus one by default.
+   */
+  static int stageThreads(Configuration settings, String key) {
+    int threads = settings.getInt(key).orElse(Runtime.getRuntime().availableProcessors() - 1);
+    return Math.max(1, threads);
+  }
+
+  private static ExecutorService newStageExecutor(int threads, String nameFormat) {
+    return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * QUEUE_SIZE_PER_THREAD),
+      new ThreadFactoryBuilder().setNameFormat(nameFormat).build(), new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  private static void waitForTasksToComplete(ExecutorService executorService, Queue<Future<Void>> tasks) {
     executorService.shutdown();
     for (Future<Void> task : tasks) {
       try {
@@ -158,6 +206,15 @@ public class FileIndexer {
   }
 
   private Void indexFile(Path sourceFile, InputFile.Type type, Progress progress) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return doIndexFile(sourceFile, type, progress);
+    } finally {
+      progress.indexing.add(System.nanoTime() - start);
+    }
+  }
+
+  private Void doIndexFile(Path sourceFile, InputFile.Type type, Progress progress) throws IOException {
     // get case of real file without resolving link
     Path realAbsoluteFile = sourceFile.toRealPath(LinkOption.NOFOLLOW_LINKS).toAbsolutePath().normalize();
     if (!realAbsoluteFile.startsWith(module.getBaseDir())) {
@@ -185,10 +242,22 @@ public class FileIndexer {
       indexFileAndParentDir(inputFile, parentRelativePath);
     }
     LOG.debug("'{}' indexed {}with language '{}'", relativePath, type == Type.TEST ? "as test " : "", inputFile.language());
-    inputFileBuilder.checkMetadata(inputFile);
+    if (inputFileBuilder.isPreloadMetadata()) {
+      metadataTasks.add(metadataExecutorService.submit(() -> checkMetadata(inputFile, progress)));
+    }
     return null;
   }
 
+  private Void checkMetadata(DefaultInputFile inputFile, Progress progress) {
+    long start = System.nanoTime();
+    try {
+      inputFileBuilder.checkMetadata(inputFile);
+      return null;
+    } finally {
+      progress.metadata.add(System.nanoTime() - start);
+    }
+  }
+
   private String getParentRelativePath(Path filePath) {
     Path parentDir = filePath.getParent();
     return PathResolver.relativize(module.getBaseDir(), parentDir)
@@ -267,6 +336,9 @@ public class FileIndexer {
   private class Progress {
     private AtomicInteger indexedCount = new AtomicInteger(0);
     private AtomicInteger excludedByPatternsCount = new AtomicInteger(0);
+    private final StageStatistics walk = new StageStatistics("Walk of directories");
+    private final StageStatistics indexing = new StageStatistics("Exclusions and language detection");
+    private final StageStatistics metadata = new StageStatistics("Computation of metadata");
 
     void markAsIndexed(DefaultInputFile inputFile) {
       if (componentStore.getFile(inputFile.getProjectRelativePath()) != null) {
@@ -288,6 +360,37 @@ public class FileIndexer {
     int count() {
       return indexedCount.get();
     }
+
+    void log() {
+      // the walk is done once, so its throughput is expressed in indexed files
+      LOG.debug("{}: {} files in {} ms", walk.name, count(), TimeUnit.NANOSECONDS.toMillis(walk.nanos.get()));
+      indexing.log();
+      metadata.log();
+    }
+  }
+
+  private static class StageStatistics {
+    private final String name;
+    private final AtomicInteger count = new AtomicInteger(0);
+    private final AtomicLong nanos = new AtomicLong(0);
+
+    StageStatistics(String name) {
+      this.name = name;
+    }
+
+    void add(long durationInNanos) {
+      count.incrementAndGet();
+      nanos.addAndGet(durationInNanos);
+    }
+
+    void log() {
+      if (count.get() == 0) {
+        return;
+      }
+      long millis = TimeUnit.NANOSECONDS.toMillis(nanos.get());
+      // cumulated time of all the threads of the stage
+      LOG.debug("{}: {} files in {} ms of cumulated processing time ({} ms per file)", name, count.get(), millis, millis / count.get());
+    }
   }
 
 }
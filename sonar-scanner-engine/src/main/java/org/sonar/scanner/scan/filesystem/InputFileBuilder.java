@@ -66,6 +66,10 @@ public class InputFileBuilder {
     return inputFile;
   }
 
+  boolean isPreloadMetadata() {
+    return preloadMetadata;
+  }
+
   void checkMetadata(DefaultInputFile inputFile) {
     if (preloadMetadata) {
       inputFile.checkMetadata();
@@ -0,0 +1,238 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.storage;
+
+import com.persistit.Persistit;
+import com.persistit.Value;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Storage engine keeping values in the heap, in a sorted concurrent map. It avoids the disk I/O of
+ * {@link PersistitStorageEngine} and supports concurrent writers, but is limited by the size of the heap.
+ * <p>
+ * As with {@link PersistitStorageEngine}, a copy of the value is stored, encoded and decoded with the value coders
+ * registered in Persistit, so that changing a value after it is put does not change the storage. Values returned
+ * by reads are not copied: they must not be modified.
+ * </p>
+ */
+class InMemoryStorageEngine<V> implements StorageEngine<V> {
+
+  private final ConcurrentSkipListMap<Object[], V> map = new ConcurrentSkipListMap<>(KeyComparator.INSTANCE);
+  private final Persistit persistit;
+
+  InMemoryStorageEngine(Persistit persistit) {
+    this.persistit = persistit;
+  }
+
+  @Override
+  public void put(Object[] key, V value) {
+    map.put(key.clone(), copy(value));
+  }
+
+  @SuppressWarnings("unchecked")
+  private V copy(V value) {
+    // Value is not thread-safe, one is created for each copy
+    Value encoded = new Value(persistit);
+    encoded.setMaximumSize(Value.MAXIMUM_SIZE);
+    encoded.put(value);
+    return (V) encoded.get();
+  }
+
+  @CheckForNull
+  @Override
+  public V get(Object[] key) {
+    return map.get(key);
+  }
+
+  @Override
+  public boolean containsKey(Object[] key) {
+    return map.containsKey(key);
+  }
+
+  @Override
+  public boolean remove(Object[] key) {
+    return map.remove(key) != null;
+  }
+
+  @Override
+  public void clear(Object[] key) {
+    if (key.length == 0) {
+      map.clear();
+      return;
+    }
+    map.remove(key);
+    subMap(key).clear();
+  }
+
+  @Override
+  public Set<Object> keySet(Object[] prefix) {
+    Set<Object> keys = new LinkedHashSet<>();
+    for (Object[] key : subMap(prefix).keySet()) {
+      keys.add(key[prefix.length]);
+    }
+    return keys;
+  }
+
+  @Override
+  public Iterable<V> values(Object[] prefix) {
+    return () -> new PrefixIterator<V>(prefix) {
+      @Override
+      V convert(Map.Entry<Object[], V> entry) {
+        return entry.getValue();
+      }
+    };
+  }
+
+  @Override
+  public Iterable<Storage.Entry<V>> entries(Object[] prefix) {
+    return () -> new PrefixIterator<Storage.Entry<V>>(prefix) {
+      @Override
+      Storage.Entry<V> convert(Map.Entry<Object[], V> entry) {
+        return new Storage.Entry<>(entry.getKey().clone(), entry.getValue());
+      }
+    };
+  }
+
+  @Override
+  public void close() {
+    map.clear();
+  }
+
+  /**
+   * Keys strictly starting with the given prefix. Such keys are sorted just after the prefix itself.
+   */
+  private NavigableMap<Object[], V> subMap(Object[] prefix) {
+    NavigableMap<Object[], V> tail = map.tailMap(prefix, false);
+    Object[] upperBound = null;
+    for (Object[] key : tail.keySet()) {
+      if (!startsWith(key, prefix)) {
+        upperBound = key;
+        break;
+      }
+    }
+    return upperBound == null ? tail : tail.headMap(upperBound, false);
+  }
+
+  private static boolean startsWith(Object[] key, Object[] prefix) {
+    if (key.length <= prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (KeyComparator.compareParts(key[i], prefix[i]) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private abstract class PrefixIterator<T> implements Iterator<T> {
+    private final Object[] prefix;
+    private final Iterator<Map.Entry<Object[], V>> delegate;
+    private Map.Entry<Object[], V> nextEntry;
+
+    private PrefixIterator(Object[] prefix) {
+      this.prefix = prefix;
+      this.delegate = map.tailMap(prefix, false).entrySet().iterator();
+      this.nextEntry = fetch();
+    }
+
+    @CheckForNull
+    private Map.Entry<Object[], V> fetch() {
+      if (delegate.hasNext()) {
+        Map.Entry<Object[], V> entry = delegate.next();
+        if (startsWith(entry.getKey(), prefix)) {
+          return entry;
+        }
+      }
+      return null;
+    }
+
+    abstract T convert(Map.Entry<Object[], V> entry);
+
+    @Override
+    public boolean hasNext() {
+      return nextEntry != null;
+    }
+
+    @Override
+    public T next() {
+      if (nextEntry == null) {
+        throw new NoSuchElementException();
+      }
+      T result = convert(nextEntry);
+      nextEntry = fetch();
+      return result;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  /**
+   * Compares keys part by part. A key is lower than the keys it is a prefix of. Parts of the same type are compared
+   * by natural order, parts of different types by class name.
+   */
+  static class KeyComparator implements Comparator<Object[]> {
+    static final KeyComparator INSTANCE = new KeyComparator();
+
+    @Override
+    public int compare(Object[] o1, Object[] o2) {
+      int length = Math.min(o1.length, o2.length);
+      for (int i = 0; i < length; i++) {
+        int cmp = compareParts(o1[i], o2[i]);
+        if (cmp != 0) {
+          return cmp;
+        }
+      }
+      return Integer.compare(o1.length, o2.length);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    static int compareParts(@Nullable Object o1, @Nullable Object o2) {
+      if (o1 == o2) {
+        return 0;
+      }
+      if (o1 == null) {
+        return -1;
+      }
+      if (o2 == null) {
+        return 1;
+      }
+      if (o1.getClass() != o2.getClass()) {
+        return o1.getClass().getName().compareTo(o2.getClass().getName());
+      }
+      if (o1 instanceof Comparable) {
+        return ((Comparable) o1).compareTo(o2);
+      }
+      throw new IllegalArgumentException("Key part is not comparable: " + o1.getClass().getName());
+    }
+  }
+}
@@ -0,0 +1,268 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.storage;
+
+import com.persistit.Exchange;
+import com.persistit.Key;
+import com.persistit.KeyFilter;
+import com.persistit.Persistit;
+import com.persistit.exception.PersistitException;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Storage engine backed by a tree of a Persistit temporary volume. Values are serialized, so that
+ * the storage can be larger than the heap.
+ * <p>
+ * An {@link Exchange} is not thread-safe, so the calls that use it are synchronized. Iterators use their own
+ * copy of the exchange.
+ * </p>
+ */
+class PersistitStorageEngine<V> implements StorageEngine<V> {
+
+  private final String name;
+  private final Persistit persistit;
+  private final Exchange exchange;
+
+  PersistitStorageEngine(String name, Persistit persistit, Exchange exchange) {
+    this.name = name;
+    this.persistit = persistit;
+    this.exchange = exchange;
+  }
+
+  @Override
+  public synchronized void put(Object[] key, V value) {
+    resetKey(key);
+    try {
+      exchange.getValue().put(value);
+      exchange.store();
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to put element in the storage '" + name + "'", e);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @CheckForNull
+  @Override
+  public synchronized V get(Object[] key) {
+    resetKey(key);
+    try {
+      exchange.fetch();
+      if (!exchange.getValue().isDefined()) {
+        return null;
+      }
+      return (V) exchange.getValue().get();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized boolean containsKey(Object[] key) {
+    resetKey(key);
+    try {
+      exchange.fetch();
+      return exchange.isValueDefined();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to check if element is in cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized boolean remove(Object[] key) {
+    resetKey(key);
+    try {
+      return exchange.remove();
+    } catch (Exception e) {
+      // TODO add parameters to message
+      throw new IllegalStateException("Fail to get element from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized void clear(Object[] key) {
+    if (key.length == 0) {
+      try {
+        exchange.clear();
+        exchange.removeAll();
+      } catch (Exception e) {
+        throw new IllegalStateException("Fail to clear cache", e);
+      }
+      return;
+    }
+    resetKey(key);
+    try {
+      Key to = new Key(exchange.getKey());
+      to.append(Key.AFTER);
+      exchange.removeKeyRange(exchange.getKey(), to);
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to clear values from cache " + name, e);
+    }
+  }
+
+  @Override
+  public synchronized Set<Object> keySet(Object[] prefix) {
+    try {
+      Set<Object> keys = new LinkedHashSet<>();
+      exchange.clear();
+      Exchange iteratorExchange = new Exchange(exchange);
+      for (Object o : prefix) {
+        iteratorExchange.append(o);
+      }
+      iteratorExchange.append(Key.BEFORE);
+      while (iteratorExchange.next(false)) {
+        keys.add(iteratorExchange.getKey().indexTo(-1).decode());
+      }
+      return keys;
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to get keys from cache " + name, e);
+    }
+  }
+
+  @Override
+  public Iterable<V> values(Object[] prefix) {
+    return () -> new ValueIterator<>(newIteratorExchange(prefix), newFilter(prefix));
+  }
+
+  @Override
+  public Iterable<Storage.Entry<V>> entries(Object[] prefix) {
+    return () -> new EntryIterator<>(newIteratorExchange(prefix), newFilter(prefix));
+  }
+
+  @Override
+  public synchronized void close() {
+    persistit.releaseExchange(exchange);
+  }
+
+  private synchronized Exchange newIteratorExchange(Object[] prefix) {
+    exchange.clear();
+    for (Object key : prefix) {
+      exchange.append(key);
+    }
+    exchange.append(Key.BEFORE);
+    return new Exchange(exchange);
+  }
+
+  private static KeyFilter newFilter(Object[] prefix) {
+    KeyFilter filter = new KeyFilter();
+    for (Object key : prefix) {
+      filter = filter.append(KeyFilter.simpleTerm(key));
+    }
+    return filter;
+  }
+
+  private void resetKey(Object[] keys) {
+    exchange.clear();
+    for (Object o : keys) {
+      exchange.append(o);
+    }
+  }
+
+  //
+  // LAZY ITERATORS
+  //
+
+  private static class ValueIterator<T> implements Iterator<T> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private ValueIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        return (T) exchange.getValue().get();
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+
+  private static class EntryIterator<T> implements Iterator<Storage.Entry<T>> {
+    private final Exchange exchange;
+    private final KeyFilter keyFilter;
+
+    private EntryIterator(Exchange exchange, KeyFilter keyFilter) {
+      this.exchange = exchange;
+      this.keyFilter = keyFilter;
+    }
+
+    @Override
+    public boolean hasNext() {
+      try {
+        return exchange.hasNext(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Storage.Entry<T> next() {
+      try {
+        exchange.next(keyFilter);
+      } catch (PersistitException e) {
+        throw new IllegalStateException(e);
+      }
+      if (exchange.getValue().isDefined()) {
+        T value = (T) exchange.getValue().get();
+        Key key = exchange.getKey();
+        Object[] array = new Object[key.getDepth()];
+        for (int i = 0; i < key.getDepth(); i++) {
+          array[i] = key.indexTo(i - key.getDepth()).decode();
+        }
+        return new Storage.Entry<>(array, value);
+      }
+      throw new NoSuchElementException();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException("Removing an item is not supported");
+    }
+  }
+}
@@ -0,0 +1,66 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.storage;
+
+import java.util.Set;
+import javax.annotation.CheckForNull;
+
+/**
+ * Backend of a {@link Storage}. Keys are made of one or several parts, which are compared
+ * part by part. Implementations must support concurrent calls.
+ *
+ * @see Storages#createCache(String)
+ */
+interface StorageEngine<V> {
+
+  void put(Object[] key, V value);
+
+  @CheckForNull
+  V get(Object[] key);
+
+  boolean containsKey(Object[] key);
+
+  boolean remove(Object[] key);
+
+  /**
+   * Removes the value of the given key and all the values of its sub-keys. Removes everything if key is empty.
+   */
+  void clear(Object[] key);
+
+  /**
+   * Parts of keys located just after the given prefix
+   */
+  Set<Object> keySet(Object[] prefix);
+
+  /**
+   * Lazy-loading values of the keys starting with the given prefix, excluding the prefix itself
+   */
+  Iterable<V> values(Object[] prefix);
+
+  /**
+   * Lazy-loading entries of the keys starting with the given prefix, excluding the prefix itself
+   */
+  Iterable<Storage.Entry<V>> entries(Object[] prefix);
+
+  /**
+   * Releases resources. The engine can't be used anymore after this call.
+   */
+  void close();
+}
@@ -28,22 +28,55 @@ import com.persistit.encoding.CoderManager;
 import com.persistit.encoding.ValueCoder;
 import com.persistit.exception.PersistitException;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.Map.Entry;
+import javax.annotation.Nullable;
+import org.apache.commons.lang.StringUtils;
 import org.picocontainer.Startable;
 import org.sonar.api.batch.ScannerSide;
+import org.sonar.scanner.analysis.AnalysisProperties;
 
 @ScannerSide
 public class Storages implements Startable {
-  private final Map<String, Exchange> cacheMap = new HashMap<>();
+  /**
+   * Engine of the storages: "persistit" (default) to serialize values on disk, or "memory" to keep them in the heap.
+   */
+  public static final String ENGINE_PROPERTY = "sonar.scanner.storageEngine";
+
+  enum Engine {
+    PERSISTIT, MEMORY
+  }
+
+  private final Map<String, Storage<?>> cacheMap = new HashMap<>();
+  private final Engine engine;
   private Persistit persistit;
   private Volume volume;
 
   public Storages(StoragesManager storagesManager) {
+    this(storagesManager, Engine.PERSISTIT);
+  }
+
+  public Storages(StoragesManager storagesManager, AnalysisProperties props) {
+    this(storagesManager, engine(props.property(ENGINE_PROPERTY)));
+  }
+
+  Storages(StoragesManager storagesManager, Engine engine) {
+    this.engine = engine;
     persistit = storagesManager.persistit();
     doStart();
   }
 
+  private static Engine engine(@Nullable String property) {
+    if (StringUtils.isBlank(property)) {
+      return Engine.PERSISTIT;
+    }
+    try {
+      return Engine.valueOf(property.trim().toUpperCase(Locale.ENGLISH));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Unsupported value of property " + ENGINE_PROPERTY + ": " + property, e);
+    }
+  }
+
   @Override
   public void start() {
     // done in constructor
@@ -67,20 +100,27 @@ public class Storages implements Startable {
     Preconditions.checkState(volume != null && volume.isOpened(), "Caches are not initialized");
     Preconditions.checkState(!cacheMap.containsKey(cacheName), "Cache is already created: %s", cacheName);
     try {
-      Exchange exchange = persistit.getExchange(volume, cacheName, true);
-      exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
-      Storage<V> cache = new Storage<>(cacheName, exchange);
-      cacheMap.put(cacheName, exchange);
+      Storage<V> cache = new Storage<>(createEngine(cacheName));
+      cacheMap.put(cacheName, cache);
       return cache;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to create cache: " + cacheName, e);
     }
   }
 
+  private <V> StorageEngine<V> createEngine(String cacheName) throws PersistitException {
+    if (engine == Engine.MEMORY) {
+      return new InMemoryStorageEngine<>(persistit);
+    }
+    Exchange exchange = persistit.getExchange(volume, cacheName, true);
+    exchange.setMaximumValueSize(Value.MAXIMUM_SIZE);
+    return new PersistitStorageEngine<>(cacheName, persistit, exchange);
+  }
+
   @Override
   public void stop() {
-    for (Entry<String, Exchange> e : cacheMap.entrySet()) {
-      persistit.releaseExchange(e.getValue());
+    for (Storage<?> storage : cacheMap.values()) {
+      storage.close();
     }
 
     cacheMap.clear();
@@ -235,6 +235,32 @@ public class CpdExecutorTest {
         "Timeout during detection of duplications for .*Foo2.php");
   }
 
+  @Test
+  public void detectDuplicationsConcurrently() {
+    when(settings.getThreads()).thenReturn(4);
+    when(settings.getMinimumTokens("php")).thenReturn(0);
+    for (DefaultInputFile component : Arrays.asList(batchComponent1, batchComponent2, batchComponent3)) {
+      List<Block> blocks = new ArrayList<>();
+      for (int j = 1; j <= 2; j++) {
+        blocks.add(Block.builder()
+          .setResourceId(component.key())
+          .setIndexInFile(j)
+          .setLines(j, j + 1)
+          .setUnit(j, j + 1)
+          .setBlockHash(new ByteArray(("abcd123" + j).getBytes()))
+          .build());
+      }
+      index.insert(component, blocks);
+    }
+
+    executor.execute(60_000);
+
+    Duplication[] dups = readDuplications(1);
+    assertDuplication(dups[0], 1, 3, 2);
+    assertThat(dups[0].getDuplicateList()).extracting(Duplicate::getOtherFileRef)
+      .containsOnly(batchComponent2.batchId(), batchComponent3.batchId());
+  }
+
   private Duplication[] readDuplications(int expected) {
     assertThat(reader.readComponentDuplications(batchComponent1.batchId())).hasSize(expected);
     Duplication[] duplications = new Duplication[expected];
@@ -0,0 +1,127 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.issue.tracking;
+
+import java.util.function.Consumer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.sonar.api.batch.fs.internal.DefaultInputFile;
+import org.sonar.api.batch.fs.internal.DefaultInputModule;
+import org.sonar.scanner.analysis.DefaultAnalysisMode;
+import org.sonar.scanner.index.AbstractCachesTest;
+import org.sonar.scanner.protocol.input.ScannerInput.ServerIssue;
+import org.sonar.scanner.repository.ServerIssuesLoader;
+import org.sonar.scanner.scan.filesystem.InputComponentStore;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ServerIssueRepositoryTest extends AbstractCachesTest {
+
+  @Rule
+  public ExpectedException expectedException = ExpectedException.none();
+
+  private ServerIssuesLoader loader = mock(ServerIssuesLoader.class);
+  private InputComponentStore componentStore = mock(InputComponentStore.class);
+  private DefaultAnalysisMode mode = mock(DefaultAnalysisMode.class);
+  private DefaultInputModule module = mock(DefaultInputModule.class);
+  private DefaultInputFile file = mock(DefaultInputFile.class);
+  private ServerIssueRepository underTest;
+
+  @Before
+  public void setUp() {
+    when(module.key()).thenReturn("foo");
+    when(module.getKeyWithBranch()).thenReturn("foo");
+    when(module.batchId()).thenReturn(1);
+    when(file.batchId()).thenReturn(2);
+    when(componentStore.root()).thenReturn(module);
+    when(componentStore.getModule("foo")).thenReturn(module);
+    when(componentStore.getByKey("foo")).thenReturn(module);
+    when(componentStore.getByKey("foo:src/A.java")).thenReturn(file);
+    underTest = new ServerIssueRepository(caches, loader, componentStore, mode);
+  }
+
+  @Test
+  public void download_issues_in_background_in_issues_mode() {
+    when(mode.isIssues()).thenReturn(true);
+    mockIssues(newIssue("ON_FILE", "src/A.java"), newIssue("ON_MODULE", null), newIssue("ON_DELETED_FILE", "src/Deleted.java"));
+
+    underTest.start();
+    verify(loader, timeout(10_000)).load(eq("foo"), any());
+
+    underTest.load();
+    assertThat(underTest.byComponent(file)).extracting(ServerIssue::getKey).containsOnly("ON_FILE");
+    assertThat(underTest.byComponent(module)).extracting(ServerIssue::getKey).containsOnly("ON_MODULE");
+    assertThat(underTest.issuesOnMissingComponents()).extracting(ServerIssue::getKey).containsOnly("ON_DELETED_FILE");
+    underTest.stop();
+  }
+
+  @Test
+  public void download_issues_when_loading_if_not_started_in_issues_mode() {
+    mockIssues(newIssue("ON_FILE", "src/A.java"));
+
+    underTest.start();
+    underTest.load();
+
+    assertThat(underTest.byComponent(file)).extracting(ServerIssue::getKey).containsOnly("ON_FILE");
+    underTest.stop();
+  }
+
+  @Test
+  public void fail_to_load_if_download_failed() {
+    when(mode.isIssues()).thenReturn(true);
+    doThrow(new IllegalStateException("Unable to get previous issues")).when(loader).load(eq("foo"), any());
+    underTest.start();
+
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("Unable to get previous issues");
+
+    underTest.load();
+  }
+
+  private void mockIssues(ServerIssue... issues) {
+    doAnswer(invocation -> {
+      Consumer<ServerIssue> consumer = (Consumer<ServerIssue>) invocation.getArguments()[1];
+      for (ServerIssue issue : issues) {
+        consumer.accept(issue);
+      }
+      return null;
+    }).when(loader).load(eq("foo"), any());
+  }
+
+  private static ServerIssue newIssue(String key, String path) {
+    ServerIssue.Builder builder = ServerIssue.newBuilder()
+      .setKey(key)
+      .setModuleKey("foo");
+    if (path != null) {
+      builder.setPath(path);
+    }
+    return builder.build();
+  }
+}
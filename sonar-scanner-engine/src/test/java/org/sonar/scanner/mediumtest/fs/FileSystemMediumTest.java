@@ -253,6 +253,33 @@ public class FileSystemMediumTest {
     assertThat(logs.getAllAsString()).contains("'src/sample.java' generated metadata");
   }
 
+  @Test
+  public void preloadFileMetadataWithSingleThreadedStages() throws IOException {
+    builder = createBuilder()
+      .put("sonar.preloadFileMetadata", "true")
+      .put("sonar.scanner.indexingThreads", "1")
+      .put("sonar.scanner.metadataThreads", "1");
+
+    File srcDir = new File(baseDir, "src");
+    srcDir.mkdir();
+
+    // more files than the queue of a single threaded stage can hold
+    int nbFiles = 250;
+    for (int nb = 1; nb <= nbFiles; nb++) {
+      FileUtils.write(new File(srcDir, "sample" + nb + ".xoo"), "Sample xoo\ncontent");
+    }
+
+    TaskResult result = tester.newTask()
+      .properties(builder
+        .put("sonar.sources", "src")
+        .build())
+      .execute();
+
+    assertThat(result.inputFiles()).hasSize(nbFiles);
+    assertThat(logs.getAllAsString()).contains(nbFiles + " files indexed");
+    assertThat(logs.getAllAsString()).contains("'src/sample" + nbFiles + ".xoo' generated metadata");
+  }
+
   @Test
   public void dontPublishFilesWithoutDetectedLanguage() throws IOException {
     builder = createBuilder();
@@ -587,6 +614,39 @@ public class FileSystemMediumTest {
       .execute();
   }
 
+  @Test
+  public void failForDuplicateInputFileIndexedByConcurrentThreads() throws IOException {
+    File srcDir = new File(baseDir, "src");
+    srcDir.mkdir();
+
+    File xooFile = new File(srcDir, "sample.xoo");
+    FileUtils.write(xooFile, "Sample xoo\ncontent");
+
+    thrown.expect(MessageException.class);
+    thrown.expectMessage("File src/sample.xoo can't be indexed twice. Please check that inclusion/exclusion patterns produce disjoint sets for main and test files");
+    tester.newTask()
+      .properties(builder
+        .put("sonar.sources", "src,src/sample.xoo")
+        .put("sonar.scanner.indexingThreads", "4")
+        .build())
+      .execute();
+  }
+
+  @Test
+  public void failForInvalidNumberOfIndexingThreads() throws IOException {
+    File srcDir = new File(baseDir, "src");
+    srcDir.mkdir();
+
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("The property 'sonar.scanner.indexingThreads' is not an int value");
+    tester.newTask()
+      .properties(builder
+        .put("sonar.sources", "src")
+        .put("sonar.scanner.indexingThreads", "many")
+        .build())
+      .execute();
+  }
+
   // SONAR-9574
   @Test
   public void failForDuplicateInputFileInDifferentModules() throws IOException {
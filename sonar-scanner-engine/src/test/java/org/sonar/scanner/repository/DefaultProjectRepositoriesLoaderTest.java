@@ -28,10 +28,15 @@ import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.api.utils.MessageException;
+import org.sonar.home.cache.FileCache;
+import org.sonar.home.cache.Logger;
 import org.sonar.scanner.WsTestUtil;
 import org.sonar.scanner.bootstrap.ScannerWsClient;
+import org.sonar.scanner.protocol.input.FilesFingerprint;
 import org.sonarqube.ws.WsBatch.WsProjectResponse;
+import org.sonarqube.ws.WsBatch.WsProjectResponse.FileDataByPath;
 import org.sonarqube.ws.client.HttpException;
 import org.sonarqube.ws.client.WsRequest;
 
@@ -44,6 +49,8 @@ public class DefaultProjectRepositoriesLoaderTest {
   private final static String PROJECT_KEY = "foo?";
   @Rule
   public ExpectedException thrown = ExpectedException.none();
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
 
   private DefaultProjectRepositoriesLoader loader;
   private ScannerWsClient wsClient;
@@ -53,7 +60,7 @@ public class DefaultProjectRepositoriesLoaderTest {
     wsClient = mock(ScannerWsClient.class);
     InputStream is = mockData();
     WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F", is);
-    loader = new DefaultProjectRepositoriesLoader(wsClient);
+    loader = new DefaultProjectRepositoriesLoader(wsClient, FileCache.create(temp.newFolder(), mock(Logger.class)));
   }
 
   @Test
@@ -110,6 +117,68 @@ public class DefaultProjectRepositoriesLoaderTest {
     WsTestUtil.verifyCall(wsClient, "/batch/project.protobuf?key=foo%3F");
   }
 
+  @Test
+  public void download_only_changed_files_when_project_is_in_cache() throws IOException {
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F", toStream(projectResponse(fileDataByPath("A.java", "h1", "B.java", "h2"))
+      .setFilesVersion(1_000L)
+      .build()));
+    loader.load(PROJECT_KEY, false, null);
+
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F&changedSince=1000", toStream(projectResponse(fileDataByPath("B.java", "h2bis", "C.java", "h3"))
+      .setFilesVersion(2_000L)
+      .setFilesDelta(true)
+      .setFilesFingerprint(new FilesFingerprint().add("foo", "A.java").add("foo", "B.java").add("foo", "C.java").value())
+      .build()));
+    ProjectRepositories proj = loader.load(PROJECT_KEY, false, null);
+
+    WsTestUtil.verifyCall(wsClient, "/batch/project.protobuf?key=foo%3F&changedSince=1000");
+    assertThat(proj.fileData("foo", "A.java").hash()).isEqualTo("h1");
+    assertThat(proj.fileData("foo", "B.java").hash()).isEqualTo("h2bis");
+    assertThat(proj.fileData("foo", "C.java").hash()).isEqualTo("h3");
+  }
+
+  @Test
+  public void download_all_files_again_when_delta_does_not_match_server_files() throws IOException {
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F", toStream(projectResponse(fileDataByPath("A.java", "h1", "B.java", "h2"))
+      .setFilesVersion(1_000L)
+      .build()));
+    loader.load(PROJECT_KEY, false, null);
+
+    // B.java has been deleted on server side
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F&changedSince=1000", toStream(projectResponse(FileDataByPath.getDefaultInstance())
+      .setFilesVersion(2_000L)
+      .setFilesDelta(true)
+      .setFilesFingerprint(new FilesFingerprint().add("foo", "A.java").value())
+      .build()));
+    WsTestUtil.mockStream(wsClient, "/batch/project.protobuf?key=foo%3F", toStream(projectResponse(fileDataByPath("A.java", "h1"))
+      .setFilesVersion(2_000L)
+      .build()));
+    ProjectRepositories proj = loader.load(PROJECT_KEY, false, null);
+
+    assertThat(proj.fileData("foo", "A.java").hash()).isEqualTo("h1");
+    assertThat(proj.fileData("foo", "B.java")).isNull();
+  }
+
+  private static WsProjectResponse.Builder projectResponse(FileDataByPath files) {
+    WsProjectResponse.Builder builder = WsProjectResponse.newBuilder();
+    builder.getMutableFileDataByModuleAndPath().put("foo", files);
+    return builder;
+  }
+
+  private static FileDataByPath fileDataByPath(String... pathsAndHashes) {
+    FileDataByPath.Builder builder = FileDataByPath.newBuilder();
+    for (int i = 0; i < pathsAndHashes.length; i += 2) {
+      builder.getMutableFileDataByPath().put(pathsAndHashes[i], WsProjectResponse.FileData.newBuilder().setHash(pathsAndHashes[i + 1]).build());
+    }
+    return builder.build();
+  }
+
+  private static InputStream toStream(WsProjectResponse response) throws IOException {
+    ByteArrayOutputStream os = new ByteArrayOutputStream();
+    response.writeTo(os);
+    return new ByteArrayInputStream(os.toByteArray());
+  }
+
   private InputStream mockData() throws IOException {
     ByteArrayOutputStream os = new ByteArrayOutputStream();
     WsProjectResponse.Builder projectResponseBuilder = WsProjectResponse.newBuilder();
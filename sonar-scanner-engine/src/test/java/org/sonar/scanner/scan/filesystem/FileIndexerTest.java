@@ -0,0 +1,65 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.scan.filesystem;
+
+import org.junit.Test;
+import org.sonar.api.config.internal.MapSettings;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.sonar.scanner.scan.filesystem.FileIndexer.INDEXING_THREADS_KEY;
+import static org.sonar.scanner.scan.filesystem.FileIndexer.METADATA_THREADS_KEY;
+
+public class FileIndexerTest {
+
+  private MapSettings settings = new MapSettings();
+
+  @Test
+  public void stage_threads_are_read_from_settings() {
+    settings.setProperty(INDEXING_THREADS_KEY, "3");
+    settings.setProperty(METADATA_THREADS_KEY, " 5 ");
+
+    assertThat(FileIndexer.stageThreads(settings.asConfig(), INDEXING_THREADS_KEY)).isEqualTo(3);
+    assertThat(FileIndexer.stageThreads(settings.asConfig(), METADATA_THREADS_KEY)).isEqualTo(5);
+  }
+
+  @Test
+  public void stage_threads_default_to_available_processors_minus_one() {
+    int expected = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+    assertThat(FileIndexer.stageThreads(settings.asConfig(), INDEXING_THREADS_KEY)).isEqualTo(expected);
+    assertThat(FileIndexer.stageThreads(settings.asConfig(), METADATA_THREADS_KEY)).isEqualTo(expected);
+  }
+
+  @Test
+  public void stage_has_at_least_one_thread() {
+    settings.setProperty(INDEXING_THREADS_KEY, "0");
+    settings.setProperty(METADATA_THREADS_KEY, "-2");
+
+    assertThat(FileIndexer.stageThreads(settings.asConfig(), INDEXING_THREADS_KEY)).isEqualTo(1);
+    assertThat(FileIndexer.stageThreads(settings.asConfig(), METADATA_THREADS_KEY)).isEqualTo(1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fail_if_stage_threads_is_not_an_int() {
+    settings.setProperty(METADATA_THREADS_KEY, "many");
+
+    FileIndexer.stageThreads(settings.asConfig(), METADATA_THREADS_KEY);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.storage;
+
+import com.google.common.collect.Iterables;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.sonar.scanner.index.AbstractCachesTest;
+import org.sonar.scanner.storage.Storage.Entry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InMemoryStorageEngineTest extends AbstractCachesTest {
+
+  private Storage<String> cache = new Storage<>(new InMemoryStorageEngine<>(cachesManager.persistit()));
+
+  @Test
+  public void one_part_key() {
+    assertThat(cache.get("france")).isNull();
+
+    cache.put("france", "paris");
+    cache.put("italy", "rome");
+    assertThat(cache.get("france")).isEqualTo("paris");
+    assertThat(cache.keySet()).containsOnly("france", "italy");
+    assertThat(cache.keySet("france")).isEmpty();
+    assertThat(cache.values()).containsExactly("paris", "rome");
+    assertThat(cache.containsKey("france")).isTrue();
+
+    cache.remove("france");
+    assertThat(cache.get("france")).isNull();
+    assertThat(cache.containsKey("france")).isFalse();
+    assertThat(cache.values()).containsOnly("rome");
+
+    cache.clear();
+    assertThat(cache.values()).isEmpty();
+  }
+
+  @Test
+  public void three_parts_key() {
+    cache.put("europe", "france", "paris", "eiffel tower");
+    cache.put("europe", "france", "annecy", "lake");
+    cache.put("europe", "italy", "rome", "colosseum");
+    cache.put("europe2", "ukrania", "kiev", "dunno");
+    cache.put("asia", "china", "pekin", "great wall");
+
+    assertThat(cache.get("europe", "france")).isNull();
+    assertThat(cache.get("europe", "france", "annecy")).isEqualTo("lake");
+    assertThat(cache.keySet()).containsExactly("asia", "europe", "europe2");
+    assertThat(cache.keySet("europe")).containsExactly("france", "italy");
+    assertThat(cache.keySet("europe", "france")).containsExactly("annecy", "paris");
+    assertThat(cache.values("europe")).containsExactly("lake", "eiffel tower", "colosseum");
+    assertThat(cache.values("europe", "france")).containsExactly("lake", "eiffel tower");
+    assertThat(cache.values("oceania")).isEmpty();
+
+    Entry[] entries = Iterables.toArray(cache.entries("europe"), Entry.class);
+    assertThat(entries).hasSize(3);
+    assertThat(entries[0].key()).isEqualTo(new String[] {"europe", "france", "annecy"});
+    assertThat(entries[0].value()).isEqualTo("lake");
+    assertThat(entries[2].key()).isEqualTo(new String[] {"europe", "italy", "rome"});
+
+    cache.clear("europe", "italy");
+    assertThat(cache.values()).containsOnly("eiffel tower", "lake", "great wall", "dunno");
+
+    cache.clear("europe");
+    assertThat(cache.values()).containsOnly("great wall", "dunno");
+  }
+
+  @Test
+  public void remove_versus_clear() {
+    cache.put("europe", "france", "paris");
+    cache.put("europe", "italy", "rome");
+
+    // remove("europe") does not remove sub-keys
+    cache.remove("europe");
+    assertThat(cache.values()).containsOnly("paris", "rome");
+
+    // clear("europe") removes sub-keys
+    cache.clear("europe");
+    assertThat(cache.values()).isEmpty();
+  }
+
+  @Test
+  public void compare_parts_of_different_types() {
+    Storage<String> mixed = new Storage<>(new InMemoryStorageEngine<>(cachesManager.persistit()));
+    mixed.put("foo", 10, "a");
+    mixed.put("foo", 2, "b");
+    mixed.put("foo", "bar", "c");
+
+    assertThat(mixed.values("foo")).containsExactly("b", "a", "c");
+  }
+
+  @Test
+  public void support_concurrent_writers() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      String component = "component" + t;
+      futures.add(executor.submit(() -> {
+        for (int i = 0; i < 1_000; i++) {
+          cache.put(component, i, "value" + i);
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+
+    assertThat(cache.keySet()).hasSize(4);
+    assertThat(cache.values("component2")).hasSize(1_000);
+    assertThat(cache.get("component3", 999)).isEqualTo("value999");
+  }
+
+  @Test
+  public void store_a_copy_of_values() {
+    Storage<Element> elements = new Storage<>(new InMemoryStorageEngine<>(cachesManager.persistit()));
+    Element element = new Element("paris");
+    elements.put("france", element);
+
+    element.name = "annecy";
+
+    assertThat(elements.get("france").name).isEqualTo("paris");
+  }
+
+  private static class Element implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String name;
+
+    Element(String name) {
+      this.name = name;
+    }
+  }
+}
@@ -19,9 +19,11 @@
  */
 package org.sonar.scanner.storage;
 
+import com.google.common.collect.ImmutableMap;
 import com.persistit.exception.PersistitException;
 import java.io.Serializable;
 import org.junit.Test;
+import org.sonar.scanner.analysis.AnalysisProperties;
 import org.sonar.scanner.index.AbstractCachesTest;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -45,6 +47,28 @@ public class StoragesTest extends AbstractCachesTest {
     }
   }
 
+  @Test
+  public void should_create_in_memory_cache() {
+    caches.stop();
+    caches = new Storages(cachesManager, new AnalysisProperties(ImmutableMap.of(Storages.ENGINE_PROPERTY, "memory")));
+
+    Storage<String> cache = caches.createCache("foo");
+    cache.put("key", "value");
+
+    assertThat(cache.get("key")).isEqualTo("value");
+  }
+
+  @Test
+  public void fail_on_unsupported_engine() {
+    caches.stop();
+    try {
+      new Storages(cachesManager, new AnalysisProperties(ImmutableMap.of(Storages.ENGINE_PROPERTY, "foo")));
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Unsupported value of property sonar.scanner.storageEngine: foo");
+    }
+  }
+
   @Test
   public void should_clean_resources() {
     Storage<String> c = caches.<String>createCache("test1");
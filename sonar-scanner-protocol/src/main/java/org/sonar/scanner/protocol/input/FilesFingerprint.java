@@ -0,0 +1,63 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.input;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Fingerprint of a set of files, whatever the order in which they are added. It allows the scanner to
+ * check that the files it knows, once a delta of changed files has been applied, are the same as the
+ * files known by server.
+ */
+public class FilesFingerprint {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private long value = 0L;
+  private int count = 0;
+
+  public FilesFingerprint add(String moduleKey, String path) {
+    long hash = FNV_OFFSET_BASIS;
+    hash = hash(hash, moduleKey.getBytes(UTF_8));
+    // separator which can't be part of a module key
+    hash = (hash ^ 0xFF) * FNV_PRIME;
+    hash = hash(hash, path.getBytes(UTF_8));
+    value += hash;
+    count++;
+    return this;
+  }
+
+  private static long hash(long initial, byte[] bytes) {
+    long hash = initial;
+    for (byte b : bytes) {
+      hash ^= b & 0xFF;
+      hash *= FNV_PRIME;
+    }
+    return hash;
+  }
+
+  /**
+   * Combination of the number of files and of the FNV-1a hashes of their module keys and paths
+   */
+  public long value() {
+    return value * 31 + count;
+  }
+}
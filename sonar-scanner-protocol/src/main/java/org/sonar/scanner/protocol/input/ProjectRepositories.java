@@ -38,6 +38,9 @@ public class ProjectRepositories {
   private Map<String, Map<String, String>> settingsByModule = new HashMap<>();
   private Map<String, Map<String, FileData>> fileDataByModuleAndPath = new HashMap<>();
   private Date lastAnalysisDate;
+  private Long filesVersion;
+  private boolean filesDelta;
+  private long filesFingerprint;
 
   public Map<String, String> settings(String moduleKey) {
     return settingsByModule.containsKey(moduleKey) ? settingsByModule.get(moduleKey) : Collections.<String, String>emptyMap();
@@ -97,6 +100,44 @@ public class ProjectRepositories {
     this.lastAnalysisDate = lastAnalysisDate;
   }
 
+  /**
+   * Version of files data, to be sent back by the scanner to get only the files changed since this version.
+   * It's {@code null} if the project has not been analyzed yet.
+   */
+  @CheckForNull
+  public Long filesVersion() {
+    return filesVersion;
+  }
+
+  public ProjectRepositories setFilesVersion(@Nullable Long filesVersion) {
+    this.filesVersion = filesVersion;
+    return this;
+  }
+
+  /**
+   * Whether {@link #fileDataByModuleAndPath()} contains only the files changed since the version requested by the scanner
+   */
+  public boolean isFilesDelta() {
+    return filesDelta;
+  }
+
+  public ProjectRepositories setFilesDelta(boolean filesDelta) {
+    this.filesDelta = filesDelta;
+    return this;
+  }
+
+  /**
+   * {@link FilesFingerprint} of all the files of the project, even when only a delta is returned
+   */
+  public long filesFingerprint() {
+    return filesFingerprint;
+  }
+
+  public ProjectRepositories setFilesFingerprint(long filesFingerprint) {
+    this.filesFingerprint = filesFingerprint;
+    return this;
+  }
+
   public String toJson() {
     return GsonHelper.create().toJson(this);
   }
@@ -78,6 +78,14 @@ public class FileStructure {
     return new File(dir, domain.filePrefix + componentRef + domain.fileSuffix);
   }
 
+  public File segmentsIndex() {
+    return new File(dir, "segments.idx");
+  }
+
+  public File segmentFile(int segment) {
+    return new File(dir, "segment-" + segment + ".dat");
+  }
+
   public File contextProperties() {
     return new File(dir, "context-props.pb");
   }
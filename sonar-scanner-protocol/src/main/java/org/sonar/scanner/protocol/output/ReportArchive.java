@@ -0,0 +1,179 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.sonar.core.util.ContextException;
+
+/**
+ * Read-only view of a zipped analysis report. Entries are streamed straight from the archive instead
+ * of being extracted to disk first. Entries stored without compression, like the report segments,
+ * are randomly accessed without reading the preceding bytes.
+ * <p/>
+ * Entries are resolved by the name of the corresponding file of {@link FileStructure}.
+ */
+public class ReportArchive implements Closeable {
+
+  private final File file;
+  private final ZipFile zipFile;
+  private final AtomicLong bytesRead = new AtomicLong();
+
+  public ReportArchive(File file) {
+    this.file = file;
+    try {
+      this.zipFile = new ZipFile(file);
+    } catch (IOException e) {
+      throw ContextException.of("Unable to open analysis report", e).addContext("file", file);
+    }
+  }
+
+  /**
+   * Zips the files of the report directory. Segments are already compressed, so they are stored as is
+   * in order to be randomly accessed by {@link #read(String, long, int)}.
+   */
+  public static void zip(File reportDir, File zip) throws IOException {
+    File[] files = reportDir.listFiles();
+    if (files == null) {
+      throw new IllegalStateException("Fail to list files of directory " + reportDir.getAbsolutePath());
+    }
+    try (ZipOutputStream output = new ZipOutputStream(new BufferedOutputStream(FileUtils.openOutputStream(zip)))) {
+      for (File file : files) {
+        if (file.isFile()) {
+          output.putNextEntry(newEntry(file));
+          FileUtils.copyFile(file, output);
+          output.closeEntry();
+        }
+      }
+    }
+  }
+
+  private static ZipEntry newEntry(File file) throws IOException {
+    ZipEntry entry = new ZipEntry(file.getName());
+    if (isSegment(file)) {
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(file.length());
+      entry.setCompressedSize(file.length());
+      entry.setCrc(FileUtils.checksumCRC32(file));
+    }
+    return entry;
+  }
+
+  private static boolean isSegment(File file) {
+    return file.getName().startsWith("segment-") && file.getName().endsWith(".dat");
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  public boolean has(String name) {
+    ZipEntry entry = zipFile.getEntry(name);
+    return entry != null && !entry.isDirectory();
+  }
+
+  /**
+   * Stream of the uncompressed content of the entry, or {@code null} if the entry does not exist.
+   */
+  @CheckForNull
+  public InputStream open(String name) {
+    ZipEntry entry = zipFile.getEntry(name);
+    if (entry == null || entry.isDirectory()) {
+      return null;
+    }
+    try {
+      return new BufferedInputStream(new CountingInputStream(zipFile.getInputStream(entry)));
+    } catch (IOException e) {
+      throw ContextException.of("Unable to read entry of analysis report", e).addContext("file", file).addContext("entry", name);
+    }
+  }
+
+  /**
+   * Reads {@code length} bytes of the entry, starting at {@code offset}. Skipping is free when the entry
+   * is stored without compression.
+   */
+  public byte[] read(String name, long offset, int length) {
+    ZipEntry entry = zipFile.getEntry(name);
+    if (entry == null) {
+      throw new IllegalStateException("Entry " + name + " is missing in analysis report " + file);
+    }
+    try (InputStream input = zipFile.getInputStream(entry)) {
+      IOUtils.skipFully(input, offset);
+      byte[] bytes = new byte[length];
+      IOUtils.readFully(input, bytes);
+      bytesRead.addAndGet(length);
+      return bytes;
+    } catch (IOException e) {
+      throw ContextException.of("Unable to read entry of analysis report", e).addContext("file", file).addContext("entry", name);
+    }
+  }
+
+  /**
+   * Total number of uncompressed bytes read from the archive so far
+   */
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  @Override
+  public void close() {
+    try {
+      zipFile.close();
+    } catch (IOException e) {
+      throw ContextException.of("Unable to close analysis report", e).addContext("file", file);
+    }
+  }
+
+  private class CountingInputStream extends FilterInputStream {
+    private CountingInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0) {
+        bytesRead.incrementAndGet();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int count = super.read(b, off, len);
+      if (count > 0) {
+        bytesRead.addAndGet(count);
+      }
+      return count;
+    }
+  }
+}
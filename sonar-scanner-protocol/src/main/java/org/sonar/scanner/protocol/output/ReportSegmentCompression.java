@@ -0,0 +1,65 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.util.Arrays;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * Compression of the chunks stored in report segments. Each chunk is compressed independently,
+ * so that it can be read without decompressing the whole segment.
+ */
+public enum ReportSegmentCompression {
+  NONE {
+    @Override
+    byte[] compress(byte[] bytes, int length) {
+      return length == bytes.length ? bytes : Arrays.copyOf(bytes, length);
+    }
+
+    @Override
+    byte[] decompress(byte[] bytes, int rawLength) {
+      return bytes;
+    }
+  },
+
+  LZ4 {
+    @Override
+    byte[] compress(byte[] bytes, int length) {
+      LZ4Compressor compressor = LZ4Factory.fastestInstance().fastCompressor();
+      byte[] compressed = new byte[compressor.maxCompressedLength(length)];
+      int compressedLength = compressor.compress(bytes, 0, length, compressed, 0, compressed.length);
+      return Arrays.copyOf(compressed, compressedLength);
+    }
+
+    @Override
+    byte[] decompress(byte[] bytes, int rawLength) {
+      LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+      byte[] raw = new byte[rawLength];
+      decompressor.decompress(bytes, 0, raw, 0, rawLength);
+      return raw;
+    }
+  };
+
+  abstract byte[] compress(byte[] bytes, int length);
+
+  abstract byte[] decompress(byte[] bytes, int rawLength);
+}
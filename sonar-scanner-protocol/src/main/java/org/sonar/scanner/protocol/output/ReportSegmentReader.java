@@ -0,0 +1,191 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+import org.apache.commons.io.IOUtils;
+import org.sonar.core.util.ContextException;
+
+/**
+ * Random access to the data written by {@link ReportSegmentWriter}. The index is loaded when the reader
+ * is created, then the chunks of a component are read, and decompressed, only when its data is streamed.
+ * Segments are read either from the report directory, through channels kept open until {@link #close()}, or,
+ * without extraction, from a {@link ReportArchive}.
+ */
+public class ReportSegmentReader implements Closeable {
+
+  private final FileStructure fileStructure;
+  @CheckForNull
+  private final ReportArchive archive;
+  private final Map<String, List<Chunk>> chunksByKey = new HashMap<>();
+  private final Map<Integer, FileChannel> channelsBySegment = new HashMap<>();
+
+  public ReportSegmentReader(FileStructure fileStructure) {
+    this(fileStructure, null);
+  }
+
+  public ReportSegmentReader(FileStructure fileStructure, @Nullable ReportArchive archive) {
+    this.fileStructure = fileStructure;
+    this.archive = archive;
+    loadIndex(fileStructure.segmentsIndex());
+  }
+
+  public static boolean exists(FileStructure fileStructure) {
+    return fileStructure.segmentsIndex().isFile();
+  }
+
+  public static boolean exists(FileStructure fileStructure, @Nullable ReportArchive archive) {
+    if (archive == null) {
+      return exists(fileStructure);
+    }
+    return archive.has(fileStructure.segmentsIndex().getName());
+  }
+
+  private InputStream openIndex(File indexFile) throws IOException {
+    if (archive == null) {
+      return new BufferedInputStream(new FileInputStream(indexFile));
+    }
+    return archive.open(indexFile.getName());
+  }
+
+  private void loadIndex(File indexFile) {
+    try (DataInputStream input = new DataInputStream(openIndex(indexFile))) {
+      while (true) {
+        int flags;
+        try {
+          flags = input.readByte();
+        } catch (EOFException e) {
+          // end of index
+          break;
+        }
+        String key = ReportSegmentWriter.key(FileStructure.Domain.valueOf(input.readUTF()), input.readInt());
+        Chunk chunk = new Chunk(input.readInt(), input.readLong(), input.readInt(), input.readInt(), ReportSegmentCompression.valueOf(input.readUTF()));
+        List<Chunk> chunks = chunksByKey.computeIfAbsent(key, k -> new ArrayList<>());
+        if ((flags & ReportSegmentWriter.FLAG_REPLACE) != 0) {
+          chunks.clear();
+        }
+        chunks.add(chunk);
+      }
+    } catch (IOException e) {
+      throw ContextException.of("Unable to read index of report segments", e).addContext("file", indexFile);
+    }
+  }
+
+  public boolean has(FileStructure.Domain domain, int componentRef) {
+    return chunksByKey.containsKey(ReportSegmentWriter.key(domain, componentRef));
+  }
+
+  /**
+   * Stream of the data of the component, or an empty stream if there's no data.
+   */
+  public InputStream open(FileStructure.Domain domain, int componentRef) {
+    List<Chunk> chunks = chunksByKey.getOrDefault(ReportSegmentWriter.key(domain, componentRef), Collections.emptyList());
+    Iterator<Chunk> it = chunks.iterator();
+    return new SequenceInputStream(new Enumeration<InputStream>() {
+      @Override
+      public boolean hasMoreElements() {
+        return it.hasNext();
+      }
+
+      @Override
+      public InputStream nextElement() {
+        Chunk chunk = it.next();
+        return new ByteArrayInputStream(chunk.compression.decompress(readStored(chunk), chunk.rawLength));
+      }
+    });
+  }
+
+  /**
+   * Bytes of the chunk as stored in its segment
+   */
+  protected byte[] readStored(Chunk chunk) {
+    File segmentFile = fileStructure.segmentFile(chunk.segment);
+    if (archive != null) {
+      return archive.read(segmentFile.getName(), chunk.offset, chunk.storedLength);
+    }
+    try {
+      ByteBuffer bytes = ByteBuffer.allocate(chunk.storedLength);
+      FileChannel channel = channel(chunk.segment, segmentFile);
+      // positional reads do not change the position of the channel, so they can be concurrent
+      while (bytes.hasRemaining()) {
+        if (channel.read(bytes, chunk.offset + bytes.position()) < 0) {
+          throw new EOFException("Unexpected end of segment");
+        }
+      }
+      return bytes.array();
+    } catch (IOException e) {
+      throw ContextException.of("Unable to read report segment", e).addContext("file", segmentFile);
+    }
+  }
+
+  private synchronized FileChannel channel(int segment, File segmentFile) throws IOException {
+    FileChannel channel = channelsBySegment.get(segment);
+    if (channel == null) {
+      channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ);
+      channelsBySegment.put(segment, channel);
+    }
+    return channel;
+  }
+
+  @Override
+  public synchronized void close() {
+    for (FileChannel channel : channelsBySegment.values()) {
+      IOUtils.closeQuietly(channel);
+    }
+    channelsBySegment.clear();
+  }
+
+  protected static class Chunk {
+    protected final int segment;
+    protected final long offset;
+    protected final int storedLength;
+    private final int rawLength;
+    private final ReportSegmentCompression compression;
+
+    private Chunk(int segment, long offset, int storedLength, int rawLength, ReportSegmentCompression compression) {
+      this.segment = segment;
+      this.offset = offset;
+      this.storedLength = storedLength;
+      this.rawLength = rawLength;
+      this.compression = compression;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import com.google.protobuf.Message;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.CheckForNull;
+import org.apache.commons.io.IOUtils;
+import org.sonar.core.util.ContextException;
+
+/**
+ * Appends the protobuf data of components to a few large segment files instead of one file per component
+ * and domain. Each write is stored as a chunk, optionally compressed, and referenced by a record appended
+ * to the index file (see {@link FileStructure#segmentsIndex()}). Messages appended one at a time are buffered
+ * per component and stored as a single chunk when flushed. Data can be read with {@link ReportSegmentReader}
+ * once flushed, even while the writer is still open.
+ * <p>
+ * Index records contain: flags, domain, component ref, segment number, offset in segment,
+ * stored length, raw length and compression.
+ * </p>
+ */
+public class ReportSegmentWriter implements Closeable {
+  static final int FLAG_REPLACE = 1;
+  static final long DEFAULT_MAX_SEGMENT_SIZE = 128L * 1024 * 1024;
+  // appended messages are flushed when their total size exceeds this threshold
+  static final int MAX_PENDING_SIZE = 4 * 1024 * 1024;
+
+  private final FileStructure fileStructure;
+  private final ReportSegmentCompression compression;
+  private final long maxSegmentSize;
+  private final Set<String> keys = new HashSet<>();
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private final Map<String, PendingAppends> pendingAppendsByKey = new LinkedHashMap<>();
+  private int pendingSize;
+  private final DataOutputStream indexOutput;
+  private int segment = -1;
+  private long segmentSize;
+  private FileOutputStream segmentOutput;
+
+  public ReportSegmentWriter(FileStructure fileStructure, ReportSegmentCompression compression) {
+    this(fileStructure, compression, DEFAULT_MAX_SEGMENT_SIZE);
+  }
+
+  ReportSegmentWriter(FileStructure fileStructure, ReportSegmentCompression compression, long maxSegmentSize) {
+    this.fileStructure = fileStructure;
+    this.compression = compression;
+    this.maxSegmentSize = maxSegmentSize;
+    File indexFile = fileStructure.segmentsIndex();
+    try {
+      this.indexOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, false)));
+    } catch (IOException e) {
+      throw ContextException.of("Unable to create index of report segments", e).addContext("file", indexFile);
+    }
+  }
+
+  public synchronized boolean has(FileStructure.Domain domain, int componentRef) {
+    return keys.contains(key(domain, componentRef));
+  }
+
+  /**
+   * Stores a single message, replacing any previous data of the component for this domain
+   */
+  public synchronized File write(FileStructure.Domain domain, int componentRef, Message message) {
+    discardPendingAppends(domain, componentRef);
+    buffer.reset();
+    try {
+      message.writeTo(buffer);
+    } catch (IOException e) {
+      throw ContextException.of("Unable to write message", e);
+    }
+    return writeBuffer(domain, componentRef, buffer.toByteArray(), true);
+  }
+
+  /**
+   * Stores delimited messages, as {@link org.sonar.core.util.Protobuf#writeStream(Iterable, java.io.OutputStream)},
+   * replacing any previous data of the component for this domain
+   */
+  public synchronized <MSG extends Message> File writeStream(FileStructure.Domain domain, int componentRef, Iterable<MSG> messages) {
+    discardPendingAppends(domain, componentRef);
+    buffer.reset();
+    try {
+      for (Message message : messages) {
+        message.writeDelimitedTo(buffer);
+      }
+    } catch (IOException e) {
+      throw ContextException.of("Unable to write messages", e);
+    }
+    return writeBuffer(domain, componentRef, buffer.toByteArray(), true);
+  }
+
+  /**
+   * Appends a delimited message to the data of the component for this domain. The message is buffered until
+   * {@link #flush()}, so that the messages appended to a component are stored in as few chunks as possible.
+   */
+  public synchronized void append(FileStructure.Domain domain, int componentRef, Message message) {
+    String key = key(domain, componentRef);
+    PendingAppends pending = pendingAppendsByKey.computeIfAbsent(key, k -> new PendingAppends(domain, componentRef));
+    int sizeBefore = pending.output.size();
+    try {
+      message.writeDelimitedTo(pending.output);
+    } catch (IOException e) {
+      throw ContextException.of("Unable to write message", e);
+    }
+    keys.add(key);
+    pendingSize += pending.output.size() - sizeBefore;
+    if (pendingSize > MAX_PENDING_SIZE) {
+      flush();
+    }
+  }
+
+  /**
+   * Stores the buffered appended messages, so that they can be read by {@link ReportSegmentReader}
+   */
+  public synchronized void flush() {
+    for (PendingAppends pending : pendingAppendsByKey.values()) {
+      writeBuffer(pending.domain, pending.componentRef, pending.output.toByteArray(), false);
+    }
+    pendingAppendsByKey.clear();
+    pendingSize = 0;
+  }
+
+  private void discardPendingAppends(FileStructure.Domain domain, int componentRef) {
+    PendingAppends pending = pendingAppendsByKey.remove(key(domain, componentRef));
+    if (pending != null) {
+      pendingSize -= pending.output.size();
+    }
+  }
+
+  private File writeBuffer(FileStructure.Domain domain, int componentRef, byte[] raw, boolean replace) {
+    File segmentFile = null;
+    try {
+      byte[] stored = compression.compress(raw, raw.length);
+      segmentFile = nextSegmentIfNeeded();
+      long offset = segmentSize;
+      segmentOutput.write(stored);
+      segmentOutput.flush();
+      segmentSize += stored.length;
+
+      indexOutput.writeByte(replace ? FLAG_REPLACE : 0);
+      indexOutput.writeUTF(domain.name());
+      indexOutput.writeInt(componentRef);
+      indexOutput.writeInt(segment);
+      indexOutput.writeLong(offset);
+      indexOutput.writeInt(stored.length);
+      indexOutput.writeInt(raw.length);
+      indexOutput.writeUTF(compression.name());
+      // records must be complete when chunk is read back during analysis
+      indexOutput.flush();
+      keys.add(key(domain, componentRef));
+      return segmentFile;
+    } catch (IOException e) {
+      throw ContextException.of("Unable to write report segment", e).addContext("file", segmentFile);
+    }
+  }
+
+  private File nextSegmentIfNeeded() throws IOException {
+    if (segmentOutput == null || segmentSize >= maxSegmentSize) {
+      IOUtils.closeQuietly(segmentOutput);
+      segment++;
+      segmentSize = 0;
+      segmentOutput = new FileOutputStream(fileStructure.segmentFile(segment), false);
+    }
+    return fileStructure.segmentFile(segment);
+  }
+
+  @CheckForNull
+  public synchronized File currentSegment() {
+    return segment < 0 ? null : fileStructure.segmentFile(segment);
+  }
+
+  @Override
+  public synchronized void close() {
+    flush();
+    IOUtils.closeQuietly(segmentOutput);
+    IOUtils.closeQuietly(indexOutput);
+  }
+
+  static String key(FileStructure.Domain domain, int componentRef) {
+    return domain.name() + ":" + componentRef;
+  }
+
+  private static class PendingAppends {
+    private final FileStructure.Domain domain;
+    private final int componentRef;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    private PendingAppends(FileStructure.Domain domain, int componentRef) {
+      this.domain = domain;
+      this.componentRef = componentRef;
+    }
+  }
+}
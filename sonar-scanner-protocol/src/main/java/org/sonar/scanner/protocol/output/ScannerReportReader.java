@@ -19,19 +19,46 @@
  */
 package org.sonar.scanner.protocol.output;
 
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import javax.annotation.CheckForNull;
+import org.apache.commons.io.FileUtils;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.core.util.ContextException;
 import org.sonar.core.util.Protobuf;
 
 import static org.sonar.core.util.CloseableIterator.emptyCloseableIterator;
 
-public class ScannerReportReader {
+public class ScannerReportReader implements Closeable {
 
   private final FileStructure fileStructure;
+  @CheckForNull
+  private final ReportArchive archive;
+  @CheckForNull
+  private final ReportSegmentReader segmentReader;
 
   public ScannerReportReader(File dir) {
     this.fileStructure = new FileStructure(dir);
+    this.archive = null;
+    this.segmentReader = ReportSegmentReader.exists(fileStructure) ? new ReportSegmentReader(fileStructure) : null;
+  }
+
+  /**
+   * Reads the report directly from its zip file, without extracting it. Files of {@link #getFileStructure()}
+   * are then entries of the archive and must be read with {@link #open(File)}.
+   */
+  public ScannerReportReader(ReportArchive archive) {
+    this.fileStructure = new FileStructure(archive.getFile().getParentFile());
+    this.archive = archive;
+    this.segmentReader = ReportSegmentReader.exists(fileStructure, archive) ? new ReportSegmentReader(fileStructure, archive) : null;
+  }
+
+  private boolean isInSegments(FileStructure.Domain domain, int componentRef) {
+    return segmentReader != null && segmentReader.has(domain, componentRef);
   }
 
   public ScannerReport.Metadata readMetadata() {
@@ -39,7 +66,7 @@ public class ScannerReportReader {
     if (!fileExists(file)) {
       throw new IllegalStateException("Metadata file is missing in analysis report: " + file);
     }
-    return Protobuf.read(file, ScannerReport.Metadata.parser());
+    return read(file, ScannerReport.Metadata.parser());
   }
 
   public CloseableIterator<ScannerReport.ActiveRule> readActiveRules() {
@@ -47,119 +74,136 @@ public class ScannerReportReader {
     if (!fileExists(file)) {
       return emptyCloseableIterator();
     }
-    return Protobuf.readStream(file, ScannerReport.ActiveRule.parser());
+    return readStream(file, ScannerReport.ActiveRule.parser());
   }
 
   public CloseableIterator<ScannerReport.Measure> readComponentMeasures(int componentRef) {
+    if (isInSegments(FileStructure.Domain.MEASURES, componentRef)) {
+      return Protobuf.readStream(segmentReader.open(FileStructure.Domain.MEASURES, componentRef), ScannerReport.Measure.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Measure.parser());
+      return readStream(file, ScannerReport.Measure.parser());
     }
     return emptyCloseableIterator();
   }
 
   @CheckForNull
   public ScannerReport.Changesets readChangesets(int componentRef) {
+    if (isInSegments(FileStructure.Domain.CHANGESETS, componentRef)) {
+      return Protobuf.read(segmentReader.open(FileStructure.Domain.CHANGESETS, componentRef), ScannerReport.Changesets.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.read(file, ScannerReport.Changesets.parser());
+      return read(file, ScannerReport.Changesets.parser());
     }
     return null;
   }
 
   public ScannerReport.Component readComponent(int componentRef) {
+    if (isInSegments(FileStructure.Domain.COMPONENT, componentRef)) {
+      return Protobuf.read(segmentReader.open(FileStructure.Domain.COMPONENT, componentRef), ScannerReport.Component.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, componentRef);
     if (!fileExists(file)) {
       throw new IllegalStateException("Unable to find report for component #" + componentRef + ". File does not exist: " + file);
     }
-    return Protobuf.read(file, ScannerReport.Component.parser());
+    return read(file, ScannerReport.Component.parser());
   }
 
   public CloseableIterator<ScannerReport.Issue> readComponentIssues(int componentRef) {
+    if (isInSegments(FileStructure.Domain.ISSUES, componentRef)) {
+      return Protobuf.readStream(segmentReader.open(FileStructure.Domain.ISSUES, componentRef), ScannerReport.Issue.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Issue.parser());
+      return readStream(file, ScannerReport.Issue.parser());
     }
     return emptyCloseableIterator();
   }
 
   public CloseableIterator<ScannerReport.Duplication> readComponentDuplications(int componentRef) {
+    if (isInSegments(FileStructure.Domain.DUPLICATIONS, componentRef)) {
+      return Protobuf.readStream(segmentReader.open(FileStructure.Domain.DUPLICATIONS, componentRef), ScannerReport.Duplication.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Duplication.parser());
+      return readStream(file, ScannerReport.Duplication.parser());
     }
     return emptyCloseableIterator();
   }
 
   public CloseableIterator<ScannerReport.CpdTextBlock> readCpdTextBlocks(int componentRef) {
+    if (isInSegments(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef)) {
+      return Protobuf.readStream(segmentReader.open(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef), ScannerReport.CpdTextBlock.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.CpdTextBlock.parser());
+      return readStream(file, ScannerReport.CpdTextBlock.parser());
     }
     return emptyCloseableIterator();
   }
 
   public CloseableIterator<ScannerReport.Symbol> readComponentSymbols(int componentRef) {
+    if (isInSegments(FileStructure.Domain.SYMBOLS, componentRef)) {
+      return Protobuf.readStream(segmentReader.open(FileStructure.Domain.SYMBOLS, componentRef), ScannerReport.Symbol.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.Symbol.parser());
+      return readStream(file, ScannerReport.Symbol.parser());
     }
     return emptyCloseableIterator();
   }
 
   public boolean hasSyntaxHighlighting(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
-    return file.exists();
+    if (isInSegments(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef)) {
+      return true;
+    }
+    return fileExists(fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef));
   }
 
   public CloseableIterator<ScannerReport.SyntaxHighlightingRule> readComponentSyntaxHighlighting(int fileRef) {
+    if (isInSegments(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef)) {
+      return Protobuf.readStream(segmentReader.open(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef), ScannerReport.SyntaxHighlightingRule.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, fileRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.SyntaxHighlightingRule.parser());
+      return readStream(file, ScannerReport.SyntaxHighlightingRule.parser());
     }
     return emptyCloseableIterator();
   }
 
   public boolean hasCoverage(int componentRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
-    return file.exists();
+    if (isInSegments(FileStructure.Domain.COVERAGES, componentRef)) {
+      return true;
+    }
+    return fileExists(fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef));
   }
 
   public CloseableIterator<ScannerReport.LineCoverage> readComponentCoverage(int fileRef) {
+    if (isInSegments(FileStructure.Domain.COVERAGES, fileRef)) {
+      return Protobuf.readStream(segmentReader.open(FileStructure.Domain.COVERAGES, fileRef), ScannerReport.LineCoverage.parser());
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, fileRef);
     if (fileExists(file)) {
-      return Protobuf.readStream(file, ScannerReport.LineCoverage.parser());
+      return readStream(file, ScannerReport.LineCoverage.parser());
     }
     return emptyCloseableIterator();
   }
 
   @CheckForNull
   public File readFileSource(int fileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.SOURCE, fileRef);
-    if (fileExists(file)) {
-      return file;
-    }
-    return null;
+    return extractedFile(fileStructure.fileFor(FileStructure.Domain.SOURCE, fileRef));
   }
 
   @CheckForNull
   public File readTests(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef);
-    if (fileExists(file)) {
-      return file;
-    }
-
-    return null;
+    return extractedFile(fileStructure.fileFor(FileStructure.Domain.TESTS, testFileRef));
   }
 
   @CheckForNull
   public File readCoverageDetails(int testFileRef) {
-    File file = fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef);
-    if (fileExists(file)) {
-      return file;
-    }
-
-    return null;
+    return extractedFile(fileStructure.fileFor(FileStructure.Domain.COVERAGE_DETAILS, testFileRef));
   }
 
   public CloseableIterator<ScannerReport.ContextProperty> readContextProperties() {
@@ -167,14 +211,70 @@ public class ScannerReportReader {
     if (!fileExists(file)) {
       return emptyCloseableIterator();
     }
-    return Protobuf.readStream(file, ScannerReport.ContextProperty.parser());
+    return readStream(file, ScannerReport.ContextProperty.parser());
   }
 
-  private static boolean fileExists(File file) {
+  private boolean fileExists(File file) {
+    if (archive != null) {
+      return archive.has(file.getName());
+    }
     return file.exists() && file.isFile();
   }
 
+  /**
+   * Opens a file of {@link #getFileStructure()}, or returns {@code null} if it does not exist in the report.
+   */
+  @CheckForNull
+  public InputStream open(File file) {
+    if (archive != null) {
+      return archive.open(file.getName());
+    }
+    if (!fileExists(file)) {
+      return null;
+    }
+    try {
+      return FileUtils.openInputStream(file);
+    } catch (IOException e) {
+      throw ContextException.of("Unable to open file of analysis report", e).addContext("file", file);
+    }
+  }
+
+  private <MSG extends Message> MSG read(File file, Parser<MSG> parser) {
+    if (archive != null) {
+      return Protobuf.read(archive.open(file.getName()), parser);
+    }
+    return Protobuf.read(file, parser);
+  }
+
+  private <MSG extends Message> CloseableIterator<MSG> readStream(File file, Parser<MSG> parser) {
+    if (archive != null) {
+      return Protobuf.readStream(archive.open(file.getName()), parser);
+    }
+    return Protobuf.readStream(file, parser);
+  }
+
+  /**
+   * Returns the file itself, so only supported when the report is extracted
+   */
+  @CheckForNull
+  private File extractedFile(File file) {
+    if (archive != null) {
+      throw new IllegalStateException("Analysis report is not extracted, file must be opened as a stream: " + file.getName());
+    }
+    return fileExists(file) ? file : null;
+  }
+
   public FileStructure getFileStructure() {
     return fileStructure;
   }
+
+  /**
+   * Releases the segment files opened while reading, if any
+   */
+  @Override
+  public void close() {
+    if (segmentReader != null) {
+      segmentReader.close();
+    }
+  }
 }
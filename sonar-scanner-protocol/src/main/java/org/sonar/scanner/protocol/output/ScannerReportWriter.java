@@ -23,20 +23,50 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
-import javax.annotation.concurrent.Immutable;
+import javax.annotation.Nullable;
 import org.sonar.core.util.ContextException;
 import org.sonar.core.util.Protobuf;
 
-@Immutable
+/**
+ * Writes the report in a directory. By default the data of each component and domain is stored in its own file.
+ * When created with a {@link ReportSegmentCompression}, the data of components is appended to a few segment files
+ * instead (see {@link ReportSegmentWriter}), except sources, tests and coverage details which are still read as files.
+ */
 public class ScannerReportWriter {
 
   private final FileStructure fileStructure;
+  @Nullable
+  private final ReportSegmentWriter segmentWriter;
 
   public ScannerReportWriter(File dir) {
+    this(dir, null);
+  }
+
+  public ScannerReportWriter(File dir, @Nullable ReportSegmentCompression segmentCompression) {
     if (!dir.exists() && !dir.mkdirs()) {
       throw new IllegalStateException("Unable to create directory: " + dir);
     }
     this.fileStructure = new FileStructure(dir);
+    this.segmentWriter = segmentCompression == null ? null : new ReportSegmentWriter(fileStructure, segmentCompression);
+  }
+
+  /**
+   * Stores the issues appended to segments, if any, so that they are visible to a {@link ScannerReportReader}
+   * created afterwards.
+   */
+  public void flush() {
+    if (segmentWriter != null) {
+      segmentWriter.flush();
+    }
+  }
+
+  /**
+   * Releases the segment files, if any. Must be called before packaging the report.
+   */
+  public void close() {
+    if (segmentWriter != null) {
+      segmentWriter.close();
+    }
   }
 
   public FileStructure getFileStructure() {
@@ -44,6 +74,9 @@ public class ScannerReportWriter {
   }
 
   public boolean hasComponentData(FileStructure.Domain domain, int componentRef) {
+    if (segmentWriter != null && segmentWriter.has(domain, componentRef)) {
+      return true;
+    }
     File file = fileStructure.fileFor(domain, componentRef);
     return file.exists() && file.isFile();
   }
@@ -62,18 +95,28 @@ public class ScannerReportWriter {
   }
 
   public File writeComponent(ScannerReport.Component component) {
+    if (segmentWriter != null) {
+      return segmentWriter.write(FileStructure.Domain.COMPONENT, component.getRef(), component);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.COMPONENT, component.getRef());
     Protobuf.write(component, file);
     return file;
   }
 
   public File writeComponentIssues(int componentRef, Iterable<ScannerReport.Issue> issues) {
+    if (segmentWriter != null) {
+      return segmentWriter.writeStream(FileStructure.Domain.ISSUES, componentRef, issues);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
     Protobuf.writeStream(issues, file, false);
     return file;
   }
 
   public void appendComponentIssue(int componentRef, ScannerReport.Issue issue) {
+    if (segmentWriter != null) {
+      segmentWriter.append(FileStructure.Domain.ISSUES, componentRef, issue);
+      return;
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.ISSUES, componentRef);
     try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
       issue.writeDelimitedTo(out);
@@ -83,42 +126,63 @@ public class ScannerReportWriter {
   }
 
   public File writeComponentMeasures(int componentRef, Iterable<ScannerReport.Measure> measures) {
+    if (segmentWriter != null) {
+      return segmentWriter.writeStream(FileStructure.Domain.MEASURES, componentRef, measures);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.MEASURES, componentRef);
     Protobuf.writeStream(measures, file, false);
     return file;
   }
 
   public File writeComponentChangesets(ScannerReport.Changesets changesets) {
+    if (segmentWriter != null) {
+      return segmentWriter.write(FileStructure.Domain.CHANGESETS, changesets.getComponentRef(), changesets);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.CHANGESETS, changesets.getComponentRef());
     Protobuf.write(changesets, file);
     return file;
   }
 
   public File writeComponentDuplications(int componentRef, Iterable<ScannerReport.Duplication> duplications) {
+    if (segmentWriter != null) {
+      return segmentWriter.writeStream(FileStructure.Domain.DUPLICATIONS, componentRef, duplications);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.DUPLICATIONS, componentRef);
     Protobuf.writeStream(duplications, file, false);
     return file;
   }
 
   public File writeCpdTextBlocks(int componentRef, Iterable<ScannerReport.CpdTextBlock> blocks) {
+    if (segmentWriter != null) {
+      return segmentWriter.writeStream(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef, blocks);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.CPD_TEXT_BLOCKS, componentRef);
     Protobuf.writeStream(blocks, file, false);
     return file;
   }
 
   public File writeComponentSymbols(int componentRef, Iterable<ScannerReport.Symbol> symbols) {
+    if (segmentWriter != null) {
+      return segmentWriter.writeStream(FileStructure.Domain.SYMBOLS, componentRef, symbols);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.SYMBOLS, componentRef);
     Protobuf.writeStream(symbols, file, false);
     return file;
   }
 
   public File writeComponentSyntaxHighlighting(int componentRef, Iterable<ScannerReport.SyntaxHighlightingRule> syntaxHighlightingRules) {
+    if (segmentWriter != null) {
+      return segmentWriter.writeStream(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef, syntaxHighlightingRules);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.SYNTAX_HIGHLIGHTINGS, componentRef);
     Protobuf.writeStream(syntaxHighlightingRules, file, false);
     return file;
   }
 
   public File writeComponentCoverage(int componentRef, Iterable<ScannerReport.LineCoverage> coverageList) {
+    if (segmentWriter != null) {
+      return segmentWriter.writeStream(FileStructure.Domain.COVERAGES, componentRef, coverageList);
+    }
     File file = fileStructure.fileFor(FileStructure.Domain.COVERAGES, componentRef);
     Protobuf.writeStream(coverageList, file, false);
     return file;
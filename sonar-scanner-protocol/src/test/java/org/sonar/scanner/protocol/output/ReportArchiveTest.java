@@ -0,0 +1,107 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.core.util.CloseableIterator;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportArchiveTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File reportDir;
+  private File zip;
+
+  @Before
+  public void setUp() throws Exception {
+    reportDir = temp.newFolder();
+    zip = new File(temp.newFolder(), "report.zip");
+  }
+
+  @Test
+  public void segments_are_stored_without_compression() throws Exception {
+    ScannerReportWriter writer = new ScannerReportWriter(reportDir, ReportSegmentCompression.LZ4);
+    writer.writeMetadata(ScannerReport.Metadata.newBuilder().setProjectKey("foo").build());
+    writer.writeComponent(ScannerReport.Component.newBuilder().setRef(1).build());
+    writer.close();
+
+    ReportArchive.zip(reportDir, zip);
+
+    try (ZipFile zipFile = new ZipFile(zip)) {
+      assertThat(zipFile.getEntry("segment-0.dat").getMethod()).isEqualTo(ZipEntry.STORED);
+      assertThat(zipFile.getEntry("segments.idx").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+      assertThat(zipFile.getEntry("metadata.pb").getMethod()).isEqualTo(ZipEntry.DEFLATED);
+    }
+  }
+
+  @Test
+  public void read_report_without_extraction() throws Exception {
+    ScannerReportWriter writer = new ScannerReportWriter(reportDir, ReportSegmentCompression.LZ4);
+    writer.writeMetadata(ScannerReport.Metadata.newBuilder().setProjectKey("foo").build());
+    for (int ref = 1; ref <= 10; ref++) {
+      writer.writeComponent(ScannerReport.Component.newBuilder().setRef(ref).setName("Component " + ref).build());
+      writer.writeComponentIssues(ref, Arrays.asList(ScannerReport.Issue.newBuilder().setMsg("issue on " + ref).build()));
+    }
+    FileUtils.write(writer.getFileStructure().fileFor(FileStructure.Domain.SOURCE, 2), "line1\nline2", StandardCharsets.UTF_8);
+    writer.close();
+    ReportArchive.zip(reportDir, zip);
+
+    try (ReportArchive archive = new ReportArchive(zip)) {
+      ScannerReportReader reader = new ScannerReportReader(archive);
+
+      assertThat(reader.readMetadata().getProjectKey()).isEqualTo("foo");
+      assertThat(reader.readComponent(7).getName()).isEqualTo("Component 7");
+      try (CloseableIterator<ScannerReport.Issue> issues = reader.readComponentIssues(4)) {
+        assertThat(issues.next().getMsg()).isEqualTo("issue on 4");
+      }
+      try (InputStream source = reader.open(reader.getFileStructure().fileFor(FileStructure.Domain.SOURCE, 2))) {
+        assertThat(IOUtils.toString(source, StandardCharsets.UTF_8)).isEqualTo("line1\nline2");
+      }
+      assertThat(reader.open(reader.getFileStructure().fileFor(FileStructure.Domain.SOURCE, 3))).isNull();
+      assertThat(reader.readComponentIssues(11).hasNext()).isFalse();
+      assertThat(archive.getBytesRead()).isPositive();
+    }
+    assertThat(zip.getParentFile().list()).containsOnly("report.zip");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void files_can_not_be_returned_when_report_is_not_extracted() throws Exception {
+    new ScannerReportWriter(reportDir).writeMetadata(ScannerReport.Metadata.newBuilder().build());
+    ReportArchive.zip(reportDir, zip);
+
+    try (ReportArchive archive = new ReportArchive(zip)) {
+      new ScannerReportReader(archive).readFileSource(1);
+    }
+  }
+}
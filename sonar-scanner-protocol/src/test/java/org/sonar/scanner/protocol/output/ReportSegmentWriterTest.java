@@ -0,0 +1,146 @@
+/*
+ * SonarQube
+ * Copyright (C) 2009-2017 SonarSource SA
+ * mailto:info AT sonarsource DOT com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA.
+ */
+package org.sonar.scanner.protocol.output;
+
+import com.google.common.collect.Iterators;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.core.util.CloseableIterator;
+import org.sonar.core.util.Protobuf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportSegmentWriterTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private File dir;
+
+  @Before
+  public void setUp() throws Exception {
+    dir = temp.newFolder();
+  }
+
+  @Test
+  public void read_components_and_issues_from_lz4_segments() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir, ReportSegmentCompression.LZ4);
+    writer.writeComponent(ScannerReport.Component.newBuilder().setRef(1).setName("Project").build());
+    writer.writeComponent(ScannerReport.Component.newBuilder().setRef(2).setName("Foo.java").build());
+    writer.writeComponentIssues(2, Arrays.asList(newIssue("first"), newIssue("second")));
+    writer.appendComponentIssue(2, newIssue("third"));
+    writer.close();
+
+    assertThat(dir.list()).containsOnly("segments.idx", "segment-0.dat");
+    ScannerReportReader reader = new ScannerReportReader(dir);
+    assertThat(reader.readComponent(2).getName()).isEqualTo("Foo.java");
+    try (CloseableIterator<ScannerReport.Issue> issues = reader.readComponentIssues(2)) {
+      assertThat(issues).extracting(ScannerReport.Issue::getMsg).containsExactly("first", "second", "third");
+    }
+    assertThat(reader.readComponentIssues(1).hasNext()).isFalse();
+  }
+
+  @Test
+  public void write_replaces_previous_data() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir, ReportSegmentCompression.NONE);
+    writer.writeComponentIssues(1, Arrays.asList(newIssue("old")));
+    writer.writeComponentIssues(1, Arrays.asList(newIssue("new")));
+    writer.close();
+
+    assertThat(Iterators.size(new ScannerReportReader(dir).readComponentIssues(1))).isEqualTo(1);
+    assertThat(new ScannerReportReader(dir).readComponentIssues(1).next().getMsg()).isEqualTo("new");
+  }
+
+  @Test
+  public void data_is_readable_before_writer_is_closed() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir, ReportSegmentCompression.LZ4);
+    assertThat(writer.hasComponentData(FileStructure.Domain.ISSUES, 1)).isFalse();
+
+    writer.appendComponentIssue(1, newIssue("foo"));
+    assertThat(writer.hasComponentData(FileStructure.Domain.ISSUES, 1)).isTrue();
+    writer.flush();
+
+    assertThat(new ScannerReportReader(dir).readComponentIssues(1).next().getMsg()).isEqualTo("foo");
+    writer.close();
+  }
+
+  @Test
+  public void appended_messages_are_stored_in_one_chunk_per_component() {
+    FileStructure fileStructure = new FileStructure(dir);
+    ReportSegmentWriter writer = new ReportSegmentWriter(fileStructure, ReportSegmentCompression.LZ4);
+    for (int i = 0; i < 100; i++) {
+      writer.append(FileStructure.Domain.ISSUES, 1 + i % 2, newIssue("issue " + i));
+    }
+    writer.close();
+
+    List<Integer> readChunks = new ArrayList<>();
+    ReportSegmentReader reader = new ReportSegmentReader(fileStructure) {
+      @Override
+      protected byte[] readStored(Chunk chunk) {
+        readChunks.add(chunk.storedLength);
+        return super.readStored(chunk);
+      }
+    };
+    try (CloseableIterator<ScannerReport.Issue> issues = Protobuf.readStream(reader.open(FileStructure.Domain.ISSUES, 2), ScannerReport.Issue.parser())) {
+      assertThat(issues).extracting(ScannerReport.Issue::getMsg).hasSize(50).startsWith("issue 1", "issue 3");
+    }
+    reader.close();
+    assertThat(readChunks).hasSize(1);
+  }
+
+  @Test
+  public void write_discards_pending_appended_messages() {
+    ScannerReportWriter writer = new ScannerReportWriter(dir, ReportSegmentCompression.NONE);
+    writer.appendComponentIssue(1, newIssue("old"));
+    writer.writeComponentIssues(1, Arrays.asList(newIssue("new")));
+    writer.appendComponentIssue(1, newIssue("appended"));
+    writer.close();
+
+    try (ScannerReportReader reader = new ScannerReportReader(dir);
+      CloseableIterator<ScannerReport.Issue> issues = reader.readComponentIssues(1)) {
+      assertThat(issues).extracting(ScannerReport.Issue::getMsg).containsExactly("new", "appended");
+    }
+  }
+
+  @Test
+  public void roll_segments() {
+    FileStructure fileStructure = new FileStructure(dir);
+    ReportSegmentWriter writer = new ReportSegmentWriter(fileStructure, ReportSegmentCompression.NONE, 10L);
+    for (int i = 1; i <= 3; i++) {
+      writer.write(FileStructure.Domain.COMPONENT, i, ScannerReport.Component.newBuilder().setRef(i).setName("Component " + i).build());
+    }
+    writer.close();
+
+    assertThat(fileStructure.segmentFile(2)).isFile();
+    ScannerReportReader reader = new ScannerReportReader(dir);
+    assertThat(reader.readComponent(1).getName()).isEqualTo("Component 1");
+    assertThat(reader.readComponent(3).getName()).isEqualTo("Component 3");
+  }
+
+  private static ScannerReport.Issue newIssue(String msg) {
+    return ScannerReport.Issue.newBuilder().setMsg(msg).build();
+  }
+}
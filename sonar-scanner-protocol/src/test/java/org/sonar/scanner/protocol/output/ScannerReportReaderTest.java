@@ -30,6 +30,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonar.core.util.CloseableIterator;
+import org.sonar.core.util.Protobuf;
 import org.sonar.scanner.protocol.output.ScannerReport.Measure.StringValue;
 import org.sonar.scanner.protocol.output.ScannerReport.SyntaxHighlightingRule.HighlightingType;
 import org.sonar.scanner.protocol.output.ScannerReport.Test.TestStatus;
@@ -72,6 +73,20 @@ public class ScannerReportReaderTest {
     assertThat(readMetadata.getCrossProjectDuplicationActivated()).isTrue();
   }
 
+  @Test
+  public void read_messages_and_streams_from_extracted_report_directory() {
+    Protobuf.write(ScannerReport.Metadata.newBuilder().setProjectKey("PROJECT_A").build(), new FileStructure(dir).metadataFile());
+    Protobuf.writeStream(asList(
+      ScannerReport.ActiveRule.newBuilder().setRuleRepository("java").setRuleKey("S1").build(),
+      ScannerReport.ActiveRule.newBuilder().setRuleRepository("java").setRuleKey("S2").build()),
+      new FileStructure(dir).activeRules(), false);
+
+    assertThat(underTest.readMetadata().getProjectKey()).isEqualTo("PROJECT_A");
+    try (CloseableIterator<ScannerReport.ActiveRule> rules = underTest.readActiveRules()) {
+      assertThat(Lists.newArrayList(rules)).extracting(ScannerReport.ActiveRule::getRuleKey).containsExactly("S1", "S2");
+    }
+  }
+
   @Test(expected = IllegalStateException.class)
   public void fail_if_missing_metadata_file() {
     underTest.readMetadata();